@@ -0,0 +1,33 @@
+package phome.bidtracker.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * 
+ * <br><br>Runs the selected benchmarks once per thread count, since JMH does not allow
+ * the thread count to be a @Param. Thread counts are read from the <code>threads</code> system property
+ * (comma separated, defaults to 1,2,4,8). All other arguments are regular JMH command line options e.g.
+ * <br><code>java -Dthreads=1,16 -jar target/benchmarks.jar BidTrackerBenchmark.bid -p skew=0.99</code>
+ *
+ */
+public class BenchmarkRunner {
+	
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		
+		for (String threads : System.getProperty("threads", "1,2,4,8").split(",")) {
+			Options options = new OptionsBuilder()
+					.parent(cmdOptions)
+					.threads(Integer.parseInt(threads.trim()))
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+}
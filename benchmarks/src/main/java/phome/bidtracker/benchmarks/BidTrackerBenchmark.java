@@ -0,0 +1,139 @@
+package phome.bidtracker.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreColumnar;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.IdDictionary;
+import phome.bidtracker.store.UserBidHistoryStoreEncodedImpl;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+/**
+ * JMH benchmarks of the BidTracker API backed by the store implementations.
+ * 
+ * <br><br>Every benchmark is parameterized by:
+ * <br> itemCount - number of items on auction
+ * <br> skew - Zipfian exponent of the item popularity, 0 being uniform
+ * <br> risingRatio - fraction of bids that outbid the current winning bid, the rest are losing bids
+ * <br> store - store implementations the tracker is built on
+ * <br><br>Thread count is a JMH run option (-t), see {@link BenchmarkRunner} which sweeps over it.
+ * 
+ * <br><br>Rising bids are generated off a per item price ticker shared by all threads,
+ * so concurrent rising bids on a hot item do contend on the same CAS exactly like competing bidders would.
+ * Losing bids are always below the opening price of the item.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BidTrackerBenchmark {
+	
+	private static final double LOSING_AMOUNT = 0.5d;
+	private static final int USER_COUNT = 10000;
+	
+	@Param({"1000", "100000"})
+	public int itemCount;
+	
+	@Param({"0.0", "0.99"})
+	public double skew;
+	
+	@Param({"0.1", "0.5"})
+	public double risingRatio;
+	
+	@Param({"lockfree", "columnar"})
+	public String store;
+	
+	private BidTracker tracker;
+	private ZipfianGenerator items;
+	private String[] itemIds;
+	private String[] userIds;
+	private AtomicLongArray prices;
+	
+	
+	/**
+	 * Builds a fresh tracker and opens every item with a bid, so that reads always find a history
+	 */
+	@Setup(Level.Trial)
+	public void setup(){
+		if("columnar".equals(store)){
+			IdDictionary userIds = new IdDictionary();
+			IdDictionary itemIds = new IdDictionary();
+			tracker = new BidTrackerImpl(new BidStoreColumnar(userIds, itemIds), new UserBidHistoryStoreEncodedImpl(userIds, itemIds));
+		}
+		else{
+			tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+		}
+		items = new ZipfianGenerator(itemCount, skew);
+		itemIds = new String[itemCount];
+		userIds = new String[USER_COUNT];
+		prices = new AtomicLongArray(itemCount);
+		
+		for (int i = 0; i < USER_COUNT; i++) {
+			userIds[i] = "USER-" + i;
+		}
+		for (int i = 0; i < itemCount; i++) {
+			itemIds[i] = "ITEM-" + i;
+			prices.set(i, 1);
+			tracker.bid(itemIds[i], userIds[i % USER_COUNT], 1.0d);
+		}
+	}
+	
+	
+	/**
+	 * Per thread source of randomness, kept out of the shared state to avoid false sharing
+	 */
+	@State(Scope.Thread)
+	public static class ThreadState {
+		final Random random = new Random();
+	}
+	
+	
+	@Benchmark
+	public boolean bid(ThreadState state){
+		Random random = state.random;
+		int item = items.next(random);
+		String userId = userIds[random.nextInt(USER_COUNT)];
+		double amount = random.nextDouble() < risingRatio ? prices.incrementAndGet(item) : LOSING_AMOUNT;
+		return tracker.bid(itemIds[item], userId, amount);
+	}
+	
+	@Benchmark
+	public Bid getWinningBid(ThreadState state){
+		return tracker.getWinningBid(itemIds[items.next(state.random)]);
+	}
+	
+	@Benchmark
+	public void getBidsforItem(ThreadState state, Blackhole blackhole){
+		for (Bid bid : tracker.getBidsforItem(itemIds[items.next(state.random)])) {
+			blackhole.consume(bid);
+		}
+	}
+	
+	@Benchmark
+	public Object getItemsforUser(ThreadState state){
+		return tracker.getItemsforUser(userIds[state.random.nextInt(USER_COUNT)]);
+	}
+	
+}
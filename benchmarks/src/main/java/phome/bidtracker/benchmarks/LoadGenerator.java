@@ -0,0 +1,292 @@
+package phome.bidtracker.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import phome.bidtracker.metrics.LatencyHistogram;
+import phome.bidtracker.net.BidClient;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+/**
+ * End to end load test: drives a {@link BidTracker} with {@link TrafficModel} traffic at a fixed rate,
+ * and reports the throughput achieved and the latency percentiles.
+ *
+ * <br><br>Open loop: every request has an intended start time on a fixed schedule, spread over the load threads,
+ * and its latency is measured from that time rather than from when it was actually sent.
+ * Rationale:
+ * <br>A closed loop client waits for a slow response before sending the next request, hence it stops measuring
+ *     exactly when the tracker stalls, the coordinated omission. Here the requests queued behind a stall are charged for it
+ * <br>The service time, from the actual start, is reported as well: a gap between both is the queueing of a saturated tracker
+ *
+ * <br><br>Several rates can be given, run one after the other with a fresh in process tracker each,
+ * so that a run shows where the tracker saturates: the achieved rate falls behind and the latencies climb.
+ *
+ * <br><br>Usage: <code>java -cp target/benchmarks.jar phome.bidtracker.benchmarks.LoadGenerator [--option=value ...]</code>
+ * <br>--rates=50000,100000,200000 requests per second
+ * <br>--threads=4 load threads, which should be enough to keep up with the rate when the tracker does
+ * <br>--warmup=5 and --duration=20 seconds per rate
+ * <br>--items=100000 --itemSkew=0.99 --users=10000 --userSkew=0.8
+ * <br>--readRatio=0.5 --warRatio=0.01 --warLength=50
+ * <br>--connect=host:port to load a {@link phome.bidtracker.net.BidServer} instead of an in process tracker
+ *
+ */
+public final class LoadGenerator {
+
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final TrafficModel model;
+	private final int threads;
+	private final long warmupNanos;
+	private final long durationNanos;
+
+
+	public LoadGenerator(TrafficModel model, int threads, long warmup, long duration, TimeUnit unit) {
+		if(model == null || threads <= 0 || warmup < 0 || duration <= 0){
+			throw new IllegalArgumentException("Invalid Args - null model or non positive threads or duration");
+		}
+		this.model = model;
+		this.threads = threads;
+		this.warmupNanos = unit.toNanos(warmup);
+		this.durationNanos = unit.toNanos(duration);
+	}
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = parse(args);
+		TrafficModel model = new TrafficModel(
+				intOption(options, "items", 100000), doubleOption(options, "itemSkew", 0.99d),
+				intOption(options, "users", 10000), doubleOption(options, "userSkew", 0.8d),
+				doubleOption(options, "readRatio", 0.5d), doubleOption(options, "warRatio", 0.01d),
+				intOption(options, "warLength", 50));
+		LoadGenerator generator = new LoadGenerator(model, intOption(options, "threads", 4),
+				intOption(options, "warmup", 5), intOption(options, "duration", 20), TimeUnit.SECONDS);
+		String connect = options.get("connect");
+		BidClient client = null;
+		if(connect != null){
+			int colon = connect.lastIndexOf(':');
+			client = new BidClient(new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1))));
+		}
+		try{
+			Result.printHeader(System.out);
+			String rates = options.containsKey("rates") ? options.get("rates") : "50000,100000,200000";
+			for (String rate : rates.split(",")) {
+				BidTracker tracker = client != null ? client
+						: new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+				generator.run(tracker, Integer.parseInt(rate.trim())).print(System.out);
+			}
+		}finally{
+			if(client != null){
+				client.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Plays the traffic against the tracker at the given rate for the warmup and the duration
+	 * @param tracker
+	 * @param rate - requests per second, over all threads
+	 * @return the figures measured after the warmup
+	 * @throws InterruptedException
+	 */
+	public Result run(BidTracker tracker, int rate) throws InterruptedException {
+		if(tracker == null || rate <= 0){
+			throw new IllegalArgumentException("Invalid Args - null tracker or non positive rate");
+		}
+		double periodNanos = threads * 1e9d / rate;
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		Result result = new Result(rate, start + warmupNanos, start + warmupNanos + durationNanos);
+		LoadThread[] loadThreads = new LoadThread[threads];
+		for (int i = 0; i < threads; i++) {
+			loadThreads[i] = new LoadThread(tracker, result, start + (long)(i * periodNanos / threads), periodNanos);
+			loadThreads[i].start();
+		}
+		for (LoadThread thread : loadThreads) {
+			thread.join();
+			result.merge(thread);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sends the requests of its schedule, each as soon as it is due
+	 */
+	private final class LoadThread extends Thread {
+		private final BidTracker tracker;
+		private final Result result;
+		private final long first;
+		private final double periodNanos;
+		private final TrafficModel.Session session = model.newSession();
+		private long bids;
+		private long accepted;
+		private long reads;
+		private long errors;
+		private long lastDone;
+
+		LoadThread(BidTracker tracker, Result result, long first, double periodNanos) {
+			super("load-generator");
+			setDaemon(true);
+			this.tracker = tracker;
+			this.result = result;
+			this.first = first;
+			this.periodNanos = periodNanos;
+		}
+
+		@Override
+		public void run() {
+			for (long k = 0; ; k++) {
+				long intended = first + (long)(k * periodNanos);
+				if(intended >= result.end){
+					return;
+				}
+				long sent = awaitUntil(intended);
+				int type;
+				try{
+					type = session.next(tracker);
+				}catch(RuntimeException e){
+					if(intended >= result.measureStart){
+						errors++;
+					}
+					continue;
+				}
+				long done = System.nanoTime();
+				if(intended < result.measureStart){
+					continue;
+				}
+				if(type == TrafficModel.BID){
+					bids++;
+					if(session.lastAccepted()){
+						accepted++;
+					}
+					result.bidLatency.record(done - intended);
+				}else{
+					reads++;
+					result.readLatency.record(done - intended);
+				}
+				result.serviceTime.record(done - sent);
+				lastDone = done;
+			}
+		}
+
+		/**
+		 * Parks until shortly before the time and spins the rest, for an accurate schedule
+		 * @return the time the request is actually sent
+		 */
+		private long awaitUntil(long time){
+			long now;
+			while((now = System.nanoTime()) < time){
+				if(time - now > SPIN_NANOS){
+					LockSupport.parkNanos(time - now - SPIN_NANOS);
+				}
+			}
+			return now;
+		}
+	}
+
+
+	/**
+	 * Figures of a run at a given rate
+	 */
+	public static final class Result {
+		private static final String FORMAT = "%10s %10s %9s %9s %7s | %9s %9s %9s %9s | %9s %9s | %9s%n";
+
+		private final int rate;
+		private final long measureStart;
+		private final long end;
+		private final LatencyHistogram bidLatency = new LatencyHistogram();
+		private final LatencyHistogram readLatency = new LatencyHistogram();
+		private final LatencyHistogram serviceTime = new LatencyHistogram();
+		private long bids;
+		private long accepted;
+		private long reads;
+		private long errors;
+		private long lastDone;
+
+		Result(int rate, long measureStart, long end) {
+			this.rate = rate;
+			this.measureStart = measureStart;
+			this.end = end;
+		}
+
+		private void merge(LoadThread thread){
+			bids += thread.bids;
+			accepted += thread.accepted;
+			reads += thread.reads;
+			errors += thread.errors;
+			lastDone = Math.max(lastDone, thread.lastDone);
+		}
+
+		/**
+		 * @return requests per second actually served, which falls behind the rate once the tracker saturates
+		 */
+		public double throughput(){
+			long elapsed = Math.max(lastDone, end) - measureStart;
+			return (bids + reads) * 1e9d / elapsed;
+		}
+
+		/**
+		 * @param percentile
+		 * @return latency of the bids from their intended start, in ns
+		 */
+		public long bidLatency(double percentile){
+			return bidLatency.valueAtPercentile(percentile);
+		}
+
+		/**
+		 * @param percentile
+		 * @return latency of the reads from their intended start, in ns
+		 */
+		public long readLatency(double percentile){
+			return readLatency.valueAtPercentile(percentile);
+		}
+
+		static void printHeader(PrintStream out){
+			out.printf(FORMAT, "rate/s", "done/s", "bids", "accepted", "errors",
+					"bid p50", "bid p99", "bid p99.9", "bid max", "read p50", "read p99", "svc p99");
+			out.printf(FORMAT, "", "", "", "", "", "us", "us", "us", "us", "us", "us", "us");
+		}
+
+		void print(PrintStream out){
+			out.printf(FORMAT, rate, Math.round(throughput()), bids, accepted, errors,
+					micros(bidLatency(50)), micros(bidLatency(99)), micros(bidLatency(99.9)), micros(bidLatency(100)),
+					micros(readLatency(50)), micros(readLatency(99)), micros(serviceTime.valueAtPercentile(99)));
+		}
+
+		private static String micros(long nanos){
+			return String.format("%.1f", nanos / 1000.0d);
+		}
+	}
+
+
+	private static Map<String, String> parse(String[] args){
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if(!arg.startsWith("--") || equals < 0){
+				throw new IllegalArgumentException("Invalid Args - expected --option=value but got " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return options;
+	}
+
+	private static int intOption(Map<String, String> options, String name, int defaultValue){
+		String value = options.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	private static double doubleOption(Map<String, String> options, String name, double defaultValue){
+		String value = options.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+}
@@ -0,0 +1,140 @@
+package phome.bidtracker.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.net.BidClient;
+import phome.bidtracker.net.BidServer;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+/**
+ * Throughput of the TCP front end over loopback, client and server in the same JVM.
+ *
+ * <br><br>Every benchmark thread keeps up to <code>pipelineDepth</code> requests in flight on the shared connection:
+ * an invocation sends a request, and first waits for the oldest one once the window is full.
+ * A depth of 1 is plain request response, paying a round trip per request.
+ * <br>Parameterized by the number of server IO threads, and by item count and skew as in {@link BidTrackerBenchmark}.
+ * Every bid rises the price of its item, so that every request goes all the way to the store.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+	private static final int USER_COUNT = 10000;
+
+	@Param({"1", "16", "256"})
+	public int pipelineDepth;
+
+	@Param({"1", "2"})
+	public int ioThreads;
+
+	@Param({"100000"})
+	public int itemCount;
+
+	@Param({"0.99"})
+	public double skew;
+
+	private BidServer server;
+	private BidClient client;
+	private ZipfianGenerator items;
+	private String[] itemIds;
+	private String[] userIds;
+	private AtomicLongArray prices;
+
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException{
+		server = new BidServer(new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()),
+				new InetSocketAddress("127.0.0.1", 0), ioThreads);
+		client = new BidClient(server.getAddress());
+		items = new ZipfianGenerator(itemCount, skew);
+		itemIds = new String[itemCount];
+		userIds = new String[USER_COUNT];
+		prices = new AtomicLongArray(itemCount);
+		for (int i = 0; i < USER_COUNT; i++) {
+			userIds[i] = "USER-" + i;
+		}
+		for (int i = 0; i < itemCount; i++) {
+			itemIds[i] = "ITEM-" + i;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws IOException{
+		client.close();
+		server.close();
+	}
+
+
+	/**
+	 * Requests in flight of a benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class Window {
+		final Random random = new Random();
+		final ArrayDeque<CompletableFuture<?>> inFlight = new ArrayDeque<CompletableFuture<?>>();
+
+		@TearDown(Level.Iteration)
+		public void drain(){
+			CompletableFuture<?> request;
+			while((request = inFlight.poll()) != null){
+				request.join();
+			}
+		}
+	}
+
+	private void send(Window window, CompletableFuture<?> request){
+		if(window.inFlight.size() >= pipelineDepth){
+			window.inFlight.poll().join();
+		}
+		window.inFlight.add(request);
+	}
+
+
+	@Benchmark
+	public void bid(Window window){
+		int item = items.next(window.random);
+		send(window, client.bidAsync(itemIds[item], userIds[window.random.nextInt(USER_COUNT)], prices.incrementAndGet(item)));
+	}
+
+	@Benchmark
+	public void getWinningBid(Window window){
+		send(window, client.getWinningBidAsync(itemIds[items.next(window.random)]));
+	}
+
+	/**
+	 * Plain blocking call, for reference
+	 */
+	@Benchmark
+	public Bid getWinningBidBlocking(Window window){
+		return client.getWinningBid(itemIds[items.next(window.random)]);
+	}
+
+}
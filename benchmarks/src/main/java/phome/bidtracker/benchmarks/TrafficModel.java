@@ -0,0 +1,137 @@
+package phome.bidtracker.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import phome.bidtracker.tracker.BidTracker;
+
+/**
+ * Auction traffic as seen in production, played against a {@link BidTracker} by {@link LoadGenerator}.
+ *
+ * <br><br>The model:
+ * <br>Items are picked with a Zipfian popularity, a few hot lots drawing most of the traffic
+ * <br>Users are picked with their own Zipfian skew, a few heavy bidders placing most of the bids
+ * <br>A share of the requests are reads: the winning bid mostly, then the latest bids of an item and the items of a user
+ * <br>Plain bids are placed around the current price of the item, hence some win and some are outbid
+ * <br>Some bids start a bidding war: a handful of users outbidding each other on the same item for a number of bids in a row
+ *
+ * <br><br>The model is immutable and shared, every load thread playing it through its own {@link Session}.
+ *
+ */
+public final class TrafficModel {
+
+	static final int BID = 0;
+	static final int READ = 1;
+
+	private static final int WAR_BIDDERS = 4;
+	private static final int LATEST_COUNT = 10;
+
+	private final ZipfianGenerator items;
+	private final ZipfianGenerator users;
+	private final String[] itemIds;
+	private final String[] userIds;
+	private final double readRatio;
+	private final double warRatio;
+	private final int warLength;
+	private final AtomicLongArray prices;
+
+
+	/**
+	 * @param itemCount
+	 * @param itemSkew - Zipfian exponent of the item popularity, 0 for uniform
+	 * @param userCount
+	 * @param userSkew - Zipfian exponent of the user activity, 0 for uniform
+	 * @param readRatio - share of the requests which are reads, in [0, 1]
+	 * @param warRatio - share of the bids starting a bidding war, in [0, 1]
+	 * @param warLength - bids in a row of a bidding war
+	 */
+	public TrafficModel(int itemCount, double itemSkew, int userCount, double userSkew,
+			double readRatio, double warRatio, int warLength) {
+		if(readRatio < 0 || readRatio > 1 || warRatio < 0 || warRatio > 1 || warLength <= 0){
+			throw new IllegalArgumentException("Invalid Args - ratios must be in [0, 1] and war length positive");
+		}
+		this.items = new ZipfianGenerator(itemCount, itemSkew);
+		this.users = new ZipfianGenerator(userCount, userSkew);
+		this.readRatio = readRatio;
+		this.warRatio = warRatio;
+		this.warLength = warLength;
+		this.itemIds = new String[itemCount];
+		this.userIds = new String[userCount];
+		this.prices = new AtomicLongArray(itemCount);
+		for (int i = 0; i < itemCount; i++) {
+			itemIds[i] = "ITEM-" + i;
+			prices.set(i, 100);
+		}
+		for (int i = 0; i < userCount; i++) {
+			userIds[i] = "USER-" + i;
+		}
+	}
+
+	/**
+	 * @return a new session, to be played by a single thread
+	 */
+	public Session newSession(){
+		return new Session();
+	}
+
+
+	/**
+	 * Requests of a load thread, keeping track of the bidding war it is in if any
+	 */
+	public final class Session {
+		private final Random random = new Random();
+		private final int[] warBidders = new int[WAR_BIDDERS];
+		private int warItem;
+		private int warBidsLeft;
+		private boolean lastAccepted;
+
+		/**
+		 * Plays the next request
+		 * @param tracker
+		 * @return {@link TrafficModel#BID} or {@link TrafficModel#READ}
+		 */
+		public int next(BidTracker tracker){
+			if(warBidsLeft > 0){
+				warBidsLeft--;
+				lastAccepted = tracker.bid(itemIds[warItem], userIds[warBidders[warBidsLeft % WAR_BIDDERS]],
+						prices.addAndGet(warItem, 1 + random.nextInt(5)));
+				return BID;
+			}
+			if(random.nextDouble() < readRatio){
+				read(tracker);
+				return READ;
+			}
+			int item = items.next(random);
+			if(random.nextDouble() < warRatio){
+				warItem = item;
+				warBidsLeft = warLength;
+				for (int i = 0; i < WAR_BIDDERS; i++) {
+					warBidders[i] = users.next(random);
+				}
+				return next(tracker);
+			}
+			long price = random.nextInt(4) == 0 ? prices.incrementAndGet(item) : prices.get(item) - random.nextInt(3);
+			lastAccepted = tracker.bid(itemIds[item], userIds[users.next(random)], price);
+			return BID;
+		}
+
+		/**
+		 * @return whether the last bid of the session was accepted
+		 */
+		public boolean lastAccepted() {
+			return lastAccepted;
+		}
+
+		private void read(BidTracker tracker){
+			int pick = random.nextInt(10);
+			if(pick < 7){
+				tracker.getWinningBid(itemIds[items.next(random)]);
+			}else if(pick < 9){
+				tracker.getLatestBidsforItem(itemIds[items.next(random)], LATEST_COUNT);
+			}else{
+				tracker.getItemsforUser(userIds[users.next(random)]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package phome.bidtracker.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks in [0, n) following a Zipfian distribution with the given skew,
+ * i.e. the probability of rank k is proportional to 1 / (k+1)^skew.
+ * 
+ * <br><br>A skew of 0 degenerates to a uniform distribution, while ~1 resembles the popularity 
+ * of items on a real auction site where a handful of hot lots attract most of the bids.
+ * 
+ * <br><br>The cumulative distribution is computed once up front, hence drawing a rank is a binary search 
+ * and does not allocate. The generator is immutable and can be shared between threads, 
+ * each thread passing its own source of randomness.
+ *
+ */
+public final class ZipfianGenerator {
+	
+	private final double[] cdf;
+	
+	/**
+	 * @param n - number of ranks, must be positive
+	 * @param skew - non negative exponent of the distribution
+	 */
+	public ZipfianGenerator(int n, double skew) {
+		if(n <= 0 || skew < 0.0d){
+			throw new IllegalArgumentException("Invalid Args - non positive size or negative skew passed");
+		}
+		cdf = new double[n];
+		double sum = 0.0d;
+		for (int k = 0; k < n; k++) {
+			sum += 1.0d / Math.pow(k + 1, skew);
+			cdf[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cdf[k] /= sum;
+		}
+	}
+	
+	/**
+	 * @param random
+	 * @return next rank, 0 being the most popular
+	 */
+	public int next(Random random){
+		int idx = Arrays.binarySearch(cdf, random.nextDouble());
+		int rank = idx >= 0 ? idx : -idx - 1;
+		return Math.min(rank, cdf.length - 1);
+	}
+
+}
@@ -0,0 +1,107 @@
+package phome.bidtracker.auction;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidArchive;
+import phome.bidtracker.tracker.BidDedupCache;
+import phome.bidtracker.tracker.BidTracker;
+
+/**
+ * Decorates a tracker with auction close times: bids on a closed item are rejected before reaching the stores,
+ * and reads of items moved to the archive by the {@link AuctionCloser} are served from it.
+ *
+ * <br><br>Reads go to the hot tracker first, hence cost nothing extra for open items.
+ * An item being closed is readable from the hot tracker until evicted, and from the archive from then on.
+ * The items of a user are the union of the open and the archived items the user bid on.
+ *
+ */
+public class AuctionBidTracker implements BidTracker {
+
+	private final BidTracker delegate;
+	private final AuctionCloser closer;
+	private final BidArchive archive;
+	private final BidDedupCache dedupCache;
+
+	/**
+	 * @param delegate
+	 * @param closer
+	 * @param dedupCache - outcomes of the bids placed once per request id, looked up before the close time
+	 */
+	public AuctionBidTracker(BidTracker delegate, AuctionCloser closer, BidDedupCache dedupCache) {
+		if(delegate == null || closer == null || dedupCache == null){
+			throw new IllegalArgumentException("Cannot instantiate AuctionBidTracker with null args");
+		}
+		this.delegate = delegate;
+		this.closer = closer;
+		this.archive = closer.getArchive();
+		this.dedupCache = dedupCache;
+	}
+
+	public AuctionBidTracker(BidTracker delegate, AuctionCloser closer) {
+		this(delegate, closer, new BidDedupCache());
+	}
+
+	/**
+	 * @return <code>false</code> on a closed item, or if declined by the tracker
+	 */
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		if(itemId != null && closer.isClosed(itemId)){
+			return false;
+		}
+		return delegate.bid(itemId, userId, amt);
+	}
+
+	/**
+	 * Places the bid once per request id, the outcome being looked up in the dedup cache of this tracker
+	 * before the close time, so that a retry after the close still gets the outcome of the original request.
+	 * The bids are placed on the delegate as plain bids, bypassing its own dedup cache
+	 * @return <code>false</code> on a closed item, or if declined by the tracker
+	 */
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		Bid.validate(itemId, userId, amt);
+		return dedupCache.bid(this, requestId, itemId, userId, amt);
+	}
+
+	@Override
+	public Bid getWinningBid(String itemId) {
+		Bid bid = delegate.getWinningBid(itemId);
+		return bid != null ? bid : archive.winningBid(itemId);
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		Iterable<Bid> bids = delegate.getBidsforItem(itemId);
+		return bids != null ? bids : archive.bidsForItem(itemId);
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		List<Bid> bids = delegate.getLatestBidsforItem(itemId, count);
+		return bids != null ? bids : archive.latestBids(itemId, count);
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		List<Bid> bids = delegate.getBidsforItemAfter(itemId, afterSequence, maxCount);
+		return bids != null ? bids : archive.bidsAfter(itemId, afterSequence, maxCount);
+	}
+
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		Set<String> open = delegate.getItemsforUser(userId);
+		Set<String> closed = archive.itemsForUser(userId);
+		if(open == null || closed == null){
+			return open != null ? open : closed;
+		}
+		Set<String> items = new HashSet<String>(open);
+		items.addAll(closed);
+		return Collections.unmodifiableSet(items);
+	}
+
+}
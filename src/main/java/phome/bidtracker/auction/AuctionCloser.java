@@ -0,0 +1,211 @@
+package phome.bidtracker.auction;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidArchive;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Closes auctions at their close time, moving the closed items out of the hot stores into a {@link BidArchive}.
+ * 
+ * <br><br>Close times are kept in a map, which is all a bid needs to be rejected once the time has passed, 
+ * see {@link #isClosed(String)}, and in a {@link TimeWheel} finding the items due. 
+ * Rationale:
+ * <br>Closing costs in proportion to the items due, not to all the open items, 
+ *     hence thousands of auctions ending on the hour are just a bigger bucket of the wheel
+ * <br>Bids are rejected as soon as the close time has passed, however late the closer runs
+ * 
+ * <br><br>An item is closed in this order, so that it is readable at every step, from the hot stores or the archive:
+ * <br>the bid store seals the item, so any bid racing with the close is either in its final bids or rejected
+ * <br>the final bids are archived, and the item reported closed by the archive
+ * <br>the item is evicted from the bid store, then removed from the user store and the listeners told of it. 
+ *     A store created with the archive as its {@link phome.bidtracker.store.ClosedItems} 
+ *     then rejects late bids rather than recreating the item. A bid accepted before the seal whose user store
+ *     entry is saved after this removal finds the item evicted, and is removed by the tracker itself
+ * 
+ * <br><br>Usage:
+ * <pre>
+ * BidArchive archive = new BidArchive();
+ * BidStore bidStore = new BidStoreLockFree(BidMetrics.NONE, archive);
+ * UserBidHistoryStore userStore = new UserBidHistoryStoreLockFreeImpl();
+ * AuctionCloser closer = new AuctionCloser(bidStore, userStore, archive, 100, TimeUnit.MILLISECONDS, Clock.systemUTC()).start();
+ * BidTracker tracker = new AuctionBidTracker(new BidTrackerImpl(bidStore, userStore), closer);
+ * closer.scheduleClose(itemId, closeTimeMillis);
+ * </pre>
+ *
+ */
+public class AuctionCloser implements AutoCloseable {
+	
+	private static final Logger LOG = Logger.getLogger(AuctionCloser.class);
+	private static final int WHEEL_SIZE = 4096;
+	
+	private final BidStore bidStore;
+	private final UserBidHistoryStore userStore;
+	private final BidArchive archive;
+	private final long tickMillis;
+	private final Clock clock;
+	private final ConcurrentMap<String, Long> closeTimes = new ConcurrentHashMap<String, Long>();
+	private final TimeWheel<String> wheel;
+	private final BidListener[] listeners;
+	private ScheduledExecutorService ticker;
+	
+	/**
+	 * Instantiates a closer driven by {@link #closeDueAuctions()}, or by its own thread once started
+	 * Disallows null args
+	 * @param bidStore
+	 * @param userStore
+	 * @param archive
+	 * @param tick - resolution of the close times
+	 * @param unit
+	 * @param clock
+	 * @param listeners - told of every item closed, once evicted from the stores
+	 */
+	public AuctionCloser(BidStore bidStore, UserBidHistoryStore userStore, BidArchive archive, 
+			long tick, TimeUnit unit, Clock clock, BidListener... listeners) {
+		if(bidStore == null || userStore == null || archive == null || unit == null || clock == null || listeners == null){
+			throw new IllegalArgumentException("Cannot instantiate AuctionCloser with null args");
+		}
+		if(unit.toMillis(tick) <= 0){
+			throw new IllegalArgumentException("Invalid Args - tick must be at least a millisecond");
+		}
+		this.bidStore = bidStore;
+		this.userStore = userStore;
+		this.archive = archive;
+		this.tickMillis = unit.toMillis(tick);
+		this.clock = clock;
+		this.listeners = listeners.clone();
+		this.wheel = new TimeWheel<String>(tickMillis, WHEEL_SIZE, clock.millis());
+	}
+	
+	/**
+	 * Starts closing the auctions due every tick, on a daemon thread stopped on {@link #close()}
+	 * @return this closer
+	 */
+	public synchronized AuctionCloser start(){
+		if(ticker != null){
+			throw new IllegalStateException("AuctionCloser already started");
+		}
+		ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "auction-closer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		ticker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					closeDueAuctions();
+				} catch (RuntimeException e) {
+					LOG.warn("Failed to close due auctions", e);
+				}
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+	
+	/**
+	 * Sets the close time of an item, or moves it if already set
+	 * @param itemId
+	 * @param closeTimeMillis - epoch millis of the clock
+	 * @throws IllegalStateException if the item is already closed
+	 */
+	public void scheduleClose(String itemId, long closeTimeMillis){
+		if(itemId == null){
+			throw new IllegalArgumentException("Invalid Args - Null item passed");
+		}
+		if(isClosed(itemId)){
+			throw new IllegalStateException("Auction already closed on item " + itemId);
+		}
+		closeTimes.put(itemId, closeTimeMillis);
+		wheel.schedule(itemId, closeTimeMillis);
+	}
+	
+	/**
+	 * Cheap check made before every bid: a map lookup and a clock read
+	 * @param itemId
+	 * @return <code>true</code> if the close time of the item has passed, whether the item is archived yet or not
+	 */
+	public boolean isClosed(String itemId){
+		Long closeTime = closeTimes.get(itemId);
+		if(closeTime != null){
+			return clock.millis() >= closeTime;
+		}
+		return archive.isClosed(itemId);
+	}
+	
+	/**
+	 * @param itemId
+	 * @return the close time of an open or closing item, null if none scheduled or already archived
+	 */
+	public Long closeTime(String itemId){
+		return closeTimes.get(itemId);
+	}
+	
+	/**
+	 * Closes and archives the items whose close time has passed
+	 * @return number of items closed
+	 */
+	public synchronized int closeDueAuctions(){
+		long now = clock.millis();
+		List<String> due = wheel.advance(now);
+		int closed = 0;
+		for (String itemId : due) {
+			Long closeTime = closeTimes.get(itemId);
+			//moved to later, the wheel holds the new time too
+			if(closeTime == null || closeTime > now){
+				continue;
+			}
+			closeAuction(itemId);
+			closed++;
+		}
+		return closed;
+	}
+	
+	private void closeAuction(String itemId){
+		Iterable<Bid> bids = bidStore.close(itemId);
+		archive.archive(itemId, bids);
+		bidStore.evict(itemId);
+		if(bids != null){
+			for (Bid bid : bids) {
+				userStore.remove(bid.getUserId(), itemId);
+			}
+		}
+		closeTimes.remove(itemId);
+		for (BidListener listener : listeners) {
+			listener.onItemEvicted(itemId, bids);
+		}
+	}
+	
+	/**
+	 * @return the archive closed items are moved to
+	 */
+	public BidArchive getArchive() {
+		return archive;
+	}
+	
+	/**
+	 * Stops the closing thread if started. Pending close times still reject bids once passed.
+	 */
+	@Override
+	public synchronized void close() {
+		if(ticker != null){
+			ticker.shutdownNow();
+		}
+	}
+
+}
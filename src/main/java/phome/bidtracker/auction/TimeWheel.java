@@ -0,0 +1,118 @@
+package phome.bidtracker.auction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel: tasks are hashed by their deadline into a ring of buckets, one bucket per tick.
+ *  <br>Ref: Varghese and Lauck, Hashed and Hierarchical Timing Wheels
+ * 
+ * <br><br>Rationale:
+ * <br>Scheduling is O(1) whatever the number of tasks
+ * <br>Advancing by a tick only visits the bucket of the tick, hence finding the tasks due costs in proportion 
+ *     to the tasks hashed to the bucket, not to all the tasks scheduled. Many tasks due at once are just a big bucket.
+ *     Tasks due more than a rotation ahead stay in their bucket until the rotation they are due in
+ * 
+ * <br><br>Any thread may schedule: tasks are handed over through a lock free queue, 
+ * and moved into their bucket by the single thread advancing the wheel, which owns the buckets.
+ * <br>A task is due once its deadline is reached, and fires on the first advance at or after the end of its tick.
+ *
+ * @param <T>
+ */
+public final class TimeWheel<T> {
+	
+	private final long tickMillis;
+	private final int mask;
+	private final List<Timeout<T>>[] buckets;
+	private final ConcurrentLinkedQueue<Timeout<T>> incoming = new ConcurrentLinkedQueue<Timeout<T>>();
+	//owned by the advancing thread
+	private long currentTick;
+	
+	/**
+	 * @param tickMillis - resolution of the wheel
+	 * @param wheelSize - number of buckets, rounded up to a power of 2
+	 * @param startMillis - time the wheel starts at
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimeWheel(long tickMillis, int wheelSize, long startMillis) {
+		if(tickMillis <= 0 || wheelSize <= 0 || wheelSize > 1 << 20){
+			throw new IllegalArgumentException("Invalid Args - tick and wheel size must be positive");
+		}
+		int size = Integer.highestOneBit(wheelSize);
+		if(size < wheelSize){
+			size <<= 1;
+		}
+		this.tickMillis = tickMillis;
+		this.mask = size - 1;
+		this.buckets = new List[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayList<Timeout<T>>();
+		}
+		this.currentTick = startMillis / tickMillis;
+	}
+	
+	/**
+	 * Schedules a task, from any thread
+	 * @param task
+	 * @param deadlineMillis
+	 */
+	public void schedule(T task, long deadlineMillis){
+		if(task == null){
+			throw new IllegalArgumentException("Invalid Args - Null task passed");
+		}
+		incoming.add(new Timeout<T>(task, (deadlineMillis + tickMillis - 1) / tickMillis));
+	}
+	
+	/**
+	 * Advances the wheel up to the time, from a single thread at a time
+	 * @param nowMillis
+	 * @return the tasks due, in no particular order
+	 */
+	public List<T> advance(long nowMillis){
+		final long nowTick = nowMillis / tickMillis;
+		List<T> due = new ArrayList<T>();
+		Timeout<T> timeout;
+		while((timeout = incoming.poll()) != null){
+			if(timeout.tick <= currentTick){
+				due.add(timeout.task);
+			}else{
+				buckets[(int)(timeout.tick & mask)].add(timeout);
+			}
+		}
+		long steps = Math.min(nowTick - currentTick, buckets.length);
+		for (long step = 1; step <= steps; step++) {
+			expire(buckets[(int)((currentTick + step) & mask)], nowTick, due);
+		}
+		currentTick = Math.max(currentTick, nowTick);
+		return due;
+	}
+	
+	/**
+	 * Moves the timeouts due out of the bucket, keeping the others in place
+	 */
+	private static <T> void expire(List<Timeout<T>> bucket, long nowTick, List<T> due){
+		int kept = 0;
+		for (int i = 0; i < bucket.size(); i++) {
+			Timeout<T> timeout = bucket.get(i);
+			if(timeout.tick <= nowTick){
+				due.add(timeout.task);
+			}else{
+				bucket.set(kept++, timeout);
+			}
+		}
+		bucket.subList(kept, bucket.size()).clear();
+	}
+	
+	
+	private static final class Timeout<T> {
+		private final T task;
+		private final long tick;
+		
+		Timeout(T task, long tick) {
+			this.task = task;
+			this.tick = tick;
+		}
+	}
+
+}
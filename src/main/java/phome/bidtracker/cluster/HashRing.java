@@ -0,0 +1,109 @@
+package phome.bidtracker.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring mapping keys to nodes.
+ *
+ * <br><br>Every node is put on the ring at a number of points, its virtual nodes, and a key belongs to the node
+ * of the first point at or after the hash of the key, wrapping around.
+ * Rationale:
+ * <br>Adding a node only moves the keys falling on its points, about 1/n of them,
+ * 	   whereas hashing modulo the node count would move most of them
+ * <br>Virtual nodes even out the share of every node, the spread shrinking as their number grows
+ *
+ * <br><br>Lookups are a binary search over a sorted array of points, without allocation.
+ *
+ */
+public final class HashRing {
+
+	private final Set<String> nodes;
+	private final int virtualNodes;
+	private final long[] points;
+	private final String[] owners;
+
+
+	/**
+	 * @param nodes - names of the nodes, at least one
+	 * @param virtualNodes - points per node on the ring
+	 */
+	public HashRing(Collection<String> nodes, int virtualNodes) {
+		if(nodes == null || nodes.isEmpty() || nodes.contains(null) || virtualNodes <= 0){
+			throw new IllegalArgumentException("Cannot instantiate HashRing with null or no nodes or non positive virtual nodes");
+		}
+		this.nodes = Collections.unmodifiableSet(new LinkedHashSet<String>(nodes));
+		this.virtualNodes = virtualNodes;
+		TreeMap<Long, String> ring = new TreeMap<Long, String>();
+		for (String node : this.nodes) {
+			for (int i = 0; i < virtualNodes; i++) {
+				long point = hash(node + "#" + i);
+				String owner = ring.get(point);
+				if(owner == null || owner.compareTo(node) > 0){//collisions are settled the same way whatever the order of the nodes
+					ring.put(point, node);
+				}
+			}
+		}
+		this.points = new long[ring.size()];
+		this.owners = new String[ring.size()];
+		int i = 0;
+		for (Map.Entry<Long, String> entry : ring.entrySet()) {
+			points[i] = entry.getKey();
+			owners[i++] = entry.getValue();
+		}
+	}
+
+	/**
+	 * @param node
+	 * @return a ring with the node added
+	 */
+	public HashRing withNode(String node){
+		Set<String> added = new LinkedHashSet<String>(nodes);
+		if(!added.add(node)){
+			throw new IllegalArgumentException("Invalid Args - node " + node + " already on the ring");
+		}
+		return new HashRing(added, virtualNodes);
+	}
+
+	/**
+	 * @param key
+	 * @return name of the node owning the key
+	 */
+	public String nodeFor(String key){
+		int i = Arrays.binarySearch(points, hash(key));
+		if(i < 0){
+			i = -i - 1;
+		}
+		return owners[i == points.length ? 0 : i];
+	}
+
+	/**
+	 * @return names of the nodes on the ring
+	 */
+	public Set<String> nodes() {
+		return nodes;
+	}
+
+	/**
+	 * 64 bit FNV-1a over the chars, with the murmur3 finalizer so that close keys land far apart
+	 */
+	static long hash(String key){
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,90 @@
+package phome.bidtracker.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.tracker.BidListener;
+import phome.bidtracker.tracker.BidTrackerImpl;
+import phome.bidtracker.tracker.PartitionBidTracker;
+
+/**
+ * A {@link BidTrackerImpl} holding a partition of the items, i.e. the tracker of a node of the cluster
+ * 
+ */
+public class LocalPartition extends BidTrackerImpl implements PartitionBidTracker {
+
+	private final BidStore bidStore;
+	private final UserBidHistoryStore userItemsStore;
+	private final BidListener[] listeners;
+	
+	/**
+	 * @param bidStore
+	 * @param userItemsStore
+	 * @param listeners - also told of the items evicted
+	 */
+	public LocalPartition(BidStore bidStore, UserBidHistoryStore userItemsStore, BidListener... listeners) {
+		super(bidStore, userItemsStore, listeners);
+		this.bidStore = bidStore;
+		this.userItemsStore = userItemsStore;
+		this.listeners = listeners.clone();
+	}
+
+	@Override
+	public Set<String> getItems() {
+		Set<String> items = new HashSet<String>();
+		for (String itemId : bidStore.items()) {
+			items.add(itemId);
+		}
+		return Collections.unmodifiableSet(items);
+	}
+
+	/**
+	 * Scans the items of the store keeping the maxCount first ones, O(n log maxCount) per page
+	 */
+	@Override
+	public List<String> getItemsAfter(String afterItemId, int maxCount) {
+		if(maxCount <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive count passed");
+		}
+		TreeSet<String> page = new TreeSet<String>();
+		for (String itemId : bidStore.items()) {
+			if(afterItemId != null && itemId.compareTo(afterItemId) <= 0){
+				continue;
+			}
+			if(page.size() < maxCount){
+				page.add(itemId);
+			}else if(itemId.compareTo(page.last()) < 0 && page.add(itemId)){
+				page.pollLast();
+			}
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(page));
+	}
+
+	/**
+	 * Closes the item first, so that no bid is accepted on it while the users are updated
+	 */
+	@Override
+	public void evictItem(String itemId) {
+		if(itemId == null){
+			throw new IllegalArgumentException("Invalid Args - Null id passed");
+		}
+		Iterable<Bid> bids = bidStore.close(itemId);
+		bidStore.evict(itemId);
+		if(bids != null){
+			for (Bid bid : bids) {
+				userItemsStore.remove(bid.getUserId(), itemId);
+			}
+		}
+		for (BidListener listener : listeners) {
+			listener.onItemEvicted(itemId, bids);
+		}
+	}
+
+}
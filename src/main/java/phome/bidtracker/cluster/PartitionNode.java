@@ -0,0 +1,39 @@
+package phome.bidtracker.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import phome.bidtracker.net.BidServer;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+
+/**
+ * Node process of a cluster: serves a {@link LocalPartition} over TCP until its standard input is closed.
+ *
+ * <br><br>Usage: <code>java -cp bidtracker.jar phome.bidtracker.cluster.PartitionNode [port] [ioThreads]</code>
+ * <br>Port 0, the default, binds to any free port. The port bound is printed on the standard output as
+ * <code>LISTENING port</code>, so that a parent process can connect to its nodes.
+ *
+ */
+public final class PartitionNode {
+
+	public static final String LISTENING = "LISTENING ";
+
+	private PartitionNode() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		int ioThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		BidServer server = new BidServer(new LocalPartition(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()),
+				new InetSocketAddress(port), ioThreads);
+		System.out.println(LISTENING + server.getAddress().getPort());
+		System.out.flush();
+		try {
+			while(System.in.read() >= 0);
+		} finally {
+			server.close();
+		}
+	}
+
+}
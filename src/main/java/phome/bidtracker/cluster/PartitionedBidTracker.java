@@ -0,0 +1,329 @@
+package phome.bidtracker.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.net.BidClient;
+import phome.bidtracker.tracker.AsyncBidTracker;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.PartitionBidTracker;
+
+/**
+ * A bid tracker spreading the items over the nodes of a cluster, each node holding a partition of them.
+ *
+ * <br><br>Every item is routed to its node by a consistent {@link HashRing}, hence the catalogue is bounded
+ * by the heaps of all the nodes rather than one. Nodes are typically {@link BidClient}s to node processes,
+ * see {@link PartitionNode}, or {@link LocalPartition}s.
+ * <br>Calls on an item go to its node only. {@link #getItemsforUser(String)} goes to every node,
+ * in parallel for remote nodes, and the items are gathered.
+ *
+ * <br><br>Rebalancing: {@link #addNode(String, PartitionBidTracker)} moves the items falling on the new node to it.
+ * The bids of an item are replayed in their order on the new node, where they get the same sequences.
+ * Once every item is copied the new node joins the ring, and only then are the items evicted from their former nodes,
+ * hence a failing copy leaves the cluster as it was, the copies being evicted from the new node.
+ * Calls through this tracker wait for the move. The items are listed a page at a time, and the bids of an item are
+ * pipelined to a node taking async bids, such as a {@link BidClient}, hence the move takes a couple of round trips
+ * per item moved, about 1/n of the catalogue.
+ * Rationale:
+ * <br>Calls take a read lock, which costs little next to a call to a remote node, and the move takes the write lock,
+ * 	   so that no bid is placed on an item being moved
+ * <br>Bids placed on the nodes through another tracker during the move may be lost,
+ *     hence a cluster is meant to be rebalanced through the tracker routing its bids
+ * <br>Listeners of the new node see the bids replayed as newly accepted
+ *
+ */
+public class PartitionedBidTracker implements BidTracker {
+
+	private static final Logger LOG = Logger.getLogger(PartitionedBidTracker.class);
+
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	private static final int ITEMS_PAGE = 1 << 10;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile HashRing ring;
+	private volatile Map<String, PartitionBidTracker> nodes;
+
+
+	/**
+	 * @param nodes - by name, at least one
+	 * @param virtualNodes - points per node on the ring
+	 */
+	public PartitionedBidTracker(Map<String, ? extends PartitionBidTracker> nodes, int virtualNodes) {
+		if(nodes == null || nodes.containsValue(null)){
+			throw new IllegalArgumentException("Cannot instantiate PartitionedBidTracker with null args");
+		}
+		this.ring = new HashRing(nodes.keySet(), virtualNodes);
+		this.nodes = Collections.unmodifiableMap(new LinkedHashMap<String, PartitionBidTracker>(nodes));
+	}
+
+	/**
+	 * Instantiates a tracker with {@value #DEFAULT_VIRTUAL_NODES} virtual nodes per node
+	 * @param nodes - by name, at least one
+	 */
+	public PartitionedBidTracker(Map<String, ? extends PartitionBidTracker> nodes) {
+		this(nodes, DEFAULT_VIRTUAL_NODES);
+	}
+
+
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		Bid.validate(itemId, userId, amt);
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).bid(itemId, userId, amt);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Places the bid once per request id on the node of the item, which remembers the outcome.
+	 * Outcomes are not moved along with the items, hence a request retried across a rebalancing may be placed again
+	 */
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		Bid.validate(itemId, userId, amt);
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).bid(requestId, itemId, userId, amt);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Bid getWinningBid(String itemId) {
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).getWinningBid(itemId);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).getBidsforItem(itemId);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).getLatestBidsforItem(itemId, count);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		lock.readLock().lock();
+		try{
+			return nodeFor(itemId).getBidsforItemAfter(itemId, afterSequence, maxCount);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gathers the items of the user from all the nodes, remote nodes being asked in parallel
+	 * @return - Set of items for the user <br>
+	 * 		   - null if no bids placed by the user
+	 */
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		if(userId == null){
+			throw new IllegalArgumentException("Invalid Args - Null id passed");
+		}
+		lock.readLock().lock();
+		try{
+			List<CompletableFuture<Set<String>>> remote = new ArrayList<CompletableFuture<Set<String>>>();
+			Set<String> items = new HashSet<String>();
+			for (PartitionBidTracker node : nodes.values()) {
+				if(node instanceof BidClient){
+					remote.add(((BidClient)node).getItemsforUserAsync(userId));
+				}else{
+					addAll(items, node.getItemsforUser(userId));
+				}
+			}
+			for (CompletableFuture<Set<String>> future : remote) {
+				addAll(items, join(future));
+			}
+			return items.isEmpty() ? null : Collections.unmodifiableSet(items);
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Adds a node to the cluster and moves the items falling on it from the other nodes
+	 * @param name
+	 * @param node - holding no item yet
+	 * @return number of items moved
+	 */
+	public int addNode(String name, PartitionBidTracker node){
+		if(name == null || node == null){
+			throw new IllegalArgumentException("Invalid Args - Null node passed");
+		}
+		lock.writeLock().lock();
+		try{
+			HashRing added = ring.withNode(name);
+			Map<String, PartitionBidTracker> moved = new LinkedHashMap<String, PartitionBidTracker>();
+			try{
+				for (PartitionBidTracker from : nodes.values()) {
+					List<String> items = from.getItemsAfter(null, ITEMS_PAGE);
+					while(!items.isEmpty()){
+						for (String itemId : items) {
+							if(name.equals(added.nodeFor(itemId)) && copy(itemId, from, node)){
+								moved.put(itemId, from);
+							}
+						}
+						items = items.size() < ITEMS_PAGE ? Collections.<String>emptyList()
+								: from.getItemsAfter(items.get(items.size() - 1), ITEMS_PAGE);
+					}
+				}
+			}catch(RuntimeException e){
+				rollback(moved.keySet(), node);
+				throw e;
+			}
+			Map<String, PartitionBidTracker> grown = new LinkedHashMap<String, PartitionBidTracker>(nodes);
+			grown.put(name, node);
+			nodes = Collections.unmodifiableMap(grown);
+			ring = added;
+			for (Map.Entry<String, PartitionBidTracker> entry : moved.entrySet()) {
+				evict(entry.getKey(), entry.getValue());
+			}
+			LOG.info("Node " + name + " added, " + moved.size() + " items moved to it");
+			return moved.size();
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param itemId
+	 * @return name of the node holding the item
+	 */
+	public String nodeNameFor(String itemId){
+		return ring.nodeFor(itemId);
+	}
+
+	/**
+	 * @return the nodes by name
+	 */
+	public Map<String, PartitionBidTracker> getNodes() {
+		return nodes;
+	}
+
+
+	private PartitionBidTracker nodeFor(String itemId){
+		if(itemId == null){
+			throw new IllegalArgumentException("Invalid Args - Null id passed");
+		}
+		return nodes.get(ring.nodeFor(itemId));
+	}
+
+	/**
+	 * Replays the bids of the item on the node it moves to
+	 * @return false if the item was evicted meanwhile
+	 */
+	private static boolean copy(String itemId, PartitionBidTracker from, PartitionBidTracker to){
+		Iterable<Bid> bids = from.getBidsforItem(itemId);
+		if(bids == null){
+			return false;
+		}
+		if(!(to instanceof AsyncBidTracker)){
+			for (Bid bid : bids) {
+				if(!to.bid(itemId, bid.getUserId(), bid.getAmount())){
+					to.evictItem(itemId);
+					throw turnedDown(bid);
+				}
+			}
+			return true;
+		}
+		List<Bid> sent = new ArrayList<Bid>();
+		List<CompletableFuture<Boolean>> outcomes = new ArrayList<CompletableFuture<Boolean>>();
+		try{
+			for (Bid bid : bids) {
+				outcomes.add(((AsyncBidTracker)to).bidAsync(itemId, bid.getUserId(), bid.getAmount()));
+				sent.add(bid);
+			}
+			for (int i = 0; i < outcomes.size(); i++) {
+				if(!join(outcomes.get(i))){
+					throw turnedDown(sent.get(i));
+				}
+			}
+		}catch(RuntimeException e){//the bids sent so far may have been placed
+			rollback(Collections.singleton(itemId), to);
+			throw e;
+		}
+		return true;
+	}
+
+	private static IllegalStateException turnedDown(Bid bid){
+		return new IllegalStateException("Bid " + bid + " turned down by the node the item is moved to");
+	}
+
+	/**
+	 * Evicts the items copied so far from the node which is not joining after all
+	 */
+	private static void rollback(Iterable<String> copied, PartitionBidTracker to){
+		for (String itemId : copied) {
+			try{
+				to.evictItem(itemId);
+			}catch(RuntimeException e){
+				LOG.warn("Failed to evict item " + itemId + " from the node not joining", e);
+			}
+		}
+	}
+
+	/**
+	 * Evicts a moved item from its former node, which the tracker no longer routes the item to.
+	 * A failure only leaves a stale copy behind
+	 */
+	private static void evict(String itemId, PartitionBidTracker from){
+		try{
+			from.evictItem(itemId);
+		}catch(RuntimeException e){
+			LOG.warn("Failed to evict moved item " + itemId + " from its former node", e);
+		}
+	}
+
+	private static void addAll(Set<String> items, Set<String> nodeItems){
+		if(nodeItems != null){
+			items.addAll(nodeItems);
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future){
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+}
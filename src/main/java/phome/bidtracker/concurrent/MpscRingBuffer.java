@@ -0,0 +1,111 @@
+package phome.bidtracker.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock free Multi Producer Single Consumer ring buffer.
+ * 
+ * <br><br>Every slot carries a sequence number telling whose turn it is on the slot:
+ * <br> sequence == position - the slot is free for the producer claiming that position
+ * <br> sequence == position + 1 - the slot holds an element ready for the consumer
+ * <br>Producers claim a position with a CAS on the shared producer index, and publish the element 
+ * by advancing the slot sequence. The single consumer owns the consumer index, hence polling needs no CAS at all.
+ *  <br>Ref: http://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue
+ * 
+ * <br><br>The buffer never blocks, {@link #offer(Object)} fails fast when full, leaving the back pressure policy 
+ * to the caller.
+ *
+ * @param <E>
+ */
+public final class MpscRingBuffer<E> {
+	
+	private final Object[] buffer;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong producerIndex = new AtomicLong();
+	private long consumerIndex;//only ever touched by the consumer thread
+	
+	/**
+	 * @param capacity - rounded up to the next power of 2
+	 */
+	public MpscRingBuffer(int capacity) {
+		if(capacity <= 0 || capacity > 1 << 30){
+			throw new IllegalArgumentException("Invalid Args - capacity out of range");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity){
+			size <<= 1;
+		}
+		buffer = new Object[size];
+		sequences = new AtomicLongArray(size);
+		mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+	
+	/**
+	 * Adds the element to the buffer, safe to call from any thread.
+	 * <br>The sequence of the slot is published with a volatile write, so that a consumer which 
+	 * announced it is going to sleep (with a volatile write) before re-checking the buffer 
+	 * is reliably seen by the producer afterwards.
+	 * @param element - non null
+	 * @return <code>true</code> if added <br>
+	 * 		   <code>false</code> if the buffer is full
+	 */
+	public boolean offer(E element){
+		if(element == null){
+			throw new IllegalArgumentException("Cannot add null to the buffer");
+		}
+		while(true){
+			long position = producerIndex.get();
+			int index = (int)position & mask;
+			long diff = sequences.get(index) - position;
+			if(diff == 0){
+				if(producerIndex.compareAndSet(position, position + 1)){
+					buffer[index] = element;
+					sequences.set(index, position + 1);
+					return true;
+				}
+			}
+			else if(diff < 0){//slot not yet freed by the consumer
+				return false;
+			}
+			//else another producer claimed the position, retry on the next one
+		}
+	}
+	
+	/**
+	 * Removes the oldest element. MUST only be called from the single consumer thread.
+	 * @return the element <br>
+	 * 		   <code>null</code> if the buffer is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll(){
+		long position = consumerIndex;
+		int index = (int)position & mask;
+		if(sequences.get(index) != position + 1){
+			return null;
+		}
+		E element = (E)buffer[index];
+		buffer[index] = null;
+		sequences.lazySet(index, position + buffer.length);//hands the slot over to the producers of the next lap
+		consumerIndex = position + 1;
+		return element;
+	}
+	
+	/**
+	 * @return <code>true</code> if there is nothing for the consumer to poll. 
+	 * Only accurate when called from the consumer thread.
+	 */
+	public boolean isEmpty(){
+		long position = consumerIndex;
+		return sequences.get((int)position & mask) != position + 1;
+	}
+	
+	public int capacity(){
+		return buffer.length;
+	}
+
+}
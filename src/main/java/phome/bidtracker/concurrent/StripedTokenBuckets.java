@@ -0,0 +1,82 @@
+package phome.bidtracker.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed set of lock free token buckets, a key being rate limited by the bucket of its stripe.
+ *
+ * <br><br>Each bucket is kept as a single long, its theoretical arrival time (the Generic Cell Rate Algorithm):
+ * the time at which the bucket would be full again. A request is let through if that time is no further ahead of now
+ * than the burst allows, and pushes it one interval further.
+ * Rationale:
+ * <br>One CAS on one long per request, hence constant time and no allocation, whatever the number of keys
+ * <br>No refill thread, the refill being implied by the time elapsed since the last request
+ * <br>Memory is bounded by the stripes rather than by the keys seen, which an attacker would otherwise grow at will
+ *
+ * <br><br>Keys of the same stripe share their bucket. Stripes are meant to outnumber the keys active at once by far,
+ * so that a collision only costs an honest key some of its burst.
+ * Buckets are spread a cache line apart, not to have the CAS of unrelated stripes contend on the same line.
+ *
+ */
+public final class StripedTokenBuckets {
+
+	private static final int PADDING = 8;//longs per cache line
+
+	private final AtomicLongArray arrivals;
+	private final int mask;
+	private final long intervalNanos;
+	private final long toleranceNanos;
+
+	/**
+	 * @param ratePerSecond - sustained requests per second per bucket
+	 * @param burst - requests let through at once by a full bucket, at least 1
+	 * @param stripes - rounded up to the next power of 2
+	 */
+	public StripedTokenBuckets(double ratePerSecond, int burst, int stripes) {
+		if(!(ratePerSecond > 0) || burst <= 0 || stripes <= 0 || stripes > 1 << 24){
+			throw new IllegalArgumentException("Invalid Args - non positive rate, burst or stripes");
+		}
+		int size = Integer.highestOneBit(stripes);
+		if(size < stripes){
+			size <<= 1;
+		}
+		this.arrivals = new AtomicLongArray(size * PADDING);
+		this.mask = size - 1;
+		this.intervalNanos = Math.max(1L, (long)(1e9d / ratePerSecond));
+		this.toleranceNanos = (burst - 1) * intervalNanos;
+	}
+
+	/**
+	 * Takes a token from the bucket of the key, if any left
+	 * @param key - non null
+	 * @param nowNanos - current time, non negative, from a {@link Ticker} shared by all the callers
+	 * @return <code>true</code> if let through <br>
+	 * 		   <code>false</code> if the bucket is empty
+	 */
+	public boolean tryAcquire(Object key, long nowNanos){
+		int index = stripe(key) * PADDING;
+		while(true){
+			long arrival = arrivals.get(index);
+			long start = Math.max(arrival, nowNanos);
+			if(start - nowNanos > toleranceNanos){
+				return false;
+			}
+			if(arrivals.compareAndSet(index, arrival, start + intervalNanos)){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of buckets
+	 */
+	public int stripes(){
+		return mask + 1;
+	}
+
+	private int stripe(Object key){
+		int h = key.hashCode() * 0x9E3779B9;//spreads the low bits of close hashes such as those of "USER-1", "USER-2"
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+}
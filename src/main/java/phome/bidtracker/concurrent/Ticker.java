@@ -0,0 +1,28 @@
+package phome.bidtracker.concurrent;
+
+/**
+ * Source of nanosecond time, for measuring elapsed time only: a reading means nothing on its own.
+ *
+ * <br><br>Rationale:
+ * <br>{@link java.time.Clock} only reads down to the millisecond, too coarse for rates above a thousand per second
+ * <br>Injectable, so that tests move time forward by hand rather than sleeping
+ *
+ */
+public interface Ticker {
+
+	/**
+	 * Reads {@link System#nanoTime()}
+	 */
+	Ticker SYSTEM = new Ticker() {
+		@Override
+		public long read() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * @return nanoseconds elapsed since some fixed but arbitrary origin
+	 */
+	long read();
+
+}
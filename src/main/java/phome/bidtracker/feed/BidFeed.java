@@ -0,0 +1,331 @@
+package phome.bidtracker.feed;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Global change data capture feed of the accepted bids, across all items, in order.
+ * 
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker. Every accepted bid gets the next global 
+ * sequence number and is read by any number of independent consumers, each one through its own {@link FeedCursor}:
+ * <pre>
+ * BidFeed feed = new BidFeed(1 &lt;&lt; 16, bidStore);
+ * BidTracker tracker = new BidTrackerImpl(bidStore, userStore, feed);
+ * FeedCursor cursor = feed.cursor();
+ * List&lt;FeedEntry&gt; batch = cursor.poll(1000);
+ * </pre>
+ * 
+ * Rationale:
+ * <br>The feed is a ring of fixed capacity, hence memory is bounded whatever the consumers do. 
+ *     Bidders never wait for consumers: a consumer falling more than a ring behind gets a {@link FeedResyncException}, 
+ *     upon which it rebuilds its state from the stores and resumes from {@link #lastSequence()} taken before the rebuild
+ * <br>Appending costs an atomic increment to claim a sequence and a store into the slot of the sequence. 
+ *     Entries are immutable and hold their sequence, so a reader tells a slot not written yet from an overwritten one
+ * <br>Consumers only read the ring, so adding one costs the bidders nothing
+ * 
+ * <br><br>Order: the feed is in global sequence order, and consumers read it without gaps, 
+ * stopping at a sequence claimed but not written yet.
+ * <br>Bids on a given item are fed in the order they were accepted: concurrent listeners may be called out of order,
+ * hence a bid coming before its predecessor on the item, known by the per item sequence, is held back by the feed
+ * and the bidder returns right away. The predecessor, once appended, feeds the bids held back after it.
+ * Bidders never wait for one another: appending to an item takes a lock on the item, held for the few stores 
+ * of feeding the bid and those it releases.
+ * <br>A predecessor may never come, e.g. a listener failed on it. Bids held back for {@value #MAX_ORDER_WAIT_MILLIS} ms
+ * are fed anyway, by the next append or cursor poll, which costs them nothing while no bid is held back.
+ * The last fed sequence of every item is kept for that purpose.
+ * 
+ * <br><br>A feed given its bid store:
+ * <br>is seeded with the winning bids of the store, so that over restored stores it does not wait for bids 
+ *     accepted before it existed
+ * <br>forgets the items evicted from the store, e.g. closed or moved to another node, every time the items kept 
+ *     have doubled since the last sweep: constant amortized cost per item, and memory bounded by the items in the store.
+ *     A feed without a store keeps every item ever fed, which only suits a store never evicting
+ *
+ */
+public class BidFeed implements BidListener {
+	
+	private static final Logger LOG = Logger.getLogger(BidFeed.class);
+	
+	private static final long MAX_ORDER_WAIT_MILLIS = 100;
+	private static final long MAX_ORDER_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_ORDER_WAIT_MILLIS);
+	private static final int MIN_SWEEP_SIZE = 1024;
+	
+	private final AtomicReferenceArray<FeedEntry> ring;
+	private final int mask;
+	private final AtomicLong claimed = new AtomicLong();
+	private final ConcurrentMap<String, ItemFed> fedPerItem = new ConcurrentHashMap<String, ItemFed>();
+	private final BidStore bidStore;
+	private final ReentrantLock sweeping = new ReentrantLock();
+	private final Set<ItemFed> holding = ConcurrentHashMap.newKeySet();
+	private volatile int sweepSize = MIN_SWEEP_SIZE;
+	
+	
+	/**
+	 * Instantiates a feed keeping the last fed sequence of every item, for a store never evicting
+	 * @param capacity - number of entries retained, rounded up to a power of 2
+	 */
+	public BidFeed(int capacity) {
+		this(capacity, null, false);
+	}
+	
+	/**
+	 * Instantiates a feed over a store, which may already have bids, e.g. restored from a journal
+	 * @param capacity - number of entries retained, rounded up to a power of 2
+	 * @param bidStore - store of the tracker fed, looked up to forget the items evicted from it
+	 */
+	public BidFeed(int capacity, BidStore bidStore) {
+		this(capacity, bidStore, true);
+	}
+	
+	private BidFeed(int capacity, BidStore bidStore, boolean storeRequired) {
+		if(storeRequired && bidStore == null){
+			throw new IllegalArgumentException("Cannot instantiate BidFeed with null args");
+		}
+		if(capacity <= 0 || capacity > 1 << 30){
+			throw new IllegalArgumentException("Invalid Args - capacity must be positive and at most 2^30");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity){
+			size <<= 1;
+		}
+		this.ring = new AtomicReferenceArray<FeedEntry>(size);
+		this.mask = size - 1;
+		this.bidStore = bidStore;
+		if(bidStore == null){
+			return;
+		}
+		for (String itemId : bidStore.items()) {
+			Bid winningBid = bidStore.winningBid(itemId);
+			if(winningBid != null){
+				fedPerItem.put(itemId, new ItemFed(itemId, winningBid.getSequence()));
+			}
+		}
+		sweepSize = Math.max(MIN_SWEEP_SIZE, 2 * fedPerItem.size());
+	}
+	
+	/**
+	 * Appends the accepted bid to the feed
+	 */
+	@Override
+	public void onBidAccepted(Bid bid) {
+		append(bid);
+	}
+	
+	/**
+	 * Appends a bid to the feed, after its predecessor on the item if it has a sequence
+	 * @param bid
+	 * @return global sequence of the bid in the feed <br>
+	 * 		   0 if held back until its predecessor is appended
+	 */
+	public long append(Bid bid){
+		flushStale();
+		final long itemSequence = bid.getSequence();
+		if(itemSequence == 0){//not saved to a store, no order to keep
+			return feed(bid);
+		}
+		ItemFed itemFed = itemFed(bid.getItemId());
+		synchronized (itemFed) {
+			if(itemSequence > itemFed.fed + 1){
+				if(itemFed.hold(bid, System.nanoTime())){
+					holding.add(itemFed);
+				}
+				return 0L;
+			}
+			long sequence = feed(bid);
+			itemFed.fed = Math.max(itemFed.fed, itemSequence);
+			release(itemFed);
+			return sequence;
+		}
+	}
+	
+	private long feed(Bid bid){
+		long sequence = claimed.incrementAndGet();
+		FeedEntry entry = new FeedEntry(sequence, bid);
+		int index = index(sequence);
+		FeedEntry current;
+		//a stalled appender must not overwrite the entry of the next lap
+		while(((current = ring.get(index)) == null || current.getSequence() < sequence) 
+				&& !ring.compareAndSet(index, current, entry));
+		return sequence;
+	}
+	
+	/**
+	 * Feeds the bids held back which follow the last fed one, under the lock of the item
+	 */
+	private void release(ItemFed itemFed){
+		Map.Entry<Long, Bid> next;
+		while(itemFed.held != null && (next = itemFed.held.firstEntry()).getKey() <= itemFed.fed + 1){
+			feed(next.getValue());
+			itemFed.fed = Math.max(itemFed.fed, next.getKey());
+			itemFed.held.pollFirstEntry();
+			if(itemFed.held.isEmpty()){
+				itemFed.held = null;
+				holding.remove(itemFed);
+			}
+		}
+	}
+	
+	/**
+	 * Feeds the bids held back for too long, skipping the predecessors which never came
+	 */
+	void flushStale(){
+		if(holding.isEmpty()){
+			return;
+		}
+		long now = System.nanoTime();
+		for (ItemFed itemFed : holding) {
+			synchronized (itemFed) {
+				if(itemFed.held != null && now - itemFed.heldSince >= MAX_ORDER_WAIT_NANOS){
+					long first = itemFed.held.firstKey();
+					LOG.warn("Gave up waiting for bids " + (itemFed.fed + 1) + " to " + (first - 1) + " on item " 
+							+ itemFed.itemId + ", feeding bid " + first + " first");
+					itemFed.fed = first - 1;
+					release(itemFed);
+					itemFed.heldSince = now;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return a cursor reading the bids fed from now on
+	 */
+	public FeedCursor cursor(){
+		return new FeedCursor(this, claimed.get());
+	}
+	
+	/**
+	 * @param afterSequence - sequence of the last entry processed by the consumer, 0 to start from the first one 
+	 * @return a cursor resuming after the sequence. 
+	 * 		   Reading throws a {@link FeedResyncException} if the next entry was overwritten already
+	 */
+	public FeedCursor cursor(long afterSequence){
+		if(afterSequence < 0 || afterSequence > claimed.get()){
+			throw new IllegalArgumentException("Invalid Args - sequence " + afterSequence + " out of the feed");
+		}
+		return new FeedCursor(this, afterSequence);
+	}
+	
+	/**
+	 * @return sequence of the last bid fed, 0 if none
+	 */
+	public long lastSequence(){
+		return claimed.get();
+	}
+	
+	/**
+	 * @return sequence of the oldest entry retained, 1 if nothing was overwritten yet
+	 */
+	public long oldestSequence(){
+		return Math.max(1L, claimed.get() - ring.length() + 1);
+	}
+	
+	/**
+	 * @return number of entries retained
+	 */
+	public int capacity(){
+		return ring.length();
+	}
+	
+	/**
+	 * @param sequence
+	 * @return the entry in the slot of the sequence, which may be of a previous or later lap, or null
+	 */
+	FeedEntry slot(long sequence){
+		return ring.get(index(sequence));
+	}
+	
+	private int index(long sequence){
+		return (int)((sequence - 1) & mask);
+	}
+	
+	/**
+	 * @return number of items whose last fed sequence is kept
+	 */
+	int itemsKept(){
+		return fedPerItem.size();
+	}
+	
+	private ItemFed itemFed(String itemId){
+		ItemFed fed = fedPerItem.get(itemId);
+		if(fed == null){
+			ItemFed first = new ItemFed(itemId, 0);
+			fed = fedPerItem.putIfAbsent(itemId, first);
+			if(fed == null){
+				fed = first;
+				maybeSweep();
+			}
+		}
+		return fed;
+	}
+	
+	/**
+	 * Forgets the items evicted from the store once the items kept have doubled since the last sweep, 
+	 * unless another thread is at it
+	 */
+	private void maybeSweep(){
+		if(bidStore == null || fedPerItem.size() < sweepSize || !sweeping.tryLock()){
+			return;
+		}
+		try{
+			int before = fedPerItem.size();
+			for (Map.Entry<String, ItemFed> entry : fedPerItem.entrySet()) {
+				if(bidStore.winningBid(entry.getKey()) == null){
+					//a bid still being fed on the item advances its own entry, which is no longer needed,
+					//and bids held back by the entry get flushed
+					fedPerItem.remove(entry.getKey(), entry.getValue());
+				}
+			}
+			int after = fedPerItem.size();
+			sweepSize = Math.max(MIN_SWEEP_SIZE, 2 * after);
+			if(LOG.isDebugEnabled()){
+				LOG.debug("Forgot " + (before - after) + " evicted items, " + after + " items kept");
+			}
+		}finally{
+			sweeping.unlock();
+		}
+	}
+	
+	
+	/**
+	 * Last sequence fed on an item and the bids held back until their predecessors are fed, under the lock of this
+	 */
+	private static final class ItemFed {
+		private final String itemId;
+		private long fed;
+		private TreeMap<Long, Bid> held;//by item sequence, null if none
+		private long heldSince;
+		
+		ItemFed(String itemId, long fed) {
+			this.itemId = itemId;
+			this.fed = fed;
+		}
+		
+		/**
+		 * @return true if it is the first bid held back
+		 */
+		boolean hold(Bid bid, long now){
+			boolean first = held == null;
+			if(first){
+				held = new TreeMap<Long, Bid>();
+				heldSince = now;
+			}
+			held.put(bid.getSequence(), bid);
+			return first;
+		}
+	}
+
+}
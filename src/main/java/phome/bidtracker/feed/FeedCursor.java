@@ -0,0 +1,92 @@
+package phome.bidtracker.feed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Position of a consumer in the {@link BidFeed}.
+ * <br>A cursor belongs to a single consumer thread, it is not thread safe. 
+ * Independent consumers use independent cursors, which cost nothing to the feed.
+ *
+ */
+public final class FeedCursor {
+	
+	private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	
+	private final BidFeed feed;
+	private long position;
+	
+	FeedCursor(BidFeed feed, long position) {
+		this.feed = feed;
+		this.position = position;
+	}
+	
+	/**
+	 * @return sequence of the last entry read, to be checkpointed by the consumer to resume from it later
+	 */
+	public long position() {
+		return position;
+	}
+	
+	/**
+	 * Reads the next entries available, without waiting. 
+	 * Feeds the bids held back for too long by the feed beforehand, so that they show up even if no bid comes after them.
+	 * @param maxCount - max entries read
+	 * @return entries in sequence order, empty if none available
+	 * @throws FeedResyncException if the next entry was overwritten, in which case the cursor does not move
+	 */
+	public List<FeedEntry> poll(int maxCount){
+		if(maxCount <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive count passed");
+		}
+		feed.flushStale();
+		List<FeedEntry> batch = null;
+		long next = position + 1;
+		while(batch == null || batch.size() < maxCount){
+			FeedEntry entry = feed.slot(next);
+			if(entry == null || entry.getSequence() < next){//not written yet
+				break;
+			}
+			if(entry.getSequence() > next){
+				throw new FeedResyncException(next, feed.oldestSequence());
+			}
+			if(batch == null){
+				batch = new ArrayList<FeedEntry>(Math.min(maxCount, 1024));
+			}
+			batch.add(entry);
+			next++;
+		}
+		if(batch == null){
+			return Collections.emptyList();
+		}
+		position = next - 1;
+		return batch;
+	}
+	
+	/**
+	 * Reads the next entries available, waiting for some up to the timeout
+	 * @param maxCount - max entries read
+	 * @param timeout
+	 * @param unit
+	 * @return entries in sequence order, empty if none came in time
+	 * @throws FeedResyncException if the next entry was overwritten, in which case the cursor does not move
+	 * @throws InterruptedException
+	 */
+	public List<FeedEntry> poll(int maxCount, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(true){
+			List<FeedEntry> batch = poll(maxCount);
+			if(!batch.isEmpty() || System.nanoTime() - deadline >= 0){
+				return batch;
+			}
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+			if(Thread.interrupted()){
+				throw new InterruptedException();
+			}
+		}
+	}
+
+}
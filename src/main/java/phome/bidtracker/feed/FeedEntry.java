@@ -0,0 +1,33 @@
+package phome.bidtracker.feed;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Immutable entry of the {@link BidFeed}: an accepted bid with its position in the feed
+ *
+ */
+public final class FeedEntry {
+	
+	private final long sequence;
+	private final Bid bid;
+	
+	FeedEntry(long sequence, Bid bid) {
+		this.sequence = sequence;
+		this.bid = bid;
+	}
+	
+	/**
+	 * @return global sequence number of the entry, 1 for the first bid fed, 2 for the next one and so on
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * @return the accepted bid, carrying its own sequence number on the item
+	 */
+	public Bid getBid() {
+		return bid;
+	}
+
+}
@@ -0,0 +1,36 @@
+package phome.bidtracker.feed;
+
+/**
+ * Thrown to a consumer of the {@link BidFeed} which fell so far behind that 
+ * the entries it was about to read have been overwritten.
+ * <br>The consumer has to rebuild its state from the stores and resume from a fresh cursor.
+ *
+ */
+public class FeedResyncException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final long requestedSequence;
+	private final long oldestSequence;
+	
+	FeedResyncException(long requestedSequence, long oldestSequence) {
+		super("Feed entry " + requestedSequence + " was overwritten, oldest entry available is " + oldestSequence);
+		this.requestedSequence = requestedSequence;
+		this.oldestSequence = oldestSequence;
+	}
+	
+	/**
+	 * @return sequence of the entry the consumer was about to read
+	 */
+	public long getRequestedSequence() {
+		return requestedSequence;
+	}
+	
+	/**
+	 * @return sequence of the oldest entry still held by the feed when the exception was thrown
+	 */
+	public long getOldestSequence() {
+		return oldestSequence;
+	}
+
+}
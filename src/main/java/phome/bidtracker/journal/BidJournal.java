@@ -0,0 +1,338 @@
+package phome.bidtracker.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Durable write ahead journal of the accepted bids.
+ * 
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker, so that a bid is on disk before
+ * the bidder is told it was accepted. A restart rebuilds the stores by {@link #replay(File, BidStore, UserBidHistoryStore)}.
+ * 
+ * <br><br>Group commit: appending threads only copy their record into a shared buffer and wait. 
+ * A single flusher thread writes the buffer out and fsyncs once for all the records in it, 
+ * hence throughput is not bound to one fsync per bid. 
+ * <br>The fsync latency budget is how long the flusher may hold back an fsync to let more records join the batch. 
+ * With a budget of 0 it fsyncs as soon as there is something to write, and batches form naturally out of the records 
+ * arriving while the previous fsync is in flight.
+ * 
+ * <br><br>Record layout is described in {@link JournalRecord}. A record torn by a crash is detected by its checksum 
+ * and cut off when the journal is reopened.
+ *
+ */
+public class BidJournal implements BidListener, AutoCloseable {
+	
+	private static final Logger LOG = Logger.getLogger(BidJournal.class);
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private static final Comparator<Bid> BY_AMOUNT = new Comparator<Bid>() {
+		@Override
+		public int compare(Bid b1, Bid b2) {
+			return Double.compare(b1.getAmount(), b2.getAmount());
+		}
+	};
+	
+	private final FileChannel channel;
+	private final long fsyncBudgetNanos;
+	private final Thread flusher;
+	
+	//guarded by lock
+	private final Object lock = new Object();
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	private long appendedSequence;
+	private long durableSequence;
+	private IOException failure;
+	private boolean closed;
+	
+	
+	/**
+	 * Opens the journal for appending, creating the file if needed.
+	 * A torn record at the end of the file is cut off.
+	 * @param file
+	 * @param fsyncBudget - max time an fsync may be held back to batch more records
+	 * @param unit
+	 * @throws IOException
+	 */
+	public BidJournal(File file, long fsyncBudget, TimeUnit unit) throws IOException {
+		if(file == null || fsyncBudget < 0 || unit == null){
+			throw new IllegalArgumentException("Cannot instantiate BidJournal with null args or negative budget");
+		}
+		this.fsyncBudgetNanos = unit.toNanos(fsyncBudget);
+		
+		long validLength = 0;
+		if(file.exists()){
+			JournalReader reader = new JournalReader(file);
+			try{
+				while(reader.next()){
+					appendedSequence = reader.sequence();
+				}
+				validLength = reader.validLength();
+			}finally{
+				reader.close();
+			}
+		}
+		durableSequence = appendedSequence;
+		
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		if(channel.size() > validLength){
+			LOG.warn("Cutting off torn tail of journal " + file + " at " + validLength);
+			channel.truncate(validLength);
+		}
+		channel.position(validLength);
+		
+		this.flusher = new Thread(new Flusher(), "bid-journal-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+	
+	
+	/**
+	 * Rebuilds the stores from the journal, applying the bids in the order they were accepted.
+	 * <br>Reading stops at the first torn record.
+	 * <br><br>Two bidders racing on an item can reach the journal in the reverse order their bids were accepted in,
+	 * as a bid is journaled after it is saved. Since the accepted bids on an item strictly rise, the bids are grouped 
+	 * per item and applied by ascending amount, which is exactly the order they were accepted in.
+	 * @param file
+	 * @param bidStore
+	 * @param userItemsStore
+	 * @return number of bids replayed, 0 if the file does not exist
+	 * @throws IOException
+	 */
+	public static long replay(File file, BidStore bidStore, UserBidHistoryStore userItemsStore) throws IOException {
+		return replay(file, bidStore, userItemsStore, 0L);
+	}
+	
+	/**
+	 * Rebuilds the stores from the records following the given sequence, 
+	 * e.g. the journal sequence a {@link BidSnapshot} was loaded at.
+	 * <br>Bids already in the stores are turned down by the bid store as they are not higher than the winning bid,
+	 * hence replaying over a snapshot taken while bidding is safe.
+	 * @param file
+	 * @param bidStore
+	 * @param userItemsStore
+	 * @param afterSequence - records up to and including this sequence are skipped
+	 * @return number of bids replayed, 0 if the file does not exist
+	 * @throws IOException
+	 */
+	public static long replay(File file, BidStore bidStore, UserBidHistoryStore userItemsStore, long afterSequence) 
+			throws IOException {
+		if(!file.exists()){
+			return 0;
+		}
+		long replayed = 0;
+		Map<String, List<Bid>> bidsPerItem = new LinkedHashMap<String, List<Bid>>();
+		JournalReader reader = new JournalReader(file);
+		try{
+			while(reader.next()){
+				if(reader.sequence() <= afterSequence){
+					continue;
+				}
+				Bid bid = reader.bid();
+				List<Bid> bids = bidsPerItem.get(bid.getItemId());
+				if(bids == null){
+					bids = new ArrayList<Bid>();
+					bidsPerItem.put(bid.getItemId(), bids);
+				}
+				bids.add(bid);
+				replayed++;
+			}
+		}finally{
+			reader.close();
+		}
+		
+		for (List<Bid> bids : bidsPerItem.values()) {
+			Collections.sort(bids, BY_AMOUNT);//nearly sorted already, hence linear
+			for (Bid bid : bids) {
+				if(bidStore.maybeSave(bid)){
+					userItemsStore.save(bid.getUserId(), bid.getItemId());
+				}
+			}
+		}
+		return replayed;
+	}
+	
+	
+	/**
+	 * Appends the accepted bid and waits until it is durable
+	 * @throws UncheckedIOException if the journal failed to write or fsync
+	 * @throws IllegalStateException if the journal is closed
+	 */
+	@Override
+	public void onBidAccepted(Bid bid) {
+		append(bid);
+	}
+	
+	/**
+	 * Appends a bid to the journal and waits until it is durable
+	 * @param bid
+	 * @return the journal sequence number of the bid
+	 * @throws UncheckedIOException if the journal failed to write or fsync
+	 * @throws IllegalStateException if the journal is closed
+	 */
+	public long append(Bid bid) {
+		ByteBuffer record = JournalRecord.encode(bid);
+		boolean interrupted = false;
+		try{
+			synchronized(lock){
+				while(!closed && failure == null && pending.remaining() < record.remaining()){
+					if(pending.position() == 0){//record larger than the buffer
+						pending = ByteBuffer.allocate(record.remaining());
+					}
+					else{
+						try{
+							lock.wait();//until the flusher swaps the buffers
+						}catch(InterruptedException e){
+							interrupted = true;
+						}
+					}
+				}
+				if(closed){
+					throw new IllegalStateException("Bid journal is closed");
+				}
+				checkFailure();
+				
+				//sequenced only once buffered, so that the buffer always holds consecutive sequences
+				long sequence = ++appendedSequence;
+				JournalRecord.seal(record, sequence);
+				boolean wasEmpty = pending.position() == 0;
+				pending.put(record);
+				if(wasEmpty){
+					lock.notifyAll();//wakes the flusher up
+				}
+				
+				while(durableSequence < sequence && failure == null){
+					try{
+						lock.wait();
+					}catch(InterruptedException e){
+						interrupted = true;
+					}
+				}
+				checkFailure();
+				return sequence;
+			}
+		}finally{
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * @return the sequence number of the last durable record
+	 */
+	public long durableSequence(){
+		synchronized(lock){
+			return durableSequence;
+		}
+	}
+	
+	
+	/**
+	 * Flushes the pending records and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(lock){
+			closed = true;
+			lock.notifyAll();
+		}
+		try{
+			flusher.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+	
+	
+	private void checkFailure(){
+		if(failure != null){
+			throw new UncheckedIOException("Bid journal failed", failure);
+		}
+	}
+	
+	
+	/**
+	 * Writes out and fsyncs the pending records in batches, until the journal is closed
+	 */
+	private final class Flusher implements Runnable {
+		
+		@Override
+		public void run() {
+			while(true){
+				ByteBuffer batch;
+				long batchSequence;
+				synchronized(lock){
+					try{
+						while(pending.position() == 0 && !closed){
+							lock.wait();
+						}
+						if(pending.position() == 0){//closed and nothing left
+							return;
+						}
+						long deadline = System.nanoTime() + fsyncBudgetNanos;
+						long remaining;
+						while(!closed && pending.position() < pending.capacity() / 2 
+								&& (remaining = deadline - System.nanoTime()) > 0){
+							TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+						}
+					}catch(InterruptedException e){
+						//carry on flushing, close is the only way to stop the flusher
+					}
+					batch = pending;
+					pending = spare;
+					spare = null;
+					batchSequence = appendedSequence;
+					lock.notifyAll();//room for appenders waiting on a full buffer
+				}
+				
+				IOException error = null;
+				try{
+					batch.flip();
+					while(batch.hasRemaining()){
+						channel.write(batch);
+					}
+					channel.force(false);
+				}catch(IOException e){
+					LOG.error("Failed to write bid journal", e);
+					error = e;
+				}
+				
+				synchronized(lock){
+					batch.clear();
+					spare = batch;
+					if(error != null){
+						failure = error;
+					}
+					else{
+						durableSequence = batchSequence;
+					}
+					lock.notifyAll();
+					if(error != null){
+						return;
+					}
+				}
+			}
+		}
+	}
+
+}
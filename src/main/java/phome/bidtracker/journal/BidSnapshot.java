@@ -0,0 +1,348 @@
+package phome.bidtracker.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.UserBidHistoryStore;
+
+/**
+ * Compact binary snapshot of the bid store, loaded in parallel on startup.
+ * 
+ * <br><br>Writing: the snapshot is fuzzy, i.e. it is taken while bidding carries on. 
+ * Every item contributes the stable snapshot of its history at the time it is visited, 
+ * hence the bids of an item are always a prefix of its history. The sequence of the last durable journal 
+ * record when writing starts is saved along, all bids up to it being in the store already.
+ * Recovery loads the snapshot and replays the journal records following that sequence,
+ * where the bids already loaded are simply turned down as not higher than the winning bid.
+ * 
+ * <br><br>Layout:
+ * <br> partitions - items hashed into independent regions so that they can be decoded in parallel
+ * <br> user dictionary - every distinct userId once, bids refer to users by index
+ * <br> footer - journal sequence, partition and dictionary offsets, footer offset and magic
+ * <br>Within a partition every item is written once followed by its bids, 
+ * amounts being delta encoded as varints: in cents when all amounts of the item are whole cents,
+ * else on the raw IEEE 754 bits which grow along with the (positive, increasing) amounts.
+ * 
+ * <br><br>The user history store is not written, it is rebuilt from the bids as it only ever holds 
+ * the items users have accepted bids on.
+ *
+ */
+public final class BidSnapshot {
+	
+	private static final int MAGIC = 0x42545331;//BTS1
+	private static final int TRAILER_SIZE = 8 + 4;
+	private static final byte ITEM = 1;
+	private static final byte END = 0;
+	private static final byte CENTS = 0;
+	private static final byte RAW = 1;
+	
+	private BidSnapshot() {
+	}
+	
+	
+	/**
+	 * Writes a snapshot of the bid store, replacing the file atomically once complete
+	 * @param file
+	 * @param bidStore
+	 * @param journalSequence - sequence of the last durable journal record before the snapshot starts, 0 if no journal
+	 * @param partitions - number of regions the snapshot can be loaded with in parallel
+	 * @throws IOException
+	 */
+	public static void write(File file, BidStore bidStore, long journalSequence, int partitions) throws IOException {
+		if(partitions <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive partitions passed");
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		FileChannel channel = FileChannel.open(tmp.toPath(), 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try{
+			Output out = new Output(channel);
+			Map<String, Integer> users = new HashMap<String, Integer>();
+			List<String> userIds = new ArrayList<String>();
+			long[] offsets = new long[partitions + 1];
+			
+			//the items are grouped by partition in one pass, so that every partition is written as a contiguous region
+			List<List<String>> itemsPerPartition = new ArrayList<List<String>>(partitions);
+			for (int partition = 0; partition < partitions; partition++) {
+				itemsPerPartition.add(new ArrayList<String>());
+			}
+			for (String itemId : bidStore.items()) {
+				itemsPerPartition.get(partitionOf(itemId, partitions)).add(itemId);
+			}
+			List<Bid> itemBids = new ArrayList<Bid>();
+			for (int partition = 0; partition < partitions; partition++) {
+				offsets[partition] = out.position();
+				for (String itemId : itemsPerPartition.get(partition)) {
+					Iterable<Bid> bids = bidStore.bidsForItem(itemId);
+					if(bids != null)
+						writeItem(out, itemId, bids, itemBids, users, userIds);
+				}
+				itemsPerPartition.set(partition, null);
+				out.put(END);
+			}
+			offsets[partitions] = out.position();
+			
+			out.putVarLong(userIds.size());
+			for (String userId : userIds) {
+				out.putString(userId);
+			}
+			
+			long footer = out.position();
+			out.putLong(journalSequence);
+			out.putInt(partitions);
+			for (long offset : offsets) {
+				out.putLong(offset);
+			}
+			out.putLong(footer);
+			out.putInt(MAGIC);
+			out.flush();
+			channel.force(true);
+		}finally{
+			channel.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	/**
+	 * Loads a snapshot into empty stores, decoding the partitions in parallel
+	 * @param file
+	 * @param bidStore
+	 * @param userItemsStore
+	 * @param threads - number of loading threads
+	 * @return the journal sequence the snapshot was taken at, to replay the journal from
+	 * @throws IOException if the file is unreadable or not a snapshot
+	 */
+	public static long load(File file, final BidStore bidStore, final UserBidHistoryStore userItemsStore, int threads) 
+			throws IOException {
+		if(threads <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive threads passed");
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			long size = channel.size();
+			if(size < TRAILER_SIZE){
+				throw new IOException("Not a bid snapshot " + file);
+			}
+			ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if(trailer.getInt() != MAGIC || footerOffset < 0 || footerOffset > size - TRAILER_SIZE){
+				throw new IOException("Not a bid snapshot " + file);
+			}
+			ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, size - TRAILER_SIZE - footerOffset);
+			long journalSequence = footer.getLong();
+			int partitions = footer.getInt();
+			long[] offsets = new long[partitions + 1];
+			for (int i = 0; i <= partitions; i++) {
+				offsets[i] = footer.getLong();
+			}
+			
+			ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, offsets[partitions], footerOffset - offsets[partitions]);
+			final String[] users = new String[(int)getVarLong(dictionary)];
+			for (int i = 0; i < users.length; i++) {
+				users[i] = getString(dictionary);
+			}
+			
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, partitions));
+			try{
+				List<Future<Object>> futures = new ArrayList<Future<Object>>();
+				for (int partition = 0; partition < partitions; partition++) {
+					final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 
+							offsets[partition], offsets[partition + 1] - offsets[partition]);
+					futures.add(executor.submit(new Callable<Object>() {
+						@Override
+						public Object call() {
+							loadPartition(region, users, bidStore, userItemsStore);
+							return null;
+						}
+					}));
+				}
+				for (Future<Object> future : futures) {
+					future.get();
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading bid snapshot " + file, e);
+			}catch(ExecutionException e){
+				throw new IOException("Failed to load bid snapshot " + file, e.getCause());
+			}finally{
+				executor.shutdownNow();
+			}
+			return journalSequence;
+		}finally{
+			channel.close();
+		}
+	}
+	
+	
+	private static int partitionOf(String itemId, int partitions){
+		int hash = itemId.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % partitions;
+	}
+	
+	/**
+	 * Reads the history of the item once, into the reused list of bids, 
+	 * since a history spilled to disk would otherwise be read twice
+	 */
+	private static void writeItem(Output out, String itemId, Iterable<Bid> bids, List<Bid> itemBids,
+			Map<String, Integer> users, List<String> userIds) throws IOException {
+		itemBids.clear();
+		boolean cents = true;
+		for (Bid bid : bids) {
+			itemBids.add(bid);
+			cents &= toCents(bid.getAmount()) > 0;
+		}
+		
+		out.put(ITEM);
+		out.putString(itemId);
+		out.putVarLong(itemBids.size());
+		out.put(cents ? CENTS : RAW);
+		long previous = 0;
+		for (Bid bid : itemBids) {
+			Integer user = users.get(bid.getUserId());
+			if(user == null){
+				user = userIds.size();
+				users.put(bid.getUserId(), user);
+				userIds.add(bid.getUserId());
+			}
+			out.putVarLong(user);
+			long amount = cents ? toCents(bid.getAmount()) : Double.doubleToLongBits(bid.getAmount());
+			out.putVarLong(amount - previous);
+			previous = amount;
+		}
+	}
+	
+	private static void loadPartition(ByteBuffer region, String[] users, BidStore bidStore, UserBidHistoryStore userItemsStore){
+		while(region.get() == ITEM){
+			String itemId = getString(region);
+			long count = getVarLong(region);
+			boolean cents = region.get() == CENTS;
+			long amount = 0;
+			for (long i = 0; i < count; i++) {
+				String userId = users[(int)getVarLong(region)];
+				amount += getVarLong(region);
+				bidStore.maybeSave(new Bid(itemId, userId, cents ? amount / 100.0d : Double.longBitsToDouble(amount)));
+				userItemsStore.save(userId, itemId);
+			}
+		}
+	}
+	
+	/**
+	 * @param amount
+	 * @return amount in cents if it is a whole number of cents, else -1
+	 */
+	private static long toCents(double amount){
+		if(amount >= Long.MAX_VALUE / 100){
+			return -1;
+		}
+		long cents = Math.round(amount * 100.0d);
+		return cents / 100.0d == amount ? cents : -1;
+	}
+	
+	private static long getVarLong(ByteBuffer in){
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do{
+			b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		}while(b < 0);
+		return value;
+	}
+	
+	private static String getString(ByteBuffer in){
+		byte[] bytes = new byte[(int)getVarLong(in)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	
+	/**
+	 * Buffered writer of primitives and varints, keeping track of the file position
+	 */
+	private static final class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		private long flushed;
+		
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+		
+		long position(){
+			return flushed + buffer.position();
+		}
+		
+		void put(byte b) throws IOException {
+			ensure(1);
+			buffer.put(b);
+		}
+		
+		void putInt(int i) throws IOException {
+			ensure(4);
+			buffer.putInt(i);
+		}
+		
+		void putLong(long l) throws IOException {
+			ensure(8);
+			buffer.putLong(l);
+		}
+		
+		void putVarLong(long value) throws IOException {
+			ensure(10);
+			while((value & ~0x7FL) != 0){
+				buffer.put((byte)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte)value);
+		}
+		
+		void putString(String s) throws IOException {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			putVarLong(bytes.length);
+			if(bytes.length > buffer.remaining()){
+				flush();
+				ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+				while(wrapped.hasRemaining()){
+					flushed += channel.write(wrapped);
+				}
+			}
+			else{
+				buffer.put(bytes);
+			}
+		}
+		
+		void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()){
+				flushed += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		
+		private void ensure(int bytes) throws IOException {
+			if(buffer.remaining() < bytes)
+				flush();
+		}
+	}
+
+}
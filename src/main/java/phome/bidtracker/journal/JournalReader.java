@@ -0,0 +1,84 @@
+package phome.bidtracker.journal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Sequential reader of the intact records of a journal file.
+ * <br>Reading stops at the end of the file or at the first torn/corrupt record, 
+ * whichever comes first. Anything beyond is regarded as never written.
+ *
+ */
+final class JournalReader implements Closeable {
+	
+	private final DataInputStream in;
+	private long validLength;
+	private long sequence;
+	private Bid bid;
+	
+	JournalReader(File file) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+	}
+	
+	/**
+	 * Moves on to the next intact record
+	 * @return <code>false</code> if there are no more intact records
+	 * @throws IOException
+	 */
+	boolean next() throws IOException {
+		try{
+			int bodySize = in.readInt();
+			int checksum = in.readInt();
+			if(bodySize < JournalRecord.MIN_BODY_SIZE || bodySize > JournalRecord.MAX_BODY_SIZE){
+				return false;
+			}
+			byte[] bytes = new byte[bodySize];
+			in.readFully(bytes);
+			ByteBuffer body = ByteBuffer.wrap(bytes);
+			if(!JournalRecord.isIntact(body, checksum)){
+				return false;
+			}
+			sequence = JournalRecord.sequence(body);
+			bid = JournalRecord.decode(body);
+			validLength += JournalRecord.HEADER_SIZE + bodySize;
+			return true;
+		}catch(EOFException e){//torn tail
+			return false;
+		}
+	}
+	
+	/**
+	 * @return the bid of the current record
+	 */
+	Bid bid(){
+		return bid;
+	}
+	
+	/**
+	 * @return the journal sequence number of the current record, 0 before the first one
+	 */
+	long sequence(){
+		return sequence;
+	}
+	
+	/**
+	 * @return the length of the file up to the end of the current record
+	 */
+	long validLength(){
+		return validLength;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,107 @@
+package phome.bidtracker.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Binary layout of a journal record:
+ * <br> int - length of the body
+ * <br> int - CRC32 of the body
+ * <br> body:
+ * <br>  long - journal sequence number
+ * <br>  double - amount
+ * <br>  unsigned short + UTF-8 bytes - itemId
+ * <br>  unsigned short + UTF-8 bytes - userId
+ * 
+ * <br><br>The header has a fixed size, the body is as long as the ids need. 
+ * The CRC tells a complete record from one torn by a crash in the middle of a write.
+ *
+ */
+final class JournalRecord {
+	
+	static final int HEADER_SIZE = 8;
+	static final int MIN_BODY_SIZE = 8 + 8 + 2 + 2;
+	static final int MAX_ID_SIZE = 0xFFFF;
+	static final int MAX_BODY_SIZE = MIN_BODY_SIZE + 2 * MAX_ID_SIZE;
+	
+	private JournalRecord() {
+	}
+	
+	/**
+	 * Encodes the bid into a new record, with a 0 sequence which is filled in by {@link #seal(ByteBuffer, long)}
+	 * @param bid
+	 * @return record positioned at 0
+	 */
+	static ByteBuffer encode(Bid bid){
+		byte[] itemId = bid.getItemId().getBytes(StandardCharsets.UTF_8);
+		byte[] userId = bid.getUserId().getBytes(StandardCharsets.UTF_8);
+		if(itemId.length > MAX_ID_SIZE || userId.length > MAX_ID_SIZE){
+			throw new IllegalArgumentException("Invalid Args - ids too long to be journaled");
+		}
+		int bodySize = MIN_BODY_SIZE + itemId.length + userId.length;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		record.putInt(bodySize)
+			.putInt(0)
+			.putLong(0L)
+			.putDouble(bid.getAmount())
+			.putShort((short)itemId.length).put(itemId)
+			.putShort((short)userId.length).put(userId);
+		record.flip();
+		return record;
+	}
+	
+	/**
+	 * Stamps the sequence number and the checksum on an encoded record
+	 * @param record
+	 * @param sequence
+	 */
+	static void seal(ByteBuffer record, long sequence){
+		record.putLong(HEADER_SIZE, sequence);
+		record.putInt(4, checksum(record, HEADER_SIZE, record.limit() - HEADER_SIZE));
+	}
+	
+	/**
+	 * Validates the checksum of a body
+	 * @param body - positioned at the start of the body, limit at its end
+	 * @param checksum - as read from the header
+	 * @return
+	 */
+	static boolean isIntact(ByteBuffer body, int checksum){
+		return checksum(body, body.position(), body.remaining()) == checksum;
+	}
+	
+	static long sequence(ByteBuffer body){
+		return body.getLong(body.position());
+	}
+	
+	/**
+	 * Decodes an intact body, leaving the buffer positioned after it
+	 * @param body
+	 * @return
+	 */
+	static Bid decode(ByteBuffer body){
+		body.getLong();//sequence
+		double amount = body.getDouble();
+		String itemId = readId(body);
+		String userId = readId(body);
+		return new Bid(itemId, userId, amount);
+	}
+	
+	private static String readId(ByteBuffer body){
+		byte[] bytes = new byte[body.getShort() & 0xFFFF];
+		body.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static int checksum(ByteBuffer buffer, int offset, int length){
+		CRC32 crc = new CRC32();
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(offset + length).position(offset);
+		crc.update(slice);
+		return (int)crc.getValue();
+	}
+
+}
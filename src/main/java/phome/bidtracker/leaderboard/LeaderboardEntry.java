@@ -0,0 +1,33 @@
+package phome.bidtracker.leaderboard;
+
+/**
+ * Immutable rank of an item on a leaderboard
+ *
+ */
+public final class LeaderboardEntry {
+	
+	private final String itemId;
+	private final double score;
+	
+	LeaderboardEntry(String itemId, double score) {
+		this.itemId = itemId;
+		this.score = score;
+	}
+	
+	public String getItemId() {
+		return itemId;
+	}
+	
+	/**
+	 * @return what the item is ranked by, e.g. its winning amount or its number of bids
+	 */
+	public double getScore() {
+		return score;
+	}
+	
+	@Override
+	public String toString() {
+		return itemId + "=" + score;
+	}
+
+}
@@ -0,0 +1,207 @@
+package phome.bidtracker.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Top K items by winning amount, maintained incrementally from the accepted bids.
+ * 
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker, so it is updated on the success path of
+ * every save instead of scanning the store on every query.
+ * 
+ * <br><br>Rationale:
+ * <br>The winning amount of an item only ever rises, hence an item can only enter the board by outbidding
+ *     the lowest entry of a full board. Every other bid is turned down on a single volatile read of that threshold,
+ *     and only bids entering the board take the lock to rebuild its K entries
+ * <br>The board is published as an immutable array sorted by descending amount, 
+ *     hence queries read it without locking, cost O(K) at most and are never stale
+ * 
+ * <br><br>A board given its bid store drops the items evicted from it, e.g. once closed: 
+ * <br>every query looks its K items up in the store, and the first query finding one evicted rescans the store
+ *     for the items to take its place, since items turned down while the board was full are not kept. 
+ *     The rescan costs O(n log K) for n items in the store, once per item on the board evicted, 
+ *     and runs without the lock, hence bids entering the board meanwhile are not held up and are merged in
+ * <br>A board without a store keeps every item, which only suits a store never evicting
+ *
+ */
+public class PriceLeaderboard implements BidListener {
+	
+	private static final LeaderboardEntry[] EMPTY = new LeaderboardEntry[0];
+	
+	private static final Comparator<LeaderboardEntry> BY_SCORE = new Comparator<LeaderboardEntry>() {
+		@Override
+		public int compare(LeaderboardEntry e1, LeaderboardEntry e2) {
+			return Double.compare(e1.getScore(), e2.getScore());
+		}
+	};
+	
+	private final int k;
+	private final BidStore bidStore;//null if never evicting
+	private final AtomicBoolean rescanning = new AtomicBoolean();
+	private volatile LeaderboardEntry[] top = EMPTY;
+	//amount to beat to enter the board, 0 until the board is full
+	private volatile double threshold;
+	
+	/**
+	 * Instantiates a board keeping every item, for a store never evicting
+	 * @param k - size of the board
+	 */
+	public PriceLeaderboard(int k) {
+		this(k, null, false);
+	}
+	
+	/**
+	 * Instantiates a board dropping the items evicted from the store
+	 * @param k - size of the board
+	 * @param bidStore - store of the tracker the board listens to
+	 */
+	public PriceLeaderboard(int k, BidStore bidStore) {
+		this(k, bidStore, true);
+	}
+	
+	private PriceLeaderboard(int k, BidStore bidStore, boolean storeRequired) {
+		if(storeRequired && bidStore == null){
+			throw new IllegalArgumentException("Cannot instantiate PriceLeaderboard with null args");
+		}
+		if(k <= 0){
+			throw new IllegalArgumentException("Invalid Args - k must be positive");
+		}
+		this.k = k;
+		this.bidStore = bidStore;
+	}
+	
+	/**
+	 * Enters the bid's item on the board if its amount ranks in the top K
+	 */
+	@Override
+	public void onBidAccepted(Bid bid) {
+		if(bid.getAmount() > threshold){
+			enter(bid.getItemId(), bid.getAmount());
+		}
+	}
+	
+	/**
+	 * @return up to K items with the highest winning amounts, highest first
+	 */
+	public List<LeaderboardEntry> top(){
+		LeaderboardEntry[] current = top;
+		if(bidStore != null && anyEvicted(current)){
+			current = rescan(current);
+		}
+		return Collections.unmodifiableList(Arrays.asList(current));
+	}
+	
+	/**
+	 * @param n - at most K
+	 * @return up to n items with the highest winning amounts, highest first
+	 */
+	public List<LeaderboardEntry> top(int n){
+		List<LeaderboardEntry> all = top();
+		return all.subList(0, Math.min(n, all.size()));
+	}
+	
+	private synchronized void enter(String itemId, double amount){
+		LeaderboardEntry[] current = top;
+		if(current.length == k && amount <= current[k - 1].getScore()){
+			return;
+		}
+		LeaderboardEntry[] updated = new LeaderboardEntry[Math.min(current.length + 1, k)];
+		int size = 0;
+		boolean entered = false;
+		for (LeaderboardEntry entry : current) {
+			if(entry.getItemId().equals(itemId)){
+				if(entry.getScore() >= amount){//a later bid of the item got here first
+					return;
+				}
+				continue;
+			}
+			if(!entered && amount > entry.getScore()){
+				updated[size++] = new LeaderboardEntry(itemId, amount);
+				entered = true;
+				if(size == updated.length){
+					break;
+				}
+			}
+			updated[size++] = entry;
+			if(size == updated.length){
+				break;
+			}
+		}
+		if(!entered && size < updated.length){
+			updated[size++] = new LeaderboardEntry(itemId, amount);
+		}
+		publish(size == updated.length ? updated : Arrays.copyOf(updated, size));
+	}
+	
+	private void publish(LeaderboardEntry[] updated){
+		top = updated;
+		threshold = updated.length == k ? updated[k - 1].getScore() : 0.0d;
+	}
+	
+	private boolean anyEvicted(LeaderboardEntry[] entries){
+		for (LeaderboardEntry entry : entries) {
+			if(bidStore.winningBid(entry.getItemId()) == null){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Rebuilds the board from the items of the store, merging in the bids which entered the board meanwhile,
+	 * unless another query is at it, in which case the board read is returned without its evicted items
+	 */
+	private LeaderboardEntry[] rescan(LeaderboardEntry[] read){
+		if(!rescanning.compareAndSet(false, true)){
+			List<LeaderboardEntry> kept = new ArrayList<LeaderboardEntry>(read.length);
+			for (LeaderboardEntry entry : read) {
+				if(bidStore.winningBid(entry.getItemId()) != null){
+					kept.add(entry);
+				}
+			}
+			return kept.toArray(EMPTY);
+		}
+		try{
+			PriorityQueue<LeaderboardEntry> heap = new PriorityQueue<LeaderboardEntry>(k + 1, BY_SCORE);
+			for (String itemId : bidStore.items()) {
+				Bid winningBid = bidStore.winningBid(itemId);
+				if(winningBid != null && (heap.size() < k || winningBid.getAmount() > heap.peek().getScore())){
+					heap.add(new LeaderboardEntry(itemId, winningBid.getAmount()));
+					if(heap.size() > k){
+						heap.poll();
+					}
+				}
+			}
+			synchronized (this) {
+				Map<String, LeaderboardEntry> best = new HashMap<String, LeaderboardEntry>();
+				for (LeaderboardEntry entry : heap) {
+					best.put(entry.getItemId(), entry);
+				}
+				for (LeaderboardEntry entry : top) {//entered meanwhile, or higher since scanned
+					LeaderboardEntry scanned = best.get(entry.getItemId());
+					if(scanned == null ? bidStore.winningBid(entry.getItemId()) != null : scanned.getScore() < entry.getScore()){
+						best.put(entry.getItemId(), entry);
+					}
+				}
+				List<LeaderboardEntry> entries = new ArrayList<LeaderboardEntry>(best.values());
+				Collections.sort(entries, Collections.reverseOrder(BY_SCORE));
+				publish(entries.subList(0, Math.min(k, entries.size())).toArray(EMPTY));
+				return top;
+			}
+		}finally{
+			rescanning.set(false);
+		}
+	}
+
+}
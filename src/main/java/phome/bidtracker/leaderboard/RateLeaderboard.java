@@ -0,0 +1,235 @@
+package phome.bidtracker.leaderboard;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Top K items by number of bids accepted over a sliding time window, i.e. the hottest items.
+ * 
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker. Several boards with different windows 
+ * can be registered side by side e.g. the last minute and the last hour.
+ * 
+ * <br><br>Rationale:
+ * <br>Every item active in the window has a counter split into {@value #BUCKETS} time buckets, 
+ *     so bids expire from the window a bucket at a time. A bucket packs its epoch and its count in a single long,
+ *     hence an accepted bid costs a map lookup and a CAS, with no lock
+ * <br>Unlike prices, rates also drop as time passes with no bid at all, hence the board cannot be kept up to date 
+ *     from the bids only. Instead it is rebuilt from the counters, at most once per refresh interval, 
+ *     by the first query finding it older than that. Other queries just read the last published board, 
+ *     which costs O(K) and is stale by the refresh interval at most
+ * <br>A rebuild costs O(n log K) for n items active in the window, and drops the counters of the items 
+ *     gone quiet for a whole window, so memory is bounded by the number of active items
+ *
+ */
+public class RateLeaderboard implements BidListener {
+	
+	private static final int BUCKETS = 10;
+	private static final int COUNT_BITS = 24;
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+	
+	private static final Comparator<LeaderboardEntry> BY_SCORE = new Comparator<LeaderboardEntry>() {
+		@Override
+		public int compare(LeaderboardEntry e1, LeaderboardEntry e2) {
+			return Double.compare(e1.getScore(), e2.getScore());
+		}
+	};
+	
+	private final int k;
+	private final long bucketMillis;
+	private final long refreshMillis;
+	private final Clock clock;
+	private final ConcurrentMap<String, WindowCounter> counters = new ConcurrentHashMap<String, WindowCounter>();
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private volatile Board board;
+	
+	
+	/**
+	 * Instantiates a board refreshed at most every tenth of the window
+	 * @param k - size of the board
+	 * @param window - period the bids are counted over
+	 * @param unit
+	 */
+	public RateLeaderboard(int k, long window, TimeUnit unit) {
+		this(k, window, unit, Math.max(1L, unit.toMillis(window) / BUCKETS), TimeUnit.MILLISECONDS, Clock.systemUTC());
+	}
+	
+	/**
+	 * @param k - size of the board
+	 * @param window - period the bids are counted over
+	 * @param windowUnit
+	 * @param maxStaleness - how old the board may get before a query rebuilds it
+	 * @param stalenessUnit
+	 * @param clock
+	 */
+	public RateLeaderboard(int k, long window, TimeUnit windowUnit, long maxStaleness, TimeUnit stalenessUnit, Clock clock) {
+		if(k <= 0 || window <= 0 || maxStaleness < 0 || windowUnit == null || stalenessUnit == null || clock == null){
+			throw new IllegalArgumentException("Invalid Args - k and window must be positive and units and clock set");
+		}
+		this.k = k;
+		this.bucketMillis = Math.max(1L, windowUnit.toMillis(window) / BUCKETS);
+		this.refreshMillis = stalenessUnit.toMillis(maxStaleness);
+		this.clock = clock;
+		this.board = new Board(new LeaderboardEntry[0], clock.millis() - refreshMillis);//stale from the start
+	}
+	
+	/**
+	 * Counts the bid in the window of its item
+	 */
+	@Override
+	public void onBidAccepted(Bid bid) {
+		WindowCounter counter = counters.get(bid.getItemId());
+		if(counter == null){
+			WindowCounter newCounter = new WindowCounter();
+			counter = counters.putIfAbsent(bid.getItemId(), newCounter);
+			if(counter == null){
+				counter = newCounter;
+			}
+		}
+		counter.increment(epoch(clock.millis()));
+	}
+	
+	/**
+	 * @return up to K items with the most bids in the window, hottest first
+	 */
+	public List<LeaderboardEntry> top(){
+		Board current = board;
+		if(clock.millis() - current.builtAt >= refreshMillis){
+			current = tryRefresh(current);
+		}
+		return Collections.unmodifiableList(Arrays.asList(current.entries));
+	}
+	
+	/**
+	 * @param n - at most K
+	 * @return up to n items with the most bids in the window, hottest first
+	 */
+	public List<LeaderboardEntry> top(int n){
+		List<LeaderboardEntry> all = top();
+		return all.subList(0, Math.min(n, all.size()));
+	}
+	
+	/**
+	 * Rebuilds the board from the counters now, e.g. from a scheduler keeping queries from ever doing it
+	 */
+	public void refresh(){
+		while(!refreshing.compareAndSet(false, true)){
+			Thread.yield();
+		}
+		try {
+			board = rebuild();
+		} finally {
+			refreshing.set(false);
+		}
+	}
+	
+	private Board tryRefresh(Board current){
+		if(!refreshing.compareAndSet(false, true)){
+			return current;//another query is on it
+		}
+		try {
+			Board rebuilt = rebuild();
+			board = rebuilt;
+			return rebuilt;
+		} finally {
+			refreshing.set(false);
+		}
+	}
+	
+	private Board rebuild(){
+		long now = clock.millis();
+		long epoch = epoch(now);
+		PriorityQueue<LeaderboardEntry> heap = new PriorityQueue<LeaderboardEntry>(k + 1, BY_SCORE);
+		for (Map.Entry<String, WindowCounter> entry : counters.entrySet()) {
+			long count = entry.getValue().sum(epoch);
+			if(count == 0){
+				counters.remove(entry.getKey(), entry.getValue());
+				continue;
+			}
+			if(heap.size() < k || count > heap.peek().getScore()){
+				heap.add(new LeaderboardEntry(entry.getKey(), count));
+				if(heap.size() > k){
+					heap.poll();
+				}
+			}
+		}
+		LeaderboardEntry[] entries = new LeaderboardEntry[heap.size()];
+		for (int i = entries.length - 1; i >= 0; i--) {
+			entries[i] = heap.poll();
+		}
+		return new Board(entries, now);
+	}
+	
+	private long epoch(long millis){
+		return millis / bucketMillis;
+	}
+	
+	
+	/**
+	 * Published board, immutable
+	 */
+	private static final class Board {
+		private final LeaderboardEntry[] entries;
+		private final long builtAt;
+		
+		Board(LeaderboardEntry[] entries, long builtAt) {
+			this.entries = entries;
+			this.builtAt = builtAt;
+		}
+	}
+	
+	
+	/**
+	 * Bid counts of an item over the buckets of the window.
+	 * <br>A bucket holds the epoch it counts for in the high bits and the count in the low {@value #COUNT_BITS} bits, 
+	 * so moving a bucket on to a new epoch and counting are a single CAS.
+	 */
+	private static final class WindowCounter {
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		
+		void increment(long epoch){
+			int index = (int)(epoch % BUCKETS);
+			while(true){
+				long current = buckets.get(index);
+				long updated;
+				if(current >>> COUNT_BITS == epoch){
+					if((current & COUNT_MASK) == COUNT_MASK){//saturated
+						return;
+					}
+					updated = current + 1;
+				}else if(current >>> COUNT_BITS < epoch){
+					updated = (epoch << COUNT_BITS) | 1;
+				}else{//bidder delayed past a newer epoch
+					return;
+				}
+				if(buckets.compareAndSet(index, current, updated)){
+					return;
+				}
+			}
+		}
+		
+		long sum(long epoch){
+			long sum = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				long bucket = buckets.get(i);
+				if(epoch - (bucket >>> COUNT_BITS) < BUCKETS){
+					sum += bucket & COUNT_MASK;
+				}
+			}
+			return sum;
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package phome.bidtracker.metrics;
+
+
+/**
+ * Pluggable sink for the hot path measurements of the bid tracker and its stores.
+ * <br>Implementations are called on the bidding and reading threads, hence must be thread safe,
+ * must not block and should not allocate.
+ * 
+ */
+public interface BidMetrics {
+	
+	/**
+	 * Sink discarding everything, the default of the stores
+	 */
+	public static final BidMetrics NONE = new BidMetrics() {
+		@Override
+		public void bidPlaced(boolean accepted, long latencyNanos) {
+		}
+		
+		@Override
+		public void readServed(Read read, long latencyNanos) {
+		}
+		
+		@Override
+		public void bidStoreSaved(String itemId, int casRetries) {
+		}
+		
+		@Override
+		public void userStoreSaved(String userId, int casRetries) {
+		}
+	};
+	
+	
+	/**
+	 * Read operations of the tracker
+	 */
+	public enum Read {
+		WINNING_BID, BIDS_FOR_ITEM, LATEST_BIDS, BIDS_AFTER, ITEMS_FOR_USER
+	}
+	
+	
+	/**
+	 * Records the outcome and latency of a bid
+	 * @param accepted
+	 * @param latencyNanos
+	 */
+	public void bidPlaced(boolean accepted, long latencyNanos);
+	
+	/**
+	 * Records a retried bid answered with the outcome of the original request, without being placed again.
+	 * <br>No op by default, so that sinks written before request ids keep compiling
+	 * @param accepted - outcome of the original request
+	 */
+	default void bidDeduplicated(boolean accepted) {
+	}
+	
+	/**
+	 * Records the latency of a read
+	 * @param read
+	 * @param latencyNanos
+	 */
+	public void readServed(Read read, long latencyNanos);
+	
+	/**
+	 * Records how many times the CAS of a bid store save had to be retried due to concurrent bids on the item
+	 * @param itemId
+	 * @param casRetries
+	 */
+	public void bidStoreSaved(String itemId, int casRetries);
+	
+	/**
+	 * Records how many times the CAS of a user history store save had to be retried due to concurrent bids of the user
+	 * @param userId
+	 * @param casRetries
+	 */
+	public void userStoreSaved(String userId, int casRetries);
+
+}
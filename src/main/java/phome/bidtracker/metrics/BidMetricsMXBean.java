@@ -0,0 +1,46 @@
+package phome.bidtracker.metrics;
+
+/**
+ * Management interface of {@link DefaultBidMetrics}.
+ * <br>Latencies are reported in microseconds.
+ *
+ */
+public interface BidMetricsMXBean {
+	
+	public long getAcceptedBids();
+	
+	public long getRejectedBids();
+	
+	public long getDeduplicatedBids();
+	
+	public long getBidStoreSaves();
+	
+	public long getBidStoreCasRetries();
+	
+	public long getUserStoreSaves();
+	
+	public long getUserStoreCasRetries();
+	
+	public double getBidLatencyP50Micros();
+	
+	public double getBidLatencyP99Micros();
+	
+	public double getBidLatencyP999Micros();
+	
+	public double getWinningBidLatencyP99Micros();
+	
+	public double getBidsForItemLatencyP99Micros();
+	
+	public double getItemsForUserLatencyP99Micros();
+	
+	/**
+	 * @return the hottest items by contention as "itemId=casRetries", most contended first
+	 */
+	public String[] getHottestItems();
+	
+	/**
+	 * Clears all the counters and histograms
+	 */
+	public void reset();
+
+}
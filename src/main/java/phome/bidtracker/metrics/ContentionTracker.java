@@ -0,0 +1,143 @@
+package phome.bidtracker.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import phome.bidtracker.concurrent.Ticker;
+
+/**
+ * Keeps the CAS retries per key, in order to tell the hottest items by contention.
+ * 
+ * <br><br>Only contended saves are recorded, hence the uncontended hot path never touches the map.
+ * The number of keys tracked is bounded: once full, keys not seen yet are ignored 
+ * so that a flood of distinct items cannot grow the map without limit.
+ * 
+ * <br><br>Retries decay: every half life, the retries of every key are halved, and the keys left without retries
+ * are forgotten. Hence the hottest keys are the hottest lately, and keys gone cold, e.g. closed items, 
+ * make room for new ones instead of holding the map forever.
+ * <br>Decaying walks the map, which is done by the first record or query past the half life, at most once per half life.
+ *
+ */
+public final class ContentionTracker {
+	
+	private static final Comparator<Map.Entry<String, Long>> BY_RETRIES_DESC = new Comparator<Map.Entry<String, Long>>() {
+		@Override
+		public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+			return Long.compare(e2.getValue(), e1.getValue());
+		}
+	};
+	
+	private static final long DEFAULT_HALF_LIFE_SECONDS = 60;
+	
+	private final ConcurrentMap<String, LongAdder> retries;
+	private final int capacity;
+	private final long halfLifeNanos;
+	private final Ticker ticker;
+	private final AtomicLong lastDecay;
+	
+	/**
+	 * Tracks keys with retries halving every {@value #DEFAULT_HALF_LIFE_SECONDS} seconds
+	 * @param capacity - max number of keys tracked
+	 */
+	public ContentionTracker(int capacity) {
+		this(capacity, DEFAULT_HALF_LIFE_SECONDS, TimeUnit.SECONDS, Ticker.SYSTEM);
+	}
+	
+	/**
+	 * @param capacity - max number of keys tracked
+	 * @param halfLife - time after which retries are halved
+	 * @param unit
+	 * @param ticker
+	 */
+	public ContentionTracker(int capacity, long halfLife, TimeUnit unit, Ticker ticker) {
+		if(capacity <= 0 || halfLife <= 0 || unit == null || ticker == null){
+			throw new IllegalArgumentException("Invalid Args - capacity and half life must be positive, unit and ticker non null");
+		}
+		this.retries = new ConcurrentHashMap<String, LongAdder>();
+		this.capacity = capacity;
+		this.halfLifeNanos = unit.toNanos(halfLife);
+		this.ticker = ticker;
+		this.lastDecay = new AtomicLong(ticker.read());
+	}
+	
+	/**
+	 * @param key
+	 * @param casRetries - ignored if not positive
+	 */
+	public void record(String key, int casRetries){
+		if(casRetries <= 0){
+			return;
+		}
+		maybeDecay();
+		LongAdder adder = retries.get(key);
+		if(adder == null){
+			if(retries.size() >= capacity){
+				return;
+			}
+			LongAdder newAdder = new LongAdder();
+			adder = retries.putIfAbsent(key, newAdder);
+			if(adder == null){
+				adder = newAdder;
+			}
+		}
+		adder.add(casRetries);
+	}
+	
+	/**
+	 * @param k
+	 * @return up to k keys with the most retries mapped to their retries, most contended first
+	 */
+	public Map<String, Long> hottest(int k){
+		maybeDecay();
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+		for (Map.Entry<String, LongAdder> entry : retries.entrySet()) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+		}
+		Collections.sort(entries, BY_RETRIES_DESC);
+		Map<String, Long> hottest = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(k, entries.size()))) {
+			hottest.put(entry.getKey(), entry.getValue());
+		}
+		return hottest;
+	}
+	
+	/**
+	 * Halves the retries once per half life elapsed, forgetting the keys left without retries.
+	 * Retries recorded while a key is being forgotten may be lost, which is fine for telling the hottest keys.
+	 */
+	private void maybeDecay(){
+		final long last = lastDecay.get();
+		final long halvings = (ticker.read() - last) / halfLifeNanos;
+		if(halvings <= 0 || !lastDecay.compareAndSet(last, last + halvings * halfLifeNanos)){
+			return;
+		}
+		for (Map.Entry<String, LongAdder> entry : retries.entrySet()) {
+			LongAdder adder = entry.getValue();
+			long sum = adder.sum();
+			long decayed = halvings >= Long.SIZE ? 0L : sum >> halvings;
+			if(decayed == 0L){
+				retries.remove(entry.getKey(), adder);
+			}else{
+				adder.add(decayed - sum);
+			}
+		}
+	}
+	
+	/**
+	 * Forgets all keys
+	 */
+	public void reset(){
+		retries.clear();
+	}
+
+}
@@ -0,0 +1,246 @@
+package phome.bidtracker.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Default {@link BidMetrics} keeping counters, latency histograms and the hottest items by contention,
+ * readable through JMX once {@link #register(String)}ed.
+ * 
+ * <br><br>Rationale:
+ * <br>Counters are {@link LongAdder}s, which spread concurrent increments over cells instead of 
+ *     contending on a single CAS, hence the metrics do not add contention of their own to the hot path
+ * <br>Latencies go into {@link LatencyHistogram}s which record without allocating
+ * <br>Only contended saves touch the {@link ContentionTracker}
+ *
+ */
+public class DefaultBidMetrics implements BidMetrics, BidMetricsMXBean {
+	
+	private static final Logger LOG = Logger.getLogger(DefaultBidMetrics.class);
+	
+	/**
+	 * Domain of the object names the metrics are registered with
+	 */
+	public static final String JMX_DOMAIN = "phome.bidtracker";
+	
+	private static final int HOTTEST_ITEMS = 10;
+	private static final int CONTENTION_CAPACITY = 10000;
+	
+	private final LongAdder acceptedBids = new LongAdder();
+	private final LongAdder rejectedBids = new LongAdder();
+	private final LongAdder deduplicatedBids = new LongAdder();
+	private final LongAdder bidStoreSaves = new LongAdder();
+	private final LongAdder bidStoreCasRetries = new LongAdder();
+	private final LongAdder userStoreSaves = new LongAdder();
+	private final LongAdder userStoreCasRetries = new LongAdder();
+	
+	private final LatencyHistogram bidLatency = new LatencyHistogram();
+	private final LatencyHistogram[] readLatencies;
+	private final ContentionTracker contention = new ContentionTracker(CONTENTION_CAPACITY);
+	
+	public DefaultBidMetrics() {
+		readLatencies = new LatencyHistogram[Read.values().length];
+		for (int i = 0; i < readLatencies.length; i++) {
+			readLatencies[i] = new LatencyHistogram();
+		}
+	}
+	
+
+	@Override
+	public void bidPlaced(boolean accepted, long latencyNanos) {
+		(accepted ? acceptedBids : rejectedBids).increment();
+		bidLatency.record(latencyNanos);
+	}
+
+	@Override
+	public void bidDeduplicated(boolean accepted) {
+		deduplicatedBids.increment();
+	}
+
+	@Override
+	public void readServed(Read read, long latencyNanos) {
+		readLatencies[read.ordinal()].record(latencyNanos);
+	}
+
+	@Override
+	public void bidStoreSaved(String itemId, int casRetries) {
+		bidStoreSaves.increment();
+		if(casRetries > 0){
+			bidStoreCasRetries.add(casRetries);
+			contention.record(itemId, casRetries);
+		}
+	}
+
+	@Override
+	public void userStoreSaved(String userId, int casRetries) {
+		userStoreSaves.increment();
+		if(casRetries > 0){
+			userStoreCasRetries.add(casRetries);
+		}
+	}
+	
+	/**
+	 * @return histogram of the bid latencies
+	 */
+	public LatencyHistogram bidLatency(){
+		return bidLatency;
+	}
+	
+	/**
+	 * @param read
+	 * @return histogram of the latencies of the read
+	 */
+	public LatencyHistogram readLatency(Read read){
+		return readLatencies[read.ordinal()];
+	}
+	
+	/**
+	 * @param k
+	 * @return up to k items with the most CAS retries mapped to their retries, most contended first
+	 */
+	public Map<String, Long> hottestItems(int k){
+		return contention.hottest(k);
+	}
+	
+	/**
+	 * Registers the metrics with the platform MBean server under
+	 * <code>phome.bidtracker:type=BidMetrics,name=&lt;name&gt;</code>
+	 * @param name
+	 * @return the object name registered
+	 */
+	public ObjectName register(String name){
+		try {
+			ObjectName objectName = objectName(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			LOG.info("Registered bid metrics as " + objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register bid metrics as " + name, e);
+		}
+	}
+	
+	/**
+	 * Unregisters the metrics registered with the name, if any
+	 * @param name
+	 */
+	public static void unregister(String name){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(name);
+			if(server.isRegistered(objectName)){
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister bid metrics " + name, e);
+		}
+	}
+	
+	private static ObjectName objectName(String name) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=BidMetrics,name=" + ObjectName.quote(name));
+	}
+	
+
+	@Override
+	public long getAcceptedBids() {
+		return acceptedBids.sum();
+	}
+
+	@Override
+	public long getRejectedBids() {
+		return rejectedBids.sum();
+	}
+
+	@Override
+	public long getDeduplicatedBids() {
+		return deduplicatedBids.sum();
+	}
+
+	@Override
+	public long getBidStoreSaves() {
+		return bidStoreSaves.sum();
+	}
+
+	@Override
+	public long getBidStoreCasRetries() {
+		return bidStoreCasRetries.sum();
+	}
+
+	@Override
+	public long getUserStoreSaves() {
+		return userStoreSaves.sum();
+	}
+
+	@Override
+	public long getUserStoreCasRetries() {
+		return userStoreCasRetries.sum();
+	}
+
+	@Override
+	public double getBidLatencyP50Micros() {
+		return micros(bidLatency, 50.0d);
+	}
+
+	@Override
+	public double getBidLatencyP99Micros() {
+		return micros(bidLatency, 99.0d);
+	}
+
+	@Override
+	public double getBidLatencyP999Micros() {
+		return micros(bidLatency, 99.9d);
+	}
+
+	@Override
+	public double getWinningBidLatencyP99Micros() {
+		return micros(readLatency(Read.WINNING_BID), 99.0d);
+	}
+
+	@Override
+	public double getBidsForItemLatencyP99Micros() {
+		return micros(readLatency(Read.BIDS_FOR_ITEM), 99.0d);
+	}
+
+	@Override
+	public double getItemsForUserLatencyP99Micros() {
+		return micros(readLatency(Read.ITEMS_FOR_USER), 99.0d);
+	}
+
+	@Override
+	public String[] getHottestItems() {
+		Map<String, Long> hottest = contention.hottest(HOTTEST_ITEMS);
+		String[] items = new String[hottest.size()];
+		int i = 0;
+		for (Map.Entry<String, Long> entry : hottest.entrySet()) {
+			items[i++] = entry.getKey() + "=" + entry.getValue();
+		}
+		return items;
+	}
+
+	@Override
+	public void reset() {
+		acceptedBids.reset();
+		rejectedBids.reset();
+		deduplicatedBids.reset();
+		bidStoreSaves.reset();
+		bidStoreCasRetries.reset();
+		userStoreSaves.reset();
+		userStoreCasRetries.reset();
+		bidLatency.reset();
+		for (LatencyHistogram histogram : readLatencies) {
+			histogram.reset();
+		}
+		contention.reset();
+	}
+	
+	private static double micros(LatencyHistogram histogram, double percentile){
+		return histogram.valueAtPercentile(percentile) / 1000.0d;
+	}
+
+}
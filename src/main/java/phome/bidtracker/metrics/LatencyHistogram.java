@@ -0,0 +1,117 @@
+package phome.bidtracker.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram in the spirit of HdrHistogram, recording without allocating or locking.
+ * 
+ * <br><br>Buckets are log-linear: values below {@value #SUB_BUCKETS} get a bucket each, and every power of 2 above
+ * is split into {@value #HALF_BUCKETS} linear buckets, hence a value is reported with a relative error under 2%.
+ * Values above 2^{@value #MAX_BITS} ns (about a minute) are clamped.
+ * 
+ * <br><br>Counts are striped over several arrays picked by thread id, 
+ * so that threads recording similar latencies do not fight over the same cache line.
+ *
+ */
+public final class LatencyHistogram {
+	
+	private static final int SUB_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int HALF_BITS = SUB_BITS - 1;
+	private static final int HALF_BUCKETS = 1 << HALF_BITS;
+	private static final int MAX_BITS = 36;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+	private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+	
+	private final AtomicLongArray[] stripes;
+	private final int stripeMask;
+	
+	public LatencyHistogram() {
+		int stripeCount = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 16) * 2 - 1);
+		stripes = new AtomicLongArray[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new AtomicLongArray(BUCKETS);
+		}
+		stripeMask = stripeCount - 1;
+	}
+	
+	/**
+	 * @param valueNanos - negative values are recorded as 0
+	 */
+	public void record(long valueNanos){
+		long value = valueNanos < 0 ? 0 : Math.min(valueNanos, MAX_VALUE);
+		stripes[(int)Thread.currentThread().getId() & stripeMask].getAndIncrement(bucketOf(value));
+	}
+	
+	/**
+	 * @return number of recorded values
+	 */
+	public long count(){
+		long count = 0;
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				count += stripe.get(i);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the value at the given percentile, as the highest value of its bucket.
+	 * <br>Counts keep changing while they are summed, hence the result is approximate under load.
+	 * @param percentile - in [0, 100]
+	 * @return value in ns, 0 if nothing recorded
+	 */
+	public long valueAtPercentile(double percentile){
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long count = stripe.get(i);
+				counts[i] += count;
+				total += count;
+			}
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(Math.min(percentile, 100.0d) / 100.0d * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank){
+				return highestValueOf(i);
+			}
+		}
+		return highestValueOf(BUCKETS - 1);
+	}
+	
+	/**
+	 * Clears all the counts
+	 */
+	public void reset(){
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				stripe.set(i, 0);
+			}
+		}
+	}
+	
+	static int bucketOf(long value){
+		if(value < SUB_BUCKETS){
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - HALF_BITS;
+		return (shift << HALF_BITS) + (int)(value >>> shift);
+	}
+	
+	static long highestValueOf(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int shift = (bucket >>> HALF_BITS) - 1;
+		long mantissa = (bucket & (HALF_BUCKETS - 1)) + HALF_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+}
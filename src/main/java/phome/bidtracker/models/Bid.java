@@ -3,12 +3,17 @@ package phome.bidtracker.models;
 /**
  *Immutable Bid Class 
  * 
+ * <br><br>A bid saved to a store carries its sequence number on the item: 1 for the first bid accepted on the item, 
+ * 2 for the next one and so on. A bid not saved yet has sequence 0.
+ * The sequence is not part of equality, hence a saved bid equals the bid it was saved from.
+ * 
 */
 public class Bid {
 	
     private final String userId;
     private final String itemId;
     private final double amount;
+    private final long sequence;
     
     /**
      * Disallows nulls as userId/ItemId and negative and 0 amount 
@@ -18,12 +23,48 @@ public class Bid {
      * 
      */
     public Bid(String itemId, String userId, double amount) {
-    	if(itemId == null || userId == null || amount <= 0.0d){
-    		throw new IllegalArgumentException("Invalid Args - Null User/item or non positive amt passed");
+    	this(itemId, userId, amount, 0L);
+    }
+    
+    /**
+     * Instantiates a saved bid
+     * Disallows nulls as userId/ItemId, negative and 0 amount and negative sequence
+     * @param itemId
+     * @param userId
+     * @param amount
+     * @param sequence
+     */
+    public Bid(String itemId, String userId, double amount, long sequence) {
+    	validate(itemId, userId, amount);
+    	if(sequence < 0){
+    		throw new IllegalArgumentException("Invalid Args - negative sequence passed");
     	}
         this.itemId = itemId;
         this.userId = userId;
         this.amount = amount;
+        this.sequence = sequence;
+    }
+    
+    /**
+     * @param sequence
+     * @return this bid with the given sequence number
+     */
+    public Bid withSequence(long sequence) {
+    	return sequence == this.sequence ? this : new Bid(itemId, userId, amount, sequence);
+    }
+
+    /**
+     * Applies the same validation as the constructor without instantiating a Bid,
+     * so that callers can vet a bid before deciding whether it is worth creating one
+     * @param itemId
+     * @param userId
+     * @param amount
+     * @throws IllegalArgumentException on null userId/ItemId or negative and 0 amount
+     */
+    public static void validate(String itemId, String userId, double amount) {
+    	if(itemId == null || userId == null || amount <= 0.0d){
+    		throw new IllegalArgumentException("Invalid Args - Null User/item or non positive amt passed");
+    	}
     }
 
     public String getItemId() {
@@ -38,6 +79,13 @@ public class Bid {
         return amount;
     }
     
+    /**
+     * @return sequence number of the bid on its item, 0 if not saved
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
     @Override
     public boolean equals(Object arg0) {
     	if(arg0 == null || !(arg0 instanceof Bid)) 
@@ -0,0 +1,509 @@
+package phome.bidtracker.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.tracker.AsyncBidTracker;
+import phome.bidtracker.tracker.PartitionBidTracker;
+
+/**
+ * Client of a {@link BidServer}, over a single connection shared by all the calling threads.
+ *
+ * <br><br>Pipelining: a call sends its request without waiting for the responses to the requests in flight.
+ * The async methods return as soon as the request is sent, hence a single thread can keep many requests in flight.
+ * A reader thread completes the calls as their responses come in, matching them by request id.
+ * <br>Batching: callers append their requests to a shared buffer, and whichever caller finds no write in progress
+ * writes out everything appended so far, its own request and the ones of the other callers, in one write.
+ * Callers arriving during a write only append, their requests go out with the next write.
+ * <br>Paging: the bids of an item and the items of the server are requested a page at a time,
+ * so that a long history or a large partition does not come as a single response.
+ *
+ * <br><br>The blocking methods implement {@link phome.bidtracker.tracker.BidTracker}, so the client can stand in
+ * for a local tracker, and {@link PartitionBidTracker} so that it can stand for a node of a cluster.
+ * Requests turned down by the server as invalid throw an IllegalArgumentException,
+ * as the local tracker would, other failures an IllegalStateException and connection failures an UncheckedIOException.
+ *
+ */
+public class BidClient implements AsyncBidTracker, PartitionBidTracker, AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(BidClient.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final SocketChannel channel;
+	private final Map<Integer, Call> calls = new ConcurrentHashMap<Integer, Call>();
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+	private final AtomicBoolean writing = new AtomicBoolean();
+	private final Thread reader;
+
+	//guarded by lock
+	private final Object lock = new Object();
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+	private IOException failure;
+
+
+	/**
+	 * Connects to the server
+	 * @param address
+	 * @throws IOException
+	 */
+	public BidClient(InetSocketAddress address) throws IOException {
+		if(address == null){
+			throw new IllegalArgumentException("Cannot instantiate BidClient with null args");
+		}
+		this.channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		this.reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, "bid-client-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	@Override
+	public CompletableFuture<Boolean> bidAsync(String itemId, String userId, double amt) {
+		Bid.validate(itemId, userId, amt);
+		Call call = new Call(Protocol.BID, itemId);
+		ByteBuffer frame = frame(call, Protocol.sizeOf(itemId) + Protocol.sizeOf(userId) + 8);
+		Protocol.putString(frame, itemId);
+		Protocol.putString(frame, userId);
+		frame.putDouble(amt);
+		send(call, frame);
+		return call.future();
+	}
+
+	/**
+	 * Submits a bid placed once per request id by the server, so that it can be sent again after a timeout
+	 * @param requestId
+	 * @param itemId
+	 * @param userId
+	 * @param amt
+	 * @return future completing with the outcome of the first request with this id
+	 */
+	public CompletableFuture<Boolean> bidAsync(String requestId, String itemId, String userId, double amt) {
+		checkId(requestId);
+		Bid.validate(itemId, userId, amt);
+		Call call = new Call(Protocol.BID_ONCE, itemId);
+		ByteBuffer frame = frame(call, Protocol.sizeOf(requestId) + Protocol.sizeOf(itemId) + Protocol.sizeOf(userId) + 8);
+		Protocol.putString(frame, requestId);
+		Protocol.putString(frame, itemId);
+		Protocol.putString(frame, userId);
+		frame.putDouble(amt);
+		send(call, frame);
+		return call.future();
+	}
+
+	/**
+	 * @param itemId
+	 * @return future completing with the winning bid, null if none
+	 */
+	public CompletableFuture<Bid> getWinningBidAsync(String itemId) {
+		return send(new Call(Protocol.WINNING_BID, itemId), itemId);
+	}
+
+	/**
+	 * @param itemId
+	 * @return future completing with the bids placed on the item, null if none
+	 */
+	public CompletableFuture<List<Bid>> getBidsforItemAsync(String itemId) {
+		return getBidsforItemAfterAsync(itemId, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Pages through the bids placed on the item, {@value Protocol#MAX_BIDS} at most per request
+	 * @param itemId
+	 * @param afterSequence - 0 to start from the first bid
+	 * @param maxCount
+	 * @return future completing with up to maxCount bids, null if none
+	 */
+	public CompletableFuture<List<Bid>> getBidsforItemAfterAsync(String itemId, long afterSequence, int maxCount) {
+		checkId(itemId);
+		return new Pager(itemId, maxCount).next(afterSequence);
+	}
+
+	/**
+	 * @param userId
+	 * @return future completing with the items the user bid on, null if none
+	 */
+	public CompletableFuture<Set<String>> getItemsforUserAsync(String userId) {
+		return send(new Call(Protocol.ITEMS_FOR_USER, null), userId);
+	}
+
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		return join(bidAsync(itemId, userId, amt));
+	}
+
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		return join(bidAsync(requestId, itemId, userId, amt));
+	}
+
+	@Override
+	public Bid getWinningBid(String itemId) {
+		return join(getWinningBidAsync(itemId));
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		return join(getBidsforItemAsync(itemId));
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		checkId(itemId);
+		Call call = new Call(Protocol.LATEST_BIDS, itemId);
+		ByteBuffer frame = frame(call, Protocol.sizeOf(itemId) + 4);
+		Protocol.putString(frame, itemId);
+		frame.putInt(count);
+		send(call, frame);
+		return join(call.<List<Bid>>future());
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		return join(getBidsforItemAfterAsync(itemId, afterSequence, maxCount));
+	}
+
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		return join(getItemsforUserAsync(userId));
+	}
+
+	/**
+	 * Gathers the items a page at a time
+	 */
+	@Override
+	public Set<String> getItems() {
+		Set<String> items = new HashSet<String>();
+		String after = null;
+		while(true){
+			List<String> page = getItemsAfter(after, Protocol.MAX_ITEMS);
+			items.addAll(page);
+			if(page.size() < Protocol.MAX_ITEMS){
+				return Collections.unmodifiableSet(items);
+			}
+			after = page.get(page.size() - 1);
+		}
+	}
+
+	@Override
+	public List<String> getItemsAfter(String afterItemId, int maxCount) {
+		List<String> items = null;
+		while(true){
+			int requested = Math.min(maxCount - (items == null ? 0 : items.size()), Protocol.MAX_ITEMS);
+			Call call = new Call(Protocol.ITEMS, null);
+			ByteBuffer frame = frame(call, 1 + (afterItemId == null ? 0 : Protocol.sizeOf(afterItemId)) + 4);
+			frame.put((byte)(afterItemId == null ? 0 : 1));
+			if(afterItemId != null){
+				Protocol.putString(frame, afterItemId);
+			}
+			frame.putInt(requested);
+			send(call, frame);
+			List<String> page = join(call.<List<String>>future());
+			if(items == null){
+				if(page.size() < requested || page.size() == maxCount){
+					return page;
+				}
+				items = new ArrayList<String>(page);
+			}else{
+				items.addAll(page);
+			}
+			if(page.size() < requested || items.size() == maxCount){
+				return Collections.unmodifiableList(items);
+			}
+			afterItemId = page.get(page.size() - 1);
+		}
+	}
+
+	@Override
+	public void evictItem(String itemId) {
+		join(send(new Call(Protocol.EVICT_ITEM, itemId), itemId));
+	}
+
+	/**
+	 * @return number of requests sent and not answered yet
+	 */
+	public int inFlight(){
+		return calls.size();
+	}
+
+	/**
+	 * Sends a request whose payload is a single id
+	 */
+	private <T> CompletableFuture<T> send(Call call, String id){
+		checkId(id);
+		ByteBuffer frame = frame(call, Protocol.sizeOf(id));
+		Protocol.putString(frame, id);
+		send(call, frame);
+		return call.future();
+	}
+
+	private static void checkId(String id){
+		if(id == null){
+			throw new IllegalArgumentException("Invalid Args - Null id passed");
+		}
+	}
+
+	/**
+	 * Starts the request frame of a call
+	 * @return the frame to write the payload to
+	 */
+	private ByteBuffer frame(Call call, int payload){
+		ByteBuffer frame = ByteBuffer.allocate(Protocol.HEADER + payload);
+		call.requestId = nextRequestId.incrementAndGet();
+		Protocol.startFrame(frame, call.requestId, call.op);
+		return frame;
+	}
+
+	/**
+	 * Appends the request to the pending requests and writes them out, unless another caller is at it
+	 */
+	private void send(Call call, ByteBuffer frame){
+		Protocol.endFrame(frame, 0);
+		frame.flip();
+		synchronized (lock) {
+			if(failure != null){
+				throw new UncheckedIOException("Connection failed", failure);
+			}
+			pending = Protocol.ensure(pending, frame.remaining());
+			pending.put(frame);
+			calls.put(call.requestId, call);
+		}
+		while(writing.compareAndSet(false, true)){
+			try {
+				while(true){
+					ByteBuffer batch;
+					synchronized (lock) {
+						if(pending.position() == 0){
+							break;
+						}
+						batch = pending;
+						pending = spare;
+						spare = batch;
+					}
+					batch.flip();
+					while(batch.hasRemaining()){
+						channel.write(batch);
+					}
+					batch.clear();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} finally {
+				writing.set(false);
+			}
+			synchronized (lock) {//requests appended after the last check but before the flag was cleared
+				if(pending.position() == 0 || failure != null){
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reader thread: completes the calls as their responses come in
+	 */
+	private void read(){
+		ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		try {
+			while(true){
+				if(channel.read(in) < 0){
+					throw new EOFException("Connection closed by server");
+				}
+				in.flip();
+				while(in.remaining() >= 4){
+					int length = in.getInt(in.position());
+					if(length < Protocol.HEADER - 4 || length > Protocol.MAX_FRAME * 64){
+						throw new IOException("Invalid frame length " + length);
+					}
+					if(in.remaining() < 4 + length){
+						break;
+					}
+					int next = in.position() + 4 + length;
+					in.getInt();
+					complete(in);
+					in.position(next);
+				}
+				in.compact();
+				if(!in.hasRemaining()){
+					in = Protocol.ensure(in, in.capacity());
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			fail(new IOException("Invalid response", e));
+		}
+	}
+
+	private void complete(ByteBuffer frame){
+		int requestId = frame.getInt();
+		byte status = frame.get();
+		Call call = calls.remove(requestId);
+		if(call == null){
+			LOG.warn("Dropped response to unknown request " + requestId);
+			return;
+		}
+		if(status == Protocol.INVALID_REQUEST){
+			call.result.completeExceptionally(new IllegalArgumentException(Protocol.getString(frame)));
+			return;
+		}
+		if(status != Protocol.OK){
+			call.result.completeExceptionally(new IllegalStateException("Server failed: " + Protocol.getString(frame)));
+			return;
+		}
+		switch (call.op) {
+		case Protocol.BID:
+		case Protocol.BID_ONCE:
+			call.result.complete(frame.get() == 1);
+			return;
+		case Protocol.WINNING_BID:
+			call.result.complete(frame.get() == 0 ? null : Protocol.getBid(frame, Protocol.getString(frame)));
+			return;
+		case Protocol.ITEMS_FOR_USER:
+			call.result.complete(Protocol.getStrings(frame));
+			return;
+		case Protocol.ITEMS:
+			call.result.complete(Protocol.getStringList(frame));
+			return;
+		case Protocol.EVICT_ITEM:
+			call.result.complete(null);
+			return;
+		default:
+			call.result.complete(Protocol.getBids(frame, call.itemId));
+		}
+	}
+
+	/**
+	 * Fails the calls in flight and any later call
+	 */
+	private void fail(IOException e){
+		synchronized (lock) {
+			if(failure == null){
+				failure = e;
+			}
+		}
+		for (Integer requestId : calls.keySet()) {
+			Call call = calls.remove(requestId);
+			if(call != null){
+				call.result.completeExceptionally(new UncheckedIOException("Connection failed", e));
+			}
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future){
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the connection, failing the calls in flight
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Gathers bids a page at a time, requesting the next page once the previous one is in.
+	 * The next request is sent off the reader thread, which must not block on a write.
+	 */
+	private final class Pager implements Function<List<Bid>, CompletionStage<List<Bid>>> {
+		private final String itemId;
+		private final int maxCount;
+		private List<Bid> bids;
+		private int requested;
+
+		Pager(String itemId, int maxCount) {
+			this.itemId = itemId;
+			this.maxCount = maxCount;
+		}
+
+		CompletableFuture<List<Bid>> next(long afterSequence){
+			requested = Math.min(maxCount - (bids == null ? 0 : bids.size()), Protocol.MAX_BIDS);
+			Call call = new Call(Protocol.BIDS_AFTER, itemId);
+			ByteBuffer frame = frame(call, Protocol.sizeOf(itemId) + 12);
+			Protocol.putString(frame, itemId);
+			frame.putLong(afterSequence);
+			frame.putInt(requested);
+			send(call, frame);
+			return call.<List<Bid>>future().thenComposeAsync(this);
+		}
+
+		@Override
+		public CompletionStage<List<Bid>> apply(List<Bid> page) {
+			if(bids == null){
+				if(page == null || page.size() < requested || page.size() == maxCount){
+					return CompletableFuture.completedFuture(page);
+				}
+				bids = new ArrayList<Bid>(page);
+			}else if(page != null){//null if evicted meanwhile
+				bids.addAll(page);
+			}
+			if(page == null || page.size() < requested || bids.size() == maxCount){
+				return CompletableFuture.completedFuture(Collections.unmodifiableList(bids));
+			}
+			return next(page.get(page.size() - 1).getSequence());
+		}
+	}
+
+
+	/**
+	 * A request in flight
+	 */
+	private static final class Call {
+		private final byte op;
+		private final String itemId;
+		private final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		private int requestId;
+
+		Call(byte op, String itemId) {
+			this.op = op;
+			this.itemId = itemId;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> CompletableFuture<T> future(){
+			return (CompletableFuture<T>)(CompletableFuture<?>)result;
+		}
+	}
+
+}
@@ -0,0 +1,386 @@
+package phome.bidtracker.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.PartitionBidTracker;
+
+/**
+ * Serves a {@link BidTracker} over TCP, speaking the binary {@link Protocol}.
+ * A {@link PartitionBidTracker} additionally gets its items listed and evicted, so that it can be a node of a cluster.
+ *
+ * <br><br>Threading: an acceptor thread hands the accepted connections round robin to a few IO threads,
+ * each running its own selector over its connections.
+ * Rationale:
+ * <br>Requests are executed right on the IO thread which read them, since the tracker calls are short and lock free.
+ *     A handoff to a worker pool would cost more than the call itself
+ * <br>A tracker which may block, e.g. with a journal waiting on fsync, calls for more IO threads
+ *
+ * <br><br>Pipelining and batching: every read drains all the complete requests received on the connection,
+ * and their responses are gathered in the write buffer of the connection, sent by a single write once the read is done.
+ * A client pipelining requests hence gets its responses in a few writes rather than one per request.
+ * <br>Responses which do not fit in the socket buffer are sent as the socket becomes writable. Meanwhile
+ * reading from the connection is suspended once its pending responses exceed {@value #HIGH_WATER_MARK} bytes,
+ * so a client not reading its responses cannot make the server buffer without bound.
+ * <br>Bids and items are served a page of at most {@value Protocol#MAX_BIDS} per response, so that the history of a hot item
+ * or the items of a large partition do not end up in a single response. The buffers of a connection grown by a large frame are shrunk back once it is through.
+ *
+ */
+public class BidServer implements AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(BidServer.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int HIGH_WATER_MARK = 1 << 20;
+
+	private final BidTracker tracker;
+	private final ServerSocketChannel serverChannel;
+	private final Reactor[] reactors;
+	private final Thread acceptor;
+	private volatile boolean closed;
+
+
+	/**
+	 * Binds the server and starts serving
+	 * @param tracker
+	 * @param address - port 0 binds to any free port, see {@link #getAddress()}
+	 * @param ioThreads
+	 * @throws IOException
+	 */
+	public BidServer(BidTracker tracker, InetSocketAddress address, int ioThreads) throws IOException {
+		if(tracker == null || address == null || ioThreads <= 0){
+			throw new IllegalArgumentException("Cannot instantiate BidServer with null args or no IO thread");
+		}
+		this.tracker = tracker;
+		this.serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address);
+		this.reactors = new Reactor[ioThreads];
+		for (int i = 0; i < ioThreads; i++) {
+			reactors[i] = new Reactor(i);
+			reactors[i].thread.start();
+		}
+		this.acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "bid-server-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return the address the server is bound to
+	 */
+	public InetSocketAddress getAddress() {
+		try {
+			return (InetSocketAddress)serverChannel.getLocalAddress();
+		} catch (IOException e) {
+			throw new IllegalStateException("Server closed", e);
+		}
+	}
+
+	private void accept(){
+		int next = 0;
+		while(!closed){
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				reactors[next++ % reactors.length].register(channel);
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				LOG.warn("Failed to accept connection", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes the open ones
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverChannel.close();
+		for (Reactor reactor : reactors) {
+			reactor.selector.wakeup();
+		}
+		for (Reactor reactor : reactors) {
+			try {
+				reactor.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * IO thread running a selector over its connections
+	 */
+	private final class Reactor implements Runnable {
+		private final Selector selector;
+		private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<SocketChannel>();
+		private final Thread thread;
+
+		Reactor(int id) throws IOException {
+			this.selector = Selector.open();
+			this.thread = new Thread(this, "bid-server-io-" + id);
+			thread.setDaemon(true);
+		}
+
+		void register(SocketChannel channel){
+			registrations.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!closed){
+					selector.select();
+					SocketChannel channel;
+					while((channel = registrations.poll()) != null){
+						channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection connection = (Connection)key.attachment();
+						try {
+							if(key.isValid() && key.isWritable()){
+								connection.flush(key);
+							}
+							if(key.isValid() && key.isReadable()){
+								connection.read(key);
+							}
+						} catch (IOException e) {
+							connection.close(key);
+						}
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("IO thread failed, dropping its connections", e);
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					((Connection)key.attachment()).close(key);
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOG.warn("Failed to close selector", e);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Buffers of a connection, only touched by its IO thread
+	 */
+	private final class Connection {
+		private final SocketChannel channel;
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);//in write mode
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read(SelectionKey key) throws IOException {
+			if(channel.read(in) < 0){
+				close(key);
+				return;
+			}
+			in.flip();
+			while(in.remaining() >= 4){
+				int length = in.getInt(in.position());
+				if(length < Protocol.HEADER - 4 || length > Protocol.MAX_FRAME){
+					throw new IOException("Invalid frame length " + length);
+				}
+				if(in.remaining() < 4 + length){
+					break;
+				}
+				ByteBuffer frame = in.slice();
+				frame.limit(4 + length);
+				frame.position(4);
+				in.position(in.position() + 4 + length);
+				handle(frame);
+			}
+			in.compact();
+			if(!in.hasRemaining()){//a frame larger than the buffer is coming
+				in = Protocol.ensure(in, in.capacity());
+			}else if(in.position() == 0 && in.capacity() > BUFFER_SIZE){//the large frame is handled
+				in = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			flush(key);
+		}
+
+		/**
+		 * Executes a request and writes its response
+		 */
+		private void handle(ByteBuffer frame){
+			int requestId = frame.getInt();
+			byte op = frame.get();
+			int start = out.position();
+			try {
+				respond(frame, requestId, op);
+			} catch (IllegalArgumentException | BufferUnderflowException | IndexOutOfBoundsException e) {
+				out.position(start);
+				fail(requestId, Protocol.INVALID_REQUEST, e);
+			} catch (RuntimeException e) {
+				LOG.warn("Failed to serve request " + op, e);
+				out.position(start);
+				fail(requestId, Protocol.FAILED, e);
+			}
+		}
+
+		private void respond(ByteBuffer frame, int requestId, byte op){
+			String id;
+			int start;
+			switch (op) {
+			case Protocol.BID:
+				id = Protocol.getString(frame);
+				String userId = Protocol.getString(frame);
+				boolean accepted = tracker.bid(id, userId, frame.getDouble());
+				writeOutcome(requestId, accepted);
+				return;
+			case Protocol.BID_ONCE:
+				String clientRequestId = Protocol.getString(frame);
+				id = Protocol.getString(frame);
+				userId = Protocol.getString(frame);
+				writeOutcome(requestId, tracker.bid(clientRequestId, id, userId, frame.getDouble()));
+				return;
+			case Protocol.WINNING_BID:
+				id = Protocol.getString(frame);
+				Bid bid = tracker.getWinningBid(id);
+				out = Protocol.ensure(out, Protocol.HEADER + 1 + (bid == null ? 0 : Protocol.sizeOf(id) + Protocol.sizeOf(bid.getUserId()) + 16));
+				start = startResponse(requestId);
+				out.put((byte)(bid == null ? 0 : 1));
+				if(bid != null){
+					Protocol.putString(out, id);
+					Protocol.putBid(out, bid);
+				}
+				Protocol.endFrame(out, start);
+				return;
+			case Protocol.BIDS_FOR_ITEM:
+				writeBids(requestId, tracker.getBidsforItemAfter(Protocol.getString(frame), 0, Protocol.MAX_BIDS));
+				return;
+			case Protocol.LATEST_BIDS:
+				id = Protocol.getString(frame);
+				writeBids(requestId, tracker.getLatestBidsforItem(id, frame.getInt()));
+				return;
+			case Protocol.BIDS_AFTER:
+				id = Protocol.getString(frame);
+				long afterSequence = frame.getLong();
+				writeBids(requestId, tracker.getBidsforItemAfter(id, afterSequence, Math.min(frame.getInt(), Protocol.MAX_BIDS)));
+				return;
+			case Protocol.ITEMS_FOR_USER:
+				out = Protocol.ensure(out, Protocol.HEADER);
+				start = startResponse(requestId);
+				out = Protocol.putStrings(out, tracker.getItemsforUser(Protocol.getString(frame)));
+				Protocol.endFrame(out, start);
+				return;
+			case Protocol.ITEMS:
+				String afterItemId = frame.get() == 1 ? Protocol.getString(frame) : null;
+				List<String> items = partition().getItemsAfter(afterItemId, Math.min(frame.getInt(), Protocol.MAX_ITEMS));
+				out = Protocol.ensure(out, Protocol.HEADER);
+				start = startResponse(requestId);
+				out = Protocol.putStrings(out, items);
+				Protocol.endFrame(out, start);
+				return;
+			case Protocol.EVICT_ITEM:
+				partition().evictItem(Protocol.getString(frame));
+				out = Protocol.ensure(out, Protocol.HEADER);
+				Protocol.endFrame(out, startResponse(requestId));
+				return;
+			default:
+				throw new IllegalArgumentException("Invalid Args - unknown request " + op);
+			}
+		}
+
+		private PartitionBidTracker partition(){
+			if(!(tracker instanceof PartitionBidTracker)){
+				throw new IllegalArgumentException("Invalid Args - the tracker served does not hold a partition");
+			}
+			return (PartitionBidTracker)tracker;
+		}
+
+		private int startResponse(int requestId){
+			return Protocol.startFrame(out, requestId, Protocol.OK);
+		}
+
+		private void writeOutcome(int requestId, boolean accepted){
+			out = Protocol.ensure(out, Protocol.HEADER + 1);
+			int start = startResponse(requestId);
+			out.put((byte)(accepted ? 1 : 0));
+			Protocol.endFrame(out, start);
+		}
+
+		private void writeBids(int requestId, Iterable<Bid> bids){
+			out = Protocol.ensure(out, Protocol.HEADER);
+			int start = startResponse(requestId);
+			out = Protocol.putBids(out, bids);
+			Protocol.endFrame(out, start);
+		}
+
+		private void fail(int requestId, byte status, RuntimeException e){
+			String message = String.valueOf(e.getMessage());
+			if(message.length() > 1024){
+				message = message.substring(0, 1024);
+			}
+			out = Protocol.ensure(out, Protocol.HEADER + Protocol.sizeOf(message));
+			int start = Protocol.startFrame(out, requestId, status);
+			Protocol.putString(out, message);
+			Protocol.endFrame(out, start);
+		}
+
+		/**
+		 * Writes the pending responses, waiting for the socket to be writable if they do not fit,
+		 * and suspending reads while too much is pending
+		 */
+		void flush(SelectionKey key) throws IOException {
+			out.flip();
+			channel.write(out);
+			int pending = out.remaining();
+			out.compact();
+			if(pending == 0){
+				if(out.capacity() > BUFFER_SIZE){//grown by a large response, let it go
+					out = ByteBuffer.allocate(BUFFER_SIZE);
+				}
+				key.interestOps(SelectionKey.OP_READ);
+			}else{
+				key.interestOps(pending > HIGH_WATER_MARK ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		void close(SelectionKey key){
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close connection", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package phome.bidtracker.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Binary protocol spoken between {@link BidServer} and {@link BidClient}.
+ *
+ * <br><br>Every message is a frame: <code>int length</code> of the rest of the frame, <code>int requestId</code>,
+ * then a request opcode or a response status, then the payload. All numbers are big endian.
+ * <br>Strings are a <code>short</code> byte length followed by UTF-8 bytes. Lists and sets are an <code>int</code> count
+ * followed by the elements, -1 standing for null. A bid is its user id, amount and sequence,
+ * preceded by its item id when not implied by the request.
+ *
+ * <br><br>Requests:
+ * <br>BID: itemId, userId, double amount - response boolean
+ * <br>WINNING_BID: itemId - response byte present, then itemId and bid
+ * <br>BIDS_FOR_ITEM: itemId - response list of the first {@value #MAX_BIDS} bids, the next ones are paged with BIDS_AFTER
+ * <br>LATEST_BIDS: itemId, int count - response list of bids
+ * <br>BIDS_AFTER: itemId, long afterSequence, int maxCount - response list of up to {@value #MAX_BIDS} bids
+ * <br>ITEMS_FOR_USER: userId - response set of item ids
+ * <br>ITEMS: byte present, then afterItemId, int maxCount - response list of up to {@value #MAX_ITEMS} item ids held
+ * 		following afterItemId in the order of the ids, served by a {@link phome.bidtracker.tracker.PartitionBidTracker} only
+ * <br>EVICT_ITEM: itemId - empty response, served by a {@link phome.bidtracker.tracker.PartitionBidTracker} only
+ * <br>BID_ONCE: requestId, itemId, userId, double amount - response boolean, the outcome of the first request with this id
+ * <br>Responses carry the id of their request and are sent in the order the requests were received,
+ * hence a client can pipeline requests on a connection.
+ * A request failing on the server gets a status other than OK and an error message as payload.
+ *
+ */
+final class Protocol {
+
+	static final int MAX_FRAME = 1 << 20;
+	static final int MAX_BIDS = 1 << 12;
+	static final int MAX_ITEMS = 1 << 12;
+	static final int HEADER = 4 + 4 + 1;
+
+	static final byte BID = 1;
+	static final byte WINNING_BID = 2;
+	static final byte BIDS_FOR_ITEM = 3;
+	static final byte LATEST_BIDS = 4;
+	static final byte BIDS_AFTER = 5;
+	static final byte ITEMS_FOR_USER = 6;
+	static final byte ITEMS = 7;
+	static final byte EVICT_ITEM = 8;
+	static final byte BID_ONCE = 9;
+
+	static final byte OK = 0;
+	static final byte INVALID_REQUEST = 1;
+	static final byte FAILED = 2;
+
+	private Protocol() {
+	}
+
+	/**
+	 * Starts a frame, leaving room for its length
+	 * @return position of the frame, to pass to {@link #endFrame(ByteBuffer, int)}
+	 */
+	static int startFrame(ByteBuffer buffer, int requestId, byte code){
+		int start = buffer.position();
+		buffer.putInt(0);
+		buffer.putInt(requestId);
+		buffer.put(code);
+		return start;
+	}
+
+	static void endFrame(ByteBuffer buffer, int start){
+		buffer.putInt(start, buffer.position() - start - 4);
+	}
+
+	/**
+	 * @return the buffer, or a larger copy of it with room for the extra bytes
+	 */
+	static ByteBuffer ensure(ByteBuffer buffer, int extra){
+		if(buffer.remaining() >= extra){
+			return buffer;
+		}
+		int capacity = buffer.capacity();
+		while(capacity - buffer.position() < extra){
+			capacity *= 2;
+		}
+		ByteBuffer larger = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		larger.put(buffer);
+		return larger;
+	}
+
+	/**
+	 * @return bytes needed by the string
+	 */
+	static int sizeOf(String s){
+		return 2 + s.length() * 3;
+	}
+
+	static void putString(ByteBuffer buffer, String s){
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > Short.MAX_VALUE){
+			throw new IllegalArgumentException("Invalid Args - id longer than " + Short.MAX_VALUE + " bytes");
+		}
+		buffer.putShort((short)bytes.length);
+		buffer.put(bytes);
+	}
+
+	static String getString(ByteBuffer buffer){
+		int length = buffer.getShort();
+		String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+
+	static void putBid(ByteBuffer buffer, Bid bid){
+		putString(buffer, bid.getUserId());
+		buffer.putDouble(bid.getAmount());
+		buffer.putLong(bid.getSequence());
+	}
+
+	static Bid getBid(ByteBuffer buffer, String itemId){
+		String userId = getString(buffer);
+		double amount = buffer.getDouble();
+		return new Bid(itemId, userId, amount, buffer.getLong());
+	}
+
+	/**
+	 * Writes the bids of an item, growing the buffer as needed
+	 * @return the buffer written to
+	 */
+	static ByteBuffer putBids(ByteBuffer buffer, Iterable<Bid> bids){
+		buffer = ensure(buffer, 4);
+		if(bids == null){
+			buffer.putInt(-1);
+			return buffer;
+		}
+		int countAt = buffer.position();
+		buffer.putInt(0);
+		int count = 0;
+		for (Bid bid : bids) {
+			buffer = ensure(buffer, sizeOf(bid.getUserId()) + 16);
+			putBid(buffer, bid);
+			count++;
+		}
+		buffer.putInt(countAt, count);
+		return buffer;
+	}
+
+	static List<Bid> getBids(ByteBuffer buffer, String itemId){
+		int count = buffer.getInt();
+		if(count < 0){
+			return null;
+		}
+		List<Bid> bids = new ArrayList<Bid>(count);
+		for (int i = 0; i < count; i++) {
+			bids.add(getBid(buffer, itemId));
+		}
+		return Collections.unmodifiableList(bids);
+	}
+
+	/**
+	 * Writes the strings, growing the buffer as needed
+	 * @return the buffer written to
+	 */
+	static ByteBuffer putStrings(ByteBuffer buffer, Collection<String> strings){
+		buffer = ensure(buffer, 4);
+		if(strings == null){
+			buffer.putInt(-1);
+			return buffer;
+		}
+		int countAt = buffer.position();
+		buffer.putInt(0);
+		int count = 0;
+		for (String s : strings) {
+			buffer = ensure(buffer, sizeOf(s));
+			putString(buffer, s);
+			count++;
+		}
+		buffer.putInt(countAt, count);
+		return buffer;
+	}
+
+	static Set<String> getStrings(ByteBuffer buffer){
+		int count = buffer.getInt();
+		if(count < 0){
+			return null;
+		}
+		Set<String> strings = new HashSet<String>(count * 2);
+		for (int i = 0; i < count; i++) {
+			strings.add(getString(buffer));
+		}
+		return Collections.unmodifiableSet(strings);
+	}
+
+	/**
+	 * Reads strings written by {@link #putStrings(ByteBuffer, Collection)}, in their order
+	 */
+	static List<String> getStringList(ByteBuffer buffer){
+		int count = buffer.getInt();
+		if(count < 0){
+			return null;
+		}
+		List<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			strings.add(getString(buffer));
+		}
+		return Collections.unmodifiableList(strings);
+	}
+
+}
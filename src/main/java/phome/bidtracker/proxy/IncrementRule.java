@@ -0,0 +1,16 @@
+package phome.bidtracker.proxy;
+
+
+/**
+ * Increment rule of the auctions: how much a bid must at least rise the price by
+ * 
+ */
+public interface IncrementRule {
+	
+	/**
+	 * @param price - current price of the item, 0 if no bid yet
+	 * @return the minimum rise over the price, positive
+	 */
+	public double increment(double price);
+
+}
@@ -0,0 +1,200 @@
+package phome.bidtracker.proxy;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.tracker.BidTracker;
+
+/**
+ * Decorates a tracker with proxy bidding: a user registers the maximum amount they are willing to pay,
+ * and the tracker bids on their behalf, just enough to keep the lead, as long as the maximum allows.
+ *
+ * <br><br>Resolution: only the highest proxy of an item matters, the others being resolved as they come.
+ * A new proxy is settled against it in one step, rather than by the two bidders raising in turns:
+ * <br>A lower proxy bids its maximum, and the leading proxy answers with one increment over it
+ * <br>A higher proxy takes the lead: the former leading proxy bids its maximum, and the new one one increment over it
+ * <br>A proxy equal to the leading one loses, the earlier proxy bidding that maximum
+ * <br>Answers are capped by the maximum of the proxy, and follow the {@link IncrementRule} of the auctions.
+ * <br>A plain bid outbidding a leading proxy is answered the same way, and exhausts the proxy if above its maximum.
+ *
+ * <br><br>The bids placed by the proxies are regular bids of the delegate tracker, hence they appear in the history
+ * of the item and reach its listeners, whereas the maximums stay private to this tracker.
+ * Where two scripted bidders would raise by one increment per call, the proxies settle a bidding war in two bids.
+ *
+ * <br><br>Concurrency: proxies and the answers to plain bids are settled under a lock per item with proxies,
+ * so that the bids of a settlement are placed in order. Plain bids on items without proxy go straight to the delegate,
+ * and only check for a proxy once accepted.
+ *
+ */
+public class ProxyBidTracker implements BidTracker {
+
+	private final BidTracker delegate;
+	private final IncrementRule incrementRule;
+	private final ConcurrentMap<String, Proxy> proxies = new ConcurrentHashMap<String, Proxy>();
+
+
+	public ProxyBidTracker(BidTracker delegate, IncrementRule incrementRule) {
+		if(delegate == null || incrementRule == null){
+			throw new IllegalArgumentException("Cannot instantiate ProxyBidTracker with null args");
+		}
+		this.delegate = delegate;
+		this.incrementRule = incrementRule;
+	}
+
+
+	/**
+	 * Registers the maximum a user bids up to on an item, and settles it against the leading proxy of the item if any.
+	 * <br>A user raising their own leading proxy only raises its maximum.
+	 * @param itemId
+	 * @param userId
+	 * @param maxAmount
+	 * @return true if the user leads the item once settled <br>
+	 * 		   false if outbid, the maximum being too low
+	 */
+	public boolean placeProxyBid(String itemId, String userId, double maxAmount){
+		Bid.validate(itemId, userId, maxAmount);
+		Proxy proxy = proxyFor(itemId);
+		synchronized (proxy) {
+			Bid winning = delegate.getWinningBid(itemId);
+			if(winning != null && maxAmount <= winning.getAmount()){
+				return false;
+			}
+			if(proxy.userId == null){
+				proxy.lead(userId, maxAmount);
+			}else if(proxy.userId.equals(userId)){
+				proxy.lead(userId, Math.max(proxy.maxAmount, maxAmount));
+			}else if(maxAmount > proxy.maxAmount){
+				if(winning == null || proxy.maxAmount > winning.getAmount()){
+					delegate.bid(itemId, proxy.userId, proxy.maxAmount);
+				}
+				proxy.lead(userId, maxAmount);
+			}else if(maxAmount < proxy.maxAmount){
+				delegate.bid(itemId, userId, maxAmount);
+			}else{
+				delegate.bid(itemId, proxy.userId, proxy.maxAmount);
+			}
+			answer(itemId, proxy);
+			Bid settled = delegate.getWinningBid(itemId);
+			return settled != null && settled.getUserId().equals(userId);
+		}
+	}
+
+	/**
+	 * Places a plain bid, answered by the leading proxy of the item if any
+	 * @return true if bid was placed, even if the proxy outbid it right away <br>
+	 * 		   false if bid was declined
+	 */
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		return answered(itemId, delegate.bid(itemId, userId, amt));
+	}
+
+	/**
+	 * Places a plain bid once per request id, answered by the leading proxy of the item if any
+	 * @return true if bid was placed, even if the proxy outbid it right away <br>
+	 * 		   false if bid was declined
+	 */
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		return answered(itemId, delegate.bid(requestId, itemId, userId, amt));
+	}
+
+	@Override
+	public Bid getWinningBid(String itemId) {
+		return delegate.getWinningBid(itemId);
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		return delegate.getBidsforItem(itemId);
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		return delegate.getLatestBidsforItem(itemId, count);
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		return delegate.getBidsforItemAfter(itemId, afterSequence, maxCount);
+	}
+
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		return delegate.getItemsforUser(userId);
+	}
+
+
+	private Proxy proxyFor(String itemId){
+		Proxy proxy = proxies.get(itemId);
+		if(proxy == null){
+			Proxy created = new Proxy();
+			proxy = proxies.putIfAbsent(itemId, created);
+			if(proxy == null){
+				proxy = created;
+			}
+		}
+		return proxy;
+	}
+
+	/**
+	 * Answers an accepted plain bid with the leading proxy of the item if any.
+	 * A retried bid is looked at again, which leaves the item as is if the proxy answered it already
+	 * @return accepted
+	 */
+	private boolean answered(String itemId, boolean accepted){
+		Proxy proxy;
+		if(accepted && (proxy = proxies.get(itemId)) != null){
+			synchronized (proxy) {
+				answer(itemId, proxy);
+			}
+		}
+		return accepted;
+	}
+
+	/**
+	 * Makes the leading proxy lead the item, by one increment over the winning bid capped by its maximum.
+	 * Retried when a plain bid gets in the way, and given up once the maximum is outbid.
+	 * <br>Also given up when the delegate declines the answer while the winning bid stays the same,
+	 * i.e. for another reason than the price, e.g. the item being closed or the bid shed. The proxy stays registered.
+	 * <br>Called under the lock of the proxy
+	 */
+	private void answer(String itemId, Proxy proxy){
+		while(proxy.userId != null){
+			Bid winning = delegate.getWinningBid(itemId);
+			if(winning != null && winning.getUserId().equals(proxy.userId)){
+				return;
+			}
+			double price = winning == null ? 0.0d : winning.getAmount();
+			if(price >= proxy.maxAmount){
+				proxy.lead(null, 0.0d);
+				return;
+			}
+			if(delegate.bid(itemId, proxy.userId, Math.min(proxy.maxAmount, price + incrementRule.increment(price)))){
+				return;
+			}
+			Bid after = delegate.getWinningBid(itemId);
+			if(winning == null ? after == null : winning.equals(after)){//amounts only rise, hence not outbid meanwhile
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Leading proxy of an item, guarded by its own lock
+	 */
+	private static final class Proxy {
+		private String userId;
+		private double maxAmount;
+
+		void lead(String userId, double maxAmount){
+			this.userId = userId;
+			this.maxAmount = maxAmount;
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package phome.bidtracker.proxy;
+
+import java.util.Arrays;
+
+/**
+ * Increment rule by price tiers, as auction sites publish them e.g. 0.05 below 1, 0.25 below 5, 0.5 below 25 and 1 above
+ * <pre>
+ * new TieredIncrementRule(new double[]{1, 5, 25}, new double[]{0.05, 0.25, 0.5, 1})
+ * </pre>
+ *
+ */
+public final class TieredIncrementRule implements IncrementRule {
+	
+	private final double[] thresholds;
+	private final double[] increments;
+	
+	/**
+	 * @param thresholds - ascending prices from which the next increment applies
+	 * @param increments - positive, one more than thresholds, the first applying below the first threshold
+	 */
+	public TieredIncrementRule(double[] thresholds, double[] increments) {
+		if(thresholds == null || increments == null || increments.length != thresholds.length + 1){
+			throw new IllegalArgumentException("Cannot instantiate TieredIncrementRule with null args or not one more increment than thresholds");
+		}
+		for (int i = 0; i < increments.length; i++) {
+			if(increments[i] <= 0 || i > 0 && i < thresholds.length && thresholds[i] <= thresholds[i - 1]){
+				throw new IllegalArgumentException("Invalid Args - increments must be positive and thresholds ascending");
+			}
+		}
+		this.thresholds = thresholds.clone();
+		this.increments = increments.clone();
+	}
+	
+	/**
+	 * A single increment whatever the price
+	 * @param increment
+	 */
+	public TieredIncrementRule(double increment) {
+		this(new double[0], new double[]{increment});
+	}
+
+	@Override
+	public double increment(double price) {
+		int i = Arrays.binarySearch(thresholds, price);
+		return increments[i >= 0 ? i + 1 : -i - 1];
+	}
+
+}
@@ -0,0 +1,355 @@
+package phome.bidtracker.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.tracker.BidListener;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+/**
+ * Applies the log of accepted bids shipped by a {@link ReplicationLeader} to its own stores,
+ * and serves the reads of the tracker from them, see {@link #getTracker()}.
+ *
+ * <br><br>The log is applied in its order by a single thread, saving every bid to the stores as the leader did.
+ * Since the bids on an item come in the order the leader accepted them, the follower store accepts them all
+ * and gives them the same sequence on the item as the leader did.
+ * A lost connection is retried every {@value #RECONNECT_MILLIS} ms, resuming after the last sequence applied.
+ * A leader silent for {@value #READ_TIMEOUT_MILLIS} ms, heartbeats included, is taken as lost.
+ *
+ * <br><br>Lag: the leader tells its last sequence with every batch and heartbeat, see {@link #lag()}.
+ * The follower acknowledges the sequence it applied after every batch, which the leader reports too.
+ *
+ * <br><br>Failover: once the leader is gone, {@link #promote(BidListener...)} turns the follower into a tracker
+ * accepting bids, to be served by a new leader. The other followers are pointed to it with {@link #follow(InetSocketAddress)},
+ * and get a snapshot of its store since they followed another leader.
+ * A follower keeps the bids it already has, so one which was ahead of the new leader
+ * should rather be started over with empty stores.
+ *
+ * <br><br>Wire format, all numbers big endian, strings as modified UTF-8 as per {@link DataOutputStream}:
+ * <br>On connection the leader sends its id (long),
+ * the follower answers with the id of the leader it followed so far, 0 if none, and the last sequence it applied (long)
+ * <br>Then the leader sends frames starting with a type byte:
+ * <br>BATCH: last sequence of the leader (long), entry count (int), entries as sequence (long), item, user, amount (double)
+ * <br>HEARTBEAT: last sequence of the leader (long)
+ * <br>SNAPSHOT: bid count (int), bids as item, user, amount (double)
+ * <br>SNAPSHOT_END: sequence to resume the log after (long)
+ * <br>The follower sends the last sequence it applied (long) after every frame but snapshot chunks.
+ *
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationFollower.class);
+
+	static final long RECONNECT_MILLIS = 100;
+	static final int READ_TIMEOUT_MILLIS = 1000;
+
+	private final BidStore bidStore;
+	private final UserBidHistoryStore userStore;
+	private final BidTracker reader;
+	private final Thread thread;
+	private final Object appliedLock = new Object();
+
+	private volatile InetSocketAddress leader;
+	private volatile Socket socket;
+	private volatile long leaderId;
+	private volatile long applied;
+	private volatile long leaderLast;
+	private volatile boolean connected;
+	private volatile boolean closed;
+	private volatile BidTracker promoted;
+
+
+	/**
+	 * Starts following the leader
+	 * @param leader - address of the {@link ReplicationLeader}
+	 * @param bidStore - empty store to apply the log to
+	 * @param userStore - empty store to apply the log to
+	 */
+	public ReplicationFollower(InetSocketAddress leader, BidStore bidStore, UserBidHistoryStore userStore) {
+		if(leader == null || bidStore == null || userStore == null){
+			throw new IllegalArgumentException("Cannot instantiate ReplicationFollower with null args");
+		}
+		this.leader = leader;
+		this.bidStore = bidStore;
+		this.userStore = userStore;
+		this.reader = new BidTrackerImpl(bidStore, userStore);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				follow();
+			}
+		}, "replication-follower");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return last sequence of the log of the leader applied to the stores, 0 if none
+	 */
+	public long appliedSequence(){
+		return applied;
+	}
+
+	/**
+	 * @return entries of the log the leader had and this follower did not apply yet, as of the last word from the leader
+	 */
+	public long lag(){
+		return Math.max(0L, leaderLast - applied);
+	}
+
+	/**
+	 * @return whether the follower is connected to its leader
+	 */
+	public boolean isConnected(){
+		return connected;
+	}
+
+	/**
+	 * Waits for the log to be applied up to a sequence, e.g. to read the writes made on the leader
+	 * @param sequence - of the log of the leader
+	 * @param timeout
+	 * @param unit
+	 * @return whether the sequence was applied in time
+	 * @throws InterruptedException
+	 */
+	public boolean awaitApplied(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (appliedLock) {
+			while(applied < sequence){
+				long left = deadline - System.nanoTime();
+				if(left <= 0){
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(appliedLock, left);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Follows another leader, e.g. after a failover
+	 * @param leader
+	 */
+	public void follow(InetSocketAddress leader){
+		if(leader == null){
+			throw new IllegalArgumentException("Invalid Args - Null leader passed");
+		}
+		this.leader = leader;
+		disconnect();
+	}
+
+	/**
+	 * @return tracker serving the reads from the stores of the follower.
+	 * 		   Bids are turned down with an IllegalStateException until the follower is promoted, then accepted
+	 */
+	public BidTracker getTracker(){
+		return new BidTracker() {
+			@Override
+			public boolean bid(String itemId, String userId, double amt) {
+				BidTracker tracker = promoted;
+				if(tracker == null){
+					throw new IllegalStateException("Follower is read only until promoted");
+				}
+				return tracker.bid(itemId, userId, amt);
+			}
+
+			@Override
+			public boolean bid(String requestId, String itemId, String userId, double amt) {
+				BidTracker tracker = promoted;
+				if(tracker == null){
+					throw new IllegalStateException("Follower is read only until promoted");
+				}
+				return tracker.bid(requestId, itemId, userId, amt);
+			}
+
+			@Override
+			public Bid getWinningBid(String itemId) {
+				return reader.getWinningBid(itemId);
+			}
+
+			@Override
+			public Iterable<Bid> getBidsforItem(String itemId) {
+				return reader.getBidsforItem(itemId);
+			}
+
+			@Override
+			public List<Bid> getLatestBidsforItem(String itemId, int count) {
+				return reader.getLatestBidsforItem(itemId, count);
+			}
+
+			@Override
+			public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+				return reader.getBidsforItemAfter(itemId, afterSequence, maxCount);
+			}
+
+			@Override
+			public Set<String> getItemsforUser(String userId) {
+				return reader.getItemsforUser(userId);
+			}
+		};
+	}
+
+	/**
+	 * Stops following and turns the follower into a tracker accepting bids over its stores.
+	 * <br>The new log is typically a {@link phome.bidtracker.feed.BidFeed} over the bid store, created after {@link #close()}
+	 * so that it is seeded with everything applied, and shipped by a new {@link ReplicationLeader}
+	 * @param listeners - notified of the bids accepted from now on
+	 * @return the tracker, which {@link #getTracker()} delegates the bids to from now on
+	 */
+	public BidTracker promote(BidListener... listeners){
+		close();
+		BidTracker tracker = new BidTrackerImpl(bidStore, userStore, listeners);
+		promoted = tracker;
+		return tracker;
+	}
+
+	/**
+	 * @return the store the log is applied to
+	 */
+	public BidStore getBidStore() {
+		return bidStore;
+	}
+
+	/**
+	 * Stops following, waiting for the bids being applied
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		disconnect();
+		if(Thread.currentThread() != thread){
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void disconnect(){
+		Socket current = socket;
+		if(current != null){
+			try {
+				current.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close leader connection", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Follower thread: connects, applies the log until the connection is lost, and retries
+	 */
+	private void follow(){
+		while(!closed){
+			InetSocketAddress address = leader;
+			try {
+				Socket current = new Socket();
+				socket = current;
+				if(closed){//closed before the socket could be closed
+					current.close();
+					return;
+				}
+				current.connect(address, READ_TIMEOUT_MILLIS);
+				current.setTcpNoDelay(true);
+				current.setSoTimeout(READ_TIMEOUT_MILLIS);
+				apply(new DataInputStream(new BufferedInputStream(current.getInputStream(), 1 << 16)),
+						new DataOutputStream(new BufferedOutputStream(current.getOutputStream())));
+			} catch (IOException e) {
+				if(!closed && address == leader){
+					LOG.warn("Lost leader " + address + ", retrying", e);
+				}
+			} catch (RuntimeException e) {
+				LOG.error("Failed to apply the log of " + address + ", retrying", e);
+			} finally {
+				connected = false;
+				disconnect();
+			}
+			if(!closed && address == leader){
+				try {
+					Thread.sleep(RECONNECT_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void apply(DataInputStream in, DataOutputStream out) throws IOException {
+		long id = in.readLong();
+		out.writeLong(leaderId);
+		out.writeLong(applied);
+		out.flush();
+		if(id != leaderId){
+			LOG.info("Following leader " + id + " at " + leader);
+		}
+		connected = true;
+		while(true){
+			byte type = in.readByte();
+			switch (type) {
+			case ReplicationLeader.BATCH:
+				leaderLast = in.readLong();
+				long sequence = applied;
+				for (int i = in.readInt(); i > 0; i--) {
+					sequence = in.readLong();
+					save(in);
+				}
+				applied(sequence);
+				break;
+			case ReplicationLeader.HEARTBEAT:
+				leaderLast = in.readLong();
+				break;
+			case ReplicationLeader.SNAPSHOT:
+				for (int i = in.readInt(); i > 0; i--) {
+					save(in);
+				}
+				continue;
+			case ReplicationLeader.SNAPSHOT_END:
+				long resume = in.readLong();
+				leaderId = id;
+				leaderLast = resume;
+				applied(resume);
+				break;
+			default:
+				throw new IOException("Invalid frame type " + type);
+			}
+			out.writeLong(applied);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Saves a bid of the log, bids already in the store being turned down as not higher
+	 */
+	private void save(DataInputStream in) throws IOException {
+		String itemId = in.readUTF();
+		String userId = in.readUTF();
+		Bid bid = bidStore.trySave(new Bid(itemId, userId, in.readDouble()));
+		if(bid != null){
+			userStore.save(userId, itemId);
+		}
+	}
+
+	private void applied(long sequence){
+		synchronized (appliedLock) {
+			applied = sequence;
+			appliedLock.notifyAll();
+		}
+	}
+
+}
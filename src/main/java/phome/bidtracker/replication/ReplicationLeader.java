@@ -0,0 +1,283 @@
+package phome.bidtracker.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.feed.BidFeed;
+import phome.bidtracker.feed.FeedCursor;
+import phome.bidtracker.feed.FeedEntry;
+import phome.bidtracker.feed.FeedResyncException;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+
+/**
+ * Ships the log of accepted bids of this node to {@link ReplicationFollower}s over TCP.
+ *
+ * <br><br>The log is the {@link BidFeed} of the tracker, i.e. every accepted bid in a global order
+ * which keeps the order of the bids on an item. Every follower gets its own {@link FeedCursor} and a thread
+ * streaming the entries in batches, with a heartbeat carrying the last sequence of the log when there is nothing to ship.
+ *
+ * <br><br>A follower says which leader and sequence it applied the log up to. It gets a snapshot of the bid store first
+ * if it followed another leader, or if the entries it misses are not in the feed any more.
+ * The snapshot is taken after noting the last sequence of the feed, and streaming resumes from that sequence.
+ * Bids both in the snapshot and in the entries after are turned down by the follower store as not higher,
+ * the same way a journal is replayed over a snapshot.
+ * <br>Followers acknowledge the sequence they applied, which gives the lag of every follower.
+ *
+ * <br>Wire format, see {@link ReplicationFollower}.
+ *
+ */
+public class ReplicationLeader implements AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationLeader.class);
+
+	static final byte BATCH = 1;
+	static final byte SNAPSHOT = 2;
+	static final byte SNAPSHOT_END = 3;
+	static final byte HEARTBEAT = 4;
+
+	static final int MAX_BATCH = 1024;
+	static final long HEARTBEAT_MILLIS = 50;
+
+	private final BidFeed feed;
+	private final BidStore bidStore;
+	private final long leaderId = UUID.randomUUID().getMostSignificantBits();
+	private final ServerSocket serverSocket;
+	private final ConcurrentMap<Shipper, Long> acked = new ConcurrentHashMap<Shipper, Long>();
+	private final AtomicInteger shippers = new AtomicInteger();
+	private volatile boolean closed;
+
+	/**
+	 * Binds the leader and starts accepting followers
+	 * @param feed - feed the tracker of this node is listened to by
+	 * @param bidStore - store of this node, to take snapshots from
+	 * @param address - port 0 binds to any free port, see {@link #getAddress()}
+	 * @throws IOException
+	 */
+	public ReplicationLeader(BidFeed feed, BidStore bidStore, InetSocketAddress address) throws IOException {
+		if(feed == null || bidStore == null || address == null){
+			throw new IllegalArgumentException("Cannot instantiate ReplicationLeader with null args");
+		}
+		this.feed = feed;
+		this.bidStore = bidStore;
+		this.serverSocket = new ServerSocket();
+		serverSocket.bind(address);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "replication-leader-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return the address followers connect to
+	 */
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress)serverSocket.getLocalSocketAddress();
+	}
+
+	/**
+	 * @return id of this leader, told to followers so that they know when they follow another leader
+	 */
+	public long getLeaderId() {
+		return leaderId;
+	}
+
+	/**
+	 * @return number of followers connected
+	 */
+	public int followerCount(){
+		return acked.size();
+	}
+
+	/**
+	 * @return entries of the log each connected follower has yet to acknowledge, by follower address
+	 */
+	public Map<String, Long> followerLags(){
+		long last = feed.lastSequence();
+		Map<String, Long> lags = new HashMap<String, Long>();
+		for (Map.Entry<Shipper, Long> entry : acked.entrySet()) {
+			lags.put(entry.getKey().name, Math.max(0L, last - entry.getValue()));
+		}
+		return Collections.unmodifiableMap(lags);
+	}
+
+	private void accept(){
+		while(!closed){
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Shipper shipper = new Shipper(socket);
+				Thread thread = new Thread(shipper, "replication-leader-" + shippers.incrementAndGet());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if(!closed){
+					LOG.warn("Failed to accept follower", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops shipping the log and disconnects the followers
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+		for (Shipper shipper : acked.keySet()) {
+			shipper.socket.close();
+		}
+	}
+
+
+	/**
+	 * Ships the log to a follower
+	 */
+	private final class Shipper implements Runnable {
+		private final Socket socket;
+		private final String name;
+		private DataInputStream in;
+		private DataOutputStream out;
+
+		Shipper(Socket socket) {
+			this.socket = socket;
+			this.name = String.valueOf(socket.getRemoteSocketAddress());
+		}
+
+		@Override
+		public void run() {
+			try {
+				in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+				out.writeLong(leaderId);
+				out.flush();
+				long followedLeader = in.readLong();
+				long applied = in.readLong();
+				acked.put(this, applied);
+
+				FeedCursor cursor = followedLeader == leaderId && applied <= feed.lastSequence()
+						&& applied + 1 >= feed.oldestSequence() ? feed.cursor(applied) : null;
+				while(!closed){
+					if(cursor == null){
+						cursor = feed.cursor(snapshot());
+					}
+					try {
+						ship(cursor.poll(MAX_BATCH, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS));
+					} catch (FeedResyncException e) {
+						LOG.warn("Follower " + name + " fell behind the feed, sending a snapshot");
+						cursor = null;
+					}
+					readAcks();
+				}
+			} catch (IOException e) {
+				if(!closed){
+					LOG.warn("Lost follower " + name, e);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				acked.remove(this);
+				try {
+					socket.close();
+				} catch (IOException e) {
+					LOG.warn("Failed to close follower connection", e);
+				}
+			}
+		}
+
+		/**
+		 * Sends every bid of the store, in chunks
+		 * @return the sequence to resume the log after
+		 */
+		private long snapshot() throws IOException {
+			long resume = feed.lastSequence();
+			List<Bid> chunk = new ArrayList<Bid>(MAX_BATCH);
+			for (String itemId : bidStore.items()) {
+				Iterable<Bid> bids = bidStore.bidsForItem(itemId);
+				if(bids == null){
+					continue;
+				}
+				for (Bid bid : bids) {
+					chunk.add(bid);
+					if(chunk.size() == MAX_BATCH){
+						writeChunk(chunk);
+					}
+				}
+			}
+			writeChunk(chunk);
+			out.writeByte(SNAPSHOT_END);
+			out.writeLong(resume);
+			out.flush();
+			return resume;
+		}
+
+		private void writeChunk(List<Bid> chunk) throws IOException {
+			out.writeByte(SNAPSHOT);
+			out.writeInt(chunk.size());
+			for (Bid bid : chunk) {
+				writeBid(bid);
+			}
+			chunk.clear();
+		}
+
+		private void ship(List<FeedEntry> entries) throws IOException {
+			if(entries.isEmpty()){
+				out.writeByte(HEARTBEAT);
+				out.writeLong(feed.lastSequence());
+			}else{
+				out.writeByte(BATCH);
+				out.writeLong(feed.lastSequence());
+				out.writeInt(entries.size());
+				for (FeedEntry entry : entries) {
+					out.writeLong(entry.getSequence());
+					writeBid(entry.getBid());
+				}
+			}
+			out.flush();
+		}
+
+		private void writeBid(Bid bid) throws IOException {
+			out.writeUTF(bid.getItemId());
+			out.writeUTF(bid.getUserId());
+			out.writeDouble(bid.getAmount());
+		}
+
+		/**
+		 * Takes in the acknowledgements received so far, without blocking
+		 */
+		private void readAcks() throws IOException {
+			try {
+				while(in.available() >= 8){
+					acked.put(this, in.readLong());
+				}
+			} catch (SocketException e) {
+				throw new IOException("Follower gone", e);
+			}
+		}
+	}
+
+}
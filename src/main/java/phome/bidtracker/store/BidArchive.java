@@ -0,0 +1,235 @@
+package phome.bidtracker.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Compact, read only tier holding the items whose auction is closed, once moved out of the hot stores.
+ * 
+ * <br><br>The bids of an archived item are laid out in two primitive columns, the user int ids and the amounts,
+ * like in {@link BidStoreColumnar}. Users are encoded by an {@link IdDictionary} which can be shared with other stores.
+ * The items of every user are kept in a {@link UserBidHistoryStoreEncodedImpl}.
+ * Rationale:
+ * <br>A closed item does not take bids any more, hence needs no concurrency control nor room to grow:
+ *     12 bytes per bid, against a Bid and a node per bid in the hot store
+ * <br>Bid objects are only created as views when the history is read
+ * 
+ * <br><br>Also tells the hot stores which items are closed, see {@link ClosedItems}.
+ *
+ */
+public class BidArchive implements ClosedItems {
+	
+	private static final int[] NO_USERS = new int[0];
+	private static final double[] NO_AMOUNTS = new double[0];
+	
+	private final IdDictionary userIds;
+	private final ConcurrentMap<String, ArchivedItem> items = new ConcurrentHashMap<String, ArchivedItem>();
+	private final UserBidHistoryStoreEncodedImpl userItems;
+	
+	/**
+	 * Instantiates the archive with its own dictionaries
+	 */
+	public BidArchive() {
+		this(new IdDictionary(), new IdDictionary());
+	}
+	
+	/**
+	 * Instantiates the archive with dictionaries shared with other stores
+	 * Disallows null args
+	 * @param userIds
+	 * @param itemIds
+	 */
+	public BidArchive(IdDictionary userIds, IdDictionary itemIds) {
+		if(userIds == null || itemIds == null){
+			throw new IllegalArgumentException("Cannot instantiate BidArchive with null dictionaries");
+		}
+		this.userIds = userIds;
+		this.userItems = new UserBidHistoryStoreEncodedImpl(userIds, itemIds);
+	}
+	
+	/**
+	 * Archives the final bids of a closed item. The item is closed from then on, even with no bids.
+	 * @param itemId
+	 * @param bids - in the order they were placed, null if none
+	 */
+	public void archive(final String itemId, final Iterable<Bid> bids){
+		if(itemId == null){
+			throw new IllegalArgumentException("Invalid Args - Null item passed");
+		}
+		int[] users = NO_USERS;
+		double[] amounts = NO_AMOUNTS;
+		int size = 0;
+		if(bids != null){
+			users = new int[8];
+			amounts = new double[8];
+			for (Bid bid : bids) {
+				if(size == users.length){
+					users = Arrays.copyOf(users, size * 2);
+					amounts = Arrays.copyOf(amounts, size * 2);
+				}
+				users[size] = userIds.encode(bid.getUserId());
+				amounts[size] = bid.getAmount();
+				userItems.save(bid.getUserId(), itemId);
+				size++;
+			}
+			users = Arrays.copyOf(users, size);
+			amounts = Arrays.copyOf(amounts, size);
+		}
+		items.put(itemId, new ArchivedItem(users, amounts));
+	}
+	
+	/**
+	 * @return <code>true</code> if the item is archived
+	 */
+	@Override
+	public boolean isClosed(final String itemId) {
+		return items.containsKey(itemId);
+	}
+	
+	/**
+	 * @param itemId
+	 * @return the bid which won the auction of the item, null if not archived or no bids
+	 */
+	public Bid winningBid(final String itemId){
+		ArchivedItem item = items.get(itemId);
+		if(item == null || item.amounts.length == 0){
+			return null;
+		}
+		int last = item.amounts.length - 1;
+		return new Bid(itemId, userIds.decode(item.users[last]), item.amounts[last], last + 1);
+	}
+	
+	/**
+	 * Scans the user column from the last bid, the last bid of a user on an item being their highest
+	 * @param itemId
+	 * @param userId
+	 * @return the highest bid of the user on the item, null if not archived or no bid of the user
+	 */
+	public Bid topBid(final String itemId, final String userId){
+		ArchivedItem item = items.get(itemId);
+		int user = userIds.lookup(userId);
+		if(item == null || user < 0){
+			return null;
+		}
+		for (int position = item.users.length - 1; position >= 0; position--) {
+			if(item.users[position] == user){
+				return new Bid(itemId, userId, item.amounts[position], position + 1);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param itemId
+	 * @return the bids of the item in the order they were placed, null if not archived or no bids
+	 */
+	public Iterable<Bid> bidsForItem(final String itemId){
+		final ArchivedItem item = items.get(itemId);
+		if(item == null || item.amounts.length == 0){
+			return null;
+		}
+		return new Iterable<Bid>() {
+			@Override
+			public Iterator<Bid> iterator() {
+				return new Iterator<Bid>() {
+					private int cursor;
+					
+					@Override
+					public boolean hasNext() {
+						return cursor < item.amounts.length;
+					}
+
+					@Override
+					public Bid next() {
+						if(cursor >= item.amounts.length){
+							throw new NoSuchElementException();
+						}
+						Bid bid = new Bid(itemId, userIds.decode(item.users[cursor]), item.amounts[cursor], cursor + 1);
+						cursor++;
+						return bid;
+					}
+					
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException("Archived bids are read only");
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * @param itemId
+	 * @param count
+	 * @return the last bids of the item in the order they were placed, null if not archived or no bids
+	 */
+	public List<Bid> latestBids(final String itemId, final int count){
+		ArchivedItem item = items.get(itemId);
+		if(item == null || item.amounts.length == 0){
+			return null;
+		}
+		return slice(itemId, item, Math.max(0, item.amounts.length - count), item.amounts.length);
+	}
+	
+	/**
+	 * @param itemId
+	 * @param afterSequence
+	 * @param maxCount
+	 * @return up to maxCount bids of the item placed after the sequence, null if not archived or no bids
+	 */
+	public List<Bid> bidsAfter(final String itemId, final long afterSequence, final int maxCount){
+		ArchivedItem item = items.get(itemId);
+		if(item == null || item.amounts.length == 0){
+			return null;
+		}
+		int from = (int)Math.min(Math.max(0L, afterSequence), item.amounts.length);
+		return slice(itemId, item, from, (int)Math.min((long)from + maxCount, item.amounts.length));
+	}
+	
+	private List<Bid> slice(final String itemId, final ArchivedItem item, final int from, final int to){
+		List<Bid> bids = new ArrayList<Bid>(to - from);
+		for (int position = from; position < to; position++) {
+			bids.add(new Bid(itemId, userIds.decode(item.users[position]), item.amounts[position], position + 1));
+		}
+		return Collections.unmodifiableList(bids);
+	}
+	
+	/**
+	 * @param userId
+	 * @return the archived items the user bid on, null if none
+	 */
+	public Set<String> itemsForUser(final String userId){
+		return userItems.itemsForUser(userId);
+	}
+	
+	/**
+	 * @return number of archived items
+	 */
+	public int size(){
+		return items.size();
+	}
+	
+	
+	/**
+	 * Bids of an archived item in two columns
+	 */
+	private static final class ArchivedItem {
+		private final int[] users;
+		private final double[] amounts;
+		
+		ArchivedItem(int[] users, double[] amounts) {
+			this.users = users;
+			this.amounts = amounts;
+		}
+	}
+
+}
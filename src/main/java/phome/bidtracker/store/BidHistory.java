@@ -0,0 +1,573 @@
+package phome.bidtracker.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.models.Bid;
+
+/**
+ * Append only, lock free history of the bids placed on a single item.
+ *
+ * <br><br>The bids are held in a singly linked chain of immutable nodes in the order they were accepted.
+ * A new bid is published by a single CAS on the <code>next</code> link of the last node, which makes every
+ * append O(1) irrespective of how many bids the item already has. Nothing is ever copied.
+ *
+ * <br><br>The algorithm follows the Michael-Scott queue:
+ * <br>The last node (the one whose next link is null) always holds the winning bid.
+ * <br>The tail reference is only a hint to the last node and may lag behind by a node,
+ * 		in which case any thread helps to swing it forward.
+ * <br>A bid is validated against the last node right before the CAS, hence a bid can only be linked
+ * 		if it outbids the winning bid at the very moment it is published.
+ *  <br>Ref: http://www.cs.rochester.edu/research/synchronization/pseudocode/queues.html
+ *
+ * <br><br>Every node holds the user, amount and sequence number of its bid on the item, the last one plus 1.
+ * The item is held once by the history, and the bid is only built when read, hence appending allocates nothing but the node.
+ * Given an {@link IdDictionary}, the user is the canonical String of the dictionary instead of the one of the bid,
+ * hence a user is held once however many bids they place. Every node in memory counts a reference to its user, 
+ * dropped once the node is spilled or the history is released.
+ * Every {@value #CHECKPOINT_STRIDE}th node is recorded in an array of checkpoints, hence a bid is located by its sequence 
+ * in at most {@value #CHECKPOINT_STRIDE} steps from the closest checkpoint, instead of walking from the head.
+ * Checkpoints are recorded under a lock by the appender of the node, which happens once every 
+ * {@value #CHECKPOINT_STRIDE} bids. A checkpoint not recorded yet just means starting from an earlier one.
+ *
+ * <br><br>The history is closed by linking a sentinel node after the last node with the same CAS as a bid, 
+ * hence a bid is either linked before the close or turned down, and nothing can be appended after.
+ *
+ * <br><br>Retention: with {@link BidSegments}, the history keeps its last bids in memory only. Once it holds a page 
+ * more than the retained bids, the appender crossing the threshold hands the history over to the spiller of the segments,
+ * unless already handed over, and carries on. The spiller spills the oldest pages to disk and moves the head
+ * past them. Pages are indexed before the head moves, 
+ * hence a reader reading the head then the pages always finds every bid, in memory or on disk.
+ * Checkpoints of spilled nodes are cleared so that they do not keep the nodes alive.
+ * A failed spill is retried after the history has grown by a page, doubling every further failure.
+ * 
+ * <br><br>Releasing the history, once closed, drops the references to the users of the nodes in memory and 
+ * releases its spilled pages. The spilling state tells who does it: the releaser if no spill is pending, 
+ * the spiller once done otherwise. Hence it never races with a spill nor waits for one, and no spill happens after.
+ *
+ */
+final class BidHistory {
+
+	private static final Logger LOG = Logger.getLogger(BidHistory.class);
+
+	private static final AtomicReferenceFieldUpdater<BidHistory, Node> TAIL =
+			AtomicReferenceFieldUpdater.newUpdater(BidHistory.class, Node.class, "tail");
+	private static final AtomicIntegerFieldUpdater<BidHistory> SPILLING =
+			AtomicIntegerFieldUpdater.newUpdater(BidHistory.class, "spilling");
+
+	private static final int CHECKPOINT_STRIDE = 64;
+	private static final Node[] NO_CHECKPOINTS = new Node[0];
+	private static final Node CLOSED = new Node();
+	private static final BidSegments.Page[] NO_PAGES = new BidSegments.Page[0];
+	//spilling states
+	private static final int IDLE = 0;
+	private static final int SPILL_PENDING = 1;
+	private static final int RELEASE_PENDING = 2;
+	private static final int RELEASED = 3;
+	private static final int MAX_BACKOFF_SHIFT = 16;
+
+	private final String itemId;
+	private final IdDictionary users;//null if not interning
+	private final BidSegments segments;//null if unbounded
+	//oldest node in memory, moves forward as pages get spilled
+	private volatile Node head;
+	private volatile Node tail;
+	private volatile BidSegments.Page[] pages = NO_PAGES;
+	private volatile int spilling;
+	//sequence from which appenders hand the history over to the spiller
+	private volatile long spillAt;
+	private int failedSpills;//spiller only
+	//checkpoints[k] holds the node of sequence k * CHECKPOINT_STRIDE + 1, written under lock
+	private volatile Node[] checkpoints = NO_CHECKPOINTS;
+
+	/**
+	 * Creates a history seeded with the first bid on the item
+	 * @param firstBid
+	 */
+	BidHistory(final Bid firstBid) {
+		this(firstBid, null, null);
+	}
+
+	/**
+	 * Creates a history seeded with the first bid on the item, spilling its oldest bids to the segments
+	 * @param firstBid
+	 * @param users - null to keep the users of the bids as given
+	 * @param segments - null to keep every bid in memory
+	 */
+	BidHistory(final Bid firstBid, final IdDictionary users, final BidSegments segments) {
+		this.itemId = firstBid.getItemId();
+		this.users = users;
+		this.segments = segments;
+		this.head = newNode(firstBid, 1L);
+		this.tail = head;
+		this.spillAt = segments == null ? Long.MAX_VALUE : 1L + segments.retainedBids() + segments.pageSize();
+	}
+
+	/**
+	 * Appends the bid if it outbids the current winning bid.
+	 * <br>Retries only when another bid got linked concurrently, and short circuits
+	 * as soon as the bid is outbid.
+	 * @param bid
+	 * @param metrics - told how many times the append had to be retried
+	 * @return the sequence of the appended bid <br>
+	 * 		   0 if the bid was outbid
+	 */
+	long append(final Bid bid, final BidMetrics metrics) {
+		Node node = null;
+		int retries = -1;
+		while(true){
+			retries++;
+			final Node last = tail;
+			final Node next = last.next;
+			if(next == CLOSED){
+				release(node);
+				metrics.bidStoreSaved(itemId, retries);
+				return 0L;
+			}
+			if(next != null){//tail is lagging, help and retry
+				TAIL.compareAndSet(this, last, next);
+				continue;
+			}
+			if(bid.getAmount() <= last.amount){
+				release(node);
+				metrics.bidStoreSaved(itemId, retries);
+				return 0L;
+			}
+			if(node == null){
+				node = newNode(bid, last.sequence + 1);
+			}else if(node.sequence != last.sequence + 1){
+				node = new Node(node.user, node.userId, node.amount, last.sequence + 1);
+			}
+			if(last.casNext(node)){
+				TAIL.compareAndSet(this, last, node);
+				if((node.sequence - 1) % CHECKPOINT_STRIDE == 0){
+					checkpoint(node);
+				}
+				if(node.sequence >= spillAt){
+					requestSpill();
+				}
+				metrics.bidStoreSaved(itemId, retries);
+				return node.sequence;
+			}
+		}
+	}
+
+	/**
+	 * Closes the history, no bid can be appended afterwards
+	 */
+	void close(){
+		while(true){
+			Node last = last();
+			if(last.next == CLOSED || last.casNext(CLOSED)){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param amount
+	 * @return <code>true</code> if the amount does not outbid the winning bid or the history is closed
+	 */
+	boolean isOutbid(final double amount){
+		final Node last = last();
+		return amount <= last.amount || last.next == CLOSED;
+	}
+
+	/**
+	 * Drops the references to the users of the bids in memory and releases the spilled pages, 
+	 * once the history is closed and no longer reachable from the store. No op if already released.
+	 */
+	void release(){
+		while(true){
+			int state = spilling;
+			if(state == RELEASE_PENDING || state == RELEASED){
+				return;
+			}
+			if(state == IDLE && SPILLING.compareAndSet(this, IDLE, RELEASED)){
+				releaseAll();
+				return;
+			}
+			if(state == SPILL_PENDING && SPILLING.compareAndSet(this, SPILL_PENDING, RELEASE_PENDING)){
+				return;//released by the spiller
+			}
+		}
+	}
+
+	private void releaseAll(){
+		if(users != null){
+			final Node last = last();
+			for(Node node = head; ; node = node.next){
+				users.release(node.userId);
+				if(node == last){
+					break;
+				}
+			}
+		}
+		for (BidSegments.Page page : pages) {
+			segments.release(page);
+		}
+	}
+
+	/**
+	 * @return the winning bid i.e. the bid held by the last linked node
+	 */
+	Bid winningBid(){
+		return last().bid(itemId);
+	}
+
+	/**
+	 * Returns a read only view of the bids in the order they were placed.
+	 * <br>The view is bounded by the winning bid at the time of the call,
+	 * hence it is a stable snapshot unaffected by subsequent appends. The sequenced bids are built as iterated.
+	 * @return
+	 */
+	Iterable<Bid> snapshot(){
+		final Node first = head;
+		final BidSegments.Page[] spilled = pages;//after the head
+		final Node last = last();
+		return new Iterable<Bid>() {
+			@Override
+			public Iterator<Bid> iterator() {
+				Iterator<Bid> inMemory = new SnapshotIterator(first, last);
+				return spilled.length == 0 || first.sequence == 1L ? inMemory : new SpilledIterator(spilled, first, inMemory);
+			}
+		};
+	}
+
+	/**
+	 * Returns the latest bids in the order they were placed, bounded by the winning bid at the time of the call
+	 * @param count
+	 * @return
+	 */
+	List<Bid> latest(final int count){
+		final Node first = head;
+		final BidSegments.Page[] spilled = pages;//after the head
+		final Node last = last();
+		return collect(Math.max(1L, last.sequence - count + 1), first, spilled, last, count);
+	}
+
+	/**
+	 * Returns the bids placed after the sequence in the order they were placed, 
+	 * bounded by the winning bid at the time of the call
+	 * @param afterSequence
+	 * @param maxCount
+	 * @return
+	 */
+	List<Bid> after(final long afterSequence, final int maxCount){
+		final Node first = head;
+		final BidSegments.Page[] spilled = pages;//after the head
+		final Node last = last();
+		if(afterSequence >= last.sequence){
+			return Collections.emptyList();
+		}
+		return collect(Math.max(1L, afterSequence + 1), first, spilled, last, maxCount);
+	}
+
+	/**
+	 * Collects the bids from a sequence up to the last node, reading the ones before the first node from the spilled pages
+	 */
+	private List<Bid> collect(final long fromSequence, final Node first, final BidSegments.Page[] spilled, 
+			final Node last, final int maxCount){
+		List<Bid> bids = new ArrayList<Bid>((int)Math.min(maxCount, last.sequence - fromSequence + 1));
+		if(fromSequence < first.sequence){
+			int page = (int)((fromSequence - 1) / segments.pageSize());
+			for(; page < spilled.length && (long)page * segments.pageSize() + 1 < first.sequence && bids.size() < maxCount; page++){
+				for (Bid bid : segments.read(itemId, spilled[page])) {
+					if(bid.getSequence() >= fromSequence && bid.getSequence() < first.sequence && bids.size() < maxCount){
+						bids.add(bid);
+					}
+				}
+			}
+		}
+		if(bids.size() == maxCount){
+			return Collections.unmodifiableList(bids);
+		}
+		for(Node node = locate(Math.max(fromSequence, first.sequence), first); bids.size() < maxCount; node = node.next){
+			bids.add(node.bid(itemId));
+			if(node == last){
+				break;
+			}
+		}
+		return Collections.unmodifiableList(bids);
+	}
+
+	/**
+	 * Finds the node of a linked sequence, walking forward from the closest recorded checkpoint
+	 * @param sequence - at least the sequence of the first node and at most the last sequence
+	 * @param first - a node in memory
+	 * @return
+	 */
+	private Node locate(final long sequence, final Node first){
+		final Node[] recorded = checkpoints;
+		int k = (int)Math.min((sequence - 1) / CHECKPOINT_STRIDE, recorded.length - 1);
+		Node checkpoint = null;
+		while(k > 0 && (checkpoint = recorded[k]) == null){
+			k--;
+		}
+		Node node = checkpoint != null && checkpoint.sequence > first.sequence ? checkpoint : first;
+		while(node.sequence < sequence){
+			node = node.next;
+		}
+		return node;
+	}
+
+	private synchronized void checkpoint(final Node node){
+		int k = (int)((node.sequence - 1) / CHECKPOINT_STRIDE);
+		Node[] recorded = checkpoints;
+		if(k >= recorded.length){
+			recorded = Arrays.copyOf(recorded, Math.max(k + 1, recorded.length * 2));
+		}
+		recorded[k] = node;
+		checkpoints = recorded;//volatile write publishes the checkpoint
+	}
+
+	/**
+	 * Clears the checkpoints before the sequence in a copy of the checkpoints, 
+	 * since readers may be walking the array they hold
+	 */
+	private synchronized void dropCheckpoints(final long sequence){
+		Node[] recorded = checkpoints.clone();
+		for (int k = 1; k < recorded.length && (long)k * CHECKPOINT_STRIDE + 1 < sequence; k++) {
+			recorded[k] = null;
+		}
+		checkpoints = recorded;
+	}
+
+	/**
+	 * Hands the history over to the spiller, unless already handed over or released
+	 */
+	private void requestSpill(){
+		if(!SPILLING.compareAndSet(this, IDLE, SPILL_PENDING)){
+			return;
+		}
+		try{
+			segments.spill(new Runnable() {
+				@Override
+				public void run() {
+					spill();
+				}
+			});
+		}catch(RejectedExecutionException e){//segments closed, spilling is over
+			spillAt = Long.MAX_VALUE;
+			spilled();
+		}
+	}
+
+	/**
+	 * Spills the oldest pages of bids in memory, on the spiller. 
+	 * A failed spill keeps the bids in memory and backs off.
+	 */
+	private void spill(){
+		try{
+			final int pageSize = segments.pageSize();
+			while(spilling == SPILL_PENDING && last().sequence - head.sequence >= segments.retainedBids() + pageSize){
+				spillPage(pageSize);
+			}
+			failedSpills = 0;
+			spillAt = head.sequence + segments.retainedBids() + pageSize;
+		}catch(RuntimeException e){
+			segments.spillFailed();
+			if(failedSpills++ == 0){
+				LOG.warn("Failed to spill bids of item " + itemId + ", keeping them in memory", e);
+			}else if(LOG.isDebugEnabled()){
+				LOG.debug("Failed to spill bids of item " + itemId + " again, " + failedSpills + " times in a row", e);
+			}
+			spillAt = last().sequence + ((long)segments.pageSize() << Math.min(failedSpills, MAX_BACKOFF_SHIFT));
+		}finally{
+			spilled();
+		}
+	}
+
+	/**
+	 * Ends a spill, releasing the history if released meanwhile
+	 */
+	private void spilled(){
+		if(!SPILLING.compareAndSet(this, SPILL_PENDING, IDLE)){
+			spilling = RELEASED;
+			releaseAll();
+		}
+	}
+
+	private void spillPage(final int pageSize){
+		final Node first = head;
+		List<Bid> page = new ArrayList<Bid>(pageSize);
+		Node node = first;
+		while(page.size() < pageSize){
+			page.add(node.bid(itemId));
+			node = node.next;
+		}
+		BidSegments.Page written = segments.write(page);
+		BidSegments.Page[] spilled = Arrays.copyOf(pages, pages.length + 1);
+		spilled[spilled.length - 1] = written;
+		pages = spilled;
+		dropCheckpoints(node.sequence);
+		head = node;
+		for(Node released = first; released != node; released = released.next){
+			release(released);
+		}
+	}
+
+	/**
+	 * Creates the node of a bid, interning its user
+	 */
+	private Node newNode(final Bid bid, final long sequence){
+		if(users == null){
+			return new Node(bid.getUserId(), -1, bid.getAmount(), sequence);
+		}
+		int userId = users.acquire(bid.getUserId());
+		return new Node(users.decode(userId), userId, bid.getAmount(), sequence);
+	}
+
+	/**
+	 * Drops the reference of a node to its user
+	 * @param node - null if none
+	 */
+	private void release(final Node node){
+		if(node != null && users != null){
+			users.release(node.userId);
+		}
+	}
+
+	private Node last(){
+		Node last = tail;
+		Node next;
+		while((next = last.next) != null && next != CLOSED){
+			last = next;
+		}
+		return last;
+	}
+
+
+	/**
+	 * Read only iterator walking the chain from the first node up to and including the last node
+	 */
+	private final class SnapshotIterator implements Iterator<Bid> {
+		private final Node last;
+		private Node cursor;
+
+		SnapshotIterator(final Node first, final Node last) {
+			this.cursor = first;
+			this.last = last;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor != null;
+		}
+
+		@Override
+		public Bid next() {
+			if(cursor == null){
+				throw new NoSuchElementException();
+			}
+			Node current = cursor;
+			cursor = current == last ? null : current.next;
+			return current.bid(itemId);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Bid history is read only");
+		}
+	}
+
+
+	/**
+	 * Read only iterator reading the spilled pages one at a time, then walking the chain
+	 */
+	private final class SpilledIterator implements Iterator<Bid> {
+		private final BidSegments.Page[] spilled;
+		private final long firstInMemory;
+		private final Iterator<Bid> inMemory;
+		private int nextPage;
+		private List<Bid> page = Collections.emptyList();
+		private int inPage;
+
+		SpilledIterator(final BidSegments.Page[] spilled, final Node first, final Iterator<Bid> inMemory) {
+			this.spilled = spilled;
+			this.firstInMemory = first.sequence;
+			this.inMemory = inMemory;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(true){
+				if(inPage < page.size()){
+					if(page.get(inPage).getSequence() < firstInMemory){
+						return true;
+					}
+					page = Collections.emptyList();//spilled after the snapshot, the rest is in memory
+					nextPage = spilled.length;
+				}
+				if(nextPage == spilled.length){
+					return inMemory.hasNext();
+				}
+				page = segments.read(itemId, spilled[nextPage++]);
+				inPage = 0;
+			}
+		}
+
+		@Override
+		public Bid next() {
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return inPage < page.size() ? page.get(inPage++) : inMemory.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Bid history is read only");
+		}
+	}
+
+
+	/**
+	 * A link in the chain. The bid fields are immutable and the next link is set exactly once, 
+	 * to the next bid or to the closing sentinel.
+	 * The int id of the user is kept only to drop its reference, -1 if not interned.
+	 */
+	private static final class Node {
+		private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+		private final String user;
+		private final int userId;
+		private final double amount;
+		private final long sequence;
+		private volatile Node next;
+
+		Node(final String user, final int userId, final double amount, final long sequence) {
+			this.user = user;
+			this.userId = userId;
+			this.amount = amount;
+			this.sequence = sequence;
+		}
+
+		private Node() {//sentinel
+			this(null, -1, 0.0d, -1L);
+		}
+
+		boolean casNext(final Node node){
+			return NEXT.compareAndSet(this, null, node);
+		}
+
+		/**
+		 * @param itemId
+		 * @return the bid carrying its sequence
+		 */
+		Bid bid(final String itemId){
+			return new Bid(itemId, user, amount, sequence);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package phome.bidtracker.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Append only, compressed on disk segments the oldest bids of long histories are spilled to,
+ * so that an item only keeps its latest bids in memory.
+ *
+ * <br><br>Retention: a {@link BidStoreLockFree} created with segments keeps at least the last <code>retainedBids</code>
+ * bids of every item in memory. Once an item holds a page more than that, the appender which crossed the threshold
+ * hands the item to the spiller thread of the segments, which spills its oldest pages of bids, 
+ * hence compressing and writing pages never holds up a bid. An item is handed over once until spilled.
+ * <br>A failed spill keeps the bids in memory, and is retried once the item has grown by a page, then by twice as many 
+ * bids after every further failure, so that a failing disk is neither hammered nor logged on every bid.
+ * <br>Winning bid, outbid checks and latest bids are served from memory. Iterating the whole history reads
+ * the spilled pages lazily, a page at a time, as the iteration reaches them.
+ *
+ * <br><br>Layout: pages of all the items are appended to the current segment file, rolled once it reaches its size limit.
+ * A page holds the user ids, length prefixed UTF-8, and amounts of consecutive bids of an item, deflated. 
+ * Item ids and sequences are not written, the history of the item holds the index of its pages in memory, 
+ * i.e. where every page is and its first sequence.
+ *
+ * <br><br>The segments extend the heap, they are not a durable store, that is the journal's job.
+ * Segments left by a previous run are deleted when the directory is opened.
+ * <br>Every segment counts its live pages. Evicting an item releases its pages, and a segment rolled over 
+ * without live pages left is deleted, hence disk usage follows the items in the store. 
+ * A reader still iterating over an evicted item may then fail to read its spilled bids.
+ *
+ */
+public final class BidSegments implements AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(BidSegments.class);
+
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".bids";
+	private static final long SEGMENT_BYTES = 64L << 20;
+	private static final int DEFAULT_PAGE_SIZE = 256;
+
+	private final File directory;
+	private final int retainedBids;
+	private final int pageSize;
+	private final long segmentBytes;
+	private final Executor spiller;
+	private final ExecutorService ownSpiller;//null if given
+	private final AtomicLong spilledBids = new AtomicLong();
+	private final AtomicLong pagesRead = new AtomicLong();
+	private final AtomicLong failedSpills = new AtomicLong();
+
+	//guarded by this
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private Segment current;
+	private int rolled;
+	private boolean closed;
+
+
+	/**
+	 * Opens segments spilling pages of {@value #DEFAULT_PAGE_SIZE} bids
+	 * @param directory - created if needed
+	 * @param retainedBids - bids of an item kept in memory at least
+	 * @throws IOException
+	 */
+	public BidSegments(File directory, int retainedBids) throws IOException {
+		this(directory, retainedBids, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param directory - created if needed
+	 * @param retainedBids - bids of an item kept in memory at least
+	 * @param pageSize - bids spilled at once
+	 * @throws IOException
+	 */
+	public BidSegments(File directory, int retainedBids, int pageSize) throws IOException {
+		this(directory, retainedBids, pageSize, SEGMENT_BYTES, null);
+	}
+
+	/**
+	 * @param directory
+	 * @param retainedBids
+	 * @param pageSize
+	 * @param segmentBytes - size a segment is rolled at
+	 * @param spiller - runs the spills, null for a daemon thread of the segments
+	 * @throws IOException
+	 */
+	BidSegments(File directory, int retainedBids, int pageSize, long segmentBytes, Executor spiller) throws IOException {
+		if(directory == null || retainedBids <= 0 || pageSize <= 0 || segmentBytes <= 0){
+			throw new IllegalArgumentException("Invalid Args - directory must be set, retention and page size positive");
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Cannot create segments directory " + directory);
+		}
+		File[] stale = directory.listFiles();
+		for (File file : stale == null ? new File[0] : stale) {
+			if(file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX) && !file.delete()){
+				throw new IOException("Cannot delete stale segment " + file);
+			}
+		}
+		this.directory = directory;
+		this.retainedBids = retainedBids;
+		this.pageSize = pageSize;
+		this.segmentBytes = segmentBytes;
+		this.current = roll();
+		this.ownSpiller = spiller == null ? Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "bid-spiller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+		this.spiller = spiller == null ? ownSpiller : spiller;
+	}
+
+	/**
+	 * @return bids of an item kept in memory at least
+	 */
+	public int retainedBids() {
+		return retainedBids;
+	}
+
+	/**
+	 * @return bids spilled at once
+	 */
+	public int pageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return number of bids spilled so far
+	 */
+	public long spilledBids() {
+		return spilledBids.get();
+	}
+
+	/**
+	 * @return number of pages read back so far
+	 */
+	public long pagesRead() {
+		return pagesRead.get();
+	}
+
+	/**
+	 * @return number of spills which failed so far
+	 */
+	public long failedSpills() {
+		return failedSpills.get();
+	}
+
+	/**
+	 * @return number of segment files
+	 */
+	public synchronized int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Hands a spill over to the spiller
+	 * @param spill
+	 * @throws java.util.concurrent.RejectedExecutionException once closed
+	 */
+	void spill(final Runnable spill){
+		spiller.execute(spill);
+	}
+
+	/**
+	 * Counts a failed spill
+	 */
+	void spillFailed(){
+		failedSpills.incrementAndGet();
+	}
+
+	/**
+	 * Compresses and appends a page of consecutive bids of an item
+	 * @param bids - sequenced, in order
+	 * @return where the page was written
+	 * @throws UncheckedIOException
+	 */
+	Page write(final List<Bid> bids){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(bids.size() * 16);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+			out.writeInt(bids.size());
+			for (Bid bid : bids) {
+				byte[] userId = bid.getUserId().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(userId.length);
+				out.write(userId);
+				out.writeDouble(bid.getAmount());
+			}
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to compress page", e);
+		} finally {
+			deflater.end();
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		Page page;
+		synchronized (this) {
+			if(closed){
+				throw new IllegalStateException("Segments closed");
+			}
+			try {
+				if(current.size > 0 && current.size + buffer.remaining() > segmentBytes){
+					current = roll();
+				}
+				page = new Page(current, current.size, buffer.remaining(), bids.get(0).getSequence());
+				while(buffer.hasRemaining()){
+					current.channel.write(buffer);
+				}
+				current.size += page.length;
+				current.livePages++;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write page to " + current.file, e);
+			}
+		}
+		spilledBids.addAndGet(bids.size());
+		return page;
+	}
+
+	/**
+	 * Reads a page back
+	 * @param itemId - item the page belongs to
+	 * @param page
+	 * @return the bids of the page, with their sequence
+	 * @throws UncheckedIOException
+	 */
+	List<Bid> read(final String itemId, final Page page){
+		ByteBuffer buffer = ByteBuffer.allocate(page.length);
+		Inflater inflater = new Inflater();
+		try {
+			while(buffer.hasRemaining()){
+				if(page.segment.channel.read(buffer, page.offset + buffer.position()) < 0){
+					throw new IOException("Truncated page at " + page.offset);
+				}
+			}
+			DataInputStream in = new DataInputStream(new InflaterInputStream(
+					new ByteArrayInputStream(buffer.array()), inflater));
+			int count = in.readInt();
+			List<Bid> bids = new ArrayList<Bid>(count);
+			for (int i = 0; i < count; i++) {
+				byte[] userId = new byte[in.readInt()];
+				in.readFully(userId);
+				bids.add(new Bid(itemId, new String(userId, StandardCharsets.UTF_8), in.readDouble(), page.firstSequence + i));
+			}
+			pagesRead.incrementAndGet();
+			return Collections.unmodifiableList(bids);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read page from " + page.segment.file, e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Releases a page of an evicted item, deleting its segment if rolled over and left without live pages
+	 * @param page
+	 */
+	synchronized void release(final Page page){
+		page.segment.livePages--;
+		if(page.segment.livePages == 0 && page.segment != current && !closed){
+			reclaim(page.segment);
+		}
+	}
+
+	private Segment roll() throws IOException {
+		Segment previous = current;
+		File file = new File(directory, String.format("%s%05d%s", PREFIX, rolled++, SUFFIX));
+		Segment segment = new Segment(file, FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+		segments.add(segment);
+		if(previous != null && previous.livePages == 0){
+			reclaim(previous);
+		}
+		return segment;
+	}
+
+	private void reclaim(final Segment segment){
+		segments.remove(segment);
+		try {
+			segment.channel.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close segment " + segment.file, e);
+		}
+		if(!segment.file.delete()){
+			LOG.warn("Failed to delete segment " + segment.file);
+		}
+	}
+
+	/**
+	 * Stops the spiller and closes the segment files, spilled bids cannot be read any more
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(ownSpiller != null){
+			ownSpiller.shutdown();//spills still queued fail and keep their bids in memory
+		}
+		for (Segment segment : segments) {
+			segment.channel.close();
+		}
+	}
+
+
+	private static final class Segment {
+		private final File file;
+		private final FileChannel channel;
+		//guarded by BidSegments.this
+		private long size;
+		private int livePages;
+
+		Segment(File file, FileChannel channel) {
+			this.file = file;
+			this.channel = channel;
+		}
+	}
+
+
+	/**
+	 * Location of a spilled page, and the sequence of its first bid
+	 */
+	static final class Page {
+		private final Segment segment;
+		private final long offset;
+		private final int length;
+		private final long firstSequence;
+
+		Page(Segment segment, long offset, int length, long firstSequence) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.firstSequence = firstSequence;
+		}
+	}
+
+}
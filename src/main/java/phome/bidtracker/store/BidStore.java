@@ -1,5 +1,6 @@
 package phome.bidtracker.store;
 
+import java.util.List;
 
 import phome.bidtracker.models.Bid;
 
@@ -11,6 +12,28 @@ public interface BidStore {
      */
 	public boolean maybeSave(final Bid bid);
 	
+	
+	/**
+	 * Saves a bid to the BidStore if is higher than existing bids, like {@link #maybeSave(Bid)}
+	 * @param bid
+	 * @return - the saved bid, equal to the given bid and carrying its sequence number on the item <br>
+	 * 		   - <code>null</code> if the bid was outbid
+	 */
+	public Bid trySave(final Bid bid);
+	
+	
+	/**
+	 * Cheap pre-check telling whether an amount is already outbid on an item, 
+	 * i.e. it is not higher than the current winning bid.
+	 * <br>Must not allocate, so that losing bids can be turned down before a Bid is even created.
+	 * A <code>false</code> answer is only a hint, the bid may still be outbid by the time it is saved.
+	 * @param itemId
+	 * @param amount
+	 * @return - <code>true</code> if the amount cannot win <br>
+	 * 		   - <code>false</code> if the amount outbids the winning bid or there are no bids on the item
+	 */
+	public boolean isOutbid(final String itemId, final double amount);
+	
     
 	/**
 	 * Returns the current winning bid for an item
@@ -29,5 +52,55 @@ public interface BidStore {
      * 		    -<code>null</code> if no bids on the item 
      */
     public Iterable<Bid> bidsForItem(final String itemId);
+    
+    
+    /**
+     * Returns the latest bids placed on the item, in the order they were placed.
+     * <br>Costs in proportion to the count, not to the length of the history
+     * @param itemId
+     * @param count - positive
+     * @return - Up to count bids, the last one being the winning bid <br> 
+     * 		    -<code>null</code> if no bids on the item 
+     */
+    public List<Bid> latestBids(final String itemId, final int count);
+    
+    
+    /**
+     * Returns the bids placed on the item after the given sequence number, in the order they were placed.
+     * <br>Paging through the history is done by passing the sequence of the last bid of a page to get the next page, 
+     * starting with sequence 0. Costs in proportion to the page size, not to the length of the history
+     * @param itemId
+     * @param afterSequence - as per {@link Bid#getSequence()}
+     * @param maxCount - positive
+     * @return - Up to maxCount bids with a sequence higher than afterSequence, empty if none yet <br> 
+     * 		    -<code>null</code> if no bids on the item 
+     */
+    public List<Bid> bidsAfter(final String itemId, final long afterSequence, final int maxCount);
+    
+    
+    /**
+     * Closes the auction of the item: no bid is accepted on it any more, and any amount is outbid.
+     * <br>Bids racing with the close are either in the returned history or rejected,
+     * including the first bid on an item without bids, which is sealed by the close.
+     * @param itemId
+     * @return - The final bids placed for the item <br> 
+     * 		    -<code>null</code> if no bids on the item 
+     */
+    public Iterable<Bid> close(final String itemId);
+    
+    
+    /**
+     * Removes the item and its bids from the store, typically once closed and archived
+     * @param itemId
+     */
+    public void evict(final String itemId);
+    
+    
+    /**
+     * Returns the ids of all the items with bids. 
+     * The view is weakly consistent, i.e. it holds at least all the items which had bids when it was taken
+     * @return - Item ids, empty if no bids at all
+     */
+    public Iterable<String> items();
 
 }
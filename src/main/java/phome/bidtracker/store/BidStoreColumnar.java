@@ -0,0 +1,470 @@
+package phome.bidtracker.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Columnar implementation of the Bid Store.
+ * 
+ * <br><br>The history of an item is held in growable primitive columns instead of a graph of Bid objects:
+ * <br> user int ids, encoded by an {@link IdDictionary} which can be shared with the user history store
+ * <br> amounts
+ * <br>The sequence number of a bid is its position in the columns plus 1, hence needs no column of its own.
+ * A bid then costs 12 bytes, against a Bid object plus a node per bid otherwise, 
+ * and scanning the history walks two arrays sequentially.
+ * <br>Bid objects are only created as views when the history is iterated.
+ * Items are encoded too and their histories held in a {@link ConcurrentDirectory}.
+ * 
+ * <br><br>Concurrency:
+ * <br>The winner among concurrent bids on an item is decided lock free, by a CAS on the last claimed bid of the item 
+ * 	   which only passes if the bid outbids it. Outbid bids short circuit without any further ado.
+ * <br>The claim carries the bid, hence any thread can publish it into the columns. Before claiming, a bidder (or the closer)
+ *     helps to publish the last claim, so at most one claim is ever unpublished and the columns are written in the order 
+ *     the bids won, without anyone waiting for a stalled winner.
+ * <br>Publishing writes the slot of the claim, then moves the last published claim forward by a CAS.
+ *     Helpers of the same claim write the same values, and a helper too late finds its CAS failing. 
+ *     Growing the columns replaces them with a larger copy by a CAS, which only happens when the slot of the claim
+ *     is past their end, i.e. before any helper could write it.
+ * <br>Readers read the last published claim before the columns, so they never see a slot which is not written yet.
+ * <br>Closing an item without bids, and evicting an item, leave shared closed columns in its directory slot.
+ *     The columns of a first bid are only ever installed in an empty slot, hence a first bid racing with the close
+ *     is turned down the same way a later bid is, and an evicted item is never taken on again.
+ * 
+ * @see BidStoreLockFree
+ */
+public class BidStoreColumnar implements BidStore {
+	
+	private static final int INITIAL_CAPACITY = 4;
+	//closed columns of the items sealed without bids or evicted, read as no columns at all
+	private static final Columns SEALED = Columns.sealed();
+	
+	private final IdDictionary userIds;
+	private final IdDictionary itemIds;
+	private final ClosedItems closedItems;
+	private final ConcurrentDirectory<Columns> bidstore = new ConcurrentDirectory<Columns>();
+	
+	
+	/**
+	 * Instantiates the store with its own dictionaries
+	 */
+	public BidStoreColumnar() {
+		this(new IdDictionary(), new IdDictionary());
+	}
+	
+	/**
+	 * Instantiates the store with dictionaries shared with other stores
+	 * Disallows null args
+	 * @param userIds
+	 * @param itemIds
+	 */
+	public BidStoreColumnar(IdDictionary userIds, IdDictionary itemIds) {
+		this(userIds, itemIds, ClosedItems.NONE);
+	}
+	
+	/**
+	 * Instantiates the store with shared dictionaries, turning down bids on evicted items which are closed
+	 * Disallows null args
+	 * @param userIds
+	 * @param itemIds
+	 * @param closedItems - e.g. a {@link BidArchive}
+	 */
+	public BidStoreColumnar(IdDictionary userIds, IdDictionary itemIds, ClosedItems closedItems) {
+		if(userIds == null || itemIds == null || closedItems == null){
+			throw new IllegalArgumentException("Cannot instantiate BidStore with null dictionaries");
+		}
+		this.userIds = userIds;
+		this.itemIds = itemIds;
+		this.closedItems = closedItems;
+	}
+	
+
+	/**
+	 * Claims the next position in the columns of the item if the bid outbids the last claimed bid,
+	 * then publishes it. The columns of an item are created on its first bid using CAS on the directory slot,
+	 * unless the item is closed.
+	 */
+	@Override
+	public boolean maybeSave(final Bid bid) {
+		return trySave(bid) != null;
+	}
+	
+	/**
+	 * Saves the bid as per {@link #maybeSave(Bid)}, returning the sequenced bid published as the winning bid
+	 */
+	@Override
+	public Bid trySave(final Bid bid) {
+		int item = itemIds.lookup(bid.getItemId());
+		Columns columns = item < 0 ? null : bidstore.get(item);
+		if(columns == null){
+			if(closedItems.isClosed(bid.getItemId())){
+				return null;
+			}
+			item = itemIds.encode(bid.getItemId());
+			bidstore.compareAndSet(item, null, new Columns());
+			columns = bidstore.get(item);//sealed meanwhile if the item got closed
+		}
+		if(columns.isOutbid(bid.getAmount())){//before encoding the user
+			return null;
+		}
+		return columns.append(bid, userIds.encode(bid.getUserId()));
+	}
+	
+	/**
+	 * Compares the amount with the last claimed amount of the item, any amount being outbid on a sealed item
+	 */
+	@Override
+	public boolean isOutbid(final String itemId, final double amount) {
+		int item = itemIds.lookup(itemId);
+		Columns columns = item < 0 ? null : bidstore.get(item);
+		return columns != null && columns.isOutbid(amount);
+	}
+
+	/**
+	 * Returns the last published bid of the item.
+	 * Null is returned in event of no bids
+	 */
+	@Override
+	public Bid winningBid(final String itemId) {
+		Columns columns = columnsFor(itemId);
+		return columns == null ? null : columns.published.bid;
+	}
+
+	/**
+	 * Returns a read only snapshot of the bids for the item in the order they were placed.
+	 * Bids are created as the snapshot is iterated.
+	 */
+	@Override
+	public Iterable<Bid> bidsForItem(final String itemId) {
+		Columns columns = columnsFor(itemId);
+		if(columns == null){
+			return null;
+		}
+		final int size = columns.published.position + 1;//before reading the arrays
+		final Table table = columns.table;
+		final int[] users = table.users;
+		final double[] amounts = table.amounts;
+		if(size == 0){
+			return null;//first bid still being published
+		}
+		return new Iterable<Bid>() {
+			@Override
+			public Iterator<Bid> iterator() {
+				return new ColumnIterator(itemId, users, amounts, size);
+			}
+		};
+	}
+
+	/**
+	 * Returns the bids at the tail of the published columns
+	 */
+	@Override
+	public List<Bid> latestBids(final String itemId, final int count) {
+		if(count <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive count passed");
+		}
+		Columns columns = columnsFor(itemId);
+		if(columns == null){
+			return null;
+		}
+		final int size = columns.published.position + 1;//before reading the arrays
+		return size == 0 ? null : slice(itemId, columns, Math.max(0, size - count), size);
+	}
+
+	/**
+	 * Returns the bids at the positions following the sequence, the sequence of a bid being its position plus 1
+	 */
+	@Override
+	public List<Bid> bidsAfter(final String itemId, final long afterSequence, final int maxCount) {
+		if(maxCount <= 0){
+			throw new IllegalArgumentException("Invalid Args - non positive count passed");
+		}
+		Columns columns = columnsFor(itemId);
+		if(columns == null){
+			return null;
+		}
+		final int size = columns.published.position + 1;//before reading the arrays
+		if(size == 0){
+			return null;
+		}
+		int from = (int)Math.min(Math.max(0L, afterSequence), size);
+		return slice(itemId, columns, from, (int)Math.min((long)from + maxCount, size));
+	}
+	
+	private List<Bid> slice(final String itemId, final Columns columns, final int from, final int to){
+		final Table table = columns.table;
+		final int[] users = table.users;
+		final double[] amounts = table.amounts;
+		List<Bid> bids = new ArrayList<Bid>(to - from);
+		for (int position = from; position < to; position++) {
+			bids.add(new Bid(itemId, userIds.decode(users[position]), amounts[position], position + 1));
+		}
+		return Collections.unmodifiableList(bids);
+	}
+
+	/**
+	 * Replaces the last claim of the item with a closing claim which no amount outbids, 
+	 * the last claim being published beforehand.
+	 * An item without bids is sealed by a CAS of closed columns into its directory slot.
+	 */
+	@Override
+	public Iterable<Bid> close(final String itemId) {
+		int item = itemIds.encode(itemId);
+		Columns columns = bidstore.get(item);
+		if(columns == null){
+			if(bidstore.compareAndSet(item, null, SEALED)){
+				return null;
+			}
+			columns = bidstore.get(item);//first bid got in first
+		}
+		if(columns == SEALED){
+			return null;
+		}
+		columns.close();
+		return bidsForItem(itemId);
+	}
+
+	/**
+	 * Replaces the columns of the item by the sealed ones, releasing its bids. Its id stays in the dictionary
+	 */
+	@Override
+	public void evict(final String itemId) {
+		int item = itemIds.lookup(itemId);
+		if(item >= 0){
+			bidstore.set(item, SEALED);
+		}
+	}
+
+	/**
+	 * Walks the item dictionary, returning the items which have columns in this store
+	 */
+	@Override
+	public Iterable<String> items() {
+		return new Iterable<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new ItemIterator(itemIds.size());
+			}
+		};
+	}
+	
+	private Columns columnsFor(final String itemId){
+		int item = itemIds.lookup(itemId);
+		Columns columns = item < 0 ? null : bidstore.get(item);
+		return columns == SEALED ? null : columns;
+	}
+	
+	
+	/**
+	 * Last claimed bid of an item, replaced by CAS on every accepted bid, carrying the bid to publish. 
+	 * A closed item has a claim of infinite amount, at the position of its last bid.
+	 */
+	private static final class Claim {
+		private static final Claim NONE = new Claim(-1, 0.0d, -1, null);
+		
+		private final int position;
+		private final double amount;
+		private final int user;
+		private final Bid bid;//sequenced, null if closing
+		
+		Claim(int position, double amount, int user, Bid bid) {
+			this.position = position;
+			this.amount = amount;
+			this.user = user;
+			this.bid = bid;
+		}
+	}
+	
+	
+	/**
+	 * Columns of an item, replaced together when grown
+	 */
+	private static final class Table {
+		private final int[] users;
+		private final double[] amounts;
+		
+		Table(int capacity) {
+			this(new int[capacity], new double[capacity]);
+		}
+		
+		private Table(int[] users, double[] amounts) {
+			this.users = users;
+			this.amounts = amounts;
+		}
+		
+		/**
+		 * @param size - published slots to copy
+		 * @return
+		 */
+		Table grow(int size){
+			int[] grownUsers = new int[size * 2];
+			double[] grownAmounts = new double[size * 2];
+			System.arraycopy(users, 0, grownUsers, 0, size);
+			System.arraycopy(amounts, 0, grownAmounts, 0, size);
+			return new Table(grownUsers, grownAmounts);
+		}
+	}
+	
+	
+	/**
+	 * Claims and columns of an item
+	 */
+	private static final class Columns {
+		private static final AtomicReferenceFieldUpdater<Columns, Claim> PUBLISHED =
+				AtomicReferenceFieldUpdater.newUpdater(Columns.class, Claim.class, "published");
+		private static final AtomicReferenceFieldUpdater<Columns, Table> TABLE =
+				AtomicReferenceFieldUpdater.newUpdater(Columns.class, Table.class, "table");
+		
+		private final AtomicReference<Claim> claimed = new AtomicReference<Claim>(Claim.NONE);
+		//last claim written to the table, never a closing one
+		private volatile Claim published = Claim.NONE;
+		private volatile Table table = new Table(INITIAL_CAPACITY);
+		
+		static Columns sealed(){
+			Columns sealed = new Columns();
+			sealed.close();
+			return sealed;
+		}
+		
+		boolean isOutbid(final double amount){
+			return amount <= claimed.get().amount;
+		}
+		
+		void close(){
+			Claim last;
+			do{
+				last = claimed.get();
+				if(last.amount == Double.POSITIVE_INFINITY){
+					return;//published before being closed
+				}
+				publish(last);
+			}while(!claimed.compareAndSet(last, new Claim(last.position, Double.POSITIVE_INFINITY, -1, null)));
+		}
+		
+		Bid append(final Bid bid, final int user){
+			final double amount = bid.getAmount();
+			Claim last;
+			Claim claim = null;
+			do{
+				last = claimed.get();
+				if(amount <= last.amount){
+					return null;
+				}
+				publish(last);//so that every claim before ours is published
+				if(claim == null || claim.position != last.position + 1){
+					claim = new Claim(last.position + 1, amount, user, bid.withSequence(last.position + 2));
+				}
+			}while(!claimed.compareAndSet(last, claim));
+			
+			publish(claim);
+			return claim.bid;
+		}
+		
+		/**
+		 * Publishes the claim unless already published, every claim before it being published
+		 * @param claim
+		 */
+		private void publish(final Claim claim){
+			while(true){
+				final Claim last = published;
+				if(last.position >= claim.position){
+					return;
+				}
+				final Table current = table;
+				if(claim.position == current.users.length){
+					TABLE.compareAndSet(this, current, current.grow(claim.position));
+					continue;
+				}
+				current.users[claim.position] = claim.user;
+				current.amounts[claim.position] = claim.amount;
+				PUBLISHED.compareAndSet(this, last, claim);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Creates Bid views over a published prefix of the columns
+	 */
+	private final class ColumnIterator implements Iterator<Bid> {
+		private final String itemId;
+		private final int[] users;
+		private final double[] amounts;
+		private final int size;
+		private int cursor;
+		
+		ColumnIterator(String itemId, int[] users, double[] amounts, int size) {
+			this.itemId = itemId;
+			this.users = users;
+			this.amounts = amounts;
+			this.size = size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size;
+		}
+
+		@Override
+		public Bid next() {
+			if(cursor >= size){
+				throw new NoSuchElementException();
+			}
+			Bid bid = new Bid(itemId, userIds.decode(users[cursor]), amounts[cursor], cursor + 1);
+			cursor++;
+			return bid;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Bid history is read only");
+		}
+	}
+	
+	
+	/**
+	 * Iterates over the item ids encoded when the iteration started, skipping those without bids in this store
+	 */
+	private final class ItemIterator implements Iterator<String> {
+		private final int size;
+		private int cursor = -1;
+		
+		ItemIterator(int size) {
+			this.size = size;
+			advance();
+		}
+		
+		private void advance(){
+			do{
+				cursor++;
+			}while(cursor < size && (bidstore.get(cursor) == null || bidstore.get(cursor) == SEALED));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size;
+		}
+
+		@Override
+		public String next() {
+			if(cursor >= size){
+				throw new NoSuchElementException();
+			}
+			String itemId = itemIds.decode(cursor);
+			advance();
+			return itemId;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Items are read only");
+		}
+	}
+
+}
@@ -1,11 +1,12 @@
 package phome.bidtracker.store;
 
-import java.util.ArrayDeque;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
+import phome.bidtracker.metrics.BidMetrics;
 import phome.bidtracker.models.Bid;
 
 /**
@@ -18,18 +19,40 @@ import phome.bidtracker.models.Bid;
  * 2. Concurrent Updates on the bid list for a given Item 
  *  <br>Ref: http://www.ibm.com/developerworks/library/j-jtp04186/
  * 
- * <br><br>Also uses Deque interface to store bids on a given item. 
+ * <br><br>Also uses an append only {@link BidHistory} to store bids on a given item. 
  * Rationale:
  *  <br>A bid will only make it to the store if and only if its the highest one at given point in time.
  *      Hence the bid is auto sorted by its order of insertion. 
  *      In order to retrieve the winning bid the last bid placed has to be retrieved.
- *   	<br>Deque interface provides semantics for add() to the tail and retrieve <getLast()> from the Tail
- *   	<br>LIFO Stack would have been appropriate as well but in Java Standard Library its based on legacy
- *      implementation of Vector and hence not chosen
+ *   	<br>The history links every new bid to the last one with a single CAS, hence an accepted bid costs O(1)
+ *      and no garbage, whereas copying the whole list of bids on every update would cost O(n) per bid
+ *      and O(n^2) over the lifetime of a heavily bid item
+ * 
+ * <br><br>The CAS retries of every save on an existing item are reported to a pluggable {@link BidMetrics}.
+ * 
+ * <br><br>Closed items: a closed history turns down every bid. Once the item is evicted, 
+ * the {@link ClosedItems} keep it from being taken on again by a late bid. They are checked within the atomic insert
+ * of the first bid on an item, so a bid racing with the eviction either finds the closed history or finds the item closed.
+ * An item without bids is sealed on close by inserting a closed history, hence a first bid racing with the close
+ * is turned down the same way a later bid is.
+ * 
+ * <br><br>Users are interned by an {@link IdDictionary}, which can be shared with other stores, hence the histories 
+ * hold a single String per user instead of one per bid. The references of an item to its users are dropped on eviction,
+ * so users who no longer bid on any item in the store are forgotten.
+ * 
+ * <br><br>Retention: created with {@link BidSegments}, the store keeps the latest bids of every item in memory 
+ * and spills older ones to disk. Histories still iterate over every bid, reading the spilled ones lazily.
  * 
  */
 public class BidStoreLockFree implements BidStore{
-    private final ConcurrentMap<String, Deque<Bid>> bidstore; 
+	//closed history standing for a closed item without bids, read as no history at all
+	private static final BidHistory SEALED = sealed();
+	
+    private final ConcurrentMap<String, BidHistory> bidstore; 
+    private final BidMetrics metrics;
+    private final ClosedItems closedItems;
+    private final BidSegments segments;//null if unbounded
+    private final IdDictionary users;
 
     
     /**
@@ -37,8 +60,55 @@ public class BidStoreLockFree implements BidStore{
      * 
      */
     public BidStoreLockFree() {
+    	this(BidMetrics.NONE);
+    }
+    
+    /**
+     * Instantiates the bid store reporting CAS retries to the metrics
+     * @param metrics
+     */
+    public BidStoreLockFree(BidMetrics metrics) {
+    	this(metrics, ClosedItems.NONE);
+    }
+    
+    /**
+     * Instantiates the bid store reporting CAS retries to the metrics 
+     * and turning down bids on evicted items which are closed
+     * @param metrics
+     * @param closedItems - e.g. a {@link BidArchive}
+     */
+    public BidStoreLockFree(BidMetrics metrics, ClosedItems closedItems) {
+    	this(metrics, closedItems, null);
+    }
+    
+    /**
+     * Instantiates the bid store keeping the latest bids of every item in memory, 
+     * and spilling the older ones to the segments
+     * @param metrics
+     * @param closedItems
+     * @param segments - null to keep every bid in memory
+     */
+    public BidStoreLockFree(BidMetrics metrics, ClosedItems closedItems, BidSegments segments) {
+    	this(metrics, closedItems, segments, new IdDictionary());
+    }
+    
+    /**
+     * Instantiates the bid store interning users with a dictionary which can be shared with other stores
+     * @param metrics
+     * @param closedItems
+     * @param segments - null to keep every bid in memory
+     * @param users
+     */
+    public BidStoreLockFree(BidMetrics metrics, ClosedItems closedItems, BidSegments segments, IdDictionary users) {
+    	if(metrics == null || closedItems == null || users == null){
+    		throw new IllegalArgumentException("Cannot instantiate BidStoreLockFree with null args");
+    	}
     	int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 2;
-        bidstore = new ConcurrentHashMap<String, Deque<Bid>>(100, 0.75f, concurrencyLevel);
+        bidstore = new ConcurrentHashMap<String, BidHistory>(100, 0.75f, concurrencyLevel);
+        this.metrics = metrics;
+        this.closedItems = closedItems;
+        this.segments = segments;
+        this.users = users;
     }
     
 
@@ -46,8 +116,11 @@ public class BidStoreLockFree implements BidStore{
      * Attempts to save a bid given it is valid i.e. Higher than all other bids placed so far.
      * If not the bid is rejected.
      * 
-     * <br>Handles concurrent updates in iterative lock free way using replace and putIfAbsent contracts from ConcurrentMap 
-     * interface. At least one thread is bound to make progress in event of conflict on updates on a given item.
+     * <br>The first bid on an item is inserted using the computeIfAbsent contract from ConcurrentMap interface,
+     * unless the item is closed.
+     * Subsequent bids are appended to the item's {@link BidHistory} which handles concurrent updates 
+     * in an iterative lock free way. At least one thread is bound to make progress in event of conflict 
+     * on updates on a given item.
      * 
      * <br>Hence the iteration is self converging. 
      * Also, every iteration checks if the bid is still valid which would mean in event of being outbid the loop will 
@@ -57,88 +130,177 @@ public class BidStoreLockFree implements BidStore{
      * 
      */
     @Override
-    public boolean maybeSave(Bid bid) {    	
+    public boolean maybeSave(Bid bid) {
+    	return save(bid) != 0L;
+    }
+    
+    /**
+     * Saves the bid as per {@link #maybeSave(Bid)}, returning the bid with the sequence the history gave it.
+     * Only this sequenced bid is allocated, the history keeping the bid as given
+     */
+    @Override
+    public Bid trySave(Bid bid) {
+    	long sequence = save(bid);
+    	return sequence == 0L ? null : bid.withSequence(sequence);
+    }
+    
+    /**
+     * @return sequence of the saved bid on the item, 0 if turned down
+     */
+    private long save(Bid bid) {    	
         final String itemId = bid.getItemId();        
-        Deque<Bid> currentBids = bidstore.get(itemId);
-        boolean success = false ;
+        BidHistory history = bidstore.get(itemId);
         
-        //loop until the insert passes or the replace passes
-        while(!success && isValidBid(currentBids, bid))//loop ONLY if the bid is still valid under latest currentBids
-        {
-        	Deque<Bid> updatedBids = addBid(currentBids, bid);        	
-        	if(currentBids == null ){//Attempt insert 
-        		currentBids = bidstore.putIfAbsent(itemId, updatedBids);
-        		success = currentBids == null;        		
-        	}
-        	else{        		
-        		success = bidstore.replace(itemId, currentBids, updatedBids); 
-        		currentBids = bidstore.get(itemId);
-        	}
-        	
-        };         
+        if(history == null){//Attempt insert 
+        	HistoryCreator creator = new HistoryCreator(bid);
+        	history = bidstore.computeIfAbsent(itemId, creator);
+        	if(history == null)//closed
+        		return 0L;
+        	if(history == creator.created)
+        		return 1L;
+        }
         
-        return success;//will return false if loop short circuited due to isValidBid check        
+        return history.append(bid, metrics);//will return 0 if outbid        
     }
 
     /**
-     * Returns the winning bid by retrieving the tail of the deque
+     * Compares the amount with the winning amount of the item, a single map lookup and a volatile read.
+     * Any amount is outbid on a closed item.
+     * 
+     */
+    @Override
+    public boolean isOutbid(final String itemId, final double amount){
+    	BidHistory history = bidstore.get(itemId);
+    	return history != null && history.isOutbid(amount);
+    }
+
+    /**
+     * Returns the winning bid by retrieving the last bid in the history
      * Null is returned in event of no bids
      */
     @Override
     public Bid winningBid(final String itemId){
-    	Deque<Bid> currentBids = bidstore.get(itemId);
-    	return currentBids == null ? null : currentBids.getLast();//retrieve the tail
+    	BidHistory history = historyFor(itemId);
+    	return history == null ? null : history.winningBid();
     }
     
     
     /**
-     * Retrieves list of bids and returns a read only view of the list to the caller.
+     * Returns a read only snapshot of the bids for the item in the order they were placed.
      * 
      */
     @Override
     public Iterable<Bid> bidsForItem(final String itemId){
-    	Deque<Bid> currentBids = bidstore.get(itemId);
-    	return currentBids ==  null ? null : 
-    		Collections.unmodifiableCollection(currentBids);    	
+    	BidHistory history = historyFor(itemId);
+    	return history ==  null ? null : history.snapshot();    	
     }
     
     
     /**
-     * Adds the new bid to a current list of Bids
-     * If the current list of bids is null a new list containing just the new bid is createD
-     * @param currentBids
-     * @param bid
-     * @return
+     * Returns the latest bids of the item, located from the checkpoints of its history
+     * 
      */
-    private Deque<Bid> addBid(Deque<Bid> currentBids, Bid bid){
-    	Deque<Bid> updatedBids;
-        if(currentBids == null){
-        	updatedBids = new ArrayDeque<Bid>();
-        	updatedBids.add(bid);
-        }else{
-        	updatedBids = new ArrayDeque<Bid>(currentBids); //TODO Why shallow copying
-        	updatedBids.add(bid);	
-        }
-        return updatedBids;
+    @Override
+    public List<Bid> latestBids(final String itemId, final int count){
+    	if(count <= 0){
+    		throw new IllegalArgumentException("Invalid Args - non positive count passed");
+    	}
+    	BidHistory history = historyFor(itemId);
+    	return history == null ? null : history.latest(count);
+    }
+    
+    
+    /**
+     * Returns a page of the bids of the item, located from the checkpoints of its history
+     * 
+     */
+    @Override
+    public List<Bid> bidsAfter(final String itemId, final long afterSequence, final int maxCount){
+    	if(maxCount <= 0){
+    		throw new IllegalArgumentException("Invalid Args - non positive count passed");
+    	}
+    	BidHistory history = historyFor(itemId);
+    	return history == null ? null : history.after(afterSequence, maxCount);
+    }
+    
+    
+    /**
+     * Closes the history of the item, sealing the item with a closed history if it has no bids yet
+     * 
+     */
+    @Override
+    public Iterable<Bid> close(final String itemId){
+    	BidHistory history = bidstore.computeIfAbsent(itemId, SEAL);
+    	if(history == SEALED){
+    		return null;
+    	}
+    	history.close();
+    	return history.snapshot();
     }
     
+    
     /**
-     * A bid is valid only if it oubids the last highest bid
-     * @param currentBids
-     * @param bid
-     * @return
+     * Removes the history of the item from the CHM, then closes it in case it was not and releases its users
+     * 
      */
-    private boolean isValidBid(Deque<Bid>currentBids, Bid bid){    	
-    	final Bid winningBid = winningBid(bid.getItemId());
-    	boolean isValid = 
-    			winningBid == null || //No current bid hence incoming bid valid
-    			bid.getAmount() > winningBid.getAmount();//Only valid if greater than 
-    	return isValid;		
+    @Override
+    public void evict(final String itemId){
+    	BidHistory history = bidstore.remove(itemId);
+    	if(history != null && history != SEALED){
+    		history.close();
+    		history.release();
+    	}
     }
     
     
+    /**
+     * Returns a read only view of the keys of the underlying CHM
+     * 
+     */
+    @Override
+    public Iterable<String> items(){
+    	return Collections.unmodifiableSet(bidstore.keySet());
+    }
     
     
+    private BidHistory historyFor(final String itemId){
+    	BidHistory history = bidstore.get(itemId);
+    	return history == SEALED ? null : history;
+    }
+    
+    private static BidHistory sealed(){
+    	BidHistory sealed = new BidHistory(new Bid("sealed", "sealed", Double.MAX_VALUE));
+    	sealed.close();
+    	return sealed;
+    }
+    
+    private static final Function<String, BidHistory> SEAL = new Function<String, BidHistory>() {
+    	@Override
+    	public BidHistory apply(String itemId) {
+    		return SEALED;
+    	}
+    };
     
     
+    /**
+     * Creates the history of the first bid on an item, unless the item is closed, remembering the history created
+     */
+    private final class HistoryCreator implements Function<String, BidHistory> {
+    	private final Bid bid;
+    	private BidHistory created;
+    	
+    	HistoryCreator(Bid bid) {
+    		this.bid = bid;
+		}
+    	
+    	@Override
+    	public BidHistory apply(String itemId) {
+    		if(closedItems.isClosed(itemId)){
+    			return null;
+    		}
+    		created = new BidHistory(bid, users, segments);
+    		return created;
+    	}
+    }
+    
 }
@@ -0,0 +1,25 @@
+package phome.bidtracker.store;
+
+/**
+ * Tells the items whose auction is over, so that a store does not take them on again once evicted
+ *
+ */
+public interface ClosedItems {
+	
+	/**
+	 * No item is ever closed
+	 */
+	public static final ClosedItems NONE = new ClosedItems() {
+		@Override
+		public boolean isClosed(String itemId) {
+			return false;
+		}
+	};
+	
+	/**
+	 * @param itemId
+	 * @return <code>true</code> if the auction of the item is over
+	 */
+	public boolean isClosed(String itemId);
+
+}
@@ -0,0 +1,85 @@
+package phome.bidtracker.store;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Growable array of references indexed by dense int ids, e.g. the ids handed out by an {@link IdDictionary}.
+ * 
+ * <br><br>Slots live in fixed size chunks which are allocated on first use, hence growing never copies a slot.
+ * Reads and CAS updates of a slot are lock free. Only allocating a chunk (once per {@value #CHUNK_SIZE} ids) 
+ * takes a lock, while the table of chunks is replaced by a larger copy.
+ * 
+ * <br><br>Compared to a ConcurrentHashMap keyed by boxed ints, a slot costs a single reference.
+ *
+ * @param <E>
+ */
+final class ConcurrentDirectory<E> {
+	
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	private volatile AtomicReferenceArray<E>[] chunks = newTable(16);
+	
+	/**
+	 * @param index - non negative
+	 * @return the element at the index, <code>null</code> if none
+	 */
+	E get(int index){
+		AtomicReferenceArray<E>[] table = chunks;
+		int chunk = index >>> CHUNK_BITS;
+		if(chunk >= table.length || table[chunk] == null){
+			return null;
+		}
+		return table[chunk].get(index & CHUNK_MASK);
+	}
+	
+	/**
+	 * @param index - non negative
+	 * @param element
+	 */
+	void set(int index, E element){
+		chunkFor(index).set(index & CHUNK_MASK, element);
+	}
+	
+	/**
+	 * Atomically sets the element at the index if it is the expected one
+	 * @param index - non negative
+	 * @param expect
+	 * @param update
+	 * @return <code>true</code> if set
+	 */
+	boolean compareAndSet(int index, E expect, E update){
+		return chunkFor(index).compareAndSet(index & CHUNK_MASK, expect, update);
+	}
+	
+	private AtomicReferenceArray<E> chunkFor(int index){
+		if(index < 0){
+			throw new IllegalArgumentException("Invalid Args - negative index passed");
+		}
+		int chunk = index >>> CHUNK_BITS;
+		AtomicReferenceArray<E>[] table = chunks;
+		if(chunk < table.length && table[chunk] != null){
+			return table[chunk];
+		}
+		synchronized(this){
+			table = chunks;
+			if(chunk >= table.length){
+				AtomicReferenceArray<E>[] larger = newTable(Math.max(table.length * 2, chunk + 1));
+				System.arraycopy(table, 0, larger, 0, table.length);
+				table = larger;
+			}
+			if(table[chunk] == null){
+				table[chunk] = new AtomicReferenceArray<E>(CHUNK_SIZE);
+			}
+			chunks = table;//volatile write publishes the new chunk
+			return table[chunk];
+		}
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <E> AtomicReferenceArray<E>[] newTable(int size){
+		return new AtomicReferenceArray[size];
+	}
+
+}
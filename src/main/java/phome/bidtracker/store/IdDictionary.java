@@ -0,0 +1,210 @@
+package phome.bidtracker.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Function;
+
+/**
+ * Concurrent interning dictionary mapping external String ids (users, items) to dense int ids and back.
+ *
+ * <br><br>Every distinct id is assigned the next int on first sight.
+ * Stores can then hold ints, or the single canonical String of the id, instead of a String per bid,
+ * and index arrays by them instead of hashing.
+ * <br>Encoding an already known id is a single lock free CHM lookup,
+ * and decoding is an array access.
+ * <br>Assignment relies on CHM.computeIfAbsent being atomic per key, hence ids stay dense
+ * even when a new id is encoded concurrently.
+ *
+ * <br><br>Forgetting: an id is either pinned or reference counted.
+ * <br>{@link #encode(String)} pins the id, it is kept forever. Fits stores indexing arrays by the int id.
+ * <br>{@link #acquire(String)} counts a reference to the id and {@link #release(int)} drops it.
+ * 		Once the last reference is dropped, the id is forgotten, unless pinned meanwhile.
+ * 		Fits stores which let go of ids, e.g. on eviction of an item.
+ * <br>A forgotten int id is never handed out again, hence an int id read before the id got forgotten
+ * can never decode to another id (no ABA). Seen again, the id gets a new int id.
+ * The only trace of a forgotten id is its empty directory slot, a reference.
+ * <br>Counts are updated with a CAS on the entry of the id. A count found at 0 means the entry is being forgotten,
+ * in which case the acquirer helps to remove it and assigns a new entry.
+ *
+ */
+public final class IdDictionary {
+
+	private final ConcurrentMap<String, Entry> ids;
+	private final ConcurrentDirectory<Entry> entries = new ConcurrentDirectory<Entry>();
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Instantiates the dictionary with a CHM with concurrency level based on CPU cores available
+	 *
+	 */
+	public IdDictionary() {
+		int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 2;
+		ids = new ConcurrentHashMap<String, Entry>(100, 0.75f, concurrencyLevel);
+	}
+
+	/**
+	 * Returns the int id of the given id, assigning the next one if first seen. The id is never forgotten.
+	 * @param name
+	 * @return
+	 */
+	public int encode(final String name){
+		Entry entry = ids.get(name);
+		if(entry != null && entry.refs == Entry.PINNED){
+			return entry.id;
+		}
+		return retain(name, Entry.PINNED);
+	}
+
+	/**
+	 * Returns the int id of the given id, assigning the next one if first seen,
+	 * and counts a reference to it, to be dropped by {@link #release(int)}
+	 * @param name
+	 * @return
+	 */
+	public int acquire(final String name){
+		return retain(name, 1);
+	}
+
+	/**
+	 * Drops a reference counted by {@link #acquire(String)}, forgetting the id if it was the last one.
+	 * No op on a pinned id.
+	 * @param id
+	 */
+	public void release(final int id){
+		Entry entry = id < 0 ? null : entries.get(id);
+		if(entry == null){
+			throw new IllegalStateException("Id " + id + " released more times than acquired");
+		}
+		if(entry.release()){
+			ids.remove(entry.name, entry);
+			entries.compareAndSet(id, entry, null);
+		}
+	}
+
+	/**
+	 * Returns the int id of the given id without assigning one
+	 * @param name
+	 * @return int id <br>
+	 * 		   -1 if never encoded or forgotten
+	 */
+	public int lookup(final String name){
+		Entry entry = ids.get(name);
+		return entry == null ? -1 : entry.id;
+	}
+
+	/**
+	 * @param id
+	 * @return the external id of the int id <br>
+	 * 		   <code>null</code> if never assigned or forgotten
+	 */
+	public String decode(final int id){
+		Entry entry = id < 0 ? null : entries.get(id);
+		return entry == null ? null : entry.name;
+	}
+
+	/**
+	 * @return number of ids assigned so far, forgotten ones included
+	 */
+	public int size(){
+		return nextId.get();
+	}
+
+
+	private int retain(final String name, final int refs){
+		while(true){
+			Entry entry = ids.get(name);
+			if(entry == null){
+				Assigner assigner = new Assigner(refs);
+				entry = ids.computeIfAbsent(name, assigner);
+				if(entry == assigner.assigned){
+					return entry.id;
+				}
+			}
+			if(entry.retain(refs)){
+				return entry.id;
+			}
+			ids.remove(name, entry);//being forgotten, help and retry
+		}
+	}
+
+
+	/**
+	 * Assigns the next int id to a new id, remembering the entry assigned
+	 */
+	private final class Assigner implements Function<String, Entry> {
+		private final int refs;
+		private Entry assigned;
+
+		Assigner(int refs) {
+			this.refs = refs;
+		}
+
+		@Override
+		public Entry apply(String name) {
+			assigned = new Entry(nextId.getAndIncrement(), name, refs);
+			entries.set(assigned.id, assigned);//before the id is published by the CHM
+			return assigned;
+		}
+	}
+
+
+	/**
+	 * An assigned id with its reference count, {@value #PINNED} if pinned.
+	 * A count of 0 is final, the entry is forgotten.
+	 */
+	private static final class Entry {
+		private static final int PINNED = -1;
+		private static final AtomicIntegerFieldUpdater<Entry> REFS =
+				AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refs");
+
+		private final int id;
+		private final String name;
+		private volatile int refs;
+
+		Entry(int id, String name, int refs) {
+			this.id = id;
+			this.name = name;
+			this.refs = refs;
+		}
+
+		/**
+		 * Counts a reference, or pins the entry
+		 * @return <code>false</code> if the entry is forgotten
+		 */
+		boolean retain(int count){
+			while(true){
+				int current = refs;
+				if(current == 0){
+					return false;
+				}
+				if(current == PINNED){
+					return true;
+				}
+				if(REFS.compareAndSet(this, current, count == PINNED ? PINNED : current + count)){
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if the last reference was dropped
+		 */
+		boolean release(){
+			while(true){
+				int current = refs;
+				if(current == PINNED){
+					return false;
+				}
+				if(current == 0){
+					throw new IllegalStateException("Id " + name + " released more times than acquired");
+				}
+				if(REFS.compareAndSet(this, current, current - 1)){
+					return current == 1;
+				}
+			}
+		}
+	}
+
+}
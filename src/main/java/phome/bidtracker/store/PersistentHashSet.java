@@ -0,0 +1,323 @@
+package phome.bidtracker.store;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash set which is updated by creating a new version sharing all but a path of the old one,
+ * i.e. a Hash Array Mapped Trie.
+ *  <br>Ref: Bagwell, Ideal Hash Trees
+ * 
+ * <br><br>Every level of the trie consumes 5 bits of the hash, a node holding up to 32 entries 
+ * compacted by a bitmap. Adding an element copies the nodes on its path only, at most 7 small arrays, 
+ * hence it is practically O(1) whatever the size of the set, against O(n) to copy a whole HashSet.
+ * Removing an element copies its path likewise, and folds a sub node left with a single element into its parent.
+ * <br>As any version is immutable, it can be handed out as is, a snapshot costs nothing.
+ * <br>Elements whose hashes are fully equal end up in a collision node at the bottom of the trie.
+ *
+ * @param <E>
+ */
+final class PersistentHashSet<E> extends AbstractSet<E> {
+	
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final int MAX_SHIFT = 30;
+	
+	@SuppressWarnings("rawtypes")
+	private static final PersistentHashSet EMPTY = new PersistentHashSet(new BitmapNode(0, new Object[0]), 0);
+	
+	private final Node root;
+	private final int size;
+	
+	private PersistentHashSet(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+	
+	/**
+	 * @return the empty set
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> PersistentHashSet<E> empty(){
+		return EMPTY;
+	}
+	
+	/**
+	 * Returns a version of this set with the element added
+	 * @param element - non null
+	 * @return the new version <br>
+	 * 		   this very set if it already contains the element
+	 */
+	PersistentHashSet<E> with(E element){
+		Node updated = root.with(element, hash(element), 0);
+		return updated == root ? this : new PersistentHashSet<E>(updated, size + 1);
+	}
+	
+	/**
+	 * Returns a version of this set with the element removed
+	 * @param element - non null
+	 * @return the new version <br>
+	 * 		   this very set if it does not contain the element
+	 */
+	PersistentHashSet<E> without(E element){
+		Node updated = root.without(element, hash(element), 0);
+		return updated == root ? this : new PersistentHashSet<E>(updated, size - 1);
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		return o != null && root.contains(o, hash(o), 0);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new TrieIterator<E>(root);
+	}
+	
+	private static int hash(Object o){
+		int h = o.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Creates the smallest sub trie holding two elements of distinct identity
+	 */
+	private static Node pair(Object e1, int hash1, Object e2, int hash2, int shift){
+		if(shift > MAX_SHIFT){
+			return new CollisionNode(new Object[]{e1, e2});
+		}
+		int index1 = (hash1 >>> shift) & MASK;
+		int index2 = (hash2 >>> shift) & MASK;
+		if(index1 == index2){
+			return new BitmapNode(1 << index1, new Object[]{pair(e1, hash1, e2, hash2, shift + BITS)});
+		}
+		Object[] entries = index1 < index2 ? new Object[]{e1, e2} : new Object[]{e2, e1};
+		return new BitmapNode((1 << index1) | (1 << index2), entries);
+	}
+	
+	
+	private abstract static class Node {
+		/**
+		 * @return the node with the element added, this very node if already there
+		 */
+		abstract Node with(Object element, int hash, int shift);
+		
+		/**
+		 * @return the node with the element removed, this very node if not there
+		 */
+		abstract Node without(Object element, int hash, int shift);
+		
+		abstract boolean contains(Object element, int hash, int shift);
+		
+		/**
+		 * @return elements and sub nodes held by the node
+		 */
+		abstract Object[] entries();
+	}
+	
+	
+	/**
+	 * Node holding, at the positions of the bits set in its bitmap, either an element or a sub node
+	 */
+	private static final class BitmapNode extends Node {
+		private final int bitmap;
+		private final Object[] entries;
+		
+		BitmapNode(int bitmap, Object[] entries) {
+			this.bitmap = bitmap;
+			this.entries = entries;
+		}
+		
+		@Override
+		Node with(Object element, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int position = Integer.bitCount(bitmap & (bit - 1));
+			if((bitmap & bit) == 0){
+				Object[] updated = new Object[entries.length + 1];
+				System.arraycopy(entries, 0, updated, 0, position);
+				updated[position] = element;
+				System.arraycopy(entries, position, updated, position + 1, entries.length - position);
+				return new BitmapNode(bitmap | bit, updated);
+			}
+			
+			Object entry = entries[position];
+			Object replacement;
+			if(entry instanceof Node){
+				replacement = ((Node)entry).with(element, hash, shift + BITS);
+				if(replacement == entry){
+					return this;
+				}
+			}
+			else if(entry.equals(element)){
+				return this;
+			}
+			else{
+				replacement = pair(entry, hash(entry), element, hash, shift + BITS);
+			}
+			Object[] updated = entries.clone();
+			updated[position] = replacement;
+			return new BitmapNode(bitmap, updated);
+		}
+
+		@Override
+		Node without(Object element, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if((bitmap & bit) == 0){
+				return this;
+			}
+			int position = Integer.bitCount(bitmap & (bit - 1));
+			Object entry = entries[position];
+			if(entry instanceof Node){
+				Node sub = ((Node)entry).without(element, hash, shift + BITS);
+				if(sub == entry){
+					return this;
+				}
+				Object[] subEntries = sub.entries();
+				if(subEntries.length == 0){
+					return removeAt(position, bit);
+				}
+				Object[] updated = entries.clone();
+				updated[position] = subEntries.length == 1 && !(subEntries[0] instanceof Node) ? subEntries[0] : sub;
+				return new BitmapNode(bitmap, updated);
+			}
+			return entry.equals(element) ? removeAt(position, bit) : this;
+		}
+		
+		private Node removeAt(int position, int bit){
+			Object[] updated = new Object[entries.length - 1];
+			System.arraycopy(entries, 0, updated, 0, position);
+			System.arraycopy(entries, position + 1, updated, position, updated.length - position);
+			return new BitmapNode(bitmap & ~bit, updated);
+		}
+
+		@Override
+		boolean contains(Object element, int hash, int shift) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if((bitmap & bit) == 0){
+				return false;
+			}
+			Object entry = entries[Integer.bitCount(bitmap & (bit - 1))];
+			return entry instanceof Node ? 
+					((Node)entry).contains(element, hash, shift + BITS) : entry.equals(element);
+		}
+		
+		@Override
+		Object[] entries() {
+			return entries;
+		}
+	}
+	
+	
+	/**
+	 * Bottom node holding elements with the very same hash
+	 */
+	private static final class CollisionNode extends Node {
+		private final Object[] elements;
+		
+		CollisionNode(Object[] elements) {
+			this.elements = elements;
+		}
+		
+		@Override
+		Node with(Object element, int hash, int shift) {
+			if(contains(element, hash, shift)){
+				return this;
+			}
+			Object[] updated = Arrays.copyOf(elements, elements.length + 1);
+			updated[elements.length] = element;
+			return new CollisionNode(updated);
+		}
+		
+		@Override
+		Node without(Object element, int hash, int shift) {
+			for (int i = 0; i < elements.length; i++) {
+				if(elements[i].equals(element)){
+					Object[] updated = new Object[elements.length - 1];
+					System.arraycopy(elements, 0, updated, 0, i);
+					System.arraycopy(elements, i + 1, updated, i, updated.length - i);
+					return new CollisionNode(updated);
+				}
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(Object element, int hash, int shift) {
+			for (Object e : elements) {
+				if(e.equals(element))
+					return true;
+			}
+			return false;
+		}
+		
+		@Override
+		Object[] entries() {
+			return elements;
+		}
+	}
+	
+	
+	/**
+	 * Depth first, read only iterator over the elements of the trie
+	 */
+	private static final class TrieIterator<E> implements Iterator<E> {
+		private final Object[][] entries = new Object[MAX_SHIFT / BITS + 3][];
+		private final int[] positions = new int[MAX_SHIFT / BITS + 3];
+		private int depth;
+		private Object next;
+		
+		TrieIterator(Node root) {
+			entries[0] = root.entries();
+			advance();
+		}
+		
+		private void advance(){
+			next = null;
+			while(depth >= 0){
+				if(positions[depth] == entries[depth].length){
+					depth--;
+					continue;
+				}
+				Object entry = entries[depth][positions[depth]++];
+				if(entry instanceof Node){
+					depth++;
+					entries[depth] = ((Node)entry).entries();
+					positions[depth] = 0;
+				}
+				else{
+					next = entry;
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if(next == null){
+				throw new NoSuchElementException();
+			}
+			E element = (E)next;
+			advance();
+			return element;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Set is immutable");
+		}
+	}
+
+}
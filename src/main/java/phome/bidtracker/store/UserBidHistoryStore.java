@@ -13,6 +13,15 @@ public interface UserBidHistoryStore {
 	public void save(final String userId, final String itemId);
 	
 	
+	/**
+	 * Removes the Item from Users Active Item List, e.g. once the auction of the item is closed.
+	 * A user left with no items is dropped altogether
+	 * @param userId
+	 * @param itemId
+	 */
+	public void remove(final String userId, final String itemId);
+	
+	
 	/**
 	 * Retrives a Set of Items on which the UserHas placed bids On
 	 * @param userId
@@ -0,0 +1,231 @@
+package phome.bidtracker.store;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Dictionary encoded, lock free implementation of UserBidHistoryStore interface.
+ * 
+ * <br><br>User and item ids are encoded into dense ints by {@link IdDictionary}s, 
+ * which can be shared with other stores so that every id is held once in the whole process.
+ * The items of a user are kept as a sorted int[] in a {@link ConcurrentDirectory} slot indexed by the user int id.
+ * Rationale:
+ * <br>4 bytes per item a user has bid on, against a HashMap entry and a String copy per item in a HashSet
+ * <br>No hashing or boxing, membership is a binary search
+ * 
+ * <br><br>Updates are copy on write and published with a CAS on the user slot,
+ * retrying on the latest items of the user in event of conflict.
+ * Copying a few thousand ints is a single memory copy, which keeps this simple layout worth it even for power users.
+ * 
+ * <br><br>Every entry acquires its user and item ids from the dictionaries and releases them once removed, 
+ * hence users and items the store no longer holds are forgotten, e.g. after the eviction of closed items.
+ * @see UserBidHistoryStoreLockFreeImpl
+ *
+ */
+public class UserBidHistoryStoreEncodedImpl implements UserBidHistoryStore {
+	
+	private final IdDictionary userIds;
+	private final IdDictionary itemIds;
+	private final ConcurrentDirectory<int[]> userstore = new ConcurrentDirectory<int[]>();
+	
+	/**
+	 * Instantiates the store with its own dictionaries
+	 */
+	public UserBidHistoryStoreEncodedImpl() {
+		this(new IdDictionary(), new IdDictionary());
+	}
+	
+	/**
+	 * Instantiates the store with dictionaries shared with other stores
+	 * Disallows null args
+	 * @param userIds
+	 * @param itemIds
+	 */
+	public UserBidHistoryStoreEncodedImpl(IdDictionary userIds, IdDictionary itemIds) {
+		if(userIds == null || itemIds == null){
+			throw new IllegalArgumentException("Cannot instantiate UserBidHistoryStore with null dictionaries");
+		}
+		this.userIds = userIds;
+		this.itemIds = itemIds;
+	}
+	
+
+	/**
+	 * Inserts the item int id into the sorted items of the user, unless already there.
+	 * <br>Loops on the latest items of the user until the CAS passes, or short circuits as soon as 
+	 * the item is found to be there already.
+	 * <br>A user bidding again on an item is found with lookups, without touching the reference counts.
+	 */
+	@Override
+	public void save(final String userId, final String itemId) {
+		if(contains(userIds.lookup(userId), itemIds.lookup(itemId))){
+			return;
+		}
+		final int user = userIds.acquire(userId);
+		final int item = itemIds.acquire(itemId);
+		
+		while(true){
+			int[] currItems = userstore.get(user);
+			int position = currItems == null ? -1 : Arrays.binarySearch(currItems, item);
+			if(position >= 0){//saved concurrently
+				userIds.release(user);
+				itemIds.release(item);
+				return;
+			}
+			if(userstore.compareAndSet(user, currItems, insert(currItems, -position - 1, item))){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes the item int id from the sorted items of the user, clearing the user slot if it was the last one.
+	 * <br>Loops on the latest items of the user until the CAS passes, or short circuits if the item is not there.
+	 */
+	@Override
+	public void remove(final String userId, final String itemId) {
+		final int user = userIds.lookup(userId);
+		final int item = itemIds.lookup(itemId);
+		if(user < 0 || item < 0){
+			return;
+		}
+		
+		while(true){
+			int[] currItems = userstore.get(user);
+			int position = currItems == null ? -1 : Arrays.binarySearch(currItems, item);
+			if(position < 0){
+				return;
+			}
+			if(userstore.compareAndSet(user, currItems, delete(currItems, position))){
+				userIds.release(user);
+				itemIds.release(item);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns a read only set of the items, decoded right away since an item removed later on may get forgotten.
+	 * An item found forgotten meanwhile means the items of the user have changed, hence they are read again.
+	 * The set is a snapshot, later bids of the user are not reflected.
+	 */
+	@Override
+	public Set<String> itemsForUser(final String userId) {
+		int user = userIds.lookup(userId);
+		while(true){
+			int[] currItems = user < 0 ? null : userstore.get(user);
+			if(currItems == null){
+				return null;
+			}
+			String[] names = new String[currItems.length];
+			int decoded = 0;
+			for (; decoded < currItems.length && (names[decoded] = itemIds.decode(currItems[decoded])) != null; decoded++);
+			if(decoded == currItems.length){
+				return new EncodedItemSet(currItems, names, itemIds);
+			}
+		}
+	}
+	
+	
+	private boolean contains(int user, int item){
+		if(user < 0 || item < 0){
+			return false;
+		}
+		int[] currItems = userstore.get(user);
+		return currItems != null && Arrays.binarySearch(currItems, item) >= 0;
+	}
+	
+	
+	private static int[] insert(int[] items, int position, int item){
+		if(items == null){
+			return new int[]{item};
+		}
+		int[] updated = new int[items.length + 1];
+		System.arraycopy(items, 0, updated, 0, position);
+		updated[position] = item;
+		System.arraycopy(items, position, updated, position + 1, items.length - position);
+		return updated;
+	}
+	
+	
+	private static int[] delete(int[] items, int position){
+		if(items.length == 1){
+			return null;
+		}
+		int[] updated = new int[items.length - 1];
+		System.arraycopy(items, 0, updated, 0, position);
+		System.arraycopy(items, position + 1, updated, position, updated.length - position);
+		return updated;
+	}
+	
+	
+	/**
+	 * Immutable Set view over a sorted array of item int ids and their decoded ids
+	 */
+	private static final class EncodedItemSet extends AbstractSet<String> {
+		private final int[] items;
+		private final String[] names;
+		private final IdDictionary itemIds;
+		
+		EncodedItemSet(int[] items, String[] names, IdDictionary itemIds) {
+			this.items = items;
+			this.names = names;
+			this.itemIds = itemIds;
+		}
+
+		/**
+		 * Binary search on the int id. An id unknown or newer than the items may have been forgotten 
+		 * and seen again since the snapshot, hence it is looked for by name.
+		 */
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof String)){
+				return false;
+			}
+			int item = itemIds.lookup((String)o);
+			if(item >= 0 && item <= items[items.length - 1]){
+				return Arrays.binarySearch(items, item) >= 0;
+			}
+			for (String name : names) {
+				if(name.equals(o)){
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int cursor;
+				
+				@Override
+				public boolean hasNext() {
+					return cursor < items.length;
+				}
+
+				@Override
+				public String next() {
+					if(cursor >= items.length){
+						throw new NoSuchElementException();
+					}
+					return names[cursor++];
+				}
+				
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Items of a user are read only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return items.length;
+		}
+	}
+
+}
@@ -1,13 +1,21 @@
 package phome.bidtracker.store;
 
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import phome.bidtracker.metrics.BidMetrics;
+
 /**
  * Lock free implementation of IUserBidHistory interface.
+ * 
+ * <br><br>The items of a user are held in an immutable {@link PersistentHashSet}. 
+ * Rationale:
+ * <br>Adding an item creates a new version of the set sharing almost everything with the previous one, 
+ *     hence power users with thousands of items do not pay for a copy of their whole set on every new item
+ * <br>The current version is published with a single CAS on the user entry of the CHM
+ * <br>Any version can be handed out to readers as is, being an immutable snapshot
+ * <br><br>The CAS retries of every save are reported to a pluggable {@link BidMetrics}.
  * @see BidStoreLockFree 
  * 
  * @author phome
@@ -15,15 +23,28 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class UserBidHistoryStoreLockFreeImpl implements UserBidHistoryStore
 {
-	private final ConcurrentMap<String, Set<String>> userstore;  
+	private final ConcurrentMap<String, PersistentHashSet<String>> userstore;  
+	private final BidMetrics metrics;
 
 	/**
 	 * Instantiates the user history store with a CHM with concurrency level based on CPU cores available
 	 * 
 	 */
 	public UserBidHistoryStoreLockFreeImpl() {
+		this(BidMetrics.NONE);
+	}
+	
+	/**
+	 * Instantiates the user history store reporting CAS retries to the metrics
+	 * @param metrics
+	 */
+	public UserBidHistoryStoreLockFreeImpl(BidMetrics metrics) {
+		if(metrics == null){
+			throw new IllegalArgumentException("Cannot instantiate UserBidHistoryStoreLockFreeImpl with null args");
+		}
 		int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 2;
-		userstore = new ConcurrentHashMap<String, Set<String>>(100, 0.75f, concurrencyLevel);
+		userstore = new ConcurrentHashMap<String, PersistentHashSet<String>>(100, 0.75f, concurrencyLevel);
+		this.metrics = metrics;
 	}
 
 
@@ -33,7 +54,7 @@ public class UserBidHistoryStoreLockFreeImpl implements UserBidHistoryStore
 	 * If item is already there in the list the User store remains unupdated
 	 * 
 	 * <br><br> In event of conflict on the same user the lock free algorithm kicks in 
-	 * to retry in a convergent way. However, this is highly unlikely by the use case
+	 * to retry in a convergent way, on the latest items of the user. However, this is highly unlikely by the use case
 	 * i.e. A regular user is not expected to place bids simultaneously.
 	 * However, a lock free algorithm is highly beneficial in such scenarios as well, since in majority of the cases
 	 * ops will proceed on the first iteration itself.
@@ -53,63 +74,70 @@ public class UserBidHistoryStoreLockFreeImpl implements UserBidHistoryStore
 	 */
 	@Override
 	public void save(final String userId, final String itemId) {
-		Set<String> currItems = userstore.get(userId);
-		Set<String> updatableCopy = prepareUpdatableCopy(currItems);
-		boolean success = false;
+		PersistentHashSet<String> currItems = userstore.get(userId);
+		int retries = 0;
 
 		//loop until the insert passes or the replace passes
 		//exit loop on success OR short circuit if item is already added
-		while(!success && updatableCopy.add(itemId))
-		{	    		    	
-			if(currItems == null ){
-				currItems = userstore.putIfAbsent(userId, updatableCopy);				
-				success = currItems == null;      
-				if(!success){
-					updatableCopy = prepareUpdatableCopy(currItems);
+		while(true)
+		{
+			if(currItems == null){
+				currItems = userstore.putIfAbsent(userId, PersistentHashSet.<String>empty().with(itemId));
+				if(currItems == null){
+					break;
 				}
 			}
-			else{
-				success = userstore.replace(userId, currItems, updatableCopy);
-				if(!success){
-					currItems = userstore.get(itemId);
-					updatableCopy = prepareUpdatableCopy(currItems);	
-				}				
-			} 
-
-		};  	        
+			PersistentHashSet<String> updatedItems = currItems.with(itemId);
+			if(updatedItems == currItems){//already there
+				break;
+			}
+			if(userstore.replace(userId, currItems, updatedItems)){
+				break;
+			}
+			retries++;
+			currItems = userstore.get(userId);
+		}
+		metrics.userStoreSaved(userId, retries);
 	}
 
 	/**
-	 * Returns a unmodifiable view of the items set for a given user
+	 * Replaces the items of the user with a version without the item, 
+	 * or removes the user if it was the last item, retrying on the latest items of the user in event of conflict
 	 * 
 	 * @param userId
-	 * @return
-	 * 
+	 * @param itemId
 	 */
 	@Override
-	public Set<String> itemsForUser(final String userId){
-		Set<String> currItems = userstore.get(userId);
-		return currItems == null? null : Collections.unmodifiableSet(currItems);
+	public void remove(final String userId, final String itemId) {
+		while(true)
+		{
+			PersistentHashSet<String> currItems = userstore.get(userId);
+			if(currItems == null){
+				return;
+			}
+			PersistentHashSet<String> updatedItems = currItems.without(itemId);
+			if(updatedItems == currItems){//not there
+				return;
+			}
+			boolean updated = updatedItems.isEmpty() ? 
+					userstore.remove(userId, currItems) : userstore.replace(userId, currItems, updatedItems);
+			if(updated){
+				return;
+			}
+		}
 	}
 
-	
 	/**
-	 * creates a copy of the items 
-	 * If null then an empty Set is returned
-	 * @param currItems
+	 * Returns the current version of the items set for a given user, 
+	 * which is an immutable snapshot unaffected by later bids
+	 * 
+	 * @param userId
 	 * @return
 	 * 
 	 */
-	private Set<String> prepareUpdatableCopy(Set<String> currItems){
-		Set<String> updatableCopy;
-		if(currItems == null){
-			updatableCopy = new HashSet<String>(); 
-
-		}else{
-			updatableCopy = new HashSet<String>(currItems); 
-		}
-		return updatableCopy;
+	@Override
+	public Set<String> itemsForUser(final String userId){
+		return userstore.get(userId);
 	}
 
-
 }
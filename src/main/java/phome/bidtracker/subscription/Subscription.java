@@ -0,0 +1,15 @@
+package phome.bidtracker.subscription;
+
+/**
+ * Handle on a subscription to the winning bid of an item
+ *
+ */
+public interface Subscription {
+	
+	/**
+	 * Stops the updates. An update already being delivered may still complete. 
+	 * <br>Cancelling twice has no effect.
+	 */
+	public void cancel();
+
+}
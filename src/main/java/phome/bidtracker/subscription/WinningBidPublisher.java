@@ -0,0 +1,247 @@
+package phome.bidtracker.subscription;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Pushes the winning bid of an item to its subscribers as it changes, instead of having them poll the tracker.
+ * 
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker:
+ * <pre>
+ * WinningBidPublisher publisher = new WinningBidPublisher(threads);
+ * BidTracker tracker = new BidTrackerImpl(bidStore, userStore, publisher);
+ * Subscription subscription = publisher.subscribe(itemId, subscriber);
+ * Bid current = tracker.getWinningBid(itemId); // starting price, later changes are pushed
+ * </pre>
+ * 
+ * Rationale:
+ * <br>The bid path only does a map lookup, and for every subscriber of the item a CAS on its pending bid.
+ *     Delivery happens asynchronously on the executor, hence a slow subscriber never blocks a bidder
+ * <br>Every subscriber has a single pending slot holding the highest bid not delivered yet. Bids arriving 
+ *     while a delivery is scheduled or running just overwrite the slot (coalescing), 
+ *     so the backlog of a slow subscriber is bounded to one bid
+ * <br>A subscription is scheduled on the executor at most once at a time, hence deliveries to a subscriber 
+ *     are sequential, and listeners racing on the same item cannot deliver a lower bid after a higher one
+ * <br>Subscriptions of an item are held in an immutable array replaced atomically on (un)subscribe, 
+ *     which is rare compared to bids
+ *
+ */
+public class WinningBidPublisher implements BidListener, AutoCloseable {
+	
+	private static final Logger LOG = Logger.getLogger(WinningBidPublisher.class);
+	
+	private static final ItemSubscription[] NONE = new ItemSubscription[0];
+	
+	private final ConcurrentMap<String, ItemSubscription[]> subscriptions;
+	private final Executor executor;
+	private final ExecutorService ownedExecutor;
+	private volatile boolean closed;
+	
+	
+	/**
+	 * Instantiates a publisher delivering on its own pool of daemon threads, shut down on {@link #close()}
+	 * @param threads
+	 */
+	public WinningBidPublisher(int threads) {
+		if(threads <= 0){
+			throw new IllegalArgumentException("Invalid Args - threads must be positive");
+		}
+		this.ownedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "winning-bid-publisher-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor = ownedExecutor;
+		this.subscriptions = new ConcurrentHashMap<String, ItemSubscription[]>();
+	}
+	
+	/**
+	 * Instantiates a publisher delivering on the given executor, which is not shut down on {@link #close()}
+	 * @param executor
+	 */
+	public WinningBidPublisher(Executor executor) {
+		if(executor == null){
+			throw new IllegalArgumentException("Cannot instantiate WinningBidPublisher with null args");
+		}
+		this.ownedExecutor = null;
+		this.executor = executor;
+		this.subscriptions = new ConcurrentHashMap<String, ItemSubscription[]>();
+	}
+	
+	
+	/**
+	 * Subscribes to the changes of the winning bid of the item
+	 * @param itemId
+	 * @param subscriber
+	 * @return handle to cancel the subscription
+	 */
+	public Subscription subscribe(String itemId, WinningBidSubscriber subscriber){
+		if(itemId == null || subscriber == null){
+			throw new IllegalArgumentException("Invalid Args - itemId and subscriber are mandatory");
+		}
+		if(closed){
+			throw new IllegalStateException("Publisher is closed");
+		}
+		final ItemSubscription subscription = new ItemSubscription(itemId, subscriber);
+		subscriptions.compute(itemId, new BiFunction<String, ItemSubscription[], ItemSubscription[]>() {
+			@Override
+			public ItemSubscription[] apply(String key, ItemSubscription[] current) {
+				ItemSubscription[] updated = Arrays.copyOf(current == null ? NONE : current, current == null ? 1 : current.length + 1);
+				updated[updated.length - 1] = subscription;
+				return updated;
+			}
+		});
+		return subscription;
+	}
+	
+	/**
+	 * @param itemId
+	 * @return number of live subscriptions on the item
+	 */
+	public int subscriberCount(String itemId){
+		ItemSubscription[] current = subscriptions.get(itemId);
+		return current == null ? 0 : current.length;
+	}
+	
+	/**
+	 * Hands the bid over to the subscribers of its item, without waiting for the deliveries
+	 */
+	@Override
+	public void onBidAccepted(Bid bid) {
+		ItemSubscription[] current = subscriptions.get(bid.getItemId());
+		if(current == null || closed){
+			return;
+		}
+		for (ItemSubscription subscription : current) {
+			subscription.offer(bid);
+		}
+	}
+	
+	/**
+	 * Stops publishing, pending updates are dropped. 
+	 * The pool is shut down if owned by the publisher.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		subscriptions.clear();
+		if(ownedExecutor != null){
+			ownedExecutor.shutdownNow();
+		}
+	}
+	
+	private void unsubscribe(final ItemSubscription subscription){
+		subscriptions.computeIfPresent(subscription.itemId, new BiFunction<String, ItemSubscription[], ItemSubscription[]>() {
+			@Override
+			public ItemSubscription[] apply(String key, ItemSubscription[] current) {
+				int index = Arrays.asList(current).indexOf(subscription);
+				if(index < 0){
+					return current;
+				}
+				if(current.length == 1){
+					return null;//removes the item
+				}
+				ItemSubscription[] updated = new ItemSubscription[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, index);
+				System.arraycopy(current, index + 1, updated, index, updated.length - index);
+				return updated;
+			}
+		});
+	}
+	
+	
+	/**
+	 * A subscriber with its pending slot, run on the executor to deliver
+	 */
+	private final class ItemSubscription implements Subscription, Runnable {
+		private final String itemId;
+		private final WinningBidSubscriber subscriber;
+		private final AtomicReference<Bid> pending = new AtomicReference<Bid>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile boolean cancelled;
+		//only accessed by the single running delivery
+		private double deliveredAmount = Double.NEGATIVE_INFINITY;
+		
+		ItemSubscription(String itemId, WinningBidSubscriber subscriber) {
+			this.itemId = itemId;
+			this.subscriber = subscriber;
+		}
+		
+		/**
+		 * Keeps the bid as pending if it is the highest so far, and schedules a delivery unless one is already
+		 */
+		void offer(Bid bid){
+			while(true){
+				Bid current = pending.get();
+				if(current != null && current.getAmount() >= bid.getAmount()){
+					break;
+				}
+				if(pending.compareAndSet(current, bid)){
+					break;
+				}
+			}
+			schedule();
+		}
+		
+		private void schedule(){
+			if(scheduled.compareAndSet(false, true)){
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					scheduled.set(false);
+					if(!closed){
+						LOG.warn("Dropped winning bid update on item " + itemId, e);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Delivers the pending bid, and keeps going as long as more bids come in while delivering
+		 */
+		@Override
+		public void run() {
+			do {
+				Bid bid = pending.getAndSet(null);
+				if(bid != null && !cancelled && bid.getAmount() > deliveredAmount){
+					deliveredAmount = bid.getAmount();
+					try {
+						subscriber.onWinningBid(bid);
+					} catch (RuntimeException e) {
+						LOG.warn("Subscriber failed on winning bid of item " + itemId, e);
+					}
+				}
+				scheduled.set(false);
+			} while (pending.get() != null && scheduled.compareAndSet(false, true));
+		}
+		
+		@Override
+		public void cancel() {
+			if(!cancelled){
+				cancelled = true;
+				pending.set(null);
+				unsubscribe(this);
+			}
+		}
+	}
+
+}
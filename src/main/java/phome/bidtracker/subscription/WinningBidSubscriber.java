@@ -0,0 +1,19 @@
+package phome.bidtracker.subscription;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Callback on the changes of the winning bid of an item
+ *
+ */
+public interface WinningBidSubscriber {
+	
+	/**
+	 * Called on a publisher thread, never concurrently for a given subscription and with rising amounts only.
+	 * <br>Updates arriving while the subscriber is busy are coalesced, hence a slow subscriber skips 
+	 * intermediate bids and only sees the latest winning bid.
+	 * @param winningBid
+	 */
+	public void onWinningBid(Bid winningBid);
+
+}
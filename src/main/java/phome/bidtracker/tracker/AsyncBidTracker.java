@@ -0,0 +1,24 @@
+package phome.bidtracker.tracker;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * BidTracker which additionally accepts bids asynchronously
+ * 
+ */
+public interface AsyncBidTracker extends BidTracker {
+	
+	/**
+	 * Submits a bid request without waiting for it to be processed
+	 * @param itemId
+	 * @param userId
+	 * @param amt
+	 * @return future completing with <br>
+	 * 		   <code>true</code> if bid was successfully registered <br/>
+	 * 		   <code>false</code> if bid was declined and outbid <br/>
+	 * 		   or completing exceptionally if the bid could not be taken on
+	 */
+	public CompletableFuture<Boolean> bidAsync(String itemId, String userId, double amt);
+
+}
@@ -0,0 +1,31 @@
+package phome.bidtracker.tracker;
+
+
+/**
+ * Gate in front of the bid path of a {@link BidTrackerImpl}, deciding whether a bid is looked at at all.
+ * <br>Called on every bid before any store access, hence implementations must be thread safe, 
+ * must not block and should take constant time.
+ * 
+ */
+public interface BidAdmission {
+	
+	/**
+	 * Admits every bid, the default of the tracker
+	 */
+	public static final BidAdmission NONE = new BidAdmission() {
+		@Override
+		public boolean admit(String itemId, String userId) {
+			return true;
+		}
+	};
+	
+	
+	/**
+	 * @param itemId - validated
+	 * @param userId - validated
+	 * @return true if the bid goes on to the stores <br>
+	 * 		   false if it is shed, the tracker declining it
+	 */
+	public boolean admit(String itemId, String userId);
+
+}
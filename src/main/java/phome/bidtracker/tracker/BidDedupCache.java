@@ -0,0 +1,227 @@
+package phome.bidtracker.tracker;
+
+import java.time.Clock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import phome.bidtracker.metrics.BidMetrics;
+
+/**
+ * Outcomes of the recent bid requests by client request id, so that a retried request gets the outcome
+ * of the original one rather than being placed again.
+ *
+ * <br><br>The first call with a request id claims it and places the bid, a call with the same id meanwhile
+ * waits for that outcome, and later calls get it straight from the cache without touching the tracker.
+ * A bid failing with an exception leaves no outcome behind, hence its retry places it.
+ *
+ * <br><br>Bounded: outcomes are evicted once older than the time to live, or oldest first once over the capacity.
+ * Rationale:
+ * <br>Retries come within seconds of the original request, so outcomes are only worth keeping for so long
+ * <br>Request ids are chosen by clients, hence a capacity is needed for the cache not to be grown at will
+ * <br>Outcomes are queued in the order they were claimed, which is also the order they expire in since they all
+ *     live as long, hence the eviction only ever looks at the head of the queue: constant time per request.
+ *     Evictions are done by the calling threads, by one at a time with a tryLock, so that none waits on it
+ * <br>A request retried after its outcome was evicted is placed again, which is why the time to live
+ *     should outlast the timeouts and retries of the clients
+ * <br>Retries answered from the cache are reported to the {@link BidMetrics} as deduplicated.
+ *     The bids themselves, retries included, are recorded by an {@link InstrumentedBidTracker} like plain bids,
+ *     hence the bids actually placed are the bids recorded less the deduplicated ones
+ * <br>An outcome still pending is never evicted nor replaced, however old or over capacity, since a retry 
+ *     would then place the bid a second time. Eviction stops at a pending head until the bid completes,
+ *     which only takes as long as a bid
+ *
+ */
+public class BidDedupCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+	private final ConcurrentMap<String, Outcome> outcomes = new ConcurrentHashMap<String, Outcome>();
+	private final Queue<Outcome> claims = new ConcurrentLinkedQueue<Outcome>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final ReentrantLock evicting = new ReentrantLock();
+	private final LongAdder duplicates = new LongAdder();
+	private final int capacity;
+	private final long ttlMillis;
+	private final Clock clock;
+	private final BidMetrics metrics;
+
+
+	/**
+	 * @param capacity - max outcomes kept
+	 * @param ttl - how long an outcome is kept
+	 * @param unit
+	 * @param clock
+	 * @param metrics - told of the retries answered from the cache
+	 */
+	public BidDedupCache(int capacity, long ttl, TimeUnit unit, Clock clock, BidMetrics metrics) {
+		if(capacity <= 0 || ttl <= 0 || unit == null || clock == null || metrics == null){
+			throw new IllegalArgumentException("Invalid Args - non positive capacity or ttl, or null unit, clock or metrics");
+		}
+		this.capacity = capacity;
+		this.ttlMillis = unit.toMillis(ttl);
+		this.clock = clock;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Instantiates a cache reporting to no metrics
+	 */
+	public BidDedupCache(int capacity, long ttl, TimeUnit unit, Clock clock) {
+		this(capacity, ttl, unit, clock, BidMetrics.NONE);
+	}
+
+	/**
+	 * Instantiates a cache of {@value #DEFAULT_CAPACITY} outcomes kept {@value #DEFAULT_TTL_MILLIS} ms, 
+	 * on the system clock, reporting to the metrics
+	 */
+	public BidDedupCache(BidMetrics metrics) {
+		this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, Clock.systemUTC(), metrics);
+	}
+
+	/**
+	 * Instantiates a cache of {@value #DEFAULT_CAPACITY} outcomes kept {@value #DEFAULT_TTL_MILLIS} ms, on the system clock
+	 */
+	public BidDedupCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, Clock.systemUTC());
+	}
+
+
+	/**
+	 * Places the bid on the tracker unless a bid was placed with the same request id,
+	 * in which case its outcome is returned instead.
+	 * <br>The outcome is bound to the request id only, a retry passing other args gets the outcome of the original.
+	 * @param tracker - tracker placing the bid the first time
+	 * @param requestId
+	 * @param itemId
+	 * @param userId
+	 * @param amt
+	 * @return outcome of the first bid with this request id
+	 */
+	public boolean bid(BidTracker tracker, String requestId, String itemId, String userId, double amt){
+		if(requestId == null){
+			throw new IllegalArgumentException("Invalid Args - Null request id passed");
+		}
+		while(true){
+			long now = clock.millis();
+			evict(now);
+			Outcome claim = new Outcome(requestId, now);
+			Outcome existing = outcomes.putIfAbsent(requestId, claim);
+			if(existing != null && existing.claimedAt <= now - ttlMillis && !existing.isPending() 
+					&& outcomes.replace(requestId, existing, claim)){
+				existing = null;//expired, not evicted yet
+			}
+			if(existing != null){
+				Boolean accepted = existing.await();
+				if(accepted == null){//the original failed, try again
+					continue;
+				}
+				duplicates.increment();
+				metrics.bidDeduplicated(accepted);
+				return accepted;
+			}
+			claims.add(claim);
+			size.incrementAndGet();
+			boolean accepted;
+			try{
+				accepted = tracker.bid(itemId, userId, amt);
+			}catch(RuntimeException | Error e){
+				outcomes.remove(requestId, claim);
+				claim.complete(Outcome.FAILED);
+				throw e;
+			}
+			claim.complete(accepted ? Outcome.ACCEPTED : Outcome.DECLINED);
+			return accepted;
+		}
+	}
+
+	/**
+	 * @return number of retries answered with the outcome of the original request
+	 */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	/**
+	 * @return number of outcomes kept, including those expired and not evicted yet
+	 */
+	public int size() {
+		return outcomes.size();
+	}
+
+
+	/**
+	 * Evicts from the head of the queue the completed outcomes expired or over the capacity, unless another thread is at it
+	 */
+	private void evict(long now){
+		if(!evicting.tryLock()){
+			return;
+		}
+		try{
+			Outcome head;
+			while((head = claims.peek()) != null && !head.isPending() 
+					&& (size.get() > capacity || head.claimedAt <= now - ttlMillis)){
+				claims.poll();
+				size.decrementAndGet();
+				outcomes.remove(head.requestId, head);
+			}
+		}finally{
+			evicting.unlock();
+		}
+	}
+
+
+	/**
+	 * Outcome of a request, pending until completed by the thread which claimed the request id
+	 */
+	private static final class Outcome {
+		static final int PENDING = 0;
+		static final int ACCEPTED = 1;
+		static final int DECLINED = 2;
+		static final int FAILED = 3;
+
+		private final String requestId;
+		private final long claimedAt;
+		private volatile int state;//written under the lock of this
+
+		Outcome(String requestId, long claimedAt) {
+			this.requestId = requestId;
+			this.claimedAt = claimedAt;
+		}
+
+		boolean isPending(){
+			return state == PENDING;
+		}
+
+		synchronized void complete(int state){
+			this.state = state;
+			notifyAll();
+		}
+
+		/**
+		 * Waits for the outcome, uninterruptibly since a bid in progress is short
+		 * @return the outcome, null if the bid failed
+		 */
+		synchronized Boolean await(){
+			boolean interrupted = false;
+			while(state == PENDING){
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted){
+				Thread.currentThread().interrupt();
+			}
+			return state == FAILED ? null : state == ACCEPTED;
+		}
+	}
+
+}
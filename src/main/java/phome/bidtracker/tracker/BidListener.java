@@ -0,0 +1,32 @@
+package phome.bidtracker.tracker;
+
+import phome.bidtracker.models.Bid;
+
+
+/**
+ * Callback on the accepted bids of a {@link BidTrackerImpl}, and on the items evicted from its bid store
+ * 
+ */
+public interface BidListener {
+	
+	/**
+	 * Called once a bid has been saved to the stores, on the bidding thread and before the bidder is told the outcome.
+	 * <br>Bids on a given item are accepted in ascending order, but listeners can be called concurrently 
+	 * by different bidding threads, hence implementations must be thread safe and should return quickly.
+	 * <br>An exception thrown here is propagated to the bidder, though the bid remains saved.
+	 * @param bid - the saved bid, carrying its sequence number on the item
+	 */
+	public void onBidAccepted(Bid bid);
+	
+	/**
+	 * Called once an item has been evicted from the bid store, by whichever evicted it, 
+	 * e.g. the {@link phome.bidtracker.auction.AuctionCloser} or a {@link phome.bidtracker.cluster.LocalPartition}.
+	 * <br>A bid accepted before the eviction may still reach {@link #onBidAccepted(Bid)} after this call.
+	 * No op by default.
+	 * @param itemId
+	 * @param bids - final bids of the item, null if none
+	 */
+	public default void onItemEvicted(String itemId, Iterable<Bid> bids){
+	}
+
+}
@@ -1,5 +1,6 @@
 package phome.bidtracker.tracker;
 
+import java.util.List;
 import java.util.Set;
 
 import phome.bidtracker.models.Bid;
@@ -22,6 +23,21 @@ public interface BidTracker {
 	 */
 	public boolean bid(String itemId, String userId, double amt);
 	
+	
+	/**
+	 * Handles a bid request which may be a retry: a bid is placed once per request id, 
+	 * retries getting the outcome of the first request without the bid being placed again.
+	 * <br>Request ids are chosen by the clients and must be unique across them, e.g. UUIDs.
+	 * Outcomes are only remembered for a while, see {@link BidDedupCache}.
+	 * @param requestId
+	 * @param ItemId
+	 * @param UserId
+	 * @param amt
+	 * @return <code>true</code> if bid was successfully registered <br/>
+	 * 		   <code>false</code> if bid was declined and outbid
+	 */
+	public boolean bid(String requestId, String itemId, String userId, double amt);
+	
     
 	/**
 	 * Fetches the current winning bid for an item
@@ -45,6 +61,33 @@ public interface BidTracker {
     Iterable<Bid> getBidsforItem(String itemId);
     
     
+    /**
+     * Retrieves the latest bids placed on an item, in the order they were placed
+     * 
+     * @param itemId
+     * @param count
+     * @return
+     * 		Up to count bids, the last one being the winning bid <br> 
+     * 		null if no bid
+     */
+    List<Bid> getLatestBidsforItem(String itemId, int count);
+    
+    
+    /**
+     * Retrieves the bids placed on an item after a sequence number, in the order they were placed.
+     * <br>Used to page through the bids, or to poll for the bids since the last one seen, 
+     * by passing the sequence of the last bid seen
+     * 
+     * @param itemId
+     * @param afterSequence - 0 to start from the first bid
+     * @param maxCount
+     * @return
+     * 		Up to maxCount bids, empty if none after the sequence <br> 
+     * 		null if no bid
+     */
+    List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount);
+    
+    
     /**
      * Retrieves Set of Unique Items on which the User has placed bids so far.
      * 
@@ -1,5 +1,6 @@
 package phome.bidtracker.tracker;
 
+import java.util.List;
 import java.util.Set;
 
 import phome.bidtracker.models.Bid;
@@ -9,30 +10,81 @@ import phome.bidtracker.store.UserBidHistoryStore;
 /**
  * A bid tracker implementation which can be composed/dependency injected
  * with IBidStore and IUserBidHistoryStore implementations
+ * and optionally with listeners on the accepted bids
+ * and with a {@link BidAdmission} shedding excess bids.
+ * Retried bid requests are answered from a {@link BidDedupCache}
  * 
  */
 public class BidTrackerImpl implements BidTracker {
 
     private final BidStore bidStore;    
     private final UserBidHistoryStore userItemsStore;    
+    private final BidListener[] listeners;
+    private final BidAdmission admission;
+    private final BidDedupCache dedupCache;
 
     /**
-     * Instantiates a BidTracker with a bid store and a user history store
+     * Instantiates a BidTracker with a bid store, a user history store 
+     * and any number of listeners notified in the given order of every accepted bid
      * Disallows null args
      * @param bidStore
      * @param userItemsStore
+     * @param listeners
      */
-    public BidTrackerImpl(BidStore bidStore, UserBidHistoryStore userItemsStore) {
-    	if(bidStore == null || userItemsStore == null){
+    public BidTrackerImpl(BidStore bidStore, UserBidHistoryStore userItemsStore, BidListener... listeners) {
+    	this(bidStore, userItemsStore, BidAdmission.NONE, listeners);
+    }
+
+    /**
+     * Instantiates a BidTracker admitting bids through the given admission, 
+     * any bid it sheds being declined before reaching the stores
+     * Disallows null args
+     * @param bidStore
+     * @param userItemsStore
+     * @param admission
+     * @param listeners
+     */
+    public BidTrackerImpl(BidStore bidStore, UserBidHistoryStore userItemsStore, BidAdmission admission, BidListener... listeners) {
+    	this(bidStore, userItemsStore, admission, new BidDedupCache(), listeners);
+    }
+
+    /**
+     * Instantiates a BidTracker remembering the outcomes of the bid requests in the given cache
+     * Disallows null args
+     * @param bidStore
+     * @param userItemsStore
+     * @param admission
+     * @param dedupCache
+     * @param listeners
+     */
+    public BidTrackerImpl(BidStore bidStore, UserBidHistoryStore userItemsStore, BidAdmission admission, 
+    		BidDedupCache dedupCache, BidListener... listeners) {
+    	if(bidStore == null || userItemsStore == null || admission == null || dedupCache == null || listeners == null){
     		throw new IllegalArgumentException("Cannot instantiate BidTracker with null args");
     	}
+    	for (BidListener listener : listeners) {
+    		if(listener == null){
+        		throw new IllegalArgumentException("Cannot instantiate BidTracker with null args");
+    		}
+		}
         this.bidStore = bidStore;
         this.userItemsStore = userItemsStore;
+        this.listeners = listeners.clone();
+        this.admission = admission;
+        this.dedupCache = dedupCache;
     }
 
     /**
      * Attempts to save the bid to bid store
-     * If successful updates the User History Store 
+     * If successful updates the User History Store and notifies the listeners of the saved bid, 
+     * which carries its sequence number on the item
+     * 
+     * <br><br>Bids which are already outbid are turned down upfront on the winning amount,
+     * without creating a Bid. Most of the traffic on a hot item is made of such bids, hence only the bids 
+     * that can actually win pay for the allocation and the CAS.
+     * <br>Before that, bids shed by the admission are declined without touching the stores at all.
+     * <br>A bid accepted right before its auction closes is removed from the user store again once saved there,
+     * if the item was evicted meanwhile, since the close may have cleaned up the user store before.
      * @param ItemId
      * @param UserId
      * @param amt
@@ -40,14 +92,44 @@ public class BidTrackerImpl implements BidTracker {
      * 		   false if bid was declined
      */
     @Override
-    public boolean bid(String itemId, String userId, double amt){    	
-    	Bid bid = new Bid( itemId, userId, amt);    	
-        boolean wasSaved = bidStore.maybeSave(bid);
+    public boolean bid(String itemId, String userId, double amt){
+    	Bid.validate(itemId, userId, amt);
+    	if(!admission.admit(itemId, userId))
+    		return false;
+    	if(bidStore.isOutbid(itemId, amt))
+    		return false;
+    	
+    	Bid bid = new Bid( itemId, userId, amt);
+    	//the sequenced bid is only needed by the listeners
+    	bid = listeners.length == 0 ? (bidStore.maybeSave(bid) ? bid : null) : bidStore.trySave(bid);
         
-        if(wasSaved)
+        if(bid != null){
         	userItemsStore.save(userId, itemId);
+        	if(bidStore.winningBid(itemId) == null){//evicted by a close racing with the bid, after its users were removed
+        		userItemsStore.remove(userId, itemId);
+        	}
+        	for (BidListener listener : listeners) {
+        		listener.onBidAccepted(bid);
+			}
+        }
         
-        return wasSaved;
+        return bid != null;
+    }
+
+    /**
+     * Places the bid as {@link #bid(String, String, double)} does, once per request id.
+     * Retries get the outcome of the first request from the dedup cache, without touching the stores.
+     * @param requestId
+     * @param ItemId
+     * @param UserId
+     * @param amt
+     * @return true if bid was placed <br>
+     * 		   false if bid was declined
+     */
+    @Override
+    public boolean bid(String requestId, String itemId, String userId, double amt){
+    	Bid.validate(itemId, userId, amt);
+    	return dedupCache.bid(this, requestId, itemId, userId, amt);
     }
 
     /**
@@ -74,6 +156,33 @@ public class BidTrackerImpl implements BidTracker {
         return bidStore.bidsForItem(itemId);
     }
     
+    /**
+     * Retrieves the latest bids placed on an item from the bid store
+     * @param itemId
+     * @param count
+     * @return
+     * 		Up to count bids <br> 
+     * 		null if no bid
+     */
+    @Override
+    public List<Bid> getLatestBidsforItem(final String itemId, final int count) {
+        return bidStore.latestBids(itemId, count);
+    }
+    
+    /**
+     * Retrieves a page of the bids placed on an item from the bid store
+     * @param itemId
+     * @param afterSequence
+     * @param maxCount
+     * @return
+     * 		Up to maxCount bids <br> 
+     * 		null if no bid
+     */
+    @Override
+    public List<Bid> getBidsforItemAfter(final String itemId, final long afterSequence, final int maxCount) {
+        return bidStore.bidsAfter(itemId, afterSequence, maxCount);
+    }
+    
     /**
      * Retrieves Set of Unique Items on which the User has placed bids from the User history store
      * 
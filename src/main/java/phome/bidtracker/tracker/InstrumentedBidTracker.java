@@ -0,0 +1,104 @@
+package phome.bidtracker.tracker;
+
+import java.util.List;
+import java.util.Set;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.metrics.BidMetrics.Read;
+import phome.bidtracker.models.Bid;
+
+/**
+ * Decorates a tracker with latency and outcome metrics of every bid and read.
+ * 
+ * <br><br>Wraps any tracker e.g. a {@link BidTrackerImpl} or a {@link ShardedBidTracker}, 
+ * hence the trackers themselves stay free of timing code.
+ * The cost is two {@link System#nanoTime()} calls and a histogram increment per operation.
+ * 
+ * <br>Usage, together with the CAS retries of the stores:
+ * <pre>
+ * DefaultBidMetrics metrics = new DefaultBidMetrics();
+ * metrics.register("main");
+ * BidTracker tracker = new InstrumentedBidTracker(
+ * 		new BidTrackerImpl(new BidStoreLockFree(metrics), new UserBidHistoryStoreLockFreeImpl(metrics)), metrics);
+ * </pre>
+ * Bids placed once per request id are recorded alike, retries included.
+ * The retries are told apart by the dedup cache of the tracker, which counts those it answers as deduplicated:
+ * <pre>
+ * new BidTrackerImpl(bidStore, userStore, BidAdmission.NONE, new BidDedupCache(metrics))
+ * </pre>
+ *
+ */
+public class InstrumentedBidTracker implements BidTracker {
+	
+	private final BidTracker delegate;
+	private final BidMetrics metrics;
+	
+	public InstrumentedBidTracker(BidTracker delegate, BidMetrics metrics) {
+		if(delegate == null || metrics == null){
+			throw new IllegalArgumentException("Cannot instantiate InstrumentedBidTracker with null args");
+		}
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		long start = System.nanoTime();
+		boolean accepted = delegate.bid(itemId, userId, amt);
+		metrics.bidPlaced(accepted, System.nanoTime() - start);
+		return accepted;
+	}
+
+	/**
+	 * Recorded as a plain bid, whether placed or answered from the {@link BidDedupCache} of the tracker,
+	 * the cache telling the retries apart when created with the metrics
+	 */
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		long start = System.nanoTime();
+		boolean accepted = delegate.bid(requestId, itemId, userId, amt);
+		metrics.bidPlaced(accepted, System.nanoTime() - start);
+		return accepted;
+	}
+
+	@Override
+	public Bid getWinningBid(String itemId) {
+		long start = System.nanoTime();
+		Bid bid = delegate.getWinningBid(itemId);
+		metrics.readServed(Read.WINNING_BID, System.nanoTime() - start);
+		return bid;
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		long start = System.nanoTime();
+		Iterable<Bid> bids = delegate.getBidsforItem(itemId);
+		metrics.readServed(Read.BIDS_FOR_ITEM, System.nanoTime() - start);
+		return bids;
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		long start = System.nanoTime();
+		List<Bid> bids = delegate.getLatestBidsforItem(itemId, count);
+		metrics.readServed(Read.LATEST_BIDS, System.nanoTime() - start);
+		return bids;
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		long start = System.nanoTime();
+		List<Bid> bids = delegate.getBidsforItemAfter(itemId, afterSequence, maxCount);
+		metrics.readServed(Read.BIDS_AFTER, System.nanoTime() - start);
+		return bids;
+	}
+
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		long start = System.nanoTime();
+		Set<String> items = delegate.getItemsforUser(userId);
+		metrics.readServed(Read.ITEMS_FOR_USER, System.nanoTime() - start);
+		return items;
+	}
+
+}
@@ -0,0 +1,37 @@
+package phome.bidtracker.tracker;
+
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * BidTracker holding a partition of the items, which can hand its items over to another tracker
+ * e.g. when items are rebalanced across the nodes of a cluster
+ * 
+ */
+public interface PartitionBidTracker extends BidTracker {
+	
+	/**
+	 * @return ids of the items the tracker holds bids on
+	 */
+	public Set<String> getItems();
+	
+	
+	/**
+	 * Pages through the items the tracker holds bids on, in the order of their ids.
+	 * <br>Used to go through a large catalogue without holding all of it, by passing the last item id seen
+	 * @param afterItemId - null to start from the first item
+	 * @param maxCount
+	 * @return up to maxCount item ids following afterItemId, empty past the last one
+	 */
+	public List<String> getItemsAfter(String afterItemId, int maxCount);
+	
+	
+	/**
+	 * Drops an item and its bids, including from the items of the users who bid on it.
+	 * <br>Meant for an item handed over to another tracker, bids racing with the eviction may be lost
+	 * @param itemId
+	 */
+	public void evictItem(String itemId);
+
+}
@@ -0,0 +1,305 @@
+package phome.bidtracker.tracker;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import phome.bidtracker.concurrent.MpscRingBuffer;
+import phome.bidtracker.models.Bid;
+
+/**
+ * A single writer bid tracker.
+ * 
+ * <br><br>Items are hashed to a fixed number of shards, each shard being a thread which owns its items exclusively.
+ * Bids are handed over to the owning shard through a bounded lock free {@link MpscRingBuffer} and applied to 
+ * the delegate tracker by the shard thread only. 
+ * Rationale:
+ * <br>Under heavy contention on a single item the lock free stores burn CPU on failed CAS attempts, 
+ * 	   whereas here bids on a given item are processed sequentially, hence every CAS succeeds first time.
+ * <br>Shards drain their buffer in batches, so a busy shard never sleeps between bids.
+ * 
+ * <br><br>Reads are not sharded and go straight to the delegate, which is safe as its stores are concurrent.
+ * 
+ * <br><br>Back pressure: a full buffer fails {@link #bidAsync(String, String, double)} fast with a 
+ * RejectedExecutionException, whereas {@link #bid(String, String, double)} waits for room.
+ * 
+ */
+public class ShardedBidTracker implements AsyncBidTracker, AutoCloseable {
+	
+	private static final Logger LOG = Logger.getLogger(ShardedBidTracker.class);
+	
+	private static final int BATCH_SIZE = 256;
+	private static final int IDLE_SPINS = 100;
+	
+	private final BidTracker delegate;
+	private final Shard[] shards;
+	private volatile boolean running = true;
+	
+	
+	/**
+	 * Instantiates and starts the shards
+	 * @param delegate - tracker the bids are applied to e.g. a {@link BidTrackerImpl}
+	 * @param shardCount - number of shard threads
+	 * @param queueCapacity - max pending bids per shard
+	 */
+	public ShardedBidTracker(BidTracker delegate, int shardCount, int queueCapacity) {
+		if(delegate == null || shardCount <= 0 || queueCapacity <= 0){
+			throw new IllegalArgumentException("Cannot instantiate ShardedBidTracker with null delegate or non positive sizes");
+		}
+		this.delegate = delegate;
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i, queueCapacity);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+	
+	
+	/**
+	 * Hands the bid over to the owning shard and waits for the outcome
+	 * @param ItemId
+	 * @param UserId
+	 * @param amt
+	 * @return true if bid was placed <br>
+	 * 		   false if bid was declined
+	 * @throws RejectedExecutionException if the tracker is closed
+	 */
+	@Override
+	public boolean bid(String itemId, String userId, double amt) {
+		return bid(newRequest(null, itemId, userId, amt));
+	}
+	
+	
+	/**
+	 * Hands the bid over to the owning shard and waits for the outcome, 
+	 * the bid being placed once per request id by the delegate
+	 * @param requestId
+	 * @param ItemId
+	 * @param UserId
+	 * @param amt
+	 * @return true if bid was placed <br>
+	 * 		   false if bid was declined
+	 * @throws RejectedExecutionException if the tracker is closed
+	 */
+	@Override
+	public boolean bid(String requestId, String itemId, String userId, double amt) {
+		if(requestId == null){
+			throw new IllegalArgumentException("Invalid Args - Null request id passed");
+		}
+		return bid(newRequest(requestId, itemId, userId, amt));
+	}
+	
+	private boolean bid(BidRequest request){
+		Shard shard = shardFor(request.itemId);
+		while(!shard.offer(request)){
+			checkRunning();
+			Thread.yield();
+		}
+		try{
+			return request.join();
+		}catch(CompletionException e){
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Hands the bid over to the owning shard. 
+	 * The returned future is completed by the shard thread, hence dependent actions should be kept short
+	 * or be run asynchronously.
+	 * <br>Invalid args are refused right away with an IllegalArgumentException, 
+	 * as {@link #bid(String, String, double)} does.
+	 */
+	@Override
+	public CompletableFuture<Boolean> bidAsync(String itemId, String userId, double amt) {
+		BidRequest request = newRequest(null, itemId, userId, amt);
+		if(!shardFor(itemId).offer(request)){
+			request.completeExceptionally(new RejectedExecutionException("Bid queue full for item " + itemId));
+		}
+		return request;
+	}
+	
+	
+	@Override
+	public Bid getWinningBid(String itemId) {
+		return delegate.getWinningBid(itemId);
+	}
+
+	@Override
+	public Iterable<Bid> getBidsforItem(String itemId) {
+		return delegate.getBidsforItem(itemId);
+	}
+
+	@Override
+	public List<Bid> getLatestBidsforItem(String itemId, int count) {
+		return delegate.getLatestBidsforItem(itemId, count);
+	}
+
+	@Override
+	public List<Bid> getBidsforItemAfter(String itemId, long afterSequence, int maxCount) {
+		return delegate.getBidsforItemAfter(itemId, afterSequence, maxCount);
+	}
+
+	@Override
+	public Set<String> getItemsforUser(String userId) {
+		return delegate.getItemsforUser(userId);
+	}
+	
+	
+	/**
+	 * Stops taking on bids and waits for the shards to process the pending ones.
+	 * Bids racing with the close are either processed or rejected, never left pending.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		for (Shard shard : shards) {
+			LockSupport.unpark(shard.thread);
+		}
+		for (Shard shard : shards) {
+			shard.rejectLeftovers();
+		}
+	}
+	
+	
+	private BidRequest newRequest(String requestId, String itemId, String userId, double amt){
+		Bid.validate(itemId, userId, amt);
+		checkRunning();
+		return new BidRequest(requestId, itemId, userId, amt);
+	}
+	
+	private void checkRunning(){
+		if(!running){
+			throw new RejectedExecutionException("Bid tracker is closed");
+		}
+	}
+	
+	/**
+	 * Spreads the hash code bits so that shards are evenly picked even if item ids only differ in high bits
+	 * @param itemId
+	 * @return
+	 */
+	private Shard shardFor(String itemId){
+		int hash = itemId.hashCode();
+		hash ^= hash >>> 16;
+		return shards[(hash & Integer.MAX_VALUE) % shards.length];
+	}
+	
+	
+	/**
+	 * A bid waiting to be processed, being its own future so that a bid costs a single allocation
+	 */
+	private static final class BidRequest extends CompletableFuture<Boolean> {
+		private final String requestId;//null unless placed once per request id
+		private final String itemId;
+		private final String userId;
+		private final double amt;
+		
+		BidRequest(String requestId, String itemId, String userId, double amt) {
+			this.requestId = requestId;
+			this.itemId = itemId;
+			this.userId = userId;
+			this.amt = amt;
+		}
+	}
+	
+	
+	/**
+	 * Shard thread draining its own buffer. 
+	 * When idle it spins briefly and then parks until a producer unparks it.
+	 */
+	private final class Shard implements Runnable {
+		private final MpscRingBuffer<BidRequest> queue;
+		private final Thread thread;
+		private volatile boolean sleeping;
+		
+		Shard(int id, int queueCapacity) {
+			this.queue = new MpscRingBuffer<BidRequest>(queueCapacity);
+			this.thread = new Thread(this, "bid-shard-" + id);
+			this.thread.setDaemon(true);
+		}
+		
+		boolean offer(BidRequest request){
+			if(!queue.offer(request))
+				return false;
+			if(sleeping)
+				LockSupport.unpark(thread);
+			if(!running)//closed meanwhile, the shard may have quit without seeing the request
+				rejectLeftovers();
+			return true;
+		}
+		
+		/**
+		 * Waits for the shard thread to quit and rejects whatever is left in the buffer.
+		 * <br>The buffer is drained under the shard lock, since the calling threads take over 
+		 * the single consumer role from the dead shard thread.
+		 */
+		void rejectLeftovers(){
+			if(Thread.currentThread() == thread)
+				return;//the shard loop drains the buffer before quitting
+			boolean interrupted = false;
+			while(thread.isAlive()){
+				try{
+					thread.join();
+				}catch(InterruptedException e){
+					interrupted = true;
+				}
+			}
+			synchronized(this){
+				BidRequest request;
+				while((request = queue.poll()) != null){
+					request.completeExceptionally(new RejectedExecutionException("Bid tracker is closed"));
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+		
+		@Override
+		public void run() {
+			int idle = 0;
+			while(running || !queue.isEmpty()){
+				if(drainBatch() > 0){
+					idle = 0;
+				}
+				else if(++idle < IDLE_SPINS){
+					Thread.yield();
+				}
+				else{
+					sleeping = true;
+					if(running && queue.isEmpty()){//re-check after announcing, so no wake up is missed
+						LockSupport.park(this);
+					}
+					sleeping = false;
+					idle = 0;
+				}
+			}
+		}
+		
+		private int drainBatch(){
+			int processed = 0;
+			BidRequest request;
+			while(processed < BATCH_SIZE && (request = queue.poll()) != null){
+				processed++;
+				try{
+					request.complete(request.requestId == null ? delegate.bid(request.itemId, request.userId, request.amt)
+							: delegate.bid(request.requestId, request.itemId, request.userId, request.amt));
+				}catch(RuntimeException e){
+					LOG.warn("Failed to process bid on item " + request.itemId, e);
+					request.completeExceptionally(e);
+				}
+			}
+			return processed;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package phome.bidtracker.tracker;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import phome.bidtracker.concurrent.StripedTokenBuckets;
+import phome.bidtracker.concurrent.Ticker;
+
+/**
+ * Rate limits the bids per user and per item with {@link StripedTokenBuckets}, shedding the excess.
+ *
+ * <br><br>A bid takes a token from the bucket of its user first, then from the bucket of its item.
+ * Rationale:
+ * <br>A user hammering an item is shed on their own bucket, before eating into the budget of the item,
+ *     hence the other bidders of the item keep getting through
+ * <br>The item bucket caps what reaches the CAS loop of a hot item, whatever the number of users, 
+ *     so that the latency of the admitted bids stays low when many accounts join in
+ * <br>A bid shed on its item has spent a token of its user, which only slows down that user
+ *
+ * <br><br>Shed bids are counted by cause, to be watched during an attack. A limit can be turned off with a rate of 0.
+ * Time is read in nanoseconds from a {@link Ticker}, since a millisecond clock would cap any rate at a burst per ms.
+ *
+ */
+public class TokenBucketAdmission implements BidAdmission {
+
+	public static final int DEFAULT_STRIPES = 1 << 14;
+
+	private final StripedTokenBuckets users;
+	private final StripedTokenBuckets items;
+	private final Ticker ticker;
+	private final long origin;
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder shedByUser = new LongAdder();
+	private final LongAdder shedByItem = new LongAdder();
+
+
+	/**
+	 * @param userRate - sustained bids per second per user, 0 for no limit
+	 * @param userBurst - bids at once per user
+	 * @param itemRate - sustained bids per second per item, 0 for no limit
+	 * @param itemBurst - bids at once per item
+	 * @param stripes - buckets of each kind, see {@link StripedTokenBuckets}
+	 * @param ticker
+	 */
+	public TokenBucketAdmission(double userRate, int userBurst, double itemRate, int itemBurst, int stripes, Ticker ticker) {
+		if(userRate < 0 || itemRate < 0 || ticker == null){
+			throw new IllegalArgumentException("Invalid Args - negative rate or null ticker");
+		}
+		this.users = userRate > 0 ? new StripedTokenBuckets(userRate, userBurst, stripes) : null;
+		this.items = itemRate > 0 ? new StripedTokenBuckets(itemRate, itemBurst, stripes) : null;
+		this.ticker = ticker;
+		this.origin = ticker.read();
+	}
+
+	/**
+	 * Instantiates an admission with {@value #DEFAULT_STRIPES} buckets of each kind, on {@link Ticker#SYSTEM}
+	 */
+	public TokenBucketAdmission(double userRate, int userBurst, double itemRate, int itemBurst) {
+		this(userRate, userBurst, itemRate, itemBurst, DEFAULT_STRIPES, Ticker.SYSTEM);
+	}
+
+
+	@Override
+	public boolean admit(String itemId, String userId) {
+		long now = ticker.read() - origin;//from 0, the time the buckets start full at
+		if(users != null && !users.tryAcquire(userId, now)){
+			shedByUser.increment();
+			return false;
+		}
+		if(items != null && !items.tryAcquire(itemId, now)){
+			shedByItem.increment();
+			return false;
+		}
+		admitted.increment();
+		return true;
+	}
+
+	/**
+	 * @return bids let through so far
+	 */
+	public long getAdmitted() {
+		return admitted.sum();
+	}
+
+	/**
+	 * @return bids shed so far as their user was over its rate
+	 */
+	public long getShedByUser() {
+		return shedByUser.sum();
+	}
+
+	/**
+	 * @return bids shed so far as their item was over its rate
+	 */
+	public long getShedByItem() {
+		return shedByItem.sum();
+	}
+
+	/**
+	 * @return bids shed so far, for either cause
+	 */
+	public long getShed() {
+		return shedByUser.sum() + shedByItem.sum();
+	}
+
+}
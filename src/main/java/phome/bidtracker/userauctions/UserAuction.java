@@ -0,0 +1,67 @@
+package phome.bidtracker.userauctions;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Immutable standing of a user on an item they bid on
+ *
+ */
+public final class UserAuction {
+
+	private final Bid topBid;
+	private final Bid winningBid;
+	private final boolean closed;
+
+	UserAuction(Bid topBid, Bid winningBid, boolean closed) {
+		this.topBid = topBid;
+		this.winningBid = winningBid;
+		this.closed = closed;
+	}
+
+	public String getItemId() {
+		return topBid.getItemId();
+	}
+
+	/**
+	 * @return the highest bid of the user on the item
+	 */
+	public Bid getTopBid() {
+		return topBid;
+	}
+
+	/**
+	 * @return the winning amount of the item
+	 */
+	public double getCurrentPrice() {
+		return winningBid.getAmount();
+	}
+
+	/**
+	 * @return the winning bid of the item, the top bid of the user if winning
+	 */
+	public Bid getWinningBid() {
+		return winningBid;
+	}
+
+	/**
+	 * @return true if the user holds the winning bid of the item, or won it once closed <br>
+	 * 		   false if outbid
+	 */
+	public boolean isWinning() {
+		return topBid == winningBid;
+	}
+
+	/**
+	 * @return true if the auction of the item is closed, the winning bid being final
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public String toString() {
+		return getItemId() + (closed ? " closed" : "") + (isWinning() ? " winning at " : " outbid at ") + getCurrentPrice() 
+				+ " top bid " + topBid.getAmount();
+	}
+
+}
@@ -0,0 +1,222 @@
+package phome.bidtracker.userauctions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidArchive;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.tracker.BidListener;
+
+/**
+ * Per user index of the highest bid of the user on every item they bid on, answering the "my auctions" page
+ * of a user in one call: the items where the user is winning or outbid, with their top bid and the current price.
+ *
+ * <br><br>Meant to be registered as a {@link BidListener} of the tracker saving to the given store,
+ * so it is updated on the success path of every save, and read together with the winning bids of that store.
+ * <pre>
+ * BidStore bidStore = new BidStoreLockFree();
+ * UserAuctionIndex index = new UserAuctionIndex(bidStore);
+ * BidTracker tracker = new BidTrackerImpl(bidStore, new UserBidHistoryStoreLockFreeImpl(), index);
+ * </pre>
+ *
+ * <br>Rationale:
+ * <br>A bid is only accepted above the winning amount, hence the latest accepted bid of a user on an item is their highest.
+ *     The index keeps it, the bid with the highest sequence winning when listeners of a user race
+ * <br>The current price is read from the store rather than copied, hence it is never staler than the store.
+ *     Listeners run after the save, so a user may be seen winning before their bid reached the index,
+ *     in which case the winning bid stands for their top bid
+ * <br>Updates of a user are serialized by the lock of their entry in the outer map, which only contends
+ *     on concurrent bids of the same user, not on the hot items whose CAS loops stay lock free
+ * <br>Items evicted from the store, e.g. closed auctions or items moved to another node, are dropped from the index
+ *     as soon as the component evicting them tells the listeners, see {@link BidListener#onItemEvicted(String, Iterable)},
+ *     hence the index only holds the open items. An item evicted without notice, or bid on late, is dropped on the next read
+ * <br>Closed auctions are read from the {@link BidArchive} if given one, which already holds them compactly,
+ *     rather than being kept in the index. The top bid of the user is then found by a scan of the archived bids of the item
+ *
+ * <br><br>With an archive, the index is also to be registered with the {@link phome.bidtracker.auction.AuctionCloser}:
+ * <pre>
+ * UserAuctionIndex index = new UserAuctionIndex(bidStore, archive);
+ * AuctionCloser closer = new AuctionCloser(bidStore, userStore, archive, 100, TimeUnit.MILLISECONDS, Clock.systemUTC(), index);
+ * BidTracker tracker = new AuctionBidTracker(new BidTrackerImpl(bidStore, userStore, index), closer);
+ * </pre>
+ *
+ */
+public class UserAuctionIndex implements BidListener {
+
+	private final BidStore bidStore;
+	private final BidArchive archive;
+	private final ConcurrentHashMap<String, Map<String, Bid>> topBids = new ConcurrentHashMap<String, Map<String, Bid>>();
+
+
+	/**
+	 * @param bidStore - the store the indexed bids are saved to
+	 * @param archive - the archive the closed items are moved to
+	 */
+	public UserAuctionIndex(BidStore bidStore, BidArchive archive) {
+		this(bidStore, archive, true);
+	}
+
+	/**
+	 * Instantiates an index of the open items only
+	 * @param bidStore - the store the indexed bids are saved to
+	 */
+	public UserAuctionIndex(BidStore bidStore) {
+		this(bidStore, null, false);
+	}
+
+	private UserAuctionIndex(BidStore bidStore, BidArchive archive, boolean archiveRequired) {
+		if(bidStore == null || (archiveRequired && archive == null)){
+			throw new IllegalArgumentException("Cannot instantiate UserAuctionIndex with null args");
+		}
+		this.bidStore = bidStore;
+		this.archive = archive;
+	}
+
+
+	/**
+	 * Records the bid as the top bid of its user on its item, unless a later bid of theirs got there first
+	 */
+	@Override
+	public void onBidAccepted(final Bid bid) {
+		topBids.compute(bid.getUserId(), new BiFunction<String, Map<String, Bid>, Map<String, Bid>>() {
+			@Override
+			public Map<String, Bid> apply(String userId, Map<String, Bid> items) {
+				if(items == null){
+					items = new ConcurrentHashMap<String, Bid>();
+				}
+				Bid top = items.get(bid.getItemId());
+				if(top == null || top.getSequence() < bid.getSequence()){
+					items.put(bid.getItemId(), bid);
+				}
+				return items;
+			}
+		});
+	}
+
+	/**
+	 * Drops the item from the index of every user who bid on it
+	 */
+	@Override
+	public void onItemEvicted(String itemId, Iterable<Bid> bids) {
+		if(bids == null){
+			return;
+		}
+		List<String> evicted = Collections.singletonList(itemId);
+		Set<String> users = new HashSet<String>();
+		for (Bid bid : bids) {
+			if(users.add(bid.getUserId())){
+				remove(bid.getUserId(), evicted);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the standing of the user on every item they bid on and which is still in the store, 
+	 * then on the closed items of the archive if any
+	 * @param userId
+	 * @return
+	 * 		auctions of the user, winning or outbid <br>
+	 * 		empty if no bids placed by the user
+	 */
+	public List<UserAuction> auctionsForUser(final String userId){
+		if(userId == null){
+			throw new IllegalArgumentException("Invalid Args - Null id passed");
+		}
+		Map<String, Bid> items = topBids.get(userId);
+		if(items == null && archive == null){
+			return Collections.emptyList();
+		}
+		if(items == null){
+			items = Collections.emptyMap();
+		}
+		List<UserAuction> auctions = new ArrayList<UserAuction>(items.size());
+		List<String> evicted = null;
+		for (Bid top : items.values()) {
+			Bid winning = bidStore.winningBid(top.getItemId());
+			if(winning == null){
+				if(evicted == null){
+					evicted = new ArrayList<String>();
+				}
+				evicted.add(top.getItemId());
+			}else if(archive != null && archive.isClosed(top.getItemId())){
+				continue;//archived, not evicted yet, read as closed
+			}else{
+				auctions.add(new UserAuction(winning.getUserId().equals(userId) ? winning : top, winning, false));
+			}
+		}
+		if(evicted != null){
+			remove(userId, evicted);
+		}
+		addClosed(userId, auctions);
+		return Collections.unmodifiableList(auctions);
+	}
+
+	/**
+	 * @param userId
+	 * @return auctions of the user where they hold the winning bid
+	 */
+	public List<UserAuction> winningForUser(String userId){
+		return filter(auctionsForUser(userId), true);
+	}
+
+	/**
+	 * @param userId
+	 * @return auctions of the user where they were outbid
+	 */
+	public List<UserAuction> outbidForUser(String userId){
+		return filter(auctionsForUser(userId), false);
+	}
+
+
+	/**
+	 * Adds the archived items of the user, as closed auctions
+	 */
+	private void addClosed(String userId, List<UserAuction> auctions){
+		Set<String> closed = archive == null ? null : archive.itemsForUser(userId);
+		if(closed == null){
+			return;
+		}
+		for (String itemId : closed) {
+			Bid winning = archive.winningBid(itemId);
+			Bid top = winning == null ? null : archive.topBid(itemId, userId);
+			if(top != null){
+				auctions.add(new UserAuction(winning.getUserId().equals(userId) ? winning : top, winning, true));
+			}
+		}
+	}
+
+	/**
+	 * Drops the evicted items of the user, a user left with no items being dropped altogether
+	 */
+	private void remove(String userId, final List<String> evicted){
+		topBids.computeIfPresent(userId, new BiFunction<String, Map<String, Bid>, Map<String, Bid>>() {
+			@Override
+			public Map<String, Bid> apply(String userId, Map<String, Bid> items) {
+				for (String itemId : evicted) {
+					if(bidStore.winningBid(itemId) == null){//not bid on again meanwhile
+						items.remove(itemId);
+					}
+				}
+				return items.isEmpty() ? null : items;
+			}
+		});
+	}
+
+	private static List<UserAuction> filter(List<UserAuction> auctions, boolean winning){
+		List<UserAuction> filtered = new ArrayList<UserAuction>(auctions.size());
+		for (UserAuction auction : auctions) {
+			if(auction.isWinning() == winning){
+				filtered.add(auction);
+			}
+		}
+		return Collections.unmodifiableList(filtered);
+	}
+
+}
@@ -0,0 +1,244 @@
+package phome.bidtracker.auction;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidArchive;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+import phome.bidtracker.userauctions.UserAuction;
+import phome.bidtracker.userauctions.UserAuctionIndex;
+
+import static junit.framework.Assert.*;
+
+public class AuctionCloserTest {
+	
+	private ManualClock clock = new ManualClock();
+	private BidArchive archive;
+	private BidStore bidStore;
+	private UserBidHistoryStore userStore;
+	private AuctionCloser closer;
+	private BidTracker tracker;
+	
+	@Before
+	public void setup(){
+		archive = new BidArchive();
+		bidStore = new BidStoreLockFree(BidMetrics.NONE, archive);
+		userStore = new UserBidHistoryStoreLockFreeImpl();
+		closer = new AuctionCloser(bidStore, userStore, archive, 10, TimeUnit.MILLISECONDS, clock);
+		tracker = new AuctionBidTracker(new BidTrackerImpl(bidStore, userStore), closer);
+	}
+	
+	@After
+	public void teardown(){
+		closer.close();
+	}
+	
+	@Test
+	public void rejects_bids_once_close_time_has_passed_before_the_item_is_archived(){
+		closer.scheduleClose("ITEM1", clock.millis() + 1000);
+		assertTrue(tracker.bid("ITEM1", "USER1", 1.0d));
+		
+		clock.advance(1000);
+		assertTrue(closer.isClosed("ITEM1"));
+		assertFalse(tracker.bid("ITEM1", "USER2", 2.0d));
+		assertFalse(archive.isClosed("ITEM1"));
+		assertTrue(tracker.bid("ITEM2", "USER2", 2.0d));
+	}
+	
+	@Test
+	public void retry_after_the_close_gets_the_outcome_of_the_original_request(){
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+		assertTrue(tracker.bid("REQ1", "ITEM1", "USER1", 1.0d));
+		
+		clock.advance(100);
+		assertTrue(tracker.bid("REQ1", "ITEM1", "USER1", 1.0d));
+		assertFalse(tracker.bid("REQ2", "ITEM1", "USER2", 2.0d));
+		closer.closeDueAuctions();
+		assertTrue(tracker.bid("REQ1", "ITEM1", "USER1", 1.0d));
+		assertEquals(new Bid("ITEM1", "USER1", 1.0d), tracker.getWinningBid("ITEM1"));
+	}
+	
+	@Test
+	public void moves_closed_items_to_the_archive(){
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+		tracker.bid("ITEM1", "USER1", 1.0d);
+		tracker.bid("ITEM1", "USER2", 2.0d);
+		tracker.bid("ITEM2", "USER1", 1.0d);
+		
+		clock.advance(100);
+		assertEquals(1, closer.closeDueAuctions());
+		
+		assertTrue(archive.isClosed("ITEM1"));
+		assertNull(bidStore.winningBid("ITEM1"));
+		assertNull(userStore.itemsForUser("USER2"));
+		assertEquals(1, userStore.itemsForUser("USER1").size());
+		assertNull(closer.closeTime("ITEM1"));
+		assertTrue(closer.isClosed("ITEM1"));
+		assertFalse(bidStore.maybeSave(new Bid("ITEM1", "USER3", 3.0d)));
+	}
+	
+	@Test
+	public void serves_reads_of_closed_items_from_the_archive(){
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+		tracker.bid("ITEM1", "USER1", 1.0d);
+		tracker.bid("ITEM1", "USER2", 2.0d);
+		tracker.bid("ITEM2", "USER1", 1.0d);
+		clock.advance(100);
+		closer.closeDueAuctions();
+		
+		assertEquals(new Bid("ITEM1", "USER2", 2.0d), tracker.getWinningBid("ITEM1"));
+		Iterator<Bid> bids = tracker.getBidsforItem("ITEM1").iterator();
+		assertEquals(1.0d, bids.next().getAmount());
+		assertEquals(2.0d, bids.next().getAmount());
+		assertEquals(1, tracker.getLatestBidsforItem("ITEM1", 1).size());
+		assertEquals(2, tracker.getBidsforItemAfter("ITEM1", 0, 10).size());
+		
+		Set<String> items = tracker.getItemsforUser("USER1");
+		assertEquals(2, items.size());
+		assertTrue(items.contains("ITEM1"));
+		assertTrue(items.contains("ITEM2"));
+		assertEquals(1, tracker.getItemsforUser("USER2").size());
+		assertNull(tracker.getItemsforUser("USER3"));
+	}
+	
+	@Test
+	public void auctions_of_a_user_tell_closed_items_from_the_archive(){
+		UserAuctionIndex index = new UserAuctionIndex(bidStore, archive);
+		AuctionCloser indexed = new AuctionCloser(bidStore, userStore, archive, 10, TimeUnit.MILLISECONDS, clock, index);
+		BidTracker indexedTracker = new AuctionBidTracker(new BidTrackerImpl(bidStore, userStore, index), indexed);
+		indexed.scheduleClose("ITEM1", clock.millis() + 100);
+		indexedTracker.bid("ITEM1", "USER1", 1.0d);
+		indexedTracker.bid("ITEM1", "USER2", 2.0d);
+		indexedTracker.bid("ITEM1", "USER1", 3.0d);
+		indexedTracker.bid("ITEM2", "USER2", 1.0d);
+		
+		clock.advance(100);
+		assertEquals(1, indexed.closeDueAuctions());
+		List<UserAuction> auctions = index.auctionsForUser("USER1");
+		assertEquals(1, auctions.size());
+		assertTrue(auctions.get(0).isClosed());
+		assertTrue(auctions.get(0).isWinning());
+		assertEquals(3.0d, auctions.get(0).getCurrentPrice());
+		
+		assertEquals(2, index.auctionsForUser("USER2").size());
+		UserAuction lost = index.outbidForUser("USER2").get(0);
+		assertTrue(lost.isClosed());
+		assertEquals(2.0d, lost.getTopBid().getAmount());
+		assertFalse(index.winningForUser("USER2").get(0).isClosed());
+	}
+	
+	@Test
+	public void closes_items_at_their_latest_close_time(){
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+		closer.scheduleClose("ITEM1", clock.millis() + 300);
+		
+		clock.advance(100);
+		assertEquals(0, closer.closeDueAuctions());
+		assertTrue(tracker.bid("ITEM1", "USER1", 1.0d));
+		
+		clock.advance(200);
+		assertEquals(1, closer.closeDueAuctions());
+		assertTrue(archive.isClosed("ITEM1"));
+	}
+	
+	@Test
+	public void closes_many_items_due_at_once(){
+		for (int i = 0; i < 5000; i++) {
+			closer.scheduleClose("ITEM" + i, clock.millis() + 500);
+			tracker.bid("ITEM" + i, "USER" + (i % 10), 1.0d);
+		}
+		closer.scheduleClose("LATER", clock.millis() + 600);
+		
+		clock.advance(500);
+		assertEquals(5000, closer.closeDueAuctions());
+		assertEquals(5000, archive.size());
+		assertFalse(bidStore.items().iterator().hasNext());
+		assertEquals(500, tracker.getItemsforUser("USER0").size());
+		assertFalse(closer.isClosed("LATER"));
+	}
+	
+	@Test
+	public void closes_items_without_bids(){
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+		clock.advance(100);
+		assertEquals(1, closer.closeDueAuctions());
+		assertTrue(archive.isClosed("ITEM1"));
+		assertNull(tracker.getWinningBid("ITEM1"));
+		assertFalse(tracker.bid("ITEM1", "USER1", 1.0d));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void cannot_reschedule_closed_items(){
+		closer.scheduleClose("ITEM1", clock.millis());
+		closer.scheduleClose("ITEM1", clock.millis() + 100);
+	}
+	
+	@Test
+	public void closes_due_auctions_on_its_own_thread() throws InterruptedException{
+		AuctionCloser running = new AuctionCloser(bidStore, userStore, archive, 5, TimeUnit.MILLISECONDS, Clock.systemUTC()).start();
+		try {
+			running.scheduleClose("ITEM1", System.currentTimeMillis() + 20);
+			assertTrue(bidStore.maybeSave(new Bid("ITEM1", "USER1", 1.0d)));
+			long deadline = System.currentTimeMillis() + 5000;
+			while(!archive.isClosed("ITEM1") && System.currentTimeMillis() < deadline){
+				Thread.sleep(5);
+			}
+			assertTrue(archive.isClosed("ITEM1"));
+			assertNull(bidStore.winningBid("ITEM1"));
+		} finally {
+			running.close();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void stores_mandatory_for_closer(){
+		new AuctionCloser(bidStore, null, archive, 10, TimeUnit.MILLISECONDS, clock);
+	}
+	
+	
+	private static final class ManualClock extends Clock {
+		private volatile long millis = 1000000L;
+		
+		void advance(long delta){
+			millis += delta;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+		
+		@Override
+		public long millis() {
+			return millis;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package phome.bidtracker.auction;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class TimeWheelTest {
+	
+	private TimeWheel<String> wheel = new TimeWheel<String>(10, 8, 1000);
+	
+	@Test
+	public void fires_tasks_once_their_deadline_is_reached(){
+		wheel.schedule("A", 1025);
+		wheel.schedule("B", 1050);
+		
+		assertTrue(wheel.advance(1020).isEmpty());
+		assertTrue(wheel.advance(1029).isEmpty());
+		assertEquals("A", wheel.advance(1030).get(0));
+		assertTrue(wheel.advance(1049).isEmpty());
+		assertEquals("B", wheel.advance(1050).get(0));
+		assertTrue(wheel.advance(2000).isEmpty());
+	}
+	
+	@Test
+	public void fires_overdue_tasks_on_next_advance(){
+		wheel.schedule("A", 1000);
+		wheel.schedule("B", 500);
+		assertEquals(2, wheel.advance(1000).size());
+	}
+	
+	@Test
+	public void keeps_tasks_due_rotations_ahead_in_their_bucket(){
+		wheel.schedule("A", 1010);
+		wheel.schedule("B", 1010 + 8 * 10 * 3);
+		
+		assertEquals("A", wheel.advance(1010).get(0));
+		assertTrue(wheel.advance(1100).isEmpty());
+		assertTrue(wheel.advance(1200).isEmpty());
+		assertTrue(wheel.advance(1249).isEmpty());
+		assertEquals("B", wheel.advance(1250).get(0));
+	}
+	
+	@Test
+	public void fires_every_task_on_a_jump_past_many_rotations(){
+		for (int i = 0; i < 1000; i++) {
+			wheel.schedule("T" + i, 1000 + i * 7);
+		}
+		List<String> due = wheel.advance(1000 + 500 * 7);
+		assertEquals(501, due.size());
+		assertEquals(499, wheel.advance(100000).size());
+	}
+	
+	@Test
+	public void fires_many_tasks_due_at_once(){
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 10000; i++) {
+			wheel.schedule("T" + i, 1100);
+			expected.add("T" + i);
+		}
+		assertTrue(wheel.advance(1099).isEmpty());
+		assertEquals(expected, new HashSet<String>(wheel.advance(1100)));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void tick_must_be_positive(){
+		new TimeWheel<String>(0, 8, 0);
+	}
+
+}
@@ -0,0 +1,67 @@
+package phome.bidtracker.cluster;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class HashRingTest {
+	
+	private HashRing ring = new HashRing(Arrays.asList("A", "B", "C"), 128);
+	
+	@Test
+	public void routes_a_key_always_to_the_same_node(){
+		assertEquals(ring.nodeFor("ITEM1"), ring.nodeFor("ITEM1"));
+		assertEquals(ring.nodeFor("ITEM1"), new HashRing(Arrays.asList("C", "A", "B"), 128).nodeFor("ITEM1"));
+	}
+	
+	@Test
+	public void spreads_the_keys_evenly(){
+		Map<String, Integer> counts = count(ring, 30000);
+		assertEquals(3, counts.size());
+		for (int count : counts.values()) {
+			assertTrue("share " + count, count > 7000 && count < 13000);
+		}
+	}
+	
+	@Test
+	public void moves_only_the_keys_of_an_added_node(){
+		HashRing added = ring.withNode("D");
+		int moved = 0;
+		for (int i = 0; i < 30000; i++) {
+			String before = ring.nodeFor("ITEM" + i);
+			String after = added.nodeFor("ITEM" + i);
+			if(!before.equals(after)){
+				assertEquals("D", after);
+				moved++;
+			}
+		}
+		assertTrue("moved " + moved, moved > 5000 && moved < 10000);
+		assertEquals(4, added.nodes().size());
+		assertEquals(3, ring.nodes().size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_a_node_already_on_the_ring(){
+		ring.withNode("A");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_no_nodes(){
+		new HashRing(Arrays.<String>asList(), 128);
+	}
+	
+	private static Map<String, Integer> count(HashRing ring, int keys){
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < keys; i++) {
+			String node = ring.nodeFor("ITEM" + i);
+			Integer count = counts.get(node);
+			counts.put(node, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+}
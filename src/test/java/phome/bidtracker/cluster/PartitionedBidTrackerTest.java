@@ -0,0 +1,288 @@
+package phome.bidtracker.cluster;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.net.BidClient;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.AsyncBidTracker;
+import phome.bidtracker.tracker.PartitionBidTracker;
+
+import static junit.framework.Assert.*;
+
+public class PartitionedBidTrackerTest {
+	
+	private List<Process> processes = new ArrayList<Process>();
+	private List<BidClient> clients = new ArrayList<BidClient>();
+	
+	@After
+	public void teardown() throws Exception{
+		for (BidClient client : clients) {
+			client.close();
+		}
+		for (Process process : processes) {
+			process.getOutputStream().close();
+			process.waitFor();
+		}
+	}
+	
+	private static LocalPartition newPartition(){
+		return new LocalPartition(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+	}
+	
+	private static Map<String, LocalPartition> localNodes(int count){
+		Map<String, LocalPartition> nodes = new LinkedHashMap<String, LocalPartition>();
+		for (int i = 0; i < count; i++) {
+			nodes.put("node-" + i, newPartition());
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Starts a node in its own JVM
+	 */
+	private BidClient startNode() throws IOException{
+		ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+				"-cp", System.getProperty("java.class.path"), PartitionNode.class.getName());
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+		processes.add(process);
+		BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		while((line = out.readLine()) != null){
+			if(line.startsWith(PartitionNode.LISTENING)){
+				int port = Integer.parseInt(line.substring(PartitionNode.LISTENING.length()).trim());
+				BidClient client = new BidClient(new InetSocketAddress("127.0.0.1", port));
+				clients.add(client);
+				return client;
+			}
+		}
+		throw new IOException("Node exited before listening");
+	}
+	
+	
+	@Test
+	public void routes_items_to_their_node(){
+		Map<String, LocalPartition> nodes = localNodes(3);
+		PartitionedBidTracker tracker = new PartitionedBidTracker(nodes);
+		for (int i = 0; i < 300; i++) {
+			assertTrue(tracker.bid("ITEM" + i, "USER1", 5.0d));
+		}
+		assertFalse(tracker.bid("ITEM1", "USER2", 5.0d));
+		
+		for (int i = 0; i < 300; i++) {
+			String itemId = "ITEM" + i;
+			LocalPartition owner = nodes.get(tracker.nodeNameFor(itemId));
+			assertEquals(new Bid(itemId, "USER1", 5.0d), owner.getWinningBid(itemId));
+			assertEquals(new Bid(itemId, "USER1", 5.0d), tracker.getWinningBid(itemId));
+			for (LocalPartition node : nodes.values()) {
+				if(node != owner){
+					assertNull(node.getWinningBid(itemId));
+				}
+			}
+		}
+		for (LocalPartition node : nodes.values()) {
+			assertTrue(node.getItems().size() > 50);
+		}
+	}
+	
+	@Test
+	public void gathers_the_items_of_a_user_from_all_nodes(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(3));
+		for (int i = 0; i < 100; i++) {
+			tracker.bid("ITEM" + i, "USER1", 5.0d);
+		}
+		tracker.bid("ITEM1", "USER2", 6.0d);
+		assertEquals(100, tracker.getItemsforUser("USER1").size());
+		assertEquals(1, tracker.getItemsforUser("USER2").size());
+		assertNull(tracker.getItemsforUser("USER3"));
+	}
+	
+	@Test
+	public void moves_items_to_an_added_node(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(2));
+		for (int i = 0; i < 300; i++) {
+			tracker.bid("ITEM" + i, "USER1", 5.0d);
+			tracker.bid("ITEM" + i, "USER2", 6.0d);
+		}
+		LocalPartition added = newPartition();
+		int moved = tracker.addNode("node-2", added);
+		
+		assertEquals(added.getItems().size(), moved);
+		assertTrue("moved " + moved, moved > 50 && moved < 200);
+		for (int i = 0; i < 300; i++) {
+			String itemId = "ITEM" + i;
+			Iterator<Bid> bids = tracker.getBidsforItem(itemId).iterator();
+			assertEquals(new Bid(itemId, "USER1", 5.0d, 1), bids.next());
+			Bid winning = bids.next();
+			assertEquals(new Bid(itemId, "USER2", 6.0d), winning);
+			assertEquals(2, winning.getSequence());
+			assertFalse(bids.hasNext());
+		}
+		for (String itemId : added.getItems()) {
+			assertEquals("node-2", tracker.nodeNameFor(itemId));
+			for (PartitionBidTracker node : tracker.getNodes().values()) {
+				if(node != added){
+					assertNull(node.getWinningBid(itemId));
+				}
+			}
+		}
+		assertEquals(300, tracker.getItemsforUser("USER1").size());
+		assertEquals(moved, added.getItemsforUser("USER1").size());
+		assertTrue(tracker.bid(added.getItems().iterator().next(), "USER3", 7.0d));
+	}
+	
+	@Test
+	public void pages_through_the_items_of_a_partition_in_their_order(){
+		LocalPartition node = newPartition();
+		for (int i = 0; i < 25; i++) {
+			node.bid("ITEM" + (char)('a' + i), "USER1", 5.0d);
+		}
+		List<String> page = node.getItemsAfter(null, 10);
+		assertEquals(10, page.size());
+		assertEquals("ITEMa", page.get(0));
+		assertEquals("ITEMj", page.get(9));
+		page = node.getItemsAfter("ITEMt", 10);
+		assertEquals(5, page.size());
+		assertEquals("ITEMu", page.get(0));
+		assertTrue(node.getItemsAfter("ITEMy", 10).isEmpty());
+	}
+	
+	@Test
+	public void pipelines_the_bids_of_moved_items_to_an_async_node(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(2));
+		for (int i = 0; i < 300; i++) {
+			tracker.bid("ITEM" + i, "USER1", 5.0d);
+			tracker.bid("ITEM" + i, "USER2", 6.0d);
+		}
+		AsyncPartition added = new AsyncPartition(Integer.MAX_VALUE);
+		int moved = tracker.addNode("node-2", added);
+		
+		assertEquals(moved * 2, added.sent);
+		for (String itemId : added.getItems()) {
+			assertEquals(new Bid(itemId, "USER2", 6.0d, 2), tracker.getWinningBid(itemId));
+		}
+	}
+	
+	@Test
+	public void bid_turned_down_by_an_async_node_fails_the_move(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(2));
+		for (int i = 0; i < 300; i++) {
+			tracker.bid("ITEM" + i, "USER1", 5.0d);
+			tracker.bid("ITEM" + i, "USER2", 6.0d);
+		}
+		AsyncPartition added = new AsyncPartition(21);
+		try{
+			tracker.addNode("node-2", added);
+			fail("move should have failed");
+		}catch(IllegalStateException e){
+			assertTrue(e.getMessage(), e.getMessage().contains("turned down"));
+		}
+		assertTrue(added.getItems().isEmpty());
+		assertEquals(2, tracker.getNodes().size());
+		assertEquals(300, tracker.getItemsforUser("USER2").size());
+	}
+	
+	@Test
+	public void failing_move_leaves_every_item_on_its_node(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(2));
+		for (int i = 0; i < 300; i++) {
+			tracker.bid("ITEM" + i, "USER1", 5.0d);
+		}
+		LocalPartition failing = new LocalPartition(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()){
+			private int bids;
+			
+			@Override
+			public boolean bid(String itemId, String userId, double amt) {
+				if(++bids > 20){
+					throw new IllegalStateException("node down");
+				}
+				return super.bid(itemId, userId, amt);
+			}
+		};
+		try{
+			tracker.addNode("node-2", failing);
+			fail("move should have failed");
+		}catch(IllegalStateException e){
+			assertEquals("node down", e.getMessage());
+		}
+		
+		assertEquals(2, tracker.getNodes().size());
+		assertTrue(failing.getItems().isEmpty());
+		for (int i = 0; i < 300; i++) {
+			assertEquals(new Bid("ITEM" + i, "USER1", 5.0d), tracker.getWinningBid("ITEM" + i));
+		}
+		assertEquals(300, tracker.getItemsforUser("USER1").size());
+	}
+	
+	@Test
+	public void runs_over_node_processes() throws IOException{
+		Map<String, BidClient> nodes = new LinkedHashMap<String, BidClient>();
+		nodes.put("node-0", startNode());
+		nodes.put("node-1", startNode());
+		PartitionedBidTracker tracker = new PartitionedBidTracker(nodes);
+		for (int i = 0; i < 200; i++) {
+			assertTrue(tracker.bid("ITEM" + i, "USER" + i % 2, 5.0d));
+		}
+		assertFalse(tracker.bid("ITEM1", "USER2", 4.0d));
+		assertTrue(nodes.get("node-0").getItems().size() > 50);
+		assertTrue(nodes.get("node-1").getItems().size() > 50);
+		
+		int moved = tracker.addNode("node-2", startNode());
+		assertTrue("moved " + moved, moved > 20);
+		Set<String> items = tracker.getItemsforUser("USER0");
+		assertEquals(100, items.size());
+		for (int i = 0; i < 200; i++) {
+			Bid winning = tracker.getWinningBid("ITEM" + i);
+			assertEquals(new Bid("ITEM" + i, "USER" + i % 2, 5.0d), winning);
+			assertEquals(1, winning.getSequence());
+		}
+		assertEquals(200, nodes.get("node-0").getItems().size() + nodes.get("node-1").getItems().size() + moved);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_adding_a_node_twice(){
+		PartitionedBidTracker tracker = new PartitionedBidTracker(localNodes(2));
+		tracker.addNode("node-1", newPartition());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_null_nodes(){
+		new PartitionedBidTracker(null);
+	}
+	
+	
+	/**
+	 * Node taking async bids, turning down the ones past a count
+	 */
+	private static final class AsyncPartition extends LocalPartition implements AsyncBidTracker {
+		private final int accepted;
+		private int sent;
+		
+		AsyncPartition(int accepted) {
+			super(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+			this.accepted = accepted;
+		}
+		
+		@Override
+		public CompletableFuture<Boolean> bidAsync(String itemId, String userId, double amt) {
+			return CompletableFuture.completedFuture(++sent < accepted && bid(itemId, userId, amt));
+		}
+	}
+
+}
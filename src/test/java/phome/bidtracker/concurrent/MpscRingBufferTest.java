@@ -0,0 +1,106 @@
+package phome.bidtracker.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class MpscRingBufferTest {
+	
+	private MpscRingBuffer<Integer> buffer = new MpscRingBuffer<Integer>(4);
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@Test
+	public void rounds_capacity_up_to_power_of_two(){
+		assertEquals(8, new MpscRingBuffer<Integer>(5).capacity());
+		assertEquals(4, buffer.capacity());
+	}
+	
+	@Test
+	public void polls_null_when_empty(){
+		assertTrue(buffer.isEmpty());
+		assertNull(buffer.poll());
+	}
+	
+	@Test
+	public void polls_in_offer_order(){
+		buffer.offer(1);
+		buffer.offer(2);
+		assertFalse(buffer.isEmpty());
+		assertEquals(Integer.valueOf(1), buffer.poll());
+		assertEquals(Integer.valueOf(2), buffer.poll());
+		assertNull(buffer.poll());
+	}
+	
+	@Test
+	public void rejects_offer_when_full_until_polled(){
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		buffer.poll();
+		assertTrue(buffer.offer(4));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void disallows_null_elements(){
+		buffer.offer(null);
+	}
+	
+	
+	//Concurrency tests
+	
+	@Test
+	public void delivers_every_element_exactly_once_from_concurrent_producers() 
+			throws InterruptedException, ExecutionException{
+		final MpscRingBuffer<Integer> sharedBuffer = new MpscRingBuffer<Integer>(64);
+		final int producers = 4;
+		final int perProducer = 10000;
+		
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			futures.add(executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() {
+					for (int i = 0; i < perProducer; i++) {
+						while(!sharedBuffer.offer(producer * perProducer + i)){
+							Thread.yield();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		
+		boolean[] seen = new boolean[producers * perProducer];
+		int[] lastPerProducer = {-1, -1, -1, -1};
+		int received = 0;
+		while(received < seen.length){
+			Integer element = sharedBuffer.poll();
+			if(element == null){
+				Thread.yield();
+				continue;
+			}
+			assertFalse(seen[element]);
+			seen[element] = true;
+			//elements of a given producer come out in the order offered
+			assertTrue(lastPerProducer[element / perProducer] < element);
+			lastPerProducer[element / perProducer] = element;
+			received++;
+		}
+		for ( Future<Object> future  : futures) {
+			future.get();
+		}
+		assertTrue(sharedBuffer.isEmpty());
+	}
+
+}
@@ -0,0 +1,102 @@
+package phome.bidtracker.concurrent;
+
+import static junit.framework.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the StripedTokenBuckets
+ *
+ */
+public class StripedTokenBucketsTest {
+
+	private static final long SECOND = 1000000000L;
+	private static final long NOW = 1000L * SECOND;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rate_must_be_positive(){
+		new StripedTokenBuckets(0, 1, 16);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void burst_must_be_positive(){
+		new StripedTokenBuckets(10, 0, 16);
+	}
+
+	@Test
+	public void stripes_rounded_up_to_power_of_two(){
+		assertEquals(128, new StripedTokenBuckets(10, 1, 100).stripes());
+	}
+
+	@Test
+	public void full_bucket_lets_the_burst_through_at_once(){
+		StripedTokenBuckets buckets = new StripedTokenBuckets(10, 5, 16);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(buckets.tryAcquire("USER", NOW));
+		}
+		assertFalse(buckets.tryAcquire("USER", NOW));
+	}
+
+	@Test
+	public void bucket_refills_at_the_rate(){
+		StripedTokenBuckets buckets = new StripedTokenBuckets(10, 1, 16);
+		assertTrue(buckets.tryAcquire("USER", NOW));
+		assertFalse(buckets.tryAcquire("USER", NOW + SECOND / 20));
+		assertTrue(buckets.tryAcquire("USER", NOW + SECOND / 10));
+		assertFalse(buckets.tryAcquire("USER", NOW + SECOND / 10));
+	}
+
+	@Test
+	public void idle_bucket_does_not_store_more_than_the_burst(){
+		StripedTokenBuckets buckets = new StripedTokenBuckets(10, 2, 16);
+		assertTrue(buckets.tryAcquire("USER", NOW));
+		long later = NOW + 60 * SECOND;
+		assertTrue(buckets.tryAcquire("USER", later));
+		assertTrue(buckets.tryAcquire("USER", later));
+		assertFalse(buckets.tryAcquire("USER", later));
+	}
+
+	@Test
+	public void keys_of_other_stripes_are_not_limited(){
+		StripedTokenBuckets buckets = new StripedTokenBuckets(10, 1, 1 << 16);
+		assertTrue(buckets.tryAcquire("USER-1", NOW));
+		assertFalse(buckets.tryAcquire("USER-1", NOW));
+		assertTrue(buckets.tryAcquire("USER-2", NOW));
+		assertTrue(buckets.tryAcquire("USER-3", NOW));
+	}
+
+	@Test
+	public void concurrent_callers_never_exceed_the_burst() throws InterruptedException{
+		final StripedTokenBuckets buckets = new StripedTokenBuckets(1, 1000, 16);
+		final AtomicInteger acquired = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						if(buckets.tryAcquire("HOT", NOW)){
+							acquired.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1000, acquired.get());
+	}
+
+}
@@ -0,0 +1,231 @@
+package phome.bidtracker.feed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Tests the BidFeed registered on a real tracker
+ *
+ */
+public class BidFeedTest {
+	
+	private BidFeed feed = new BidFeed(64);
+	private BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), feed);
+	
+	private String itemId = UUID.randomUUID() + "-ID";
+	private String userId = UUID.randomUUID() + "-ID";
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void capacity_must_be_positive(){
+		new BidFeed(0);
+	}
+	
+	@Test
+	public void capacity_is_rounded_up_to_a_power_of_two(){
+		assertEquals(128, new BidFeed(100).capacity());
+	}
+	
+	@Test
+	public void accepted_bids_are_fed_in_sequence(){
+		FeedCursor cursor = feed.cursor();
+		tracker.bid(itemId, userId, 10.0d);
+		tracker.bid(itemId, userId, 5.0d);//outbid, not fed
+		tracker.bid("OTHER", userId, 1.0d);
+		
+		List<FeedEntry> batch = cursor.poll(10);
+		assertEquals(2, batch.size());
+		assertEquals(1, batch.get(0).getSequence());
+		assertEquals(new Bid(itemId, userId, 10.0d), batch.get(0).getBid());
+		assertEquals(1, batch.get(0).getBid().getSequence());
+		assertEquals(2, batch.get(1).getSequence());
+		assertEquals(2, cursor.position());
+		assertTrue(cursor.poll(10).isEmpty());
+	}
+	
+	@Test
+	public void reads_are_batched(){
+		FeedCursor cursor = feed.cursor();
+		for (int i = 1; i <= 10; i++) {
+			tracker.bid(itemId, userId, i);
+		}
+		assertEquals(4, cursor.poll(4).size());
+		assertEquals(4, cursor.poll(4).size());
+		assertEquals(2, cursor.poll(4).size());
+		assertEquals(10, cursor.position());
+	}
+	
+	@Test
+	public void consumers_read_independently(){
+		FeedCursor first = feed.cursor();
+		tracker.bid(itemId, userId, 1.0d);
+		FeedCursor second = feed.cursor();
+		tracker.bid(itemId, userId, 2.0d);
+		
+		assertEquals(2, first.poll(10).size());
+		assertEquals(1, second.poll(10).size());
+		assertEquals(1, feed.cursor(0).poll(1).size());
+	}
+	
+	@Test
+	public void lagging_consumer_is_told_to_resync(){
+		FeedCursor cursor = feed.cursor();
+		for (int i = 1; i <= 100; i++) {
+			tracker.bid(itemId, userId, i);
+		}
+		try {
+			cursor.poll(10);
+			fail("expected resync");
+		} catch (FeedResyncException e) {
+			assertEquals(1, e.getRequestedSequence());
+			assertEquals(37, e.getOldestSequence());
+		}
+		assertEquals(0, cursor.position());
+		
+		FeedCursor resumed = feed.cursor(feed.oldestSequence() - 1);
+		assertEquals(64, resumed.poll(1000).size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void cannot_resume_past_the_feed(){
+		feed.cursor(1);
+	}
+	
+	@Test
+	public void waiting_poll_returns_empty_on_timeout() throws InterruptedException{
+		assertTrue(feed.cursor().poll(10, 10, TimeUnit.MILLISECONDS).isEmpty());
+	}
+	
+	@Test
+	public void bids_on_an_item_are_fed_in_acceptance_order(){
+		Bid first = new Bid(itemId, userId, 1.0d, 1L);
+		final Bid second = new Bid(itemId, userId, 2.0d, 2L);
+		feed.append(first);
+		
+		Bid third = new Bid(itemId, userId, 3.0d, 3L);
+		assertEquals(0, feed.append(third));//held back, without waiting for the second one
+		assertEquals(1, feed.cursor(0).poll(10).size());
+		feed.append(second);
+		
+		List<FeedEntry> batch = feed.cursor(0).poll(10);
+		assertEquals(3, batch.size());
+		assertEquals(2.0d, batch.get(1).getBid().getAmount());
+		assertEquals(3.0d, batch.get(2).getBid().getAmount());
+	}
+	
+	@Test
+	public void bid_held_back_for_a_predecessor_which_never_comes_is_fed_after_a_while() throws InterruptedException{
+		feed.append(new Bid(itemId, userId, 1.0d, 1L));
+		long start = System.nanoTime();
+		feed.append(new Bid(itemId, userId, 3.0d, 3L));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+		
+		List<FeedEntry> batch = feed.cursor(0).poll(10, 5, TimeUnit.SECONDS);
+		assertEquals(1, batch.size());
+		batch = feed.cursor(1).poll(10, 5, TimeUnit.SECONDS);
+		assertEquals(1, batch.size());
+		assertEquals(3, batch.get(0).getBid().getSequence());
+	}
+	
+	@Test
+	public void feed_over_restored_store_does_not_wait_for_earlier_bids(){
+		BidStoreLockFree restoredStore = new BidStoreLockFree();
+		restoredStore.maybeSave(new Bid(itemId, userId, 1.0d));
+		BidFeed restoredFeed = new BidFeed(64, restoredStore);
+		
+		long start = System.nanoTime();
+		restoredFeed.append(restoredStore.trySave(new Bid(itemId, userId, 2.0d)));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(2, restoredFeed.cursor(0).poll(10).get(0).getBid().getSequence());
+	}
+	
+	@Test
+	public void bid_held_back_for_its_predecessor_is_fed_right_after_it() throws InterruptedException{
+		final Bid second = new Bid(itemId, userId, 2.0d, 2L);
+		Thread waiting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				feed.append(second);
+			}
+		});
+		waiting.start();
+		Thread.sleep(10);
+		feed.append(new Bid(itemId, userId, 1.0d, 1L));
+		waiting.join(TimeUnit.SECONDS.toMillis(5));
+		
+		List<FeedEntry> batch = feed.cursor(0).poll(10);
+		assertEquals(2, batch.size());
+		assertEquals(1, batch.get(0).getBid().getSequence());
+		assertEquals(2, batch.get(1).getBid().getSequence());
+	}
+	
+	@Test
+	public void items_evicted_from_the_store_are_forgotten(){
+		BidStoreLockFree store = new BidStoreLockFree();
+		BidFeed storeFeed = new BidFeed(64, store);
+		BidTracker storeTracker = new BidTrackerImpl(store, new UserBidHistoryStoreLockFreeImpl(), storeFeed);
+		for (int i = 0; i < 1000; i++) {
+			storeTracker.bid("OLD" + i, userId, 1.0d);
+		}
+		for (int i = 0; i < 1000; i++) {
+			store.evict("OLD" + i);
+		}
+		for (int i = 0; i < 100; i++) {
+			storeTracker.bid("NEW" + i, userId, 1.0d);
+		}
+		assertEquals(100, storeFeed.itemsKept());
+		assertTrue(storeTracker.bid("NEW0", userId, 2.0d));
+		assertEquals(2, storeFeed.cursor(storeFeed.lastSequence() - 1).poll(1).get(0).getBid().getSequence());
+	}
+	
+	@Test
+	public void concurrent_bidders_are_fed_without_gaps_and_in_item_order() throws InterruptedException{
+		final BidFeed largeFeed = new BidFeed(1 << 16);
+		final BidTracker largeTracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), largeFeed);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final String bidder = "USER" + t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 2000; i++) {
+						largeTracker.bid("ITEM" + (i % 4), bidder, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		FeedCursor cursor = largeFeed.cursor(0);
+		List<FeedEntry> entries = new ArrayList<FeedEntry>();
+		List<FeedEntry> batch;
+		while(!(batch = cursor.poll(500)).isEmpty()){
+			entries.addAll(batch);
+		}
+		assertEquals(largeFeed.lastSequence(), entries.size());
+		Map<String, Long> lastPerItem = new HashMap<String, Long>();
+		for (int i = 0; i < entries.size(); i++) {
+			FeedEntry entry = entries.get(i);
+			assertEquals(i + 1, entry.getSequence());
+			Long last = lastPerItem.put(entry.getBid().getItemId(), entry.getBid().getSequence());
+			assertEquals(last == null ? 1L : last + 1, entry.getBid().getSequence());
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package phome.bidtracker.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class BidJournalTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File file;
+	
+	private String itemId = UUID.randomUUID() + "-ID";
+	private String userId = UUID.randomUUID() + "-ID";
+	private double bidAmount = 5.0;
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@Before
+	public void setup(){
+		file = new File(folder.getRoot(), "bids.journal");
+	}
+	
+	@Test
+	public void replays_nothing_without_journal() throws IOException{
+		assertEquals(0, BidJournal.replay(file, new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()));
+	}
+	
+	@Test
+	public void sequences_appended_bids() throws IOException{
+		BidJournal journal = new BidJournal(file, 0, TimeUnit.MILLISECONDS);
+		assertEquals(1, journal.append(new Bid(itemId, userId, bidAmount)));
+		assertEquals(2, journal.append(new Bid(itemId, userId, bidAmount + 1)));
+		assertEquals(2, journal.durableSequence());
+		journal.close();
+	}
+	
+	@Test
+	public void rebuilds_both_stores_from_accepted_bids() throws IOException{
+		BidJournal journal = new BidJournal(file, 1, TimeUnit.MILLISECONDS);
+		BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), journal);
+		String otherUserId = UUID.randomUUID() + "-ID";
+		tracker.bid(itemId, userId, bidAmount);
+		tracker.bid(itemId, otherUserId, bidAmount - 1);//declined hence not journaled
+		tracker.bid(itemId, otherUserId, bidAmount + 1);
+		journal.close();
+		
+		BidStore bidStore = new BidStoreLockFree();
+		UserBidHistoryStore userStore = new UserBidHistoryStoreLockFreeImpl();
+		assertEquals(2, BidJournal.replay(file, bidStore, userStore));
+		
+		Iterator<Bid> bids = bidStore.bidsForItem(itemId).iterator();
+		assertEquals(new Bid(itemId, userId, bidAmount), bids.next());
+		assertEquals(new Bid(itemId, otherUserId, bidAmount + 1), bids.next());
+		assertFalse(bids.hasNext());
+		assertTrue(userStore.itemsForUser(userId).contains(itemId));
+		assertTrue(userStore.itemsForUser(otherUserId).contains(itemId));
+	}
+	
+	@Test
+	public void replays_bids_of_an_item_in_accepted_order_even_if_journaled_out_of_order() throws IOException{
+		BidJournal journal = new BidJournal(file, 0, TimeUnit.MILLISECONDS);
+		Bid lowBid = new Bid(itemId, userId, bidAmount);
+		Bid highBid = new Bid(itemId, userId, bidAmount + 1);
+		journal.append(highBid);//racing bidders may reach the journal in reverse order
+		journal.append(lowBid);
+		journal.close();
+		
+		BidStore bidStore = new BidStoreLockFree();
+		BidJournal.replay(file, bidStore, new UserBidHistoryStoreLockFreeImpl());
+		Iterator<Bid> bids = bidStore.bidsForItem(itemId).iterator();
+		assertEquals(lowBid, bids.next());
+		assertEquals(highBid, bids.next());
+	}
+	
+	@Test
+	public void cuts_off_torn_record_and_carries_on_appending() throws IOException{
+		BidJournal journal = new BidJournal(file, 0, TimeUnit.MILLISECONDS);
+		journal.append(new Bid(itemId, userId, bidAmount));
+		journal.append(new Bid(itemId, userId, bidAmount + 1));
+		journal.close();
+		
+		//simulates a crash half way through writing the second record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+		
+		journal = new BidJournal(file, 0, TimeUnit.MILLISECONDS);
+		assertEquals(2, journal.append(new Bid(itemId, userId, bidAmount + 2)));
+		journal.close();
+		
+		BidStore bidStore = new BidStoreLockFree();
+		assertEquals(2, BidJournal.replay(file, bidStore, new UserBidHistoryStoreLockFreeImpl()));
+		assertEquals(bidAmount + 2, bidStore.winningBid(itemId).getAmount());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void refuses_appends_once_closed() throws IOException{
+		BidJournal journal = new BidJournal(file, 0, TimeUnit.MILLISECONDS);
+		journal.close();
+		journal.append(new Bid(itemId, userId, bidAmount));
+	}
+	
+	
+	//Concurrency tests
+	
+	@Test
+	public void group_commits_concurrent_appends_under_distinct_sequences() 
+			throws IOException, InterruptedException, ExecutionException{
+		final BidJournal journal = new BidJournal(file, 2, TimeUnit.MILLISECONDS);
+		
+		Callable<List<Long>> task =
+		new Callable<List<Long>>() {
+			@Override
+			public List<Long> call() throws Exception {
+				List<Long> sequences = new ArrayList<Long>();
+				for (int i = 1; i <= 100; i++) {
+					sequences.add(journal.append(new Bid(UUID.randomUUID() + "-ID", userId, i)));
+				}
+				return sequences;
+			}
+		};
+		
+		List<Future<List<Long>>> futures = new ArrayList<Future<List<Long>>>();		
+		for (int i = 0; i < 10; i++) {
+			futures.add( executor.submit(task));
+		}
+		Set<Long> sequences = new HashSet<Long>();
+		for ( Future<List<Long>> future  : futures) {
+			sequences.addAll(future.get());
+		}
+		journal.close();
+		
+		assertEquals(1000, sequences.size());
+		assertEquals(1000, BidJournal.replay(file, new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()));
+	}
+
+}
@@ -0,0 +1,166 @@
+package phome.bidtracker.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidSegments;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.ClosedItems;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class BidSnapshotTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File file;
+	
+	private BidStore bidStore = new BidStoreLockFree();
+	private UserBidHistoryStore userStore = new UserBidHistoryStoreLockFreeImpl();
+	private BidTracker tracker = new BidTrackerImpl(bidStore, userStore);
+	
+	private BidStore loadedBidStore = new BidStoreLockFree();
+	private UserBidHistoryStore loadedUserStore = new UserBidHistoryStoreLockFreeImpl();
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@Before
+	public void setup(){
+		file = new File(folder.getRoot(), "bids.snapshot");
+	}
+	
+	@Test
+	public void loads_empty_snapshot() throws IOException{
+		BidSnapshot.write(file, bidStore, 7, 2);
+		assertEquals(7, BidSnapshot.load(file, loadedBidStore, loadedUserStore, 2));
+		assertFalse(loadedBidStore.items().iterator().hasNext());
+	}
+	
+	@Test
+	public void restores_bids_in_order_and_user_items() throws IOException{
+		for (int i = 0; i < 50; i++) {
+			String itemId = "ITEM" + i;
+			tracker.bid(itemId, "USER1", 1.0d);
+			tracker.bid(itemId, "USER2", 1.25d + i);
+			tracker.bid(itemId, "USER" + i, 1000.5d + i * 0.01d);
+		}
+		tracker.bid("RAW", "USER1", Math.PI);//not a whole number of cents
+		tracker.bid("RAW", "USER2", Math.E * 10);
+		
+		BidSnapshot.write(file, bidStore, 0, 4);
+		BidSnapshot.load(file, loadedBidStore, loadedUserStore, 4);
+		
+		for (String itemId : bidStore.items()) {
+			Iterator<Bid> loaded = loadedBidStore.bidsForItem(itemId).iterator();
+			for (Bid bid : bidStore.bidsForItem(itemId)) {
+				Bid loadedBid = loaded.next();
+				assertEquals(bid, loadedBid);
+				assertEquals(bid.getAmount(), loadedBid.getAmount());
+			}
+			assertFalse(loaded.hasNext());
+		}
+		for (int i = 0; i < 50; i++) {
+			assertEquals(userStore.itemsForUser("USER" + i), loadedUserStore.itemsForUser("USER" + i));
+		}
+		assertEquals(Math.E * 10, loadedBidStore.winningBid("RAW").getAmount());
+	}
+	
+	@Test
+	public void restores_histories_spilled_to_disk() throws IOException{
+		BidStore spillingStore = new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, 
+				new BidSegments(folder.newFolder("segments"), 4, 8));
+		for (int i = 1; i <= 100; i++) {
+			for (int item = 0; item < 5; item++) {
+				spillingStore.maybeSave(new Bid("ITEM" + item, "USER" + i % 7, i + item * 0.1d));
+			}
+		}
+		
+		BidSnapshot.write(file, spillingStore, 0, 3);
+		BidSnapshot.load(file, loadedBidStore, loadedUserStore, 3);
+		
+		for (int item = 0; item < 5; item++) {
+			Iterator<Bid> loaded = loadedBidStore.bidsForItem("ITEM" + item).iterator();
+			int count = 0;
+			for (Bid bid : spillingStore.bidsForItem("ITEM" + item)) {
+				assertEquals(bid, loaded.next());
+				count++;
+			}
+			assertEquals(100, count);
+			assertFalse(loaded.hasNext());
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void refuses_a_truncated_snapshot() throws IOException{
+		tracker.bid("ITEM", "USER", 1.0d);
+		BidSnapshot.write(file, bidStore, 0, 1);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+		BidSnapshot.load(file, loadedBidStore, loadedUserStore, 1);
+	}
+	
+	@Test
+	public void recovers_from_snapshot_plus_journal_tail_while_bidding_carries_on() throws Exception{
+		File journalFile = new File(folder.getRoot(), "bids.journal");
+		final BidJournal journal = new BidJournal(journalFile, 1, TimeUnit.MILLISECONDS);
+		final BidTracker journaledTracker = new BidTrackerImpl(bidStore, userStore, journal);
+		
+		Callable<Object> task =
+		new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				String userId = UUID.randomUUID() + "-ID";
+				for (int i = 0; i < 500; i++) {
+					journaledTracker.bid("ITEM" + (i % 20), userId, i + Math.random());
+				}
+				return null;
+			}
+		};
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();		
+		for (int i = 0; i < 4; i++) {
+			futures.add( executor.submit(task));
+		}
+		Thread.sleep(5);
+		BidSnapshot.write(file, bidStore, journal.durableSequence(), 3);//fuzzy, taken while bidding
+		for ( Future<Object> future  : futures) {
+			future.get();
+		}
+		journal.close();
+		
+		long journalSequence = BidSnapshot.load(file, loadedBidStore, loadedUserStore, 3);
+		BidJournal.replay(journalFile, loadedBidStore, loadedUserStore, journalSequence);
+		
+		for (String itemId : bidStore.items()) {
+			Iterator<Bid> loaded = loadedBidStore.bidsForItem(itemId).iterator();
+			for (Bid bid : bidStore.bidsForItem(itemId)) {
+				assertEquals(bid, loaded.next());
+			}
+			assertFalse(loaded.hasNext());
+		}
+	}
+
+}
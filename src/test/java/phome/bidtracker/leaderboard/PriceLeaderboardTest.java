@@ -0,0 +1,111 @@
+package phome.bidtracker.leaderboard;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class PriceLeaderboardTest {
+	
+	private PriceLeaderboard board = new PriceLeaderboard(3);
+	private BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), board);
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void k_must_be_positive(){
+		new PriceLeaderboard(0);
+	}
+	
+	@Test
+	public void empty_board_has_no_items(){
+		assertTrue(board.top().isEmpty());
+	}
+	
+	@Test
+	public void ranks_items_by_winning_amount(){
+		tracker.bid("A", "USER", 10.0d);
+		tracker.bid("B", "USER", 30.0d);
+		tracker.bid("C", "USER", 20.0d);
+		tracker.bid("D", "USER", 5.0d);
+		
+		assertEquals("[B=30.0, C=20.0, A=10.0]", board.top().toString());
+		assertEquals("[B=30.0]", board.top(1).toString());
+	}
+	
+	@Test
+	public void rising_item_moves_up_without_duplicates(){
+		tracker.bid("A", "USER", 10.0d);
+		tracker.bid("B", "USER", 30.0d);
+		tracker.bid("C", "USER", 20.0d);
+		tracker.bid("A", "USER", 40.0d);
+		tracker.bid("D", "USER", 25.0d);
+		
+		assertEquals("[A=40.0, B=30.0, D=25.0]", board.top().toString());
+	}
+	
+	@Test
+	public void late_lower_bid_does_not_lower_an_item(){
+		board.onBidAccepted(new Bid("A", "USER", 20.0d));
+		board.onBidAccepted(new Bid("A", "USER", 10.0d));
+		
+		assertEquals("[A=20.0]", board.top().toString());
+	}
+	
+	@Test
+	public void items_evicted_from_the_store_leave_the_board_to_the_next_highest(){
+		BidStoreLockFree store = new BidStoreLockFree();
+		PriceLeaderboard storeBoard = new PriceLeaderboard(2, store);
+		BidTracker storeTracker = new BidTrackerImpl(store, new UserBidHistoryStoreLockFreeImpl(), storeBoard);
+		storeTracker.bid("A", "USER", 10.0d);
+		storeTracker.bid("B", "USER", 30.0d);
+		storeTracker.bid("C", "USER", 20.0d);
+		storeTracker.bid("D", "USER", 5.0d);
+		assertEquals("[B=30.0, C=20.0]", storeBoard.top().toString());
+		
+		store.close("B");
+		store.evict("B");
+		assertEquals("[C=20.0, A=10.0]", storeBoard.top().toString());
+		storeTracker.bid("D", "USER", 15.0d);
+		assertEquals("[C=20.0, D=15.0]", storeBoard.top().toString());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void board_is_read_only(){
+		tracker.bid("A", "USER", 10.0d);
+		board.top().clear();
+	}
+	
+	@Test
+	public void concurrent_bids_keep_highest_items() throws InterruptedException{
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 1000; i++) {
+						tracker.bid("ITEM" + (i % 50), "USER" + offset, i * 4 + offset);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		List<LeaderboardEntry> top = board.top();
+		assertEquals(3, top.size());
+		for (LeaderboardEntry entry : top) {
+			assertEquals(tracker.getWinningBid(entry.getItemId()).getAmount(), entry.getScore());
+		}
+		assertEquals(4003.0d, top.get(0).getScore());
+	}
+
+}
@@ -0,0 +1,103 @@
+package phome.bidtracker.leaderboard;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+
+import static junit.framework.Assert.*;
+
+public class RateLeaderboardTest {
+	
+	private ManualClock clock = new ManualClock();
+	private RateLeaderboard board = new RateLeaderboard(2, 10, TimeUnit.SECONDS, 0, TimeUnit.SECONDS, clock);
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void window_must_be_positive(){
+		new RateLeaderboard(2, 0, TimeUnit.SECONDS);
+	}
+	
+	@Test
+	public void ranks_items_by_bids_in_window(){
+		bid("A", 3);
+		bid("B", 5);
+		bid("C", 1);
+		
+		assertEquals("[B=5.0, A=3.0]", board.top().toString());
+		assertEquals("[B=5.0]", board.top(1).toString());
+	}
+	
+	@Test
+	public void bids_expire_as_the_window_slides(){
+		bid("A", 3);
+		clock.advance(6000);
+		bid("B", 2);
+		assertEquals("[A=3.0, B=2.0]", board.top().toString());
+		
+		clock.advance(5000);
+		assertEquals("[B=2.0]", board.top().toString());
+		
+		clock.advance(10000);
+		assertTrue(board.top().isEmpty());
+	}
+	
+	@Test
+	public void board_is_rebuilt_only_once_stale(){
+		RateLeaderboard lazyBoard = new RateLeaderboard(2, 10, TimeUnit.SECONDS, 1, TimeUnit.SECONDS, clock);
+		lazyBoard.onBidAccepted(new Bid("A", "USER", 1.0d));
+		assertEquals("[A=1.0]", lazyBoard.top().toString());
+		
+		lazyBoard.onBidAccepted(new Bid("B", "USER", 1.0d));
+		lazyBoard.onBidAccepted(new Bid("B", "USER", 2.0d));
+		assertEquals("[A=1.0]", lazyBoard.top().toString());//within staleness
+		
+		clock.advance(1000);
+		assertEquals("[B=2.0, A=1.0]", lazyBoard.top().toString());
+		
+		lazyBoard.onBidAccepted(new Bid("A", "USER", 2.0d));
+		lazyBoard.onBidAccepted(new Bid("A", "USER", 3.0d));
+		lazyBoard.refresh();
+		assertEquals("[A=3.0, B=2.0]", lazyBoard.top().toString());
+	}
+	
+	private void bid(String itemId, int times){
+		for (int i = 1; i <= times; i++) {
+			board.onBidAccepted(new Bid(itemId, "USER", i));
+		}
+	}
+	
+	
+	private static final class ManualClock extends Clock {
+		private volatile long millis = 1000000L;
+		
+		void advance(long delta){
+			millis += delta;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+		
+		@Override
+		public long millis() {
+			return millis;
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package phome.bidtracker.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import phome.bidtracker.concurrent.Ticker;
+
+import static junit.framework.Assert.*;
+
+public class ContentionTrackerTest {
+
+	private final ManualTicker ticker = new ManualTicker();
+
+	private ContentionTracker tracker = new ContentionTracker(2, 1, TimeUnit.SECONDS, ticker);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void half_life_must_be_positive(){
+		new ContentionTracker(2, 0, TimeUnit.SECONDS, ticker);
+	}
+
+	@Test
+	public void tells_hottest_keys_first(){
+		tracker.record("WARM", 2);
+		tracker.record("HOT", 5);
+		tracker.record("WARM", 1);
+		tracker.record("IGNORED", 0);
+		Map<String, Long> hottest = tracker.hottest(10);
+		assertEquals(2, hottest.size());
+		assertEquals("HOT", hottest.keySet().iterator().next());
+		assertEquals(Long.valueOf(3), hottest.get("WARM"));
+	}
+
+	@Test
+	public void ignores_new_keys_once_full(){
+		tracker.record("A", 1);
+		tracker.record("B", 1);
+		tracker.record("C", 10);
+		assertFalse(tracker.hottest(10).containsKey("C"));
+	}
+
+	@Test
+	public void halves_retries_every_half_life(){
+		tracker.record("HOT", 8);
+		ticker.advance(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(Long.valueOf(4), tracker.hottest(1).get("HOT"));
+		ticker.advance(TimeUnit.SECONDS.toNanos(2));
+		assertEquals(Long.valueOf(1), tracker.hottest(1).get("HOT"));
+	}
+
+	@Test
+	public void cold_keys_are_forgotten_making_room_for_new_ones(){
+		tracker.record("CLOSED", 1);
+		tracker.record("HOT", 100);
+		ticker.advance(TimeUnit.SECONDS.toNanos(1));
+		tracker.record("NEW", 1);
+		Map<String, Long> hottest = tracker.hottest(10);
+		assertFalse(hottest.containsKey("CLOSED"));
+		assertEquals(Long.valueOf(50), hottest.get("HOT"));
+		assertEquals(Long.valueOf(1), hottest.get("NEW"));
+	}
+
+
+	private static final class ManualTicker implements Ticker {
+		private volatile long nanos = -1000000000L;//nanoTime may well be negative
+
+		void advance(long delta){
+			nanos += delta;
+		}
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	}
+
+}
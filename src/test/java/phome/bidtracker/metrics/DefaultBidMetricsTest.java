@@ -0,0 +1,157 @@
+package phome.bidtracker.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import phome.bidtracker.metrics.BidMetrics.Read;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidAdmission;
+import phome.bidtracker.tracker.BidDedupCache;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+import phome.bidtracker.tracker.InstrumentedBidTracker;
+
+import static junit.framework.Assert.*;
+
+public class DefaultBidMetricsTest {
+	
+	private DefaultBidMetrics metrics = new DefaultBidMetrics();
+	private BidTracker tracker = new InstrumentedBidTracker(
+			new BidTrackerImpl(new BidStoreLockFree(metrics), new UserBidHistoryStoreLockFreeImpl(metrics)), metrics);
+	
+	@Test
+	public void bids_and_reads_are_counted_and_timed(){
+		assertTrue(tracker.bid("ITEM", "USER", 10.0d));
+		assertTrue(tracker.bid("ITEM", "USER", 20.0d));
+		assertFalse(tracker.bid("ITEM", "USER", 5.0d));
+		tracker.getWinningBid("ITEM");
+		tracker.getBidsforItem("ITEM");
+		tracker.getLatestBidsforItem("ITEM", 10);
+		tracker.getBidsforItemAfter("ITEM", 0, 10);
+		tracker.getItemsforUser("USER");
+		
+		assertEquals(2, metrics.getAcceptedBids());
+		assertEquals(1, metrics.getRejectedBids());
+		assertEquals(3, metrics.bidLatency().count());
+		assertTrue(metrics.getBidLatencyP50Micros() > 0);
+		for (Read read : Read.values()) {
+			assertEquals(1, metrics.readLatency(read).count());
+		}
+	}
+	
+	@Test
+	public void bids_with_a_request_id_are_recorded_and_retries_counted_as_deduplicated(){
+		BidTracker deduplicating = new InstrumentedBidTracker(new BidTrackerImpl(new BidStoreLockFree(), 
+				new UserBidHistoryStoreLockFreeImpl(), BidAdmission.NONE, new BidDedupCache(metrics)), metrics);
+		assertTrue(deduplicating.bid("REQ1", "ITEM", "USER", 10.0d));
+		assertTrue(deduplicating.bid("REQ1", "ITEM", "USER", 10.0d));
+		assertTrue(deduplicating.bid("REQ1", "ITEM", "USER", 10.0d));
+		assertFalse(deduplicating.bid("REQ2", "ITEM", "USER", 5.0d));
+		
+		assertEquals(3, metrics.getAcceptedBids());
+		assertEquals(1, metrics.getRejectedBids());
+		assertEquals(2, metrics.getDeduplicatedBids());
+		assertEquals(4, metrics.bidLatency().count());
+		
+		metrics.reset();
+		assertEquals(0, metrics.getDeduplicatedBids());
+	}
+	
+	@Test
+	public void bids_with_a_request_id_are_recorded_without_a_deduplicating_sink(){
+		BidTracker instrumented = new InstrumentedBidTracker(new BidTrackerImpl(new BidStoreLockFree(), 
+				new UserBidHistoryStoreLockFreeImpl()), metrics);
+		assertTrue(instrumented.bid("REQ1", "ITEM", "USER", 10.0d));
+		assertEquals(1, metrics.getAcceptedBids());
+		assertEquals(0, metrics.getDeduplicatedBids());
+	}
+	
+	@Test
+	public void stores_report_saves_on_existing_entries(){
+		tracker.bid("ITEM", "USER", 10.0d);
+		tracker.bid("ITEM", "USER", 20.0d);
+		
+		assertEquals(1, metrics.getBidStoreSaves());//first bid creates the history
+		assertEquals(2, metrics.getUserStoreSaves());
+		assertEquals(0, metrics.getBidStoreCasRetries());
+	}
+	
+	@Test
+	public void contended_items_are_ranked_by_retries(){
+		metrics.bidStoreSaved("WARM", 1);
+		metrics.bidStoreSaved("HOT", 5);
+		metrics.bidStoreSaved("HOT", 5);
+		metrics.bidStoreSaved("COLD", 0);
+		
+		Map<String, Long> hottest = metrics.hottestItems(10);
+		assertEquals(2, hottest.size());
+		assertEquals("HOT", hottest.keySet().iterator().next());
+		assertEquals(Long.valueOf(10), hottest.get("HOT"));
+		assertEquals(11, metrics.getBidStoreCasRetries());
+		assertEquals("HOT=10", metrics.getHottestItems()[0]);
+	}
+	
+	@Test
+	public void concurrent_bidding_on_one_item_is_accounted() throws InterruptedException{
+		final int threadCount = 8;
+		final int bidsPerThread = 2000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final String userId = "USER" + t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 1; i <= bidsPerThread; i++) {
+						tracker.bid("ITEM", userId, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertEquals(threadCount * bidsPerThread, metrics.getAcceptedBids() + metrics.getRejectedBids());
+		assertEquals(threadCount * bidsPerThread, metrics.bidLatency().count());
+		if(metrics.getBidStoreCasRetries() > 0){
+			assertEquals("ITEM", metrics.hottestItems(1).keySet().iterator().next());
+		}
+	}
+	
+	@Test
+	public void metrics_are_readable_through_jmx() throws Exception{
+		String name = "test-" + System.nanoTime();
+		ObjectName objectName = metrics.register(name);
+		try {
+			tracker.bid("ITEM", "USER", 10.0d);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L, server.getAttribute(objectName, "AcceptedBids"));
+			server.invoke(objectName, "reset", null, null);
+			assertEquals(0L, server.getAttribute(objectName, "AcceptedBids"));
+		} finally {
+			DefaultBidMetrics.unregister(name);
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void null_metrics_are_rejected(){
+		new BidStoreLockFree(null);
+	}
+
+}
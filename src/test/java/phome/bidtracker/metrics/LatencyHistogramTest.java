@@ -0,0 +1,65 @@
+package phome.bidtracker.metrics;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class LatencyHistogramTest {
+	
+	private LatencyHistogram histogram = new LatencyHistogram();
+	
+	@Test
+	public void empty_histogram_reports_zero(){
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.valueAtPercentile(99.0d));
+	}
+	
+	@Test
+	public void small_values_are_exact(){
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.count());
+		assertEquals(50, histogram.valueAtPercentile(50.0d));
+		assertEquals(99, histogram.valueAtPercentile(99.0d));
+		assertEquals(100, histogram.valueAtPercentile(100.0d));
+	}
+	
+	@Test
+	public void large_values_are_within_two_percent(){
+		long[] values = {1000, 12345, 999999, 123456789L, 30000000000L};
+		for (long value : values) {
+			LatencyHistogram single = new LatencyHistogram();
+			single.record(value);
+			long reported = single.valueAtPercentile(50.0d);
+			assertTrue(reported >= value);
+			assertTrue(reported - value <= value / 50);
+		}
+	}
+	
+	@Test
+	public void buckets_are_contiguous(){
+		for (int bucket = 0; bucket < LatencyHistogram.bucketOf(1L << 36); bucket++) {
+			long highest = LatencyHistogram.highestValueOf(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+			assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+		}
+	}
+	
+	@Test
+	public void out_of_range_values_are_clamped(){
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2, histogram.count());
+		assertEquals(0, histogram.valueAtPercentile(50.0d));
+		assertTrue(histogram.valueAtPercentile(100.0d) > 0);
+	}
+	
+	@Test
+	public void reset_clears_counts(){
+		histogram.record(42);
+		histogram.reset();
+		assertEquals(0, histogram.count());
+	}
+
+}
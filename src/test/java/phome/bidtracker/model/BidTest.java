@@ -59,6 +59,25 @@ public class BidTest {
 		assertNotSame(bid, null);		
 	}
 	
+	@Test(expected = IllegalArgumentException.class)
+	public void disallows_negative_sequence(){
+		new Bid(itemId, userId, bidAmount, -1L);
+	}
+	
+	@Test
+	public void unsaved_bid_has_no_sequence(){
+		assertEquals(0, bid.getSequence());
+	}
+	
+	@Test
+	public void sequence_is_not_part_of_equality(){
+		Bid savedBid = bid.withSequence(7L);
+		assertEquals(7, savedBid.getSequence());
+		assertEquals(bid, savedBid);
+		assertEquals(bid.hashCode(), savedBid.hashCode());
+		assertSame(savedBid, savedBid.withSequence(7L));
+	}
+	
 	
 	
 }
@@ -0,0 +1,228 @@
+package phome.bidtracker.net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import phome.bidtracker.cluster.LocalPartition;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class BidServerTest {
+	
+	private BidTracker tracker;
+	private BidServer server;
+	private BidClient client;
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@Before
+	public void setup() throws IOException{
+		tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+		server = new BidServer(tracker, new InetSocketAddress("127.0.0.1", 0), 2);
+		client = new BidClient(server.getAddress());
+	}
+	
+	@After
+	public void teardown() throws IOException{
+		client.close();
+		server.close();
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void places_bids_remotely(){
+		assertTrue(client.bid("ITEM1", "USER1", 5.0d));
+		assertFalse(client.bid("ITEM1", "USER2", 5.0d));
+		assertTrue(client.bid("ITEM1", "USER2", 6.0d));
+		assertEquals(new Bid("ITEM1", "USER2", 6.0d), tracker.getWinningBid("ITEM1"));
+	}
+	
+	@Test
+	public void retried_bid_is_placed_once_remotely(){
+		assertTrue(client.bid("REQ1", "ITEM1", "USER1", 5.0d));
+		assertTrue(client.bid("ITEM1", "USER2", 6.0d));
+		assertTrue(client.bid("REQ1", "ITEM1", "USER1", 5.0d));
+		assertFalse(client.bid("REQ2", "ITEM1", "USER1", 5.0d));
+		assertEquals(2, tracker.getLatestBidsforItem("ITEM1", 10).size());
+	}
+	
+	@Test
+	public void reads_remotely(){
+		client.bid("ITEM1", "USER1", 5.0d);
+		client.bid("ITEM1", "USER2", 6.0d);
+		client.bid("ITEM2", "USER1", 1.0d);
+		
+		Bid winning = client.getWinningBid("ITEM1");
+		assertEquals(new Bid("ITEM1", "USER2", 6.0d), winning);
+		assertEquals(2, winning.getSequence());
+		
+		Iterator<Bid> bids = client.getBidsforItem("ITEM1").iterator();
+		assertEquals(new Bid("ITEM1", "USER1", 5.0d), bids.next());
+		assertEquals(new Bid("ITEM1", "USER2", 6.0d), bids.next());
+		assertFalse(bids.hasNext());
+		
+		assertEquals(winning, client.getLatestBidsforItem("ITEM1", 1).get(0));
+		assertEquals(1, client.getBidsforItemAfter("ITEM1", 1, 10).size());
+		
+		Set<String> items = client.getItemsforUser("USER1");
+		assertEquals(2, items.size());
+		assertTrue(items.contains("ITEM1"));
+		assertTrue(items.contains("ITEM2"));
+	}
+	
+	@Test
+	public void reads_nothing_remotely(){
+		assertNull(client.getWinningBid("ITEM1"));
+		assertNull(client.getBidsforItem("ITEM1"));
+		assertNull(client.getLatestBidsforItem("ITEM1", 10));
+		assertNull(client.getItemsforUser("USER1"));
+	}
+	
+	@Test
+	public void transfers_non_ascii_ids_and_long_histories(){
+		for (int i = 1; i <= 20000; i++) {
+			tracker.bid("enchère-é", "użytkownik-" + i, i);
+		}
+		int count = 0;
+		for (Bid bid : client.getBidsforItem("enchère-é")) {
+			count++;
+			assertEquals("użytkownik-" + count, bid.getUserId());
+			assertEquals("enchère-é", bid.getItemId());
+		}
+		assertEquals(20000, count);
+	}
+	
+	@Test
+	public void pages_bids_across_responses(){
+		int count = Protocol.MAX_BIDS * 2 + 10;
+		for (int i = 1; i <= count; i++) {
+			tracker.bid("ITEM1", "USER1", i);
+		}
+		List<Bid> bids = client.getBidsforItemAfter("ITEM1", 5, Protocol.MAX_BIDS + 1);
+		assertEquals(Protocol.MAX_BIDS + 1, bids.size());
+		assertEquals(6, bids.get(0).getSequence());
+		assertEquals(Protocol.MAX_BIDS + 6, bids.get(Protocol.MAX_BIDS).getSequence());
+		
+		bids = client.getBidsforItemAfter("ITEM1", Protocol.MAX_BIDS, Integer.MAX_VALUE);
+		assertEquals(count - Protocol.MAX_BIDS, bids.size());
+		assertEquals(count, bids.get(bids.size() - 1).getSequence());
+		assertTrue(client.getBidsforItemAfter("ITEM1", count, 10).isEmpty());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_invalid_bids_client_side(){
+		client.bid("ITEM1", null, 1.0d);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void relays_invalid_requests_turned_down_by_the_server(){
+		client.getLatestBidsforItem("ITEM1", 0);
+	}
+	
+	@Test
+	public void pipelines_requests_from_a_single_thread(){
+		List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+		for (int i = 1; i <= 10000; i++) {
+			results.add(client.bidAsync("ITEM1", "USER1", i));
+		}
+		for (CompletableFuture<Boolean> result : results) {
+			assertTrue(result.join());
+		}
+		assertEquals(0, client.inFlight());
+		assertEquals(10000.0d, client.getWinningBid("ITEM1").getAmount());
+	}
+	
+	@Test
+	public void shares_a_connection_between_threads() throws Exception{
+		Callable<Integer> task = new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				int accepted = 0;
+				for (int i = 0; i < 2000; i++) {
+					if(client.bid("ITEM1", Thread.currentThread().getName(), 1.0d + Math.random() * 1000)){
+						accepted++;
+					}
+					client.getWinningBid("ITEM1");
+				}
+				return accepted;
+			}
+		};
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(task));
+		}
+		int accepted = 0;
+		for (Future<Integer> future : futures) {
+			accepted += future.get();
+		}
+		assertEquals(accepted, client.getWinningBid("ITEM1").getSequence());
+	}
+	
+	@Test
+	public void serves_several_clients() throws IOException{
+		BidClient other = new BidClient(server.getAddress());
+		try{
+			assertTrue(client.bid("ITEM1", "USER1", 1.0d));
+			assertFalse(other.bid("ITEM1", "USER2", 1.0d));
+			assertEquals("USER1", other.getWinningBid("ITEM1").getUserId());
+		}finally{
+			other.close();
+		}
+	}
+	
+	@Test
+	public void pages_the_items_of_a_partition_across_responses() throws IOException{
+		LocalPartition partition = new LocalPartition(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl());
+		int count = Protocol.MAX_ITEMS * 2 + 10;
+		for (int i = 0; i < count; i++) {
+			partition.bid(String.format("ITEM%05d", i), "USER1", 1.0d);
+		}
+		BidServer partitionServer = new BidServer(partition, new InetSocketAddress("127.0.0.1", 0), 1);
+		BidClient partitionClient = new BidClient(partitionServer.getAddress());
+		try{
+			assertEquals(count, partitionClient.getItems().size());
+			List<String> items = partitionClient.getItemsAfter("ITEM00009", Protocol.MAX_ITEMS + 1);
+			assertEquals(Protocol.MAX_ITEMS + 1, items.size());
+			assertEquals("ITEM00010", items.get(0));
+			assertEquals(String.format("ITEM%05d", Protocol.MAX_ITEMS + 10), items.get(Protocol.MAX_ITEMS));
+		}finally{
+			partitionClient.close();
+			partitionServer.close();
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void refuses_to_list_items_of_a_tracker_not_holding_a_partition(){
+		client.getItems();
+	}
+	
+	@Test(expected = UncheckedIOException.class)
+	public void fails_calls_once_the_server_is_gone() throws IOException, InterruptedException{
+		client.bid("ITEM1", "USER1", 1.0d);
+		server.close();
+		for (int i = 0; i < 100; i++) {
+			client.bid("ITEM1", "USER1", 2.0d + i);
+			Thread.sleep(10);
+		}
+	}
+
+}
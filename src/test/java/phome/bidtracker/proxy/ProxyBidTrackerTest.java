@@ -0,0 +1,161 @@
+package phome.bidtracker.proxy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class ProxyBidTrackerTest {
+	
+	private ProxyBidTracker tracker = new ProxyBidTracker(
+			new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()), new TieredIncrementRule(1.0d));
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@After
+	public void teardown(){
+		executor.shutdownNow();
+	}
+	
+	private void assertHistory(Bid... expected){
+		Iterator<Bid> bids = tracker.getBidsforItem("ITEM1").iterator();
+		for (Bid bid : expected) {
+			assertEquals(bid, bids.next());
+		}
+		assertFalse(bids.hasNext());
+	}
+	
+	@Test
+	public void first_proxy_opens_at_one_increment(){
+		assertTrue(tracker.placeProxyBid("ITEM1", "USER1", 50.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d));
+	}
+	
+	@Test
+	public void lower_proxy_is_answered_one_increment_above(){
+		tracker.placeProxyBid("ITEM1", "USER1", 50.0d);
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER2", 30.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d), new Bid("ITEM1", "USER2", 30.0d), new Bid("ITEM1", "USER1", 31.0d));
+	}
+	
+	@Test
+	public void higher_proxy_takes_the_lead_one_increment_above_the_former_maximum(){
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		assertTrue(tracker.placeProxyBid("ITEM1", "USER2", 50.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d), new Bid("ITEM1", "USER1", 30.0d), new Bid("ITEM1", "USER2", 31.0d));
+		
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER1", 40.0d));
+		assertEquals(new Bid("ITEM1", "USER2", 41.0d), tracker.getWinningBid("ITEM1"));
+	}
+	
+	@Test
+	public void answers_are_capped_by_the_maximum(){
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		assertTrue(tracker.placeProxyBid("ITEM1", "USER2", 30.5d));
+		assertEquals(new Bid("ITEM1", "USER2", 30.5d), tracker.getWinningBid("ITEM1"));
+	}
+	
+	@Test
+	public void earlier_proxy_wins_a_tie(){
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER2", 30.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d), new Bid("ITEM1", "USER1", 30.0d));
+	}
+	
+	@Test
+	public void raising_a_leading_proxy_places_no_bid(){
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		assertTrue(tracker.placeProxyBid("ITEM1", "USER1", 60.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d));
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER2", 50.0d));
+		assertEquals(new Bid("ITEM1", "USER1", 51.0d), tracker.getWinningBid("ITEM1"));
+	}
+	
+	@Test
+	public void plain_bids_are_answered_until_the_maximum_is_outbid(){
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		assertTrue(tracker.bid("ITEM1", "USER2", 10.0d));
+		assertEquals(new Bid("ITEM1", "USER1", 11.0d), tracker.getWinningBid("ITEM1"));
+		assertTrue(tracker.bid("ITEM1", "USER2", 35.0d));
+		assertEquals(new Bid("ITEM1", "USER2", 35.0d), tracker.getWinningBid("ITEM1"));
+		
+		assertTrue(tracker.placeProxyBid("ITEM1", "USER3", 40.0d));
+		assertEquals(new Bid("ITEM1", "USER3", 36.0d), tracker.getWinningBid("ITEM1"));
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER1", 35.0d));
+	}
+	
+	@Test
+	public void settles_a_war_of_proxies_at_the_second_highest_maximum() throws Exception{
+		List<Future<Boolean>> bidders = new ArrayList<Future<Boolean>>();
+		for (int i = 1; i <= 50; i++) {
+			final int user = i;
+			bidders.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					boolean leading = tracker.placeProxyBid("ITEM1", "USER" + user, user * 10.0d);
+					tracker.bid("ITEM1", "PLAIN" + user, user * 5.0d);
+					return leading;
+				}
+			}));
+		}
+		for (Future<Boolean> bidder : bidders) {
+			bidder.get();
+		}
+		assertEquals(new Bid("ITEM1", "USER50", 491.0d), tracker.getWinningBid("ITEM1"));
+		double amount = 0;
+		int bids = 0;
+		for (Bid bid : tracker.getBidsforItem("ITEM1")) {
+			assertTrue(bid.getAmount() > amount);
+			amount = bid.getAmount();
+			bids++;
+		}
+		assertTrue("bids " + bids, bids <= 150);
+	}
+	
+	@Test(timeout = 10000)
+	public void gives_up_answering_when_the_delegate_declines_for_another_reason_than_the_price(){
+		final AtomicBoolean closed = new AtomicBoolean();
+		BidTracker closing = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()){
+			@Override
+			public boolean bid(String itemId, String userId, double amt) {
+				return !closed.get() && super.bid(itemId, userId, amt);
+			}
+		};
+		tracker = new ProxyBidTracker(closing, new TieredIncrementRule(1.0d));
+		tracker.placeProxyBid("ITEM1", "USER1", 30.0d);
+		closed.set(true);
+		assertFalse(tracker.placeProxyBid("ITEM1", "USER2", 50.0d));
+		assertHistory(new Bid("ITEM1", "USER1", 1.0d));
+	}
+	
+	@Test
+	public void tiered_increments_follow_the_price(){
+		IncrementRule rule = new TieredIncrementRule(new double[]{1, 5, 25}, new double[]{0.05, 0.25, 0.5, 1});
+		assertEquals(0.05d, rule.increment(0.0d));
+		assertEquals(0.25d, rule.increment(1.0d));
+		assertEquals(0.25d, rule.increment(4.99d));
+		assertEquals(0.5d, rule.increment(5.0d));
+		assertEquals(1.0d, rule.increment(1000.0d));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_invalid_proxies(){
+		tracker.placeProxyBid("ITEM1", null, 10.0d);
+	}
+
+}
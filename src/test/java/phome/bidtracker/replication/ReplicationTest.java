@@ -0,0 +1,193 @@
+package phome.bidtracker.replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import phome.bidtracker.feed.BidFeed;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+public class ReplicationTest {
+
+	private static final InetSocketAddress ANY_PORT = new InetSocketAddress("127.0.0.1", 0);
+
+	private BidStore leaderStore;
+	private BidFeed feed;
+	private BidTracker tracker;
+	private ReplicationLeader leader;
+	private List<AutoCloseable> closeables = new ArrayList<AutoCloseable>();
+
+	@Before
+	public void setup() throws IOException{
+		startLeader(1024);
+	}
+
+	@After
+	public void teardown() throws Exception{
+		for (AutoCloseable closeable : closeables) {
+			closeable.close();
+		}
+	}
+
+	private void startLeader(int capacity) throws IOException{
+		leaderStore = new BidStoreLockFree();
+		feed = new BidFeed(capacity);
+		tracker = new BidTrackerImpl(leaderStore, new UserBidHistoryStoreLockFreeImpl(), feed);
+		leader = closing(new ReplicationLeader(feed, leaderStore, ANY_PORT));
+	}
+
+	private ReplicationFollower follower(InetSocketAddress address){
+		return closing(new ReplicationFollower(address, new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()));
+	}
+
+	private <T extends AutoCloseable> T closing(T closeable){
+		closeables.add(closeable);
+		return closeable;
+	}
+
+	private void awaitCaughtUp(ReplicationFollower follower, long sequence) throws InterruptedException{
+		assertTrue("follower at " + follower.appliedSequence() + " of " + sequence,
+				follower.awaitApplied(sequence, 5, TimeUnit.SECONDS));
+	}
+
+
+	@Test
+	public void streams_the_accepted_bids_to_followers() throws Exception{
+		ReplicationFollower follower = follower(leader.getAddress());
+		tracker.bid("ITEM1", "USER1", 5.0d);
+		tracker.bid("ITEM1", "USER2", 4.0d);
+		tracker.bid("ITEM1", "USER2", 6.0d);
+		tracker.bid("ITEM2", "USER1", 1.0d);
+		awaitCaughtUp(follower, feed.lastSequence());
+
+		BidTracker replica = follower.getTracker();
+		Bid winning = replica.getWinningBid("ITEM1");
+		assertEquals(new Bid("ITEM1", "USER2", 6.0d), winning);
+		assertEquals(2, winning.getSequence());
+		Iterator<Bid> bids = replica.getBidsforItem("ITEM1").iterator();
+		assertEquals(new Bid("ITEM1", "USER1", 5.0d), bids.next());
+		assertEquals(new Bid("ITEM1", "USER2", 6.0d), bids.next());
+		assertFalse(bids.hasNext());
+		assertEquals(1, replica.getBidsforItemAfter("ITEM1", 1, 10).size());
+		assertEquals(2, replica.getItemsforUser("USER1").size());
+		assertEquals(1, replica.getItemsforUser("USER2").size());
+	}
+
+	@Test
+	public void snapshots_the_bids_placed_before_the_follower_came() throws Exception{
+		for (int i = 1; i <= 3000; i++) {
+			tracker.bid("ITEM" + i % 7, "USER" + i % 13, i);
+		}
+		ReplicationFollower follower = follower(leader.getAddress());
+		tracker.bid("ITEM1", "USER1", 5000.0d);
+		awaitCaughtUp(follower, feed.lastSequence());
+
+		for (int i = 0; i < 7; i++) {
+			assertEquals(leaderStore.winningBid("ITEM" + i), follower.getTracker().getWinningBid("ITEM" + i));
+			assertEquals(leaderStore.latestBids("ITEM" + i, 1000), follower.getBidStore().latestBids("ITEM" + i, 1000));
+		}
+	}
+
+	@Test
+	public void resyncs_a_follower_fallen_behind_the_feed() throws Exception{
+		teardown();
+		closeables.clear();
+		startLeader(16);
+		ReplicationFollower follower = follower(leader.getAddress());
+		for (int i = 1; i <= 5000; i++) {
+			tracker.bid("ITEM" + i % 5, "USER1", i);
+		}
+		awaitCaughtUp(follower, feed.lastSequence());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(leaderStore.winningBid("ITEM" + i), follower.getTracker().getWinningBid("ITEM" + i));
+		}
+	}
+
+	@Test
+	public void reports_the_lag() throws Exception{
+		ReplicationFollower follower = follower(leader.getAddress());
+		tracker.bid("ITEM1", "USER1", 5.0d);
+		awaitCaughtUp(follower, 1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while((leader.followerCount() != 1 || leader.followerLags().values().iterator().next() != 0)
+				&& System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		assertEquals(1, leader.followerCount());
+		assertEquals(Long.valueOf(0), leader.followerLags().values().iterator().next());
+		assertEquals(0, follower.lag());
+		assertTrue(follower.isConnected());
+
+		follower.close();
+		tracker.bid("ITEM1", "USER1", 6.0d);
+		tracker.bid("ITEM1", "USER1", 7.0d);
+		assertEquals(1, follower.appliedSequence());
+	}
+
+	@Test
+	public void resumes_after_a_lost_connection() throws Exception{
+		ReplicationFollower follower = follower(leader.getAddress());
+		tracker.bid("ITEM1", "USER1", 5.0d);
+		awaitCaughtUp(follower, 1);
+		follower.follow(leader.getAddress());
+		tracker.bid("ITEM1", "USER1", 6.0d);
+		awaitCaughtUp(follower, 2);
+		assertEquals(2, follower.getTracker().getWinningBid("ITEM1").getSequence());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void followers_are_read_only(){
+		follower(leader.getAddress()).getTracker().bid("ITEM1", "USER1", 5.0d);
+	}
+
+	@Test
+	public void fails_over_to_a_promoted_follower() throws Exception{
+		ReplicationFollower promoted = follower(leader.getAddress());
+		ReplicationFollower other = follower(leader.getAddress());
+		for (int i = 1; i <= 100; i++) {
+			tracker.bid("ITEM" + i % 3, "USER" + i % 4, i);
+		}
+		awaitCaughtUp(promoted, feed.lastSequence());
+		awaitCaughtUp(other, feed.lastSequence());
+		leader.close();
+
+		promoted.close();
+		BidFeed newFeed = new BidFeed(1024, promoted.getBidStore());
+		BidTracker newTracker = promoted.promote(newFeed);
+		ReplicationLeader newLeader = closing(new ReplicationLeader(newFeed, promoted.getBidStore(), ANY_PORT));
+		other.follow(newLeader.getAddress());
+
+		assertFalse(newTracker.bid("ITEM1", "USER1", 100.0d));
+		assertTrue(promoted.getTracker().bid("ITEM1", "USER1", 101.0d));
+		long deadline = System.currentTimeMillis() + 5000;//applied sequence of the old leader is ahead of the new one
+		while(other.getTracker().getWinningBid("ITEM1").getAmount() != 101.0d && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		awaitCaughtUp(other, newFeed.lastSequence());
+
+		Bid winning = other.getTracker().getWinningBid("ITEM1");
+		assertEquals(new Bid("ITEM1", "USER1", 101.0d), winning);
+		assertEquals(newTracker.getWinningBid("ITEM1").getSequence(), winning.getSequence());
+		assertEquals(promoted.getBidStore().latestBids("ITEM2", 1000), other.getBidStore().latestBids("ITEM2", 1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejects_null_stores(){
+		new ReplicationFollower(leader.getAddress(), null, new UserBidHistoryStoreLockFreeImpl());
+	}
+
+}
@@ -0,0 +1,82 @@
+package phome.bidtracker.store;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+
+import static junit.framework.Assert.*;
+
+public class BidArchiveTest {
+	
+	private BidArchive archive = new BidArchive();
+	
+	private Bid first = new Bid("ITEM1", "USER1", 1.0d, 1);
+	private Bid second = new Bid("ITEM1", "USER2", 2.0d, 2);
+	private Bid third = new Bid("ITEM1", "USER1", 3.0d, 3);
+	
+	@Test
+	public void archived_item_is_closed(){
+		assertFalse(archive.isClosed("ITEM1"));
+		archive.archive("ITEM1", Arrays.asList(first, second));
+		assertTrue(archive.isClosed("ITEM1"));
+		assertEquals(1, archive.size());
+	}
+	
+	@Test
+	public void item_without_bids_is_closed_too(){
+		archive.archive("ITEM1", null);
+		assertTrue(archive.isClosed("ITEM1"));
+		assertNull(archive.winningBid("ITEM1"));
+		assertNull(archive.bidsForItem("ITEM1"));
+		assertNull(archive.latestBids("ITEM1", 10));
+	}
+	
+	@Test
+	public void retrieves_archived_bids_in_order_with_their_sequence(){
+		archive.archive("ITEM1", Arrays.asList(first, second, third));
+		
+		Iterator<Bid> bids = archive.bidsForItem("ITEM1").iterator();
+		for (Bid expected : new Bid[]{first, second, third}) {
+			Bid bid = bids.next();
+			assertEquals(expected, bid);
+			assertEquals(expected.getSequence(), bid.getSequence());
+		}
+		assertFalse(bids.hasNext());
+		assertEquals(third, archive.winningBid("ITEM1"));
+		assertEquals(3, archive.winningBid("ITEM1").getSequence());
+	}
+	
+	@Test
+	public void pages_through_archived_bids(){
+		archive.archive("ITEM1", Arrays.asList(first, second, third));
+		
+		List<Bid> latest = archive.latestBids("ITEM1", 2);
+		assertEquals(Arrays.asList(second, third), latest);
+		assertEquals(3, archive.latestBids("ITEM1", 10).size());
+		assertEquals(Arrays.asList(second), archive.bidsAfter("ITEM1", 1, 1));
+		assertTrue(archive.bidsAfter("ITEM1", 3, 10).isEmpty());
+	}
+	
+	@Test
+	public void retrieves_archived_items_for_user(){
+		archive.archive("ITEM1", Arrays.asList(first, second, third));
+		archive.archive("ITEM2", Arrays.asList(new Bid("ITEM2", "USER1", 1.0d)));
+		
+		assertEquals(2, archive.itemsForUser("USER1").size());
+		assertTrue(archive.itemsForUser("USER2").contains("ITEM1"));
+		assertNull(archive.itemsForUser("USER3"));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void archived_bids_are_read_only(){
+		archive.archive("ITEM1", Arrays.asList(first));
+		Iterator<Bid> bids = archive.bidsForItem("ITEM1").iterator();
+		bids.next();
+		bids.remove();
+	}
+
+}
@@ -0,0 +1,97 @@
+package phome.bidtracker.store;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Runs the BidStore tests against the columnar implementation, plus tests specific to it
+ *
+ */
+public class BidStoreColumnarTest extends BidStoreTest {
+	
+	private IdDictionary userIds = new IdDictionary();
+	private IdDictionary itemIds = new IdDictionary();
+	
+	@Override
+	protected BidStore newStore() {
+		return new BidStoreColumnar(userIds, itemIds);
+	}
+	
+	@Override
+	protected BidStore newStore(ClosedItems closedItems) {
+		return new BidStoreColumnar(userIds, itemIds, closedItems);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void dictionaries_mandatory_for_store(){
+		new BidStoreColumnar(userIds, null);
+	}
+	
+	@Test
+	public void encodes_ids_through_shared_dictionaries(){
+		BidStore store = newStore();
+		store.maybeSave(new Bid("ITEM1", "USER1", 1.0d));
+		store.maybeSave(new Bid("ITEM1", "USER2", 2.0d));
+		store.maybeSave(new Bid("ITEM2", "USER1", 1.0d));
+		assertEquals(2, userIds.size());
+		assertEquals(2, itemIds.size());
+	}
+	
+	@Test
+	public void turned_down_bids_encode_no_ids(){
+		BidStore store = newStore(new ClosedItems() {
+			@Override
+			public boolean isClosed(String itemId) {
+				return itemId.equals("CLOSED");
+			}
+		});
+		store.maybeSave(new Bid("ITEM1", "USER1", 2.0d));
+		assertFalse(store.maybeSave(new Bid("ITEM1", "USER2", 1.0d)));
+		assertFalse(store.maybeSave(new Bid("CLOSED", "USER3", 1.0d)));
+		assertEquals(1, userIds.size());
+		assertEquals(1, itemIds.size());
+	}
+	
+	@Test
+	public void grows_columns_keeping_bids_in_order(){
+		BidStore store = newStore();
+		for (int i = 1; i <= 1000; i++) {
+			assertTrue(store.maybeSave(new Bid("ITEM", "USER" + (i % 7), i * 0.5d)));
+		}
+		int i = 1;
+		for (Bid bid : store.bidsForItem("ITEM")) {
+			assertEquals(new Bid("ITEM", "USER" + (i % 7), i * 0.5d), bid);
+			i++;
+		}
+		assertEquals(1001, i);
+		assertEquals(500.0d, store.winningBid("ITEM").getAmount());
+	}
+	
+	@Test
+	public void skips_items_encoded_by_other_stores(){
+		itemIds.encode("OTHER");
+		BidStore store = newStore();
+		store.maybeSave(new Bid("ITEM", "USER", 1.0d));
+		int count = 0;
+		for (String item : store.items()) {
+			assertEquals("ITEM", item);
+			count++;
+		}
+		assertEquals(1, count);
+	}
+
+	@Test
+	public void evicted_item_is_not_taken_on_again_by_a_late_first_bid(){
+		BidStore store = newStore();
+		store.maybeSave(new Bid("ITEM", "USER", 1.0d));
+		store.close("ITEM");
+		store.evict("ITEM");
+		assertFalse(store.maybeSave(new Bid("ITEM", "USER", 2.0d)));
+		assertNull(store.winningBid("ITEM"));
+		assertFalse(store.items().iterator().hasNext());
+	}
+
+}
@@ -0,0 +1,285 @@
+package phome.bidtracker.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.models.Bid;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Runs the BidStore tests against a store retaining few bids in memory, plus tests specific to spilling.
+ * Spills run on the appender, so that the tests see them done
+ *
+ */
+public class BidStoreSpillingTest extends BidStoreTest {
+	
+	private static final long SEGMENT_BYTES = 64L << 20;
+	private static final Executor INLINE = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private BidSegments segments;
+	
+	@Override
+	protected BidStore newStore() {
+		return newStore(ClosedItems.NONE);
+	}
+	
+	@Override
+	protected BidStore newStore(ClosedItems closedItems) {
+		return new BidStoreLockFree(BidMetrics.NONE, closedItems, segments());
+	}
+	
+	private BidSegments segments(){
+		if(segments == null){
+			try {
+				segments = new BidSegments(folder.newFolder("segments"), 8, 16, SEGMENT_BYTES, INLINE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return segments;
+	}
+	
+	@After
+	public void teardown() throws IOException{
+		segments.close();
+	}
+	
+	@Test
+	public void interns_users_of_bids_in_memory_and_forgets_them_once_spilled_or_evicted(){
+		IdDictionary users = new IdDictionary();
+		BidStore store = new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, segments(), users);
+		for (int i = 1; i <= 100; i++) {
+			store.maybeSave(new Bid("ITEM1", new String("OLD"), i));
+		}
+		for (int i = 101; i <= 200; i++) {
+			store.maybeSave(new Bid("ITEM1", new String("NEW"), i));
+		}
+		assertEquals(-1, users.lookup("OLD"));
+		assertTrue(users.lookup("NEW") >= 0);
+		List<Bid> latest = store.latestBids("ITEM1", 2);
+		assertSame(latest.get(0).getUserId(), latest.get(1).getUserId());
+		
+		store.evict("ITEM1");
+		assertEquals(-1, users.lookup("NEW"));
+	}
+	
+	@Test
+	public void iterates_full_history_reading_spilled_bids_from_disk(){
+		BidStore store = newStore();
+		for (int i = 1; i <= 1000; i++) {
+			store.maybeSave(new Bid("ITEM1", "USER" + (i % 7), i));
+		}
+		assertTrue(segments.spilledBids() >= 1000 - 8 - 16);
+		assertEquals(0, segments.pagesRead());
+		
+		long sequence = 0;
+		for (Bid bid : store.bidsForItem("ITEM1")) {
+			sequence++;
+			assertEquals(sequence, bid.getSequence());
+			assertEquals((double)sequence, bid.getAmount());
+			assertEquals("USER" + (sequence % 7), bid.getUserId());
+			assertEquals("ITEM1", bid.getItemId());
+		}
+		assertEquals(1000, sequence);
+		assertEquals(segments.spilledBids() / 16, segments.pagesRead());
+	}
+	
+	@Test
+	public void pages_of_bids_are_read_while_spilling() throws InterruptedException{
+		final BidStore store = newStore();
+		store.maybeSave(new Bid("ITEM1", "USER", 1));
+		Thread bidding = new Thread(){
+			@Override
+			public void run() {
+				for (int i = 2; i <= 20000; i++) {
+					store.maybeSave(new Bid("ITEM1", "USER", i));
+				}
+			}
+		};
+		bidding.start();
+		while(bidding.isAlive()){
+			long last = store.winningBid("ITEM1").getSequence();
+			List<Bid> page = store.bidsAfter("ITEM1", last - 1 - (last % 100), 10);
+			assertFalse(page.isEmpty());
+			assertEquals(1, store.latestBids("ITEM1", 1).size());
+		}
+		bidding.join();
+		assertEquals(20000, store.winningBid("ITEM1").getSequence());
+	}
+	
+	@Test
+	public void reads_spilled_pages_lazily(){
+		BidStore store = newStore();
+		for (int i = 1; i <= 1000; i++) {
+			store.maybeSave(new Bid("ITEM1", "USER1", i));
+		}
+		Iterator<Bid> bids = store.bidsForItem("ITEM1").iterator();
+		assertEquals(0, segments.pagesRead());
+		bids.next();
+		assertEquals(1, segments.pagesRead());
+	}
+	
+	@Test
+	public void serves_winning_and_latest_bids_from_memory(){
+		BidStore store = newStore();
+		for (int i = 1; i <= 1000; i++) {
+			store.maybeSave(new Bid("ITEM1", "USER1", i));
+		}
+		assertEquals(1000.0d, store.winningBid("ITEM1").getAmount());
+		assertTrue(store.isOutbid("ITEM1", 1000.0d));
+		List<Bid> latest = store.latestBids("ITEM1", 8);
+		assertEquals(993, latest.get(0).getSequence());
+		assertEquals(0, segments.pagesRead());
+	}
+	
+	@Test
+	public void pages_through_spilled_and_retained_bids(){
+		BidStore store = newStore();
+		for (int i = 1; i <= 1000; i++) {
+			store.maybeSave(new Bid("ITEM1", "USER1", i));
+		}
+		List<Bid> page = store.bidsAfter("ITEM1", 500, 10);
+		assertEquals(10, page.size());
+		assertEquals(501, page.get(0).getSequence());
+		assertEquals(1, segments.pagesRead());
+		
+		List<Bid> latest = store.latestBids("ITEM1", 100);
+		assertEquals(100, latest.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(901 + i, latest.get(i).getSequence());
+		}
+	}
+	
+	@Test
+	public void rolls_segments_once_full() throws IOException{
+		BidSegments small = new BidSegments(folder.newFolder("small"), 1, 4, 64, INLINE);
+		try{
+			BidStore store = new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, small);
+			for (int i = 1; i <= 200; i++) {
+				store.maybeSave(new Bid("ITEM1", "USER" + i, i));
+			}
+			assertTrue(small.segmentCount() > 1);
+			int count = 0;
+			for (Bid bid : store.bidsForItem("ITEM1")) {
+				assertEquals("USER" + (++count), bid.getUserId());
+			}
+			assertEquals(200, count);
+		}finally{
+			small.close();
+		}
+	}
+	
+	@Test
+	public void spills_on_the_spiller_thread_of_the_segments() throws IOException, InterruptedException{
+		BidSegments background = new BidSegments(folder.newFolder("background"), 8, 16);
+		try{
+			BidStore store = new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, background);
+			for (int i = 1; i <= 1000; i++) {
+				store.maybeSave(new Bid("ITEM1", "USER1", i));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(background.spilledBids() < 1000 - 8 - 16 - 16 && System.nanoTime() < deadline){
+				Thread.sleep(1);
+			}
+			assertTrue(background.spilledBids() >= 1000 - 8 - 16 - 16);
+			int count = 0;
+			for (Bid bid : store.bidsForItem("ITEM1")) {
+				assertEquals(++count, bid.getSequence());
+			}
+			assertEquals(1000, count);
+		}finally{
+			background.close();
+		}
+	}
+	
+	@Test
+	public void spills_user_ids_of_any_length(){
+		BidStore store = newStore();
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'é');
+		String longUser = new String(chars);
+		for (int i = 1; i <= 100; i++) {
+			store.maybeSave(new Bid("ITEM1", longUser, i));
+		}
+		assertTrue(segments.spilledBids() > 0);
+		assertEquals(longUser, store.bidsForItem("ITEM1").iterator().next().getUserId());
+	}
+	
+	@Test
+	public void failed_spills_back_off() throws IOException{
+		BidStore store = newStore();
+		segments.close();
+		for (int i = 1; i <= 10000; i++) {
+			store.maybeSave(new Bid("ITEM1", "USER1", i));
+		}
+		assertTrue(segments.failedSpills() > 0);
+		assertTrue(segments.failedSpills() <= 10);
+		assertEquals(10000, store.latestBids("ITEM1", 10000).size());
+	}
+	
+	@Test
+	public void reclaims_segments_of_evicted_items() throws IOException{
+		File directory = folder.newFolder("reclaimed");
+		BidSegments small = new BidSegments(directory, 1, 4, 64, INLINE);
+		try{
+			BidStore store = new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, small);
+			for (int i = 1; i <= 200; i++) {
+				store.maybeSave(new Bid("ITEM1", "USER" + i, i));
+				store.maybeSave(new Bid("ITEM2", "USER" + i, i));
+			}
+			int segmentCount = small.segmentCount();
+			assertTrue(segmentCount > 2);
+			
+			store.close("ITEM1");
+			store.evict("ITEM1");
+			assertTrue(small.segmentCount() < segmentCount);
+			assertTrue(small.segmentCount() > 1);//pages of ITEM2
+			store.close("ITEM2");
+			store.evict("ITEM2");
+			assertEquals(1, small.segmentCount());
+			assertEquals(1, directory.listFiles().length);
+		}finally{
+			small.close();
+		}
+	}
+	
+	@Test
+	public void deletes_segments_of_previous_run() throws IOException{
+		File directory = folder.newFolder("previous");
+		BidSegments previous = new BidSegments(directory, 1, 1);
+		previous.write(Arrays.asList(new Bid("ITEM1", "USER1", 1.0d, 1)));
+		previous.close();
+		
+		BidSegments reopened = new BidSegments(directory, 1, 1);
+		reopened.close();
+		assertEquals(1, directory.listFiles().length);
+		assertEquals(0L, directory.listFiles()[0].length());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void retention_must_be_positive() throws IOException{
+		new BidSegments(folder.newFolder("invalid"), 0);
+	}
+
+}
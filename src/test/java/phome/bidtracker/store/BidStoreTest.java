@@ -1,6 +1,7 @@
 package phome.bidtracker.store;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
@@ -12,6 +13,7 @@ import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 
+import phome.bidtracker.metrics.BidMetrics;
 import phome.bidtracker.models.Bid;
 import phome.bidtracker.store.BidStore;
 import phome.bidtracker.store.BidStoreLockFree;
@@ -42,7 +44,24 @@ public class BidStoreTest {
 	
 	@Before
 	public void setup(){
-		bidStore =  new BidStoreLockFree();
+		bidStore =  newStore();
+	}
+	
+	/**
+	 * Store under test, overridden to run the same tests against other implementations
+	 * @return
+	 */
+	protected BidStore newStore(){
+		return new BidStoreLockFree();
+	}
+	
+	/**
+	 * Store under test turning down bids on the closed items
+	 * @param closedItems
+	 * @return
+	 */
+	protected BidStore newStore(ClosedItems closedItems){
+		return new BidStoreLockFree(BidMetrics.NONE, closedItems);
 	}
 	
 	
@@ -79,6 +98,25 @@ public class BidStoreTest {
 	}
 	
 	
+	@Test
+	public void amount_is_not_outbid_without_bids(){
+		assertFalse(bidStore.isOutbid(itemId, bidAmount));
+	}
+	
+	@Test
+	public void lower_or_equal_amount_is_outbid(){
+		bidStore.maybeSave(bid);
+		assertTrue(bidStore.isOutbid(itemId, bidAmount));
+		assertTrue(bidStore.isOutbid(itemId, bidAmount - 1.0d));
+	}
+	
+	@Test
+	public void higher_amount_is_not_outbid(){
+		bidStore.maybeSave(bid);
+		assertFalse(bidStore.isOutbid(itemId, bidAmount + 1.0d));
+	}
+	
+	
 	@Test
 	public void retrieves_saved_bids_for_an_item_in_order_as_placed(){
 		bidStore.maybeSave(bid);
@@ -93,6 +131,30 @@ public class BidStoreTest {
 	}
 	
 	
+	@Test
+	public void retrieved_bids_are_a_snapshot_unaffected_by_later_bids(){
+		bidStore.maybeSave(bid);
+		Iterable<Bid> snapshot = bidStore.bidsForItem(itemId);
+		bidStore.maybeSave(new Bid(itemId, userId, bidAmount + 1.0d));
+		
+		int count = 0;
+		for (Bid currBid : snapshot) {
+			assertEquals(bid, currBid);
+			count++;
+		}
+		assertEquals(1, count);
+	}
+	
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void retrieved_bids_are_read_only(){
+		bidStore.maybeSave(bid);
+		Iterator<Bid> bids = bidStore.bidsForItem(itemId).iterator();
+		bids.next();
+		bids.remove();
+	}
+	
+	
 	@Test
 	public void retrieves_highest_bid_as_winning_bid(){
 		bidStore.maybeSave(bid);
@@ -101,9 +163,208 @@ public class BidStoreTest {
 		assertEquals(higherBid, bidStore.winningBid(itemId));
 	}
 	
+	@Test
+	public void lists_items_with_bids(){
+		assertFalse(bidStore.items().iterator().hasNext());
+		bidStore.maybeSave(bid);
+		Iterator<String> items = bidStore.items().iterator();
+		assertEquals(itemId, items.next());
+		assertFalse(items.hasNext());
+	}
+	
+	@Test
+	public void saved_bids_are_sequenced_per_item(){
+		for (int i = 1; i <= 3; i++) {
+			bidStore.maybeSave(new Bid(itemId, userId, i));
+		}
+		bidStore.maybeSave(new Bid(UUID.randomUUID() + "-ID", userId, 1.0d));
+		
+		long sequence = 0;
+		for (Bid currBid : bidStore.bidsForItem(itemId)) {
+			assertEquals(++sequence, currBid.getSequence());
+		}
+		assertEquals(3, bidStore.winningBid(itemId).getSequence());
+	}
+	
+	@Test
+	public void retrieves_latest_bids_in_order_as_placed(){
+		for (int i = 1; i <= 200; i++) {
+			bidStore.maybeSave(new Bid(itemId, userId, i));
+		}
+		
+		List<Bid> latest = bidStore.latestBids(itemId, 20);
+		assertEquals(20, latest.size());
+		assertEquals(181.0d, latest.get(0).getAmount());
+		assertEquals(181, latest.get(0).getSequence());
+		assertEquals(bidStore.winningBid(itemId), latest.get(19));
+		assertEquals(200, bidStore.latestBids(itemId, 500).size());
+	}
+	
+	@Test
+	public void pages_through_bids_by_sequence(){
+		for (int i = 1; i <= 150; i++) {
+			bidStore.maybeSave(new Bid(itemId, userId, i));
+		}
+		
+		long cursor = 0;
+		int pages = 0;
+		List<Bid> page;
+		while(!(page = bidStore.bidsAfter(itemId, cursor, 40)).isEmpty()){
+			for (Bid currBid : page) {
+				assertEquals(++cursor, currBid.getSequence());
+				assertEquals((double)cursor, currBid.getAmount());
+			}
+			pages++;
+		}
+		assertEquals(150, cursor);
+		assertEquals(4, pages);
+	}
+	
+	@Test
+	public void retrieves_bids_since_last_seen(){
+		for (int i = 1; i <= 100; i++) {
+			bidStore.maybeSave(new Bid(itemId, userId, i));
+		}
+		long lastSeen = bidStore.winningBid(itemId).getSequence();
+		bidStore.maybeSave(new Bid(itemId, userId, 101.0d));
+		bidStore.maybeSave(new Bid(itemId, userId, 102.0d));
+		
+		List<Bid> since = bidStore.bidsAfter(itemId, lastSeen, Integer.MAX_VALUE);
+		assertEquals(2, since.size());
+		assertEquals(101.0d, since.get(0).getAmount());
+		assertEquals(102.0d, since.get(1).getAmount());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void retrieved_pages_are_read_only(){
+		bidStore.maybeSave(bid);
+		bidStore.latestBids(itemId, 1).clear();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void page_size_must_be_positive(){
+		bidStore.bidsAfter(itemId, 0, 0);
+	}
+	
+	@Test
+	public void closing_returns_final_bids_and_rejects_later_bids(){
+		bidStore.maybeSave(bid);
+		Bid higherBid = new Bid(itemId, UUID.randomUUID() + "-ID", bidAmount + 1.0d);
+		bidStore.maybeSave(higherBid);
+		
+		Iterator<Bid> finalBids = bidStore.close(itemId).iterator();
+		assertEquals(bid, finalBids.next());
+		assertEquals(higherBid, finalBids.next());
+		assertFalse(finalBids.hasNext());
+		
+		assertFalse(bidStore.maybeSave(new Bid(itemId, userId, bidAmount + 100.0d)));
+		assertTrue(bidStore.isOutbid(itemId, Double.MAX_VALUE));
+		assertEquals(higherBid, bidStore.winningBid(itemId));
+		assertEquals(2, bidStore.latestBids(itemId, 10).size());
+		assertNotNull(bidStore.close(itemId));
+	}
+	
+	@Test
+	public void closing_an_item_without_bids_returns_null(){
+		assertNull(bidStore.close(itemId));
+	}
+	
+	@Test
+	public void closing_an_item_without_bids_seals_it(){
+		assertNull(bidStore.close(itemId));
+		assertFalse(bidStore.maybeSave(bid));
+		assertTrue(bidStore.isOutbid(itemId, Double.MAX_VALUE));
+		assertNull(bidStore.winningBid(itemId));
+		assertNull(bidStore.bidsForItem(itemId));
+		assertNull(bidStore.close(itemId));
+		bidStore.evict(itemId);
+		assertFalse(bidStore.items().iterator().hasNext());
+	}
+	
+	@Test
+	public void first_bids_racing_with_close_are_either_final_or_rejected() throws InterruptedException, ExecutionException{
+		for (int trial = 0; trial < 200; trial++) {
+			final String racedItemId = itemId + trial;
+			Future<Boolean> first = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return bidStore.maybeSave(new Bid(racedItemId, userId, bidAmount));
+				}
+			});
+			Iterable<Bid> finalBids = bidStore.close(racedItemId);
+			boolean accepted = first.get();
+			assertEquals(accepted, finalBids != null && finalBids.iterator().hasNext());
+			assertFalse(bidStore.maybeSave(new Bid(racedItemId, userId, bidAmount + 1.0d)));
+		}
+	}
+	
+	@Test
+	public void evicts_items(){
+		bidStore.maybeSave(bid);
+		bidStore.close(itemId);
+		bidStore.evict(itemId);
+		
+		assertNull(bidStore.winningBid(itemId));
+		assertNull(bidStore.bidsForItem(itemId));
+		assertFalse(bidStore.items().iterator().hasNext());
+		bidStore.evict(itemId);
+	}
+	
+	@Test
+	public void rejects_late_bids_on_evicted_closed_items(){
+		final String closedItemId = UUID.randomUUID() + "-ID";
+		BidStore store = newStore(new ClosedItems() {
+			@Override
+			public boolean isClosed(String itemId) {
+				return closedItemId.equals(itemId);
+			}
+		});
+		
+		assertFalse(store.maybeSave(new Bid(closedItemId, userId, bidAmount)));
+		assertNull(store.winningBid(closedItemId));
+		assertTrue(store.maybeSave(bid));
+	}
+	
+	@Test
+	public void bids_racing_with_close_are_either_final_or_rejected() throws InterruptedException, ExecutionException{
+		Callable<Integer> task =
+		new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				int accepted = 0;
+				for (int i = 0; i < 2000; i++) {
+					if(bidStore.maybeSave(new Bid(itemId, userId, bidAmount + i + Math.random())))
+						accepted++;
+				}
+				return accepted;
+			}
+		};
+		
+		bidStore.maybeSave(bid);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add( executor.submit(task));
+		}
+		Thread.sleep(1);
+		Iterable<Bid> finalBids = bidStore.close(itemId);
+		int accepted = 1;
+		for ( Future<Integer> future  : futures) {
+			accepted += future.get();
+		}
+		
+		int closed = 0;
+		for (Bid currBid : finalBids) {
+			closed++;
+		}
+		assertEquals(accepted, closed);
+		assertEquals(closed, bidStore.winningBid(itemId).getSequence());
+	}
+	
 	@Test
 	public void test_no_bids(){
 		assertNull(bidStore.bidsForItem(itemId));
+		assertNull(bidStore.latestBids(itemId, 10));
+		assertNull(bidStore.bidsAfter(itemId, 0, 10));
 	}
 	
 	@Test
@@ -178,4 +439,50 @@ public class BidStoreTest {
 	
 	
 
+	@Test
+	public void keeps_all_accepted_bids_in_ascending_order_on_concurrent_unequal_bid_placement_on_same_item() 
+			throws InterruptedException, ExecutionException{
+		
+		//Callable bid task placing a bunch of random bids on the same item, counting the accepted ones
+		Callable<Integer> task =
+		new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				int accepted = 0;
+				for (int i = 0; i < 1000; i++) {
+					String currUserId = UUID.randomUUID() + "-ID";
+					if(bidStore.maybeSave(new Bid(itemId, currUserId, bidAmount + Math.random() * 1000)))
+						accepted++;
+				}
+				return accepted;
+			}
+		};
+		
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();		
+		for (int i = 0; i < 10; i++) {
+			futures.add( executor.submit(task));
+		}
+		int accepted = 0;
+		for ( Future<Integer> future  : futures) {
+			accepted += future.get();
+		}
+		
+		int stored = 0;
+		Bid previous = null;
+		for (Bid currBid : bidStore.bidsForItem(itemId)) {
+			assertTrue(previous == null || previous.getAmount() < currBid.getAmount());
+			previous = currBid;
+			stored++;
+		}
+		assertEquals(accepted, stored);
+		assertEquals(previous, bidStore.winningBid(itemId));
+		assertEquals(stored, previous.getSequence());
+		
+		long sequence = 0;
+		for (Bid currBid : bidStore.bidsAfter(itemId, 0, stored)) {
+			assertEquals(++sequence, currBid.getSequence());
+		}
+		assertEquals(stored, sequence);
+	}
+	
 }
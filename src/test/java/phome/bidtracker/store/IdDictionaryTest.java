@@ -0,0 +1,154 @@
+package phome.bidtracker.store;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class IdDictionaryTest {
+	
+	private IdDictionary dictionary = new IdDictionary();
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@Test
+	public void assigns_dense_ids_in_order_of_first_sight(){
+		assertEquals(0, dictionary.encode("A"));
+		assertEquals(1, dictionary.encode("B"));
+		assertEquals(0, dictionary.encode("A"));
+		assertEquals(2, dictionary.size());
+	}
+	
+	@Test
+	public void decodes_assigned_ids(){
+		int id = dictionary.encode("A");
+		assertEquals("A", dictionary.decode(id));
+		assertNull(dictionary.decode(id + 1));
+		assertNull(dictionary.decode(-1));
+	}
+	
+	@Test
+	public void lookup_does_not_assign(){
+		assertEquals(-1, dictionary.lookup("A"));
+		assertEquals(0, dictionary.size());
+		int id = dictionary.encode("A");
+		assertEquals(id, dictionary.lookup("A"));
+	}
+	
+	@Test
+	public void grows_past_a_chunk(){
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(i, dictionary.encode("ID" + i));
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals("ID" + i, dictionary.decode(i));
+		}
+	}
+	
+	
+	@Test
+	public void acquired_id_is_forgotten_once_released_as_many_times(){
+		int id = dictionary.acquire("A");
+		assertEquals(id, dictionary.acquire("A"));
+		dictionary.release(id);
+		assertEquals(id, dictionary.lookup("A"));
+		dictionary.release(id);
+		assertEquals(-1, dictionary.lookup("A"));
+		assertNull(dictionary.decode(id));
+	}
+	
+	@Test
+	public void forgotten_id_gets_a_new_int_id(){
+		int id = dictionary.acquire("A");
+		dictionary.release(id);
+		assertEquals(id + 1, dictionary.acquire("A"));
+		assertEquals(2, dictionary.size());
+	}
+	
+	@Test
+	public void pinned_id_is_never_forgotten(){
+		int id = dictionary.acquire("A");
+		assertEquals(id, dictionary.encode("A"));
+		dictionary.release(id);
+		assertEquals(id, dictionary.lookup("A"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void cannot_release_an_id_not_acquired(){
+		dictionary.release(dictionary.acquire("A"));
+		dictionary.release(0);
+	}
+	
+	
+	//Concurrency tests
+	
+	@Test
+	public void keeps_ids_dense_and_unique_on_concurrent_encoding_of_overlapping_ids() 
+			throws InterruptedException, ExecutionException{
+		Callable<Object> task =
+		new Callable<Object>() {
+			@Override
+			public Object call() {
+				for (int i = 0; i < 2000; i++) {
+					int id = dictionary.encode("ID" + i);
+					assertEquals("ID" + i, dictionary.decode(id));
+				}
+				return null;
+			}
+		};
+		
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();		
+		for (int i = 0; i < 8; i++) {
+			futures.add( executor.submit(task));
+		}	
+		for ( Future<Object> future  : futures) {
+			future.get();
+		}
+		
+		assertEquals(2000, dictionary.size());
+		Set<String> decoded = new HashSet<String>();
+		for (int id = 0; id < 2000; id++) {
+			decoded.add(dictionary.decode(id));
+		}
+		assertEquals(2000, decoded.size());
+	}
+	
+	@Test
+	public void keeps_counts_on_concurrent_acquire_and_release_of_the_same_ids() 
+			throws InterruptedException, ExecutionException{
+		Callable<Object> task =
+		new Callable<Object>() {
+			@Override
+			public Object call() {
+				for (int i = 0; i < 20000; i++) {
+					int id = dictionary.acquire("ID" + (i % 10));
+					assertEquals("ID" + (i % 10), dictionary.decode(id));
+					dictionary.release(id);
+				}
+				return null;
+			}
+		};
+		
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();		
+		for (int i = 0; i < 8; i++) {
+			futures.add( executor.submit(task));
+		}	
+		for ( Future<Object> future  : futures) {
+			future.get();
+		}
+		
+		for (int i = 0; i < 10; i++) {
+			assertEquals(-1, dictionary.lookup("ID" + i));
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package phome.bidtracker.store;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+public class PersistentHashSetTest {
+	
+	private PersistentHashSet<String> empty = PersistentHashSet.empty();
+	
+	@Test
+	public void empty_set_has_no_elements(){
+		assertEquals(0, empty.size());
+		assertFalse(empty.contains("A"));
+		assertFalse(empty.iterator().hasNext());
+	}
+	
+	@Test
+	public void adding_creates_a_new_version_leaving_the_old_one_untouched(){
+		PersistentHashSet<String> one = empty.with("A");
+		PersistentHashSet<String> two = one.with("B");
+		
+		assertEquals(1, one.size());
+		assertTrue(one.contains("A"));
+		assertFalse(one.contains("B"));
+		assertEquals(2, two.size());
+		assertTrue(two.contains("A"));
+		assertTrue(two.contains("B"));
+	}
+	
+	@Test
+	public void adding_an_existing_element_returns_same_version(){
+		PersistentHashSet<String> one = empty.with("A");
+		assertSame(one, one.with("A"));
+	}
+	
+	@Test
+	public void holds_elements_with_colliding_hashes(){
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		PersistentHashSet<String> set = empty.with("Aa").with("BB").with("AaBB").with("BBAa").with("AaAa");
+		assertEquals(5, set.size());
+		for (String s : new String[]{"Aa", "BB", "AaBB", "BBAa", "AaAa"}) {
+			assertTrue(set.contains(s));
+		}
+		assertSame(set, set.with("BB"));
+		assertFalse(set.contains("BBBB"));
+		assertEquals(5, new HashSet<String>(set).size());
+	}
+	
+	@Test
+	public void iterates_over_every_element_of_a_large_set(){
+		PersistentHashSet<String> set = empty;
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 20000; i++) {
+			set = set.with("ITEM" + i);
+			expected.add("ITEM" + i);
+		}
+		assertEquals(20000, set.size());
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+	}
+	
+	@Test
+	public void removing_creates_a_new_version_leaving_the_old_one_untouched(){
+		PersistentHashSet<String> two = empty.with("A").with("B");
+		PersistentHashSet<String> one = two.without("A");
+		
+		assertEquals(2, two.size());
+		assertTrue(two.contains("A"));
+		assertEquals(1, one.size());
+		assertFalse(one.contains("A"));
+		assertTrue(one.contains("B"));
+		assertSame(one, one.without("A"));
+		assertEquals(0, one.without("B").size());
+	}
+	
+	@Test
+	public void removes_elements_with_colliding_hashes(){
+		PersistentHashSet<String> set = empty.with("Aa").with("BB").with("AaBB");
+		PersistentHashSet<String> removed = set.without("Aa");
+		
+		assertEquals(2, removed.size());
+		assertTrue(removed.contains("BB"));
+		assertFalse(removed.contains("Aa"));
+		assertEquals(1, removed.without("BB").size());
+		assertTrue(removed.without("BB").contains("AaBB"));
+	}
+	
+	@Test
+	public void removes_every_element_of_a_large_set(){
+		PersistentHashSet<String> set = empty;
+		for (int i = 0; i < 20000; i++) {
+			set = set.with("ITEM" + i);
+		}
+		Set<String> expected = new HashSet<String>(set);
+		for (int i = 0; i < 20000; i += 2) {
+			set = set.without("ITEM" + i);
+			expected.remove("ITEM" + i);
+		}
+		assertEquals(expected, set);
+		for (int i = 1; i < 20000; i += 2) {
+			set = set.without("ITEM" + i);
+		}
+		assertEquals(0, set.size());
+		assertFalse(set.iterator().hasNext());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void is_read_only(){
+		empty.with("A").add("B");
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void iterator_is_read_only(){
+		Iterator<String> iterator = empty.with("A").iterator();
+		iterator.next();
+		iterator.remove();
+	}
+
+}
@@ -0,0 +1,85 @@
+package phome.bidtracker.store;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Runs the UserBidHistoryStore tests against the dictionary encoded implementation, 
+ * plus tests specific to it
+ *
+ */
+public class UserBidHistoryStoreEncodedImplTest extends UserBidHistoryStoreTest {
+	
+	private IdDictionary userIds = new IdDictionary();
+	private IdDictionary itemIds = new IdDictionary();
+	
+	@Override
+	protected UserBidHistoryStore newStore() {
+		return new UserBidHistoryStoreEncodedImpl(userIds, itemIds);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void dictionaries_mandatory_for_store(){
+		new UserBidHistoryStoreEncodedImpl(null, itemIds);
+	}
+	
+	@Test
+	public void encodes_ids_through_shared_dictionaries(){
+		UserBidHistoryStore store = newStore();
+		store.save("USER1", "ITEM1");
+		store.save("USER2", "ITEM1");
+		assertEquals(2, userIds.size());
+		assertEquals(1, itemIds.size());
+	}
+	
+	@Test
+	public void forgets_ids_once_their_last_entry_is_removed(){
+		UserBidHistoryStore store = newStore();
+		store.save("USER1", "ITEM1");
+		store.save("USER1", "ITEM1");
+		store.save("USER2", "ITEM1");
+		store.remove("USER1", "ITEM1");
+		assertEquals(-1, userIds.lookup("USER1"));
+		assertTrue(itemIds.lookup("ITEM1") >= 0);
+		
+		store.remove("USER2", "ITEM1");
+		assertEquals(-1, userIds.lookup("USER2"));
+		assertEquals(-1, itemIds.lookup("ITEM1"));
+	}
+	
+	@Test
+	public void snapshot_stays_readable_once_its_items_are_forgotten(){
+		UserBidHistoryStore store = newStore();
+		store.save("USER1", "ITEM1");
+		Set<String> items = store.itemsForUser("USER1");
+		store.remove("USER1", "ITEM1");
+		store.save("USER2", "ITEM1");//assigned a new id
+		
+		assertEquals("ITEM1", items.iterator().next());
+		assertTrue(items.contains("ITEM1"));
+	}
+	
+	@Test
+	public void items_are_a_read_only_snapshot(){
+		UserBidHistoryStore store = newStore();
+		store.save("USER1", "ITEM1");
+		Set<String> items = store.itemsForUser("USER1");
+		store.save("USER1", "ITEM2");
+		
+		assertEquals(1, items.size());
+		assertTrue(items.contains("ITEM1"));
+		assertFalse(items.contains("ITEM2"));
+		assertFalse(items.contains("UNKNOWN"));
+		assertEquals(2, store.itemsForUser("USER1").size());
+		try{
+			items.add("ITEM3");
+			fail();
+		}catch(UnsupportedOperationException e){
+			//expected
+		}
+	}
+
+}
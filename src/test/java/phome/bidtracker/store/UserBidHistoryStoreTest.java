@@ -29,7 +29,15 @@ public class UserBidHistoryStoreTest {
 	
 	@Before
 	public void setup(){
-		userHistoryStore = new UserBidHistoryStoreLockFreeImpl();
+		userHistoryStore = newStore();
+	}
+	
+	/**
+	 * Store under test, overridden to run the same tests against other implementations
+	 * @return
+	 */
+	protected UserBidHistoryStore newStore(){
+		return new UserBidHistoryStoreLockFreeImpl();
 	}
 	
 	@Test
@@ -72,6 +80,46 @@ public class UserBidHistoryStoreTest {
 	}
 
 	
+	@Test
+	public void items_are_a_snapshot_unaffected_by_later_saves(){
+		userHistoryStore.save(userId, itemId);
+		Set<String> items = userHistoryStore.itemsForUser(userId);
+		userHistoryStore.save(userId, UUID.randomUUID() + "-ID");
+		
+		assertEquals(1, items.size());
+		assertTrue(items.contains(itemId));
+		assertEquals(2, userHistoryStore.itemsForUser(userId).size());
+	}
+	
+	@Test
+	public void removes_item_from_user_store(){
+		String itemTwo = UUID.randomUUID() + "-ID";
+		userHistoryStore.save(userId, itemId);
+		userHistoryStore.save(userId, itemTwo);
+		userHistoryStore.remove(userId, itemId);
+		userHistoryStore.remove(userId, UUID.randomUUID() + "-ID");
+		
+		Set<String> items = userHistoryStore.itemsForUser(userId);
+		assertEquals(1, items.size());
+		assertTrue(items.contains(itemTwo));
+	}
+	
+	@Test
+	public void drops_user_left_without_items(){
+		userHistoryStore.save(userId, itemId);
+		userHistoryStore.remove(userId, itemId);
+		userHistoryStore.remove(UUID.randomUUID() + "-ID", itemId);
+		
+		assertNull(userHistoryStore.itemsForUser(userId));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void items_are_read_only(){
+		userHistoryStore.save(userId, itemId);
+		userHistoryStore.itemsForUser(userId).add(UUID.randomUUID() + "-ID");
+	}
+
+	
 	//Concurrent Tests
 	
 	@Test	
@@ -140,9 +188,34 @@ public class UserBidHistoryStoreTest {
 		assertEquals(1, retrievedItems.size());
 	}
 	
-	
-	
-	
-	
+	@Test	
+	public void saves_every_item_of_a_power_user_bidding_from_many_threads() 
+			throws InterruptedException, ExecutionException{
+		
+		//Callable saving a thousand distinct items for the same user
+		Callable<Object> task =
+		new Callable<Object>() {
+			@Override
+			public Object call(){
+				for (int i = 0; i < 1000; i++) {
+					userHistoryStore.save(userId, UUID.randomUUID() + "-ID");
+					userHistoryStore.save(userId, itemId);
+				}
+				return null;
+			}
+		};
+		
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();		
+		for (int i = 0; i < 8; i++) {
+			futures.add( executor.submit(task));
+		}	
+		for ( Future<Object> future  : futures) {
+			future.get();
+		}
+		
+		Set<String> retrievedItems = userHistoryStore.itemsForUser(userId);		
+		assertEquals(8001, retrievedItems.size());
+		assertTrue(retrievedItems.contains(itemId));
+	}
 	
 }
@@ -0,0 +1,13 @@
+package phome.bidtracker.stress;
+
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreColumnar;
+
+public class BidStoreColumnarStressTest extends BidStoreStressTest {
+	
+	@Override
+	protected BidStore newStore() {
+		return new BidStoreColumnar();
+	}
+
+}
@@ -0,0 +1,47 @@
+package phome.bidtracker.stress;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import phome.bidtracker.metrics.BidMetrics;
+import phome.bidtracker.store.BidSegments;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.ClosedItems;
+
+/**
+ * Runs the stress tests against a store retaining few bids in memory, so that readers race with the spills
+ *
+ */
+public class BidStoreSpillingStressTest extends BidStoreStressTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private List<BidSegments> segments = new ArrayList<BidSegments>();
+	
+	@Override
+	protected BidStore newStore() {
+		try {
+			BidSegments storeSegments = new BidSegments(folder.newFolder("segments-" + segments.size()), 2, 2);
+			segments.add(storeSegments);
+			return new BidStoreLockFree(BidMetrics.NONE, ClosedItems.NONE, storeSegments);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@After
+	public void closeSegments() throws IOException{
+		for (BidSegments storeSegments : segments) {
+			storeSegments.close();
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package phome.bidtracker.stress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStore;
+import phome.bidtracker.store.BidStoreLockFree;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Stress tests of a bid store: short trials checked for linearizability, and a longer run on hot items
+ * checking that the winning bid only rises and that no accepted bid is lost
+ *
+ */
+public class BidStoreStressTest {
+	
+	private static final String[] ITEMS = {"ITEM-A", "ITEM-B"};
+	private static final int ACTORS = 4;
+	private static final int CALLS_PER_ACTOR = 6;
+	
+	private StressHarness harness = new StressHarness();
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@After
+	public void teardown(){
+		harness.close();
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Store under test, overridden to run the same tests against other implementations
+	 * @return
+	 */
+	protected BidStore newStore(){
+		return new BidStoreLockFree();
+	}
+	
+	
+	@Test
+	public void concurrent_calls_are_linearizable() throws Exception{
+		for (int trial = 0; trial < StressHarness.TRIALS; trial++) {
+			final BidStore store = newStore();
+			List<Operation> history = harness.trial(new StressHarness.Actor() {
+				@Override
+				public void act(int id, List<Operation> history) {
+					Random random = new Random();
+					for (int i = 0; i < CALLS_PER_ACTOR; i++) {
+						String itemId = ITEMS[random.nextInt(ITEMS.length)];
+						int pick = random.nextInt(10);
+						if(pick < 6){//few distinct amounts, so that bids tie and lose
+							double amount = 1 + random.nextInt(8);
+							Operation op = new Operation(Operation.Kind.BID, itemId, "USER-" + id, amount, 0);
+							history.add(op.returned(store.trySave(new Bid(itemId, "USER-" + id, amount))));
+						}else if(pick < 8){
+							Operation op = new Operation(Operation.Kind.WINNING_BID, itemId, null, 0, 0);
+							history.add(op.returned(store.winningBid(itemId)));
+						}else{
+							Operation op = new Operation(Operation.Kind.LATEST_BIDS, itemId, null, 0, 2);
+							history.add(op.returned(store.latestBids(itemId, 2)));
+						}
+					}
+				}
+			}, ACTORS);
+			List<Operation> violation = LinearizabilityChecker.check(history, LinearizabilityChecker.BID_STORE);
+			if(violation != null){
+				fail("Not linearizable in trial " + trial + ":\n" + LinearizabilityChecker.describe(violation));
+			}
+		}
+	}
+	
+	@Test
+	public void winning_bid_only_rises_and_no_accepted_bid_is_lost() throws Exception{
+		final BidStore store = newStore();
+		final String[] items = {"HOT-1", "HOT-2", "HOT-3"};
+		final AtomicBoolean bidding = new AtomicBoolean(true);
+		List<Future<List<Bid>>> bidders = new ArrayList<Future<List<Bid>>>();
+		for (int i = 0; i < ACTORS; i++) {
+			final String userId = "USER-" + i;
+			bidders.add(executor.submit(new Callable<List<Bid>>() {
+				@Override
+				public List<Bid> call() throws Exception {
+					Random random = new Random();
+					List<Bid> accepted = new ArrayList<Bid>();
+					for (int n = 0; n < StressHarness.TRIALS * 50; n++) {
+						String itemId = items[random.nextInt(items.length)];
+						Bid saved = store.trySave(new Bid(itemId, userId, 1 + n + random.nextInt(50)));
+						if(saved != null){
+							accepted.add(saved);
+						}
+					}
+					return accepted;
+				}
+			}));
+		}
+		List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 2; i++) {
+			readers.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Map<String, Bid> lastSeen = new HashMap<String, Bid>();
+					int reads = 0;
+					while(bidding.get()){
+						for (String itemId : items) {
+							Bid winning = store.winningBid(itemId);
+							Bid last = lastSeen.get(itemId);
+							if(last != null){
+								assertTrue(winning + " after " + last, winning.getSequence() >= last.getSequence());
+								assertTrue(winning + " after " + last, winning.getAmount() >= last.getAmount());
+							}
+							if(winning != null){
+								lastSeen.put(itemId, winning);
+							}
+							reads++;
+						}
+					}
+					return reads;
+				}
+			}));
+		}
+		Map<String, Bid[]> bySequence = new HashMap<String, Bid[]>();
+		for (String itemId : items) {
+			bySequence.put(itemId, new Bid[StressHarness.TRIALS * 50 * ACTORS + 1]);
+		}
+		for (Future<List<Bid>> bidder : bidders) {
+			for (Bid bid : bidder.get()) {
+				Bid[] accepted = bySequence.get(bid.getItemId());
+				assertNull("sequence given twice " + bid, accepted[(int)bid.getSequence()]);
+				accepted[(int)bid.getSequence()] = bid;
+			}
+		}
+		bidding.set(false);
+		for (Future<Integer> reader : readers) {
+			reader.get();
+		}
+		
+		for (String itemId : items) {
+			Bid[] accepted = bySequence.get(itemId);
+			Iterator<Bid> stored = store.bidsForItem(itemId).iterator();
+			int sequence = 1;
+			double amount = 0;
+			while(stored.hasNext()){
+				Bid bid = stored.next();
+				assertEquals(sequence, bid.getSequence());
+				assertEquals(accepted[sequence], bid);
+				assertTrue(bid.getAmount() > amount);
+				amount = bid.getAmount();
+				sequence++;
+			}
+			assertTrue("accepted bid lost", sequence >= accepted.length || accepted[sequence] == null);
+			assertEquals(accepted[sequence - 1], store.winningBid(itemId));
+		}
+	}
+
+}
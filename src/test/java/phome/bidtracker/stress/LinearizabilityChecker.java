@@ -0,0 +1,234 @@
+package phome.bidtracker.stress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import phome.bidtracker.models.Bid;
+
+/**
+ * Checks that a history of concurrent operations is linearizable against a sequential model,
+ * i.e. that every operation can be given a point in time between its invocation and its return
+ * such that the results are those of the model applying the operations in that order.
+ * 
+ * <br><br>Search in the style of Wing and Gong with the memoization of Lowe: an operation can be linearized next 
+ * if it was invoked before every pending operation returned. Orders failing from the same set of linearized operations
+ * and the same state of the model are only tried once.
+ * <br>Linearizability is local, hence histories are checked key by key, i.e. item by item for a bid store
+ * and user by user for a user store, which keeps every search small.
+ *
+ */
+final class LinearizabilityChecker {
+	
+	/**
+	 * Sequential specification
+	 */
+	interface Model {
+		
+		Object initialState();
+		
+		/**
+		 * @return the state after the operation, or null if the operation cannot return its result in the given state
+		 */
+		Object apply(Object state, Operation op);
+	}
+	
+	
+	/**
+	 * A bid store on one item: the state is the list of the accepted bids
+	 */
+	static final Model BID_STORE = new Model() {
+		@Override
+		public Object initialState() {
+			return Collections.<Bid>emptyList();
+		}
+
+		@Override
+		public Object apply(Object state, Operation op) {
+			@SuppressWarnings("unchecked")
+			List<Bid> accepted = (List<Bid>)state;
+			Bid winning = accepted.isEmpty() ? null : accepted.get(accepted.size() - 1);
+			switch (op.kind) {
+			case BID:
+				boolean wins = winning == null || op.amount > winning.getAmount();
+				Bid saved = (Bid)op.result;
+				if(saved == null){
+					return wins ? null : state;
+				}
+				if(!wins || !same(saved, new Bid(op.key, op.arg, op.amount, accepted.size() + 1))){
+					return null;
+				}
+				List<Bid> next = new ArrayList<Bid>(accepted);
+				next.add(saved);
+				return next;
+			case WINNING_BID:
+				return same((Bid)op.result, winning) ? state : null;
+			case LATEST_BIDS:
+				@SuppressWarnings("unchecked")
+				List<Bid> latest = (List<Bid>)op.result;
+				if(latest == null){
+					return accepted.isEmpty() ? state : null;
+				}
+				List<Bid> expected = accepted.subList(Math.max(0, accepted.size() - op.count), accepted.size());
+				if(expected.isEmpty() || latest.size() != expected.size()){
+					return null;
+				}
+				for (int i = 0; i < latest.size(); i++) {
+					if(!same(latest.get(i), expected.get(i))){
+						return null;
+					}
+				}
+				return state;
+			default:
+				throw new IllegalArgumentException("Not a bid store operation " + op);
+			}
+		}
+	};
+	
+	
+	/**
+	 * A user store for one user: the state is the set of items of the user
+	 */
+	static final Model USER_STORE = new Model() {
+		@Override
+		public Object initialState() {
+			return Collections.<String>emptySet();
+		}
+
+		@Override
+		public Object apply(Object state, Operation op) {
+			@SuppressWarnings("unchecked")
+			Set<String> items = (Set<String>)state;
+			Set<String> next;
+			switch (op.kind) {
+			case SAVE:
+				next = new HashSet<String>(items);
+				next.add(op.arg);
+				return next;
+			case REMOVE:
+				next = new HashSet<String>(items);
+				next.remove(op.arg);
+				return next;
+			case ITEMS_FOR_USER:
+				if(op.result == null){
+					return items.isEmpty() ? state : null;
+				}
+				return items.equals(new HashSet<Object>((Set<?>)op.result)) ? state : null;
+			default:
+				throw new IllegalArgumentException("Not a user store operation " + op);
+			}
+		}
+	};
+	
+	
+	private LinearizabilityChecker() {
+	}
+	
+	/**
+	 * @param history - operations of all the threads, whatever the order
+	 * @param model
+	 * @return null if linearizable, else the operations of the first key which are not
+	 */
+	static List<Operation> check(List<Operation> history, Model model){
+		Map<String, List<Operation>> byKey = new LinkedHashMap<String, List<Operation>>();
+		for (Operation op : history) {
+			List<Operation> ops = byKey.get(op.key);
+			if(ops == null){
+				byKey.put(op.key, ops = new ArrayList<Operation>());
+			}
+			ops.add(op);
+		}
+		for (List<Operation> ops : byKey.values()) {
+			if(!isLinearizable(ops, model)){
+				return ops;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param ops - at most 63 operations on the same key
+	 * @param model
+	 */
+	static boolean isLinearizable(List<Operation> ops, Model model){
+		if(ops.size() > 63){
+			throw new IllegalArgumentException("Invalid Args - too many operations on one key to search " + ops.size());
+		}
+		return new Search(ops.toArray(new Operation[ops.size()]), model).linearize(0L, model.initialState());
+	}
+	
+	private static boolean same(Bid bid, Bid other){
+		if(bid == null || other == null){
+			return bid == other;
+		}
+		return bid.equals(other) && bid.getSequence() == other.getSequence();
+	}
+	
+	
+	private static final class Search {
+		private final Operation[] ops;
+		private final Model model;
+		private final long all;
+		private final Map<Long, Set<Object>> failed = new HashMap<Long, Set<Object>>();
+		
+		Search(Operation[] ops, Model model) {
+			this.ops = ops;
+			this.model = model;
+			this.all = ops.length == 0 ? 0L : -1L >>> (64 - ops.length);
+		}
+		
+		boolean linearize(long done, Object state){
+			if(done == all){
+				return true;
+			}
+			Set<Object> failedStates = failed.get(done);
+			if(failedStates != null && failedStates.contains(state)){
+				return false;
+			}
+			long firstReturn = Long.MAX_VALUE;
+			for (int i = 0; i < ops.length; i++) {
+				if((done & 1L << i) == 0){
+					firstReturn = Math.min(firstReturn, ops[i].returned);
+				}
+			}
+			for (int i = 0; i < ops.length; i++) {
+				if((done & 1L << i) == 0 && ops[i].invoked <= firstReturn){
+					Object next = model.apply(state, ops[i]);
+					if(next != null && linearize(done | 1L << i, next)){
+						return true;
+					}
+				}
+			}
+			if(failedStates == null){
+				failed.put(done, failedStates = new HashSet<Object>());
+			}
+			failedStates.add(state);
+			return false;
+		}
+	}
+	
+	/**
+	 * @return the operations, one per line, in the order they were invoked
+	 */
+	static String describe(List<Operation> ops){
+		List<Operation> sorted = new ArrayList<Operation>(ops);
+		Collections.sort(sorted, new Comparator<Operation>() {
+			@Override
+			public int compare(Operation op, Operation other) {
+				return Long.compare(op.invoked, other.invoked);
+			}
+		});
+		StringBuilder description = new StringBuilder();
+		for (Operation op : sorted) {
+			description.append(op).append('\n');
+		}
+		return description.toString();
+	}
+
+}
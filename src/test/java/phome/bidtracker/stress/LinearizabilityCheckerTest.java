@@ -0,0 +1,92 @@
+package phome.bidtracker.stress;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Makes sure the checker catches the histories it must, so that the stress tests passing means something
+ *
+ */
+public class LinearizabilityCheckerTest {
+	
+	private static Operation bid(String userId, double amount, long sequence, long invoked, long returned){
+		Operation op = new Operation(Operation.Kind.BID, "ITEM", userId, amount, 0, invoked);
+		op.result = sequence == 0 ? null : new Bid("ITEM", userId, amount, sequence);
+		op.returned = returned;
+		return op;
+	}
+	
+	private static Operation winning(Bid result, long invoked, long returned){
+		Operation op = new Operation(Operation.Kind.WINNING_BID, "ITEM", null, 0, 0, invoked);
+		op.result = result;
+		op.returned = returned;
+		return op;
+	}
+	
+	private static Operation user(Operation.Kind kind, String itemId, Object result, long invoked, long returned){
+		Operation op = new Operation(kind, "USER", itemId, 0, 0, invoked);
+		op.result = result;
+		op.returned = returned;
+		return op;
+	}
+	
+	@Test
+	public void accepts_overlapping_bids_in_either_order(){
+		assertTrue(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				bid("U1", 5, 2, 0, 10), 
+				bid("U2", 3, 1, 1, 11)), LinearizabilityChecker.BID_STORE));
+	}
+	
+	@Test
+	public void rejects_a_lower_bid_accepted_after_a_higher_one(){
+		assertFalse(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				bid("U1", 5, 1, 0, 10), 
+				bid("U2", 3, 2, 20, 30)), LinearizabilityChecker.BID_STORE));
+	}
+	
+	@Test
+	public void rejects_a_lost_bid(){
+		assertFalse(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				bid("U1", 5, 1, 0, 10), 
+				bid("U2", 6, 1, 0, 10)), LinearizabilityChecker.BID_STORE));
+	}
+	
+	@Test
+	public void rejects_a_winning_bid_going_back(){
+		Bid first = new Bid("ITEM", "U1", 5, 1);
+		Bid second = new Bid("ITEM", "U2", 6, 2);
+		assertTrue(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				bid("U1", 5, 1, 0, 10), 
+				bid("U2", 6, 2, 5, 40),
+				winning(second, 20, 25),
+				winning(second, 30, 35)), LinearizabilityChecker.BID_STORE));
+		assertFalse(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				bid("U1", 5, 1, 0, 10), 
+				bid("U2", 6, 2, 5, 40),
+				winning(second, 20, 25),
+				winning(first, 30, 35)), LinearizabilityChecker.BID_STORE));
+	}
+	
+	@Test
+	public void rejects_a_saved_item_not_read_back(){
+		assertTrue(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				user(Operation.Kind.SAVE, "ITEM1", null, 0, 10),
+				user(Operation.Kind.ITEMS_FOR_USER, null, null, 5, 8)), LinearizabilityChecker.USER_STORE));
+		assertFalse(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				user(Operation.Kind.SAVE, "ITEM1", null, 0, 10),
+				user(Operation.Kind.ITEMS_FOR_USER, null, null, 15, 18)), LinearizabilityChecker.USER_STORE));
+		assertFalse(LinearizabilityChecker.isLinearizable(Arrays.asList(
+				user(Operation.Kind.SAVE, "ITEM1", null, 0, 10),
+				user(Operation.Kind.REMOVE, "ITEM1", null, 12, 14),
+				user(Operation.Kind.ITEMS_FOR_USER, null, new HashSet<String>(Collections.singleton("ITEM1")), 15, 18)), 
+				LinearizabilityChecker.USER_STORE));
+	}
+
+}
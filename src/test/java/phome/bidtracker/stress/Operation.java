@@ -0,0 +1,57 @@
+package phome.bidtracker.stress;
+
+/**
+ * An operation of a recorded history: what was called, on which key, what it returned, 
+ * and when it was invoked and returned, as per System.nanoTime()
+ *
+ */
+final class Operation {
+	
+	enum Kind { BID, WINNING_BID, LATEST_BIDS, SAVE, REMOVE, ITEMS_FOR_USER }
+	
+	final Kind kind;
+	final String key;
+	final String arg;
+	final double amount;
+	final int count;
+	final long invoked;
+	Object result;
+	long returned;
+	
+	/**
+	 * @param kind
+	 * @param key - the item of a bid store call, the user of a user store call
+	 * @param arg - the user of a bid, the item of a user store update
+	 * @param amount - of a bid
+	 * @param count - of a latest bids read
+	 */
+	Operation(Kind kind, String key, String arg, double amount, int count) {
+		this(kind, key, arg, amount, count, System.nanoTime());
+	}
+	
+	Operation(Kind kind, String key, String arg, double amount, int count, long invoked) {
+		this.kind = kind;
+		this.key = key;
+		this.arg = arg;
+		this.amount = amount;
+		this.count = count;
+		this.invoked = invoked;
+	}
+	
+	/**
+	 * Records the outcome, to be called right as the call returns
+	 * @return this
+	 */
+	Operation returned(Object result){
+		this.returned = System.nanoTime();
+		this.result = result;
+		return this;
+	}
+	
+	@Override
+	public String toString() {
+		return kind + "(" + key + (arg == null ? "" : ", " + arg) + (kind == Kind.BID ? ", " + amount : "") 
+				+ (kind == Kind.LATEST_BIDS ? ", " + count : "") + ") = " + result + " [" + invoked + ", " + returned + "]";
+	}
+
+}
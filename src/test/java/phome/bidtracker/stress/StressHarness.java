@@ -0,0 +1,76 @@
+package phome.bidtracker.stress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs trials in the style of jcstress: a few actors, each playing a short script of calls on a fresh store,
+ * released together so that their calls interleave as much as possible, every call being recorded in a history.
+ * 
+ * <br><br>The number of trials defaults to {@value #DEFAULT_TRIALS}, more can be run for a soak with e.g.
+ * <br><code>mvn test -Dtest=*StressTest -Dstress.trials=100000</code>
+ *
+ */
+final class StressHarness implements AutoCloseable {
+	
+	static final int DEFAULT_TRIALS = 300;
+	static final int TRIALS = Integer.getInteger("stress.trials", DEFAULT_TRIALS);
+	
+	/**
+	 * Script of a thread of a trial
+	 */
+	interface Actor {
+		
+		/**
+		 * Plays the script, recording every call
+		 * @param id - of the actor in the trial
+		 * @param history - of this actor
+		 */
+		void act(int id, List<Operation> history);
+	}
+	
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	
+	/**
+	 * Runs the actors together
+	 * @param actor - script of every actor
+	 * @param actorCount - number of threads playing the script
+	 * @return history of all the actors
+	 */
+	List<Operation> trial(final Actor actor, final int actorCount) throws InterruptedException, ExecutionException {
+		final AtomicInteger ready = new AtomicInteger();
+		List<Future<List<Operation>>> histories = new ArrayList<Future<List<Operation>>>();
+		for (int i = 0; i < actorCount; i++) {
+			final int id = i;
+			histories.add(executor.submit(new Callable<List<Operation>>() {
+				@Override
+				public List<Operation> call() throws Exception {
+					List<Operation> history = new ArrayList<Operation>();
+					ready.incrementAndGet();
+					while(ready.get() < actorCount){
+						Thread.yield();
+					}
+					actor.act(id, history);
+					return history;
+				}
+			}));
+		}
+		List<Operation> history = new ArrayList<Operation>();
+		for (Future<List<Operation>> actorHistory : histories) {
+			history.addAll(actorHistory.get());
+		}
+		return history;
+	}
+	
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,13 @@
+package phome.bidtracker.stress;
+
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.store.UserBidHistoryStoreEncodedImpl;
+
+public class UserBidHistoryStoreEncodedStressTest extends UserBidHistoryStoreStressTest {
+	
+	@Override
+	protected UserBidHistoryStore newStore() {
+		return new UserBidHistoryStoreEncodedImpl();
+	}
+
+}
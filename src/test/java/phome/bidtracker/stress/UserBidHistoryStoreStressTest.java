@@ -0,0 +1,148 @@
+package phome.bidtracker.stress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStore;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Stress tests of a user store: short trials checked for linearizability, 
+ * and a longer run through a tracker checking that the items of every user match the bids accepted
+ *
+ */
+public class UserBidHistoryStoreStressTest {
+	
+	private static final String[] USERS = {"USER-A", "USER-B"};
+	private static final int ACTORS = 4;
+	private static final int CALLS_PER_ACTOR = 6;
+	
+	private StressHarness harness = new StressHarness();
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@After
+	public void teardown(){
+		harness.close();
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Store under test, overridden to run the same tests against other implementations
+	 * @return
+	 */
+	protected UserBidHistoryStore newStore(){
+		return new UserBidHistoryStoreLockFreeImpl();
+	}
+	
+	
+	@Test
+	public void concurrent_calls_are_linearizable() throws Exception{
+		for (int trial = 0; trial < StressHarness.TRIALS; trial++) {
+			final UserBidHistoryStore store = newStore();
+			List<Operation> history = harness.trial(new StressHarness.Actor() {
+				@Override
+				public void act(int id, List<Operation> history) {
+					Random random = new Random();
+					for (int i = 0; i < CALLS_PER_ACTOR; i++) {
+						String userId = USERS[random.nextInt(USERS.length)];
+						String itemId = "ITEM-" + random.nextInt(3);
+						int pick = random.nextInt(10);
+						if(pick < 5){
+							Operation op = new Operation(Operation.Kind.SAVE, userId, itemId, 0, 0);
+							store.save(userId, itemId);
+							history.add(op.returned(null));
+						}else if(pick < 7){
+							Operation op = new Operation(Operation.Kind.REMOVE, userId, itemId, 0, 0);
+							store.remove(userId, itemId);
+							history.add(op.returned(null));
+						}else{
+							Operation op = new Operation(Operation.Kind.ITEMS_FOR_USER, userId, null, 0, 0);
+							Set<String> items = store.itemsForUser(userId);
+							history.add(op.returned(items == null ? null : new HashSet<String>(items)));
+						}
+					}
+				}
+			}, ACTORS);
+			List<Operation> violation = LinearizabilityChecker.check(history, LinearizabilityChecker.USER_STORE);
+			if(violation != null){
+				fail("Not linearizable in trial " + trial + ":\n" + LinearizabilityChecker.describe(violation));
+			}
+		}
+	}
+	
+	@Test
+	public void items_of_the_users_match_the_accepted_bids() throws Exception{
+		final BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), newStore());
+		List<Future<Map<String, Set<String>>>> bidders = new ArrayList<Future<Map<String, Set<String>>>>();
+		for (int i = 0; i < ACTORS; i++) {
+			final int seed = i;
+			bidders.add(executor.submit(new Callable<Map<String, Set<String>>>() {
+				@Override
+				public Map<String, Set<String>> call() throws Exception {
+					Random random = new Random(seed);
+					Map<String, Set<String>> accepted = new HashMap<String, Set<String>>();
+					for (int n = 0; n < StressHarness.TRIALS * 20; n++) {
+						String userId = "USER-" + random.nextInt(20);
+						String itemId = "ITEM-" + random.nextInt(200);
+						if(tracker.bid(itemId, userId, 1 + n + random.nextInt(100))){
+							Set<String> items = accepted.get(userId);
+							if(items == null){
+								accepted.put(userId, items = new HashSet<String>());
+							}
+							items.add(itemId);
+						}
+						Set<String> seen = tracker.getItemsforUser(userId);
+						Set<String> mine = accepted.get(userId);
+						if(mine != null){
+							assertTrue("items of " + userId + " lost", seen != null && seen.containsAll(mine));
+						}
+					}
+					return accepted;
+				}
+			}));
+		}
+		Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+		for (Future<Map<String, Set<String>>> bidder : bidders) {
+			for (Map.Entry<String, Set<String>> entry : bidder.get().entrySet()) {
+				Set<String> items = expected.get(entry.getKey());
+				if(items == null){
+					expected.put(entry.getKey(), items = new HashSet<String>());
+				}
+				items.addAll(entry.getValue());
+			}
+		}
+		for (int i = 0; i < 20; i++) {
+			String userId = "USER-" + i;
+			Set<String> items = tracker.getItemsforUser(userId);
+			assertEquals(expected.get(userId), items == null ? null : new HashSet<String>(items));
+		}
+		for (Map.Entry<String, Set<String>> entry : expected.entrySet()) {
+			for (String itemId : entry.getValue()) {
+				boolean found = false;
+				for (Bid bid : tracker.getBidsforItem(itemId)) {
+					found |= bid.getUserId().equals(entry.getKey());
+				}
+				assertTrue(found);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package phome.bidtracker.subscription;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Tests the WinningBidPublisher registered on a real tracker
+ *
+ */
+public class WinningBidPublisherTest {
+	
+	private WinningBidPublisher publisher = new WinningBidPublisher(2);
+	private BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), publisher);
+	
+	private String itemId = UUID.randomUUID() + "-ID";
+	private String userId = UUID.randomUUID() + "-ID";
+	
+	@After
+	public void tearDown(){
+		publisher.close();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void subscriber_is_mandatory(){
+		publisher.subscribe(itemId, null);
+	}
+	
+	@Test
+	public void winning_bid_changes_are_pushed() throws InterruptedException{
+		final BlockingQueue<Bid> received = new LinkedBlockingQueue<Bid>();
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				received.add(winningBid);
+			}
+		});
+		
+		tracker.bid(itemId, userId, 10.0d);
+		assertEquals(10.0d, received.poll(5, TimeUnit.SECONDS).getAmount());
+		tracker.bid(itemId, userId, 5.0d);//outbid, not pushed
+		tracker.bid(itemId, userId, 20.0d);
+		assertEquals(20.0d, received.poll(5, TimeUnit.SECONDS).getAmount());
+		tracker.bid(UUID.randomUUID() + "-ID", userId, 30.0d);//other item, not pushed
+		assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void slow_subscriber_only_sees_latest_bid() throws InterruptedException{
+		final CountDownLatch firstDelivery = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Bid> received = new CopyOnWriteArrayList<Bid>();
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				received.add(winningBid);
+				firstDelivery.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		
+		tracker.bid(itemId, userId, 1.0d);
+		assertTrue(firstDelivery.await(5, TimeUnit.SECONDS));
+		for (int i = 2; i <= 1000; i++) {
+			assertTrue(tracker.bid(itemId, userId, i));//never blocked by the subscriber
+		}
+		release.countDown();
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(received.size() < 2 && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		assertEquals(2, received.size());
+		assertEquals(1.0d, received.get(0).getAmount());
+		assertEquals(1000.0d, received.get(1).getAmount());
+	}
+	
+	@Test
+	public void concurrent_bidders_are_delivered_rising_amounts() throws InterruptedException{
+		final List<Bid> received = new CopyOnWriteArrayList<Bid>();
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				received.add(winningBid);
+			}
+		});
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final String bidder = "USER" + t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 5000; i++) {
+						tracker.bid(itemId, bidder, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		double winningAmount = tracker.getWinningBid(itemId).getAmount();
+		long deadline = System.currentTimeMillis() + 5000;
+		while((received.isEmpty() || received.get(received.size() - 1).getAmount() < winningAmount) 
+				&& System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		for (int i = 1; i < received.size(); i++) {
+			assertTrue(received.get(i).getAmount() > received.get(i - 1).getAmount());
+		}
+		assertEquals(winningAmount, received.get(received.size() - 1).getAmount());
+	}
+	
+	@Test
+	public void cancelled_subscription_gets_no_more_updates() throws InterruptedException{
+		final BlockingQueue<Bid> received = new LinkedBlockingQueue<Bid>();
+		Subscription subscription = publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				received.add(winningBid);
+			}
+		});
+		assertEquals(1, publisher.subscriberCount(itemId));
+		
+		subscription.cancel();
+		subscription.cancel();
+		assertEquals(0, publisher.subscriberCount(itemId));
+		tracker.bid(itemId, userId, 10.0d);
+		assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void failing_subscriber_does_not_affect_bidders_nor_other_subscribers() throws InterruptedException{
+		final BlockingQueue<Bid> received = new LinkedBlockingQueue<Bid>();
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				throw new IllegalStateException("boom");
+			}
+		});
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+				received.add(winningBid);
+			}
+		});
+		
+		assertTrue(tracker.bid(itemId, userId, 10.0d));
+		assertEquals(10.0d, received.poll(5, TimeUnit.SECONDS).getAmount());
+	}
+	
+	@Test
+	public void closed_publisher_does_not_affect_bidders(){
+		publisher.subscribe(itemId, new WinningBidSubscriber() {
+			@Override
+			public void onWinningBid(Bid winningBid) {
+			}
+		});
+		publisher.close();
+		assertTrue(tracker.bid(itemId, userId, 10.0d));
+	}
+
+}
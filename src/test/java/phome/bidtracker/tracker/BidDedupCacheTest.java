@@ -0,0 +1,213 @@
+package phome.bidtracker.tracker;
+
+import static junit.framework.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+
+/**
+ * Tests the BidDedupCache
+ *
+ */
+public class BidDedupCacheTest {
+
+	private final ManualClock clock = new ManualClock();
+	private final BidDedupCache cache = new BidDedupCache(100, 1, TimeUnit.SECONDS, clock);
+	private final BidTracker tracker = mock(BidTracker.class);
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void teardown(){
+		executor.shutdownNow();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void request_id_is_mandatory(){
+		cache.bid(tracker, null, "ITEM", "USER", 1.0d);
+	}
+
+	@Test
+	public void retry_gets_the_original_outcome_without_placing_the_bid(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenReturn(true, false);
+		assertTrue(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+		assertTrue(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+		verify(tracker, times(1)).bid("ITEM", "USER", 1.0d);
+		assertEquals(1, cache.getDuplicates());
+	}
+
+	@Test
+	public void declined_outcome_is_remembered_too(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenReturn(false, true);
+		assertFalse(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+		assertFalse(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+	}
+
+	@Test
+	public void failed_bid_is_placed_again_on_retry(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenThrow(new IllegalStateException("boom")).thenReturn(true);
+		try{
+			cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d);
+			fail();
+		}catch(IllegalStateException e){
+		}
+		assertTrue(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+		verify(tracker, times(2)).bid("ITEM", "USER", 1.0d);
+	}
+
+	@Test
+	public void expired_outcome_is_forgotten(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenReturn(true, false);
+		assertTrue(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+		clock.advance(1000);
+		assertFalse(cache.bid(tracker, "REQ", "ITEM", "USER", 1.0d));
+	}
+
+	@Test
+	public void cache_is_bounded_by_its_capacity(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenReturn(true);
+		for (int i = 0; i < 1000; i++) {
+			cache.bid(tracker, "REQ" + i, "ITEM", "USER", 1.0d);
+		}
+		assertTrue(cache.size() <= 101);
+	}
+
+	@Test
+	public void expired_outcomes_are_evicted(){
+		when(tracker.bid("ITEM", "USER", 1.0d)).thenReturn(true);
+		for (int i = 0; i < 50; i++) {
+			cache.bid(tracker, "REQ" + i, "ITEM", "USER", 1.0d);
+		}
+		clock.advance(1000);
+		cache.bid(tracker, "LATER", "ITEM", "USER", 1.0d);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void concurrent_retries_wait_for_the_original_outcome() throws Exception{
+		final CountDownLatch placing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger placed = new AtomicInteger();
+		final BidTracker slow = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), 
+				new BidListener() {
+			@Override
+			public void onBidAccepted(Bid bid) {
+				placed.incrementAndGet();
+				placing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		Callable<Boolean> retry = new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.bid(slow, "REQ", "ITEM", "USER", 1.0d);
+			}
+		};
+		Future<Boolean> original = executor.submit(retry);
+		placing.await();
+		Future<Boolean> duplicate = executor.submit(retry);
+		Thread.sleep(50);
+		assertFalse(duplicate.isDone());
+		release.countDown();
+		assertTrue(original.get());
+		assertTrue(duplicate.get());
+		assertEquals(1, placed.get());
+	}
+
+
+	@Test
+	public void pending_outcome_is_neither_evicted_nor_replaced() throws Exception{
+		final CountDownLatch placing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger placed = new AtomicInteger();
+		final BidDedupCache small = new BidDedupCache(1, 1, TimeUnit.SECONDS, clock);
+		final BidTracker slow = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), 
+				new BidListener() {
+			@Override
+			public void onBidAccepted(Bid bid) {
+				if(bid.getItemId().equals("SLOW")){
+					placed.incrementAndGet();
+					placing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+		Callable<Boolean> retry = new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return small.bid(slow, "REQ", "SLOW", "USER", 1.0d);
+			}
+		};
+		Future<Boolean> original = executor.submit(retry);
+		placing.await();
+		for (int i = 0; i < 100; i++) {
+			small.bid(slow, "FLOOD" + i, "ITEM" + i, "USER", 1.0d);
+		}
+		clock.advance(5000);
+		small.bid(slow, "LATER", "ITEM", "USER", 1.0d);
+		Future<Boolean> duplicate = executor.submit(retry);
+		Thread.sleep(50);
+		assertFalse(duplicate.isDone());
+		release.countDown();
+		assertTrue(original.get());
+		assertTrue(duplicate.get());
+		assertEquals(1, placed.get());
+	}
+
+
+	private static final class ManualClock extends Clock {
+		private volatile long millis = 1000000L;
+
+		void advance(long delta){
+			millis += delta;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+	}
+
+}
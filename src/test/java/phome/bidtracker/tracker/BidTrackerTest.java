@@ -11,6 +11,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -51,6 +52,27 @@ public class BidTrackerTest {
 	}
 	
 	
+	@Test(expected = IllegalArgumentException.class)
+	public void listeners_cannot_be_null(){	
+		new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, (BidListener)null);		
+	}
+	
+	@Test
+	public void listeners_are_notified_of_accepted_bids(){
+		BidListener listener = mock(BidListener.class);
+		when(mockedBidStore.trySave(bid)).thenReturn(bid.withSequence(1L));
+		new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, listener).bid(itemId, userId, bidAmount);
+		verify(listener).onBidAccepted(bid);
+	}
+	
+	@Test
+	public void listeners_are_not_notified_of_declined_bids(){
+		BidListener listener = mock(BidListener.class);
+		when(mockedBidStore.trySave(bid)).thenReturn(null);
+		new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, listener).bid(itemId, userId, bidAmount);
+		verify(listener, never()).onBidAccepted(bid);
+	}
+	
 	@Test
 	public void bid_placement_attempts_save_to_bidstore(){
 		bidTracker.bid(itemId, userId, bidAmount);
@@ -64,6 +86,22 @@ public class BidTrackerTest {
 		verify(mockedUserHistoryStore).save(userId, itemId);
 	}
 	
+	@Test
+	public void bid_placement_keeps_user_store_entry_while_item_is_in_bid_store(){		
+		when(mockedBidStore.maybeSave(bid)).thenReturn(true);
+		when(mockedBidStore.winningBid(itemId)).thenReturn(bid.withSequence(1L));
+		bidTracker.bid(itemId, userId, bidAmount);
+		verify(mockedUserHistoryStore, never()).remove(userId, itemId);
+	}
+	
+	@Test
+	public void bid_placement_removes_user_store_entry_if_item_evicted_meanwhile(){		
+		when(mockedBidStore.maybeSave(bid)).thenReturn(true);
+		when(mockedBidStore.winningBid(itemId)).thenReturn(null);
+		bidTracker.bid(itemId, userId, bidAmount);
+		verify(mockedUserHistoryStore).remove(userId, itemId);
+	}
+	
 	@Test
 	public void bid_placement_doest_not_save_to_user_store_if_bid_not_saved_to_bid_store(){		
 		when(mockedBidStore.maybeSave(bid)).thenReturn(false);
@@ -85,6 +123,63 @@ public class BidTrackerTest {
 		assertTrue(bidAccepted);
 	}
 	
+	@Test
+	public void outbid_bid_is_declined_without_attempting_save_to_bidstore(){
+		when(mockedBidStore.isOutbid(itemId, bidAmount)).thenReturn(true);
+		boolean bidAccepted = bidTracker.bid(itemId, userId, bidAmount);
+		assertFalse(bidAccepted);
+		verify(mockedBidStore, never()).maybeSave(bid);
+		verify(mockedUserHistoryStore, never()).save(userId, itemId);
+	}
+	
+	@Test
+	public void shed_bid_is_declined_without_touching_the_stores(){
+		BidAdmission admission = mock(BidAdmission.class);
+		when(admission.admit(itemId, userId)).thenReturn(false);
+		boolean bidAccepted = new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, admission).bid(itemId, userId, bidAmount);
+		assertFalse(bidAccepted);
+		verify(mockedBidStore, never()).isOutbid(itemId, bidAmount);
+		verify(mockedBidStore, never()).maybeSave(bid);
+		verify(mockedUserHistoryStore, never()).save(userId, itemId);
+	}
+	
+	@Test
+	public void admitted_bid_goes_on_to_the_stores(){
+		BidAdmission admission = mock(BidAdmission.class);
+		when(admission.admit(itemId, userId)).thenReturn(true);
+		when(mockedBidStore.maybeSave(bid)).thenReturn(true);
+		assertTrue(new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, admission).bid(itemId, userId, bidAmount));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void admission_cannot_be_null(){	
+		new BidTrackerImpl(mockedBidStore, mockedUserHistoryStore, (BidAdmission)null);		
+	}
+	
+	@Test
+	public void retried_bid_is_answered_without_touching_the_stores(){
+		when(mockedBidStore.maybeSave(bid)).thenReturn(true);
+		assertTrue(bidTracker.bid("REQ", itemId, userId, bidAmount));
+		assertTrue(bidTracker.bid("REQ", itemId, userId, bidAmount));
+		verify(mockedBidStore, times(1)).isOutbid(itemId, bidAmount);
+		verify(mockedBidStore, times(1)).maybeSave(bid);
+		verify(mockedUserHistoryStore, times(1)).save(userId, itemId);
+	}
+	
+	@Test
+	public void bids_with_other_request_ids_are_placed(){
+		when(mockedBidStore.maybeSave(bid)).thenReturn(true);
+		bidTracker.bid("REQ1", itemId, userId, bidAmount);
+		bidTracker.bid("REQ2", itemId, userId, bidAmount);
+		verify(mockedBidStore, times(2)).maybeSave(bid);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalid_bid_is_refused_before_checking_bidstore(){
+		when(mockedBidStore.isOutbid(itemId, -1.0d)).thenReturn(true);
+		bidTracker.bid(itemId, userId, -1.0d);
+	}
+	
 	@Test
 	public void winning_bid_is_retrieved_from_bid_store(){
 		when(mockedBidStore.winningBid(itemId)).thenReturn(bid);
@@ -103,6 +198,20 @@ public class BidTrackerTest {
 		assertEquals(bids, bidTracker.getBidsforItem(itemId));
 	}
 	
+	@Test
+	public void latest_bids_retrieved_from_bid_store(){
+		List<Bid> bids = new ArrayList<Bid>();
+		when(mockedBidStore.latestBids(itemId, 20)).thenReturn(bids);
+		assertEquals(bids, bidTracker.getLatestBidsforItem(itemId, 20));
+	}
+	
+	@Test
+	public void bids_after_sequence_retrieved_from_bid_store(){
+		List<Bid> bids = new ArrayList<Bid>();
+		when(mockedBidStore.bidsAfter(itemId, 42L, 20)).thenReturn(bids);
+		assertEquals(bids, bidTracker.getBidsforItemAfter(itemId, 42L, 20));
+	}
+	
 	
 	@Test
 	public void items_for_user_retrieved_from_user_history_store(){
@@ -0,0 +1,142 @@
+package phome.bidtracker.tracker;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+
+import static junit.framework.Assert.*;
+
+
+/**
+ * Tests the ShardedBidTracker against a mocked delegate and against real stores
+ *
+ */
+public class ShardedBidTrackerTest {
+	
+	private BidTracker mockedDelegate = mock(BidTracker.class);
+	private ShardedBidTracker shardedTracker = new ShardedBidTracker(mockedDelegate, 2, 16);
+	
+	private String itemId = UUID.randomUUID() + "-ID";
+	private String userId = UUID.randomUUID() + "-ID";
+	private double bidAmount = 5.0;
+	
+	private Bid bid= new Bid(itemId, userId, bidAmount);
+	
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	
+	@After
+	public void tearDown(){
+		shardedTracker.close();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void delegate_mandatory_for_tracker(){	
+		new ShardedBidTracker(null, 2, 16);		
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void invalid_bid_is_refused_upfront(){
+		shardedTracker.bidAsync(itemId, userId, 0.0d);
+	}
+	
+	@Test
+	public void bid_is_applied_to_delegate(){
+		when(mockedDelegate.bid(itemId, userId, bidAmount)).thenReturn(true);
+		assertTrue(shardedTracker.bid(itemId, userId, bidAmount));
+		verify(mockedDelegate).bid(itemId, userId, bidAmount);
+	}
+	
+	@Test
+	public void async_bid_completes_with_delegate_outcome() throws InterruptedException, ExecutionException{
+		when(mockedDelegate.bid(itemId, userId, bidAmount)).thenReturn(false);
+		assertFalse(shardedTracker.bidAsync(itemId, userId, bidAmount).get());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void delegate_failure_is_propagated_to_bidder(){
+		when(mockedDelegate.bid(itemId, userId, bidAmount)).thenThrow(new IllegalStateException());
+		shardedTracker.bid(itemId, userId, bidAmount);
+	}
+	
+	@Test(expected = RejectedExecutionException.class)
+	public void rejects_bids_once_closed(){
+		shardedTracker.close();
+		shardedTracker.bid(itemId, userId, bidAmount);
+	}
+	
+	@Test
+	public void reads_are_served_by_delegate(){
+		Set<String> items = new HashSet<String>();
+		List<Bid> bids = new ArrayList<Bid>();
+		when(mockedDelegate.getWinningBid(itemId)).thenReturn(bid);
+		when(mockedDelegate.getBidsforItem(itemId)).thenReturn(bids);
+		when(mockedDelegate.getItemsforUser(userId)).thenReturn(items);
+		
+		assertEquals(bid, shardedTracker.getWinningBid(itemId));
+		assertEquals(bids, shardedTracker.getBidsforItem(itemId));
+		assertEquals(items, shardedTracker.getItemsforUser(userId));
+	}
+	
+	
+	//Concurrency tests
+	
+	@Test
+	public void accepts_every_rising_bid_exactly_once_on_concurrent_bidding_over_shards() 
+			throws InterruptedException, ExecutionException{
+		final ShardedBidTracker tracker = new ShardedBidTracker(
+				new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl()), 4, 64);
+		final String[] items = {"ITEM1", "ITEM2", "ITEM3", "ITEM4", "ITEM5"};
+		
+		//Every task places the same rising bids on all items, hence exactly one bid per item and amount wins
+		Callable<Integer> task =
+		new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				String currUserId = UUID.randomUUID() + "-ID";
+				int accepted = 0;
+				for (int amount = 1; amount <= 200; amount++) {
+					for (String item : items) {
+						if(tracker.bid(item, currUserId, amount))
+							accepted++;
+					}
+				}
+				return accepted;
+			}
+		};
+		
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();		
+		for (int i = 0; i < 8; i++) {
+			futures.add( executor.submit(task));
+		}
+		int accepted = 0;
+		for ( Future<Integer> future  : futures) {
+			accepted += future.get();
+		}
+		tracker.close();
+		
+		assertEquals(items.length * 200, accepted);
+		for (String item : items) {
+			assertEquals(200.0d, tracker.getWinningBid(item).getAmount());
+		}
+	}
+
+}
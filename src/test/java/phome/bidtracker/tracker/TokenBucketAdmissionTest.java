@@ -0,0 +1,104 @@
+package phome.bidtracker.tracker;
+
+import static junit.framework.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import phome.bidtracker.concurrent.Ticker;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+
+/**
+ * Tests the TokenBucketAdmission, alone and in front of a tracker
+ *
+ */
+public class TokenBucketAdmissionTest {
+
+	private final ManualTicker ticker = new ManualTicker();
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rates_cannot_be_negative(){
+		new TokenBucketAdmission(-1, 1, 10, 1, 16, ticker);
+	}
+
+	@Test
+	public void user_over_rate_is_shed_by_user(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(10, 2, 0, 1, 1024, ticker);
+		assertTrue(admission.admit("ITEM", "USER"));
+		assertTrue(admission.admit("ITEM", "USER"));
+		assertFalse(admission.admit("ITEM", "USER"));
+		assertEquals(2, admission.getAdmitted());
+		assertEquals(1, admission.getShedByUser());
+		assertEquals(0, admission.getShedByItem());
+	}
+
+	@Test
+	public void item_over_rate_is_shed_by_item_whatever_the_users(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(0, 1, 10, 3, 1024, ticker);
+		assertTrue(admission.admit("ITEM", "USER-1"));
+		assertTrue(admission.admit("ITEM", "USER-2"));
+		assertTrue(admission.admit("ITEM", "USER-3"));
+		assertFalse(admission.admit("ITEM", "USER-4"));
+		assertEquals(1, admission.getShedByItem());
+		assertEquals(1, admission.getShed());
+	}
+
+	@Test
+	public void user_shed_does_not_spend_the_tokens_of_the_item(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(10, 1, 10, 2, 1024, ticker);
+		assertTrue(admission.admit("ITEM", "ATTACKER"));
+		for (int i = 0; i < 100; i++) {
+			assertFalse(admission.admit("ITEM", "ATTACKER"));
+		}
+		assertTrue(admission.admit("ITEM", "HONEST"));
+		assertEquals(100, admission.getShedByUser());
+	}
+
+	@Test
+	public void admission_resumes_once_the_buckets_refilled(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(10, 1, 0, 1, 1024, ticker);
+		assertTrue(admission.admit("ITEM", "USER"));
+		assertFalse(admission.admit("ITEM", "USER"));
+		ticker.advance(TimeUnit.MILLISECONDS.toNanos(100));
+		assertTrue(admission.admit("ITEM", "USER"));
+	}
+
+	@Test
+	public void tracker_declines_shed_bids_and_accepts_the_others(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(10, 1, 0, 1, 1024, ticker);
+		BidTracker tracker = new BidTrackerImpl(new BidStoreLockFree(), new UserBidHistoryStoreLockFreeImpl(), admission);
+		assertTrue(tracker.bid("ITEM", "ATTACKER", 1.0d));
+		assertFalse(tracker.bid("ITEM", "ATTACKER", 2.0d));
+		assertTrue(tracker.bid("ITEM", "HONEST", 3.0d));
+		assertEquals("HONEST", tracker.getWinningBid("ITEM").getUserId());
+		assertEquals(1, admission.getShedByUser());
+	}
+
+	@Test
+	public void rates_above_a_bid_per_ms_are_not_capped(){
+		TokenBucketAdmission admission = new TokenBucketAdmission(0, 1, 10000, 1, 1024, ticker);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(admission.admit("ITEM", "USER"));
+			assertFalse(admission.admit("ITEM", "USER"));
+			ticker.advance(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		assertEquals(1000, admission.getAdmitted());
+	}
+
+
+	private static final class ManualTicker implements Ticker {
+		private volatile long nanos = -1000000000L;//nanoTime may well be negative
+
+		void advance(long delta){
+			nanos += delta;
+		}
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package phome.bidtracker.userauctions;
+
+import static junit.framework.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import phome.bidtracker.cluster.LocalPartition;
+import phome.bidtracker.models.Bid;
+import phome.bidtracker.store.BidStoreLockFree;
+import phome.bidtracker.store.UserBidHistoryStoreLockFreeImpl;
+import phome.bidtracker.tracker.BidTracker;
+import phome.bidtracker.tracker.BidTrackerImpl;
+
+/**
+ * Tests the UserAuctionIndex kept by a tracker
+ *
+ */
+public class UserAuctionIndexTest {
+
+	private final BidStoreLockFree bidStore = new BidStoreLockFree();
+	private final UserAuctionIndex index = new UserAuctionIndex(bidStore);
+	private final BidTracker tracker = new BidTrackerImpl(bidStore, new UserBidHistoryStoreLockFreeImpl(), index);
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void teardown(){
+		executor.shutdownNow();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void bid_store_mandatory(){
+		new UserAuctionIndex(null);
+	}
+
+	@Test
+	public void user_without_bids_has_no_auctions(){
+		assertTrue(index.auctionsForUser("USER").isEmpty());
+	}
+
+	@Test
+	public void auctions_tell_winning_and_outbid_with_top_bid_and_current_price(){
+		tracker.bid("ITEM1", "USER1", 5.0d);
+		tracker.bid("ITEM1", "USER1", 7.0d);
+		tracker.bid("ITEM1", "USER2", 9.0d);
+		tracker.bid("ITEM2", "USER1", 3.0d);
+
+		Map<String, UserAuction> auctions = byItem(index.auctionsForUser("USER1"));
+		assertEquals(2, auctions.size());
+		UserAuction outbid = auctions.get("ITEM1");
+		assertFalse(outbid.isWinning());
+		assertEquals(7.0d, outbid.getTopBid().getAmount());
+		assertEquals(9.0d, outbid.getCurrentPrice());
+		assertEquals("USER2", outbid.getWinningBid().getUserId());
+		UserAuction winning = auctions.get("ITEM2");
+		assertTrue(winning.isWinning());
+		assertEquals(3.0d, winning.getCurrentPrice());
+
+		assertEquals("ITEM2", index.winningForUser("USER1").get(0).getItemId());
+		assertEquals("ITEM1", index.outbidForUser("USER1").get(0).getItemId());
+		assertTrue(index.winningForUser("USER2").get(0).isWinning());
+	}
+
+	@Test
+	public void later_bid_of_a_user_is_kept_whatever_the_order_listeners_run_in(){
+		index.onBidAccepted(new Bid("ITEM", "USER", 8.0d, 2L));
+		index.onBidAccepted(new Bid("ITEM", "USER", 6.0d, 1L));
+		bidStore.trySave(new Bid("ITEM", "USER", 6.0d));
+		bidStore.trySave(new Bid("ITEM", "USER", 8.0d));
+		UserAuction auction = index.auctionsForUser("USER").get(0);
+		assertEquals(8.0d, auction.getTopBid().getAmount());
+		assertTrue(auction.isWinning());
+	}
+
+	@Test
+	public void winning_bid_stands_for_top_bid_not_indexed_yet(){
+		tracker.bid("ITEM", "USER", 5.0d);
+		bidStore.trySave(new Bid("ITEM", "USER", 6.0d));//saved, listener not run yet
+		UserAuction auction = index.auctionsForUser("USER").get(0);
+		assertTrue(auction.isWinning());
+		assertEquals(6.0d, auction.getTopBid().getAmount());
+	}
+
+	@Test
+	public void evicted_items_are_dropped(){
+		tracker.bid("ITEM1", "USER", 5.0d);
+		tracker.bid("ITEM2", "USER", 5.0d);
+		bidStore.close("ITEM1");
+		bidStore.evict("ITEM1");
+		List<UserAuction> auctions = index.auctionsForUser("USER");
+		assertEquals(1, auctions.size());
+		assertEquals("ITEM2", auctions.get(0).getItemId());
+		bidStore.close("ITEM2");
+		bidStore.evict("ITEM2");
+		assertTrue(index.auctionsForUser("USER").isEmpty());
+	}
+
+	@Test
+	public void items_are_dropped_as_soon_as_evicted(){
+		BidStoreLockFree partitionStore = new BidStoreLockFree();
+		UserAuctionIndex partitionIndex = new UserAuctionIndex(partitionStore);
+		LocalPartition partition = new LocalPartition(partitionStore, new UserBidHistoryStoreLockFreeImpl(), partitionIndex);
+		partition.bid("ITEM1", "USER1", 5.0d);
+		partition.bid("ITEM1", "USER2", 6.0d);
+		partition.evictItem("ITEM1");
+		
+		partition.bid("ITEM1", "USER3", 1.0d);//not read in between, a stale entry would show as outbid
+		assertTrue(partitionIndex.auctionsForUser("USER1").isEmpty());
+		assertTrue(partitionIndex.auctionsForUser("USER2").isEmpty());
+		assertEquals(1, partitionIndex.auctionsForUser("USER3").size());
+	}
+
+	@Test
+	public void index_matches_the_store_after_concurrent_bidding() throws Exception{
+		final int users = 8;
+		final int items = 16;
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < 4; t++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					Random random = new Random();
+					for (int i = 0; i < 5000; i++) {
+						tracker.bid("ITEM" + random.nextInt(items), "USER" + random.nextInt(users), 1 + i + random.nextInt(100));
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		for (int u = 0; u < users; u++) {
+			String userId = "USER" + u;
+			Map<String, UserAuction> auctions = byItem(index.auctionsForUser(userId));
+			for (int i = 0; i < items; i++) {
+				String itemId = "ITEM" + i;
+				Bid top = null;
+				Iterable<Bid> bids = bidStore.bidsForItem(itemId);
+				if(bids != null){
+					for (Bid bid : bids) {
+						if(bid.getUserId().equals(userId)){
+							top = bid;
+						}
+					}
+				}
+				UserAuction auction = auctions.get(itemId);
+				if(top == null){
+					assertNull(auction);
+					continue;
+				}
+				assertEquals(top.getAmount(), auction.getTopBid().getAmount());
+				assertEquals(bidStore.winningBid(itemId).getAmount(), auction.getCurrentPrice());
+				assertEquals(bidStore.winningBid(itemId).getUserId().equals(userId), auction.isWinning());
+			}
+		}
+	}
+
+
+	private static Map<String, UserAuction> byItem(List<UserAuction> auctions){
+		Map<String, UserAuction> byItem = new HashMap<String, UserAuction>();
+		for (UserAuction auction : auctions) {
+			byItem.put(auction.getItemId(), auction);
+		}
+		return byItem;
+	}
+
+}